@@ -78,5 +78,48 @@ public final class ColorBurnComposite extends RGBComposite {
                 dst[i + 3] = (int) (sa * alpha + dia * ac);
             }
         }
+
+        @Override
+        protected boolean hasPackedKernel() {
+            return true;
+        }
+
+        @Override
+        protected void composePackedRow(int[] src, int srcPos, int[] dst, int dstPos,
+                                        int[] out, int outPos, int width, float alpha) {
+            for (int i = 0; i < width; i++) {
+                int srcRGB = src[srcPos + i];
+                int dstRGB = dst[dstPos + i];
+                int sr = (srcRGB >>> 16) & 0xFF;
+                int dir = (dstRGB >>> 16) & 0xFF;
+                int sg = (srcRGB >>> 8) & 0xFF;
+                int dig = (dstRGB >>> 8) & 0xFF;
+                int sb = srcRGB & 0xFF;
+                int dib = dstRGB & 0xFF;
+
+                int dor;
+                if (sr != 0) {
+                    dor = Math.max(255 - (((255 - dir) << 8) / sr), 0);
+                } else {
+                    dor = sr;
+                }
+
+                int dog;
+                if (sg != 0) {
+                    dog = Math.max(255 - (((255 - dig) << 8) / sg), 0);
+                } else {
+                    dog = sg;
+                }
+
+                int dob;
+                if (sb != 0) {
+                    dob = Math.max(255 - (((255 - dib) << 8) / sb), 0);
+                } else {
+                    dob = sb;
+                }
+
+                out[outPos + i] = mix(srcRGB >>> 24, dstRGB >>> 24, dir, dig, dib, dor, dog, dob, alpha);
+            }
+        }
     }
 }
@@ -61,5 +61,31 @@ public final class DarkenComposite extends RGBComposite {
                 dst[i + 3] = (int) (sa * alpha + dia * ac);
             }
         }
+
+        @Override
+        protected boolean hasPackedKernel() {
+            return true;
+        }
+
+        @Override
+        protected void composePackedRow(int[] src, int srcPos, int[] dst, int dstPos,
+                                        int[] out, int outPos, int width, float alpha) {
+            for (int i = 0; i < width; i++) {
+                int srcRGB = src[srcPos + i];
+                int dstRGB = dst[dstPos + i];
+                int sr = (srcRGB >>> 16) & 0xFF;
+                int dir = (dstRGB >>> 16) & 0xFF;
+                int sg = (srcRGB >>> 8) & 0xFF;
+                int dig = (dstRGB >>> 8) & 0xFF;
+                int sb = srcRGB & 0xFF;
+                int dib = dstRGB & 0xFF;
+
+                int dor = dir < sr ? dir : sr;
+                int dog = dig < sg ? dig : sg;
+                int dob = dib < sb ? dib : sb;
+
+                out[outPos + i] = mix(srcRGB >>> 24, dstRGB >>> 24, dir, dig, dib, dor, dog, dob, alpha);
+            }
+        }
     }
 }
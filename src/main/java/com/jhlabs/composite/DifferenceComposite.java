@@ -72,5 +72,42 @@ public final class DifferenceComposite extends RGBComposite {
                 dst[i + 3] = (int) (sa * alpha + dia * ac);
             }
         }
+
+        @Override
+        protected boolean hasPackedKernel() {
+            return true;
+        }
+
+        @Override
+        protected void composePackedRow(int[] src, int srcPos, int[] dst, int dstPos,
+                                        int[] out, int outPos, int width, float alpha) {
+            for (int i = 0; i < width; i++) {
+                int srcRGB = src[srcPos + i];
+                int dstRGB = dst[dstPos + i];
+                int sr = (srcRGB >>> 16) & 0xFF;
+                int dir = (dstRGB >>> 16) & 0xFF;
+                int sg = (srcRGB >>> 8) & 0xFF;
+                int dig = (dstRGB >>> 8) & 0xFF;
+                int sb = srcRGB & 0xFF;
+                int dib = dstRGB & 0xFF;
+
+                int dor = dir - sr;
+                if (dor < 0) {
+                    dor = -dor;
+                }
+
+                int dog = dig - sg;
+                if (dog < 0) {
+                    dog = -dog;
+                }
+
+                int dob = dib - sb;
+                if (dob < 0) {
+                    dob = -dob;
+                }
+
+                out[outPos + i] = mix(srcRGB >>> 24, dstRGB >>> 24, dir, dig, dib, dor, dog, dob, alpha);
+            }
+        }
     }
 }
@@ -78,5 +78,48 @@ public final class HardLightComposite extends RGBComposite {
                 dst[i + 3] = (int) (sa * alpha + dia * ac);
             }
         }
+
+        @Override
+        protected boolean hasPackedKernel() {
+            return true;
+        }
+
+        @Override
+        protected void composePackedRow(int[] src, int srcPos, int[] dst, int dstPos,
+                                        int[] out, int outPos, int width, float alpha) {
+            for (int i = 0; i < width; i++) {
+                int srcRGB = src[srcPos + i];
+                int dstRGB = dst[dstPos + i];
+                int sr = (srcRGB >>> 16) & 0xFF;
+                int dir = (dstRGB >>> 16) & 0xFF;
+                int sg = (srcRGB >>> 8) & 0xFF;
+                int dig = (dstRGB >>> 8) & 0xFF;
+                int sb = srcRGB & 0xFF;
+                int dib = dstRGB & 0xFF;
+
+                int dor;
+                if (sr > 127) {
+                    dor = 255 - 2 * multiply255(255 - sr, 255 - dir);
+                } else {
+                    dor = 2 * multiply255(sr, dir);
+                }
+
+                int dog;
+                if (sg > 127) {
+                    dog = 255 - 2 * multiply255(255 - sg, 255 - dig);
+                } else {
+                    dog = 2 * multiply255(sg, dig);
+                }
+
+                int dob;
+                if (sb > 127) {
+                    dob = 255 - 2 * multiply255(255 - sb, 255 - dib);
+                } else {
+                    dob = 2 * multiply255(sb, dib);
+                }
+
+                out[outPos + i] = mix(srcRGB >>> 24, dstRGB >>> 24, dir, dig, dib, dor, dog, dob, alpha);
+            }
+        }
     }
 }
@@ -97,5 +97,55 @@ public final class OverlayComposite extends RGBComposite {
 //                }
             }
         }
+
+        @Override
+        protected boolean hasPackedKernel() {
+            return true;
+        }
+
+        @Override
+        protected void composePackedRow(int[] src, int srcPos, int[] dst, int dstPos,
+                                        int[] out, int outPos, int width, float alpha) {
+            for (int i = 0; i < width; i++) {
+                int srcRGB = src[srcPos + i];
+                int dstRGB = dst[dstPos + i];
+                int sr = (srcRGB >>> 16) & 0xFF;
+                int dir = (dstRGB >>> 16) & 0xFF;
+                int sg = (srcRGB >>> 8) & 0xFF;
+                int dig = (dstRGB >>> 8) & 0xFF;
+                int sb = srcRGB & 0xFF;
+                int dib = dstRGB & 0xFF;
+
+                int dor;
+                int t;
+                if (dir < 128) {
+                    t = dir * sr + 0x80;
+                    dor = 2 * (((t >> 8) + t) >> 8);
+                } else {
+                    t = (255 - dir) * (255 - sr) + 0x80;
+                    dor = 2 * (255 - (((t >> 8) + t) >> 8));
+                }
+
+                int dog;
+                if (dig < 128) {
+                    t = dig * sg + 0x80;
+                    dog = 2 * (((t >> 8) + t) >> 8);
+                } else {
+                    t = (255 - dig) * (255 - sg) + 0x80;
+                    dog = 2 * (255 - (((t >> 8) + t) >> 8));
+                }
+
+                int dob;
+                if (dib < 128) {
+                    t = dib * sb + 0x80;
+                    dob = 2 * (((t >> 8) + t) >> 8);
+                } else {
+                    t = (255 - dib) * (255 - sb) + 0x80;
+                    dob = 2 * (255 - (((t >> 8) + t) >> 8));
+                }
+
+                out[outPos + i] = mix(srcRGB >>> 24, dstRGB >>> 24, dir, dig, dib, dor, dog, dob, alpha);
+            }
+        }
     }
 }
@@ -16,11 +16,17 @@ limitations under the License.
 
 package com.jhlabs.composite;
 
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
 import java.awt.Composite;
 import java.awt.CompositeContext;
 import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
 import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
 
 public abstract class RGBComposite implements Composite {
     protected float extraAlpha;
@@ -60,7 +66,17 @@ public abstract class RGBComposite implements Composite {
     }
 
     public abstract static class RGBCompositeContext implements CompositeContext {
+        // the ARGB bit masks, in the order of the bands (R, G, B, A)
+        private static final int[] ARGB_MASKS = {0xFF_00_00, 0xFF_00, 0xFF, 0xFF_00_00_00};
+
+        // packed rasters with more pixels than this are composed in parallel
+        private static final int PARALLEL_THRESHOLD = 256 * 256;
+
         private final float alpha;
+
+        // row buffers of the generic packed path
+        private int[] srcRow;
+        private int[] dstRow;
 //        private final ColorModel srcColorModel;
 //        private final ColorModel dstColorModel;
 
@@ -86,8 +102,76 @@ public abstract class RGBComposite implements Composite {
 
         public abstract void composeRGB(int[] src, int[] dst, float alpha);
 
+        /**
+         * Returns true if this context overrides {@link #composePackedRow}
+         * with a specialized kernel that doesn't use any mutable state,
+         * and therefore several rows can be composed in parallel.
+         */
+        protected boolean hasPackedKernel() {
+            return false;
+        }
+
+        /**
+         * Composes a row of packed ARGB pixels into the out array.
+         * The out and dst arrays (and positions) can be the same.
+         *
+         * The default implementation unpacks the pixels and calls
+         * {@link #composeRGB}. The overriding kernels must produce
+         * exactly the same result, including the wrapping of the
+         * out-of-range channel values.
+         */
+        protected void composePackedRow(int[] src, int srcPos, int[] dst, int dstPos,
+                                        int[] out, int outPos, int width, float alpha) {
+            int length = 4 * width;
+            if (srcRow == null || srcRow.length != length) {
+                srcRow = new int[length];
+                dstRow = new int[length];
+            }
+            unpack(src, srcPos, srcRow, width);
+            unpack(dst, dstPos, dstRow, width);
+            composeRGB(srcRow, dstRow, alpha);
+            for (int i = 0, j = 0; i < width; i++, j += 4) {
+                out[outPos + i] = pack(dstRow[j + 3], dstRow[j], dstRow[j + 1], dstRow[j + 2]);
+            }
+        }
+
+        private static void unpack(int[] packed, int pos, int[] samples, int width) {
+            for (int i = 0, j = 0; i < width; i++, j += 4) {
+                int rgb = packed[pos + i];
+                samples[j] = (rgb >>> 16) & 0xFF;
+                samples[j + 1] = (rgb >>> 8) & 0xFF;
+                samples[j + 2] = rgb & 0xFF;
+                samples[j + 3] = rgb >>> 24;
+            }
+        }
+
+        // packs the channels the same way as SinglePixelPackedSampleModel.setPixels
+        static int pack(int a, int r, int g, int b) {
+            return (a & 0xFF) << 24 | (r & 0xFF) << 16 | (g & 0xFF) << 8 | b & 0xFF;
+        }
+
+        /**
+         * Mixes the blended color (dor, dog, dob) into the destination
+         * color according to the source alpha, and returns the packed result.
+         */
+        static int mix(int sa, int dia, int dir, int dig, int dib,
+                       int dor, int dog, int dob, float alpha) {
+            float a = alpha * sa / 255.0f;
+            float ac = 1 - a;
+
+            return pack((int) (sa * alpha + dia * ac),
+                (int) (a * dor + ac * dir),
+                (int) (a * dog + ac * dig),
+                (int) (a * dob + ac * dib));
+        }
+
         @Override
         public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
+            if (isPackedARGB(src) && isPackedARGB(dstIn) && isPackedARGB(dstOut)) {
+                composePacked(src, dstIn, dstOut);
+                return;
+            }
+
             float alpha = this.alpha;
 
             int[] srcPix = null;
@@ -111,5 +195,46 @@ public abstract class RGBComposite implements Composite {
                 dstOut.setPixels(x, y, w, 1, dstPix);
             }
         }
+
+        private static boolean isPackedARGB(Raster raster) {
+            return raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sm
+                && Arrays.equals(sm.getBitMasks(), ARGB_MASKS);
+        }
+
+        // works directly on the int arrays of the rasters
+        private void composePacked(Raster src, Raster dstIn, WritableRaster dstOut) {
+            float alpha = this.alpha;
+            int x = dstOut.getMinX();
+            int w = dstOut.getWidth();
+            int y0 = dstOut.getMinY();
+            int h = dstOut.getHeight();
+
+            int[] srcData = ((DataBufferInt) src.getDataBuffer()).getData();
+            int[] dstData = ((DataBufferInt) dstIn.getDataBuffer()).getData();
+            int[] outData = ((DataBufferInt) dstOut.getDataBuffer()).getData();
+
+            ThreadPool.RowBandTask task = (startRow, endRow) -> {
+                for (int y = y0 + startRow; y < y0 + endRow; y++) {
+                    composePackedRow(srcData, indexOf(src, x, y),
+                        dstData, indexOf(dstIn, x, y),
+                        outData, indexOf(dstOut, x, y), w, alpha);
+                }
+            };
+
+            if (hasPackedKernel() && (long) w * h > PARALLEL_THRESHOLD) {
+                ThreadPool.parallelRows(h, task, ProgressTracker.NULL_TRACKER);
+            } else {
+                task.process(0, h);
+            }
+        }
+
+        // the index of the given pixel in the data array of a packed raster
+        private static int indexOf(Raster raster, int x, int y) {
+            SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            return raster.getDataBuffer().getOffset()
+                + (y - raster.getSampleModelTranslateY()) * sm.getScanlineStride()
+                + x - raster.getSampleModelTranslateX();
+        }
     }
 }
@@ -64,5 +64,34 @@ public final class SoftLightComposite extends RGBComposite {
                 dst[i + 3] = (int) (sa * alpha + dia * ac);
             }
         }
+
+        @Override
+        protected boolean hasPackedKernel() {
+            return true;
+        }
+
+        @Override
+        protected void composePackedRow(int[] src, int srcPos, int[] dst, int dstPos,
+                                        int[] out, int outPos, int width, float alpha) {
+            for (int i = 0; i < width; i++) {
+                int srcRGB = src[srcPos + i];
+                int dstRGB = dst[dstPos + i];
+                int sr = (srcRGB >>> 16) & 0xFF;
+                int dir = (dstRGB >>> 16) & 0xFF;
+                int sg = (srcRGB >>> 8) & 0xFF;
+                int dig = (dstRGB >>> 8) & 0xFF;
+                int sb = srcRGB & 0xFF;
+                int dib = dstRGB & 0xFF;
+
+                int d = multiply255(sr, dir);
+                int dor = d + multiply255(dir, 255 - multiply255(255 - dir, 255 - sr) - d);
+                d = multiply255(sg, dig);
+                int dog = d + multiply255(dig, 255 - multiply255(255 - dig, 255 - sg) - d);
+                d = multiply255(sb, dib);
+                int dob = d + multiply255(dib, 255 - multiply255(255 - dib, 255 - sb) - d);
+
+                out[outPos + i] = mix(srcRGB >>> 24, dstRGB >>> 24, dir, dig, dib, dor, dog, dob, alpha);
+            }
+        }
     }
 }
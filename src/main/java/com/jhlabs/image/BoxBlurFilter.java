@@ -16,6 +16,7 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.filters.convolve.ExtendedBoxBlur;
 import pixelitor.utils.ProgressTracker;
 
 import java.awt.image.BufferedImage;
@@ -25,6 +26,9 @@ import java.awt.image.BufferedImage;
  * and a number of iterations can be given which allows an approximation to Gaussian blur.
  */
 public class BoxBlurFilter extends AbstractBufferedImageOp {
+    // from this radius the blur is calculated in parallel with ExtendedBoxBlur
+    private static final float MIN_EXTENDED_RADIUS = 10;
+
     private float hRadius;
     private float vRadius;
     private int iterations = 1;
@@ -89,6 +93,18 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
         int[] outPixels = new int[width * height];
         getRGB(src, 0, 0, width, height, inPixels);
 
+        if (iterations > 0 && Math.max(hRadius, vRadius) >= MIN_EXTENDED_RADIUS) {
+            new ExtendedBoxBlur(ExtendedBoxBlur.boxSigma(hRadius, iterations), iterations)
+                .blurAndTranspose(inPixels, outPixels, width, height, premultiplyAlpha, false, pt);
+            new ExtendedBoxBlur(ExtendedBoxBlur.boxSigma(vRadius, iterations), iterations)
+                .blurAndTranspose(outPixels, inPixels, height, width, false, premultiplyAlpha, pt);
+            pt.unitsDone((iterations - 1) * (width + height));
+
+            setRGB(dst, 0, 0, width, height, inPixels);
+            finishProgressTracker();
+            return dst;
+        }
+
         if (premultiplyAlpha) {
             ImageMath.premultiply(inPixels, 0, inPixels.length);
         }
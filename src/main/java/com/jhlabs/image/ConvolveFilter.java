@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.filters.convolve.FFTConvolver;
+
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
@@ -226,11 +228,51 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
             convolveH(kernel, inPixels, outPixels, width, height, edgeAction);
         } else if (kernel.getWidth() == 1) {
             convolveV(kernel, inPixels, outPixels, width, height, edgeAction);
+        } else if (FFTConvolver.isFasterFor(kernel.getWidth(), kernel.getHeight())) {
+            convolveFFT(kernel, inPixels, outPixels, width, height, edgeAction);
         } else {
             convolveHV(kernel, inPixels, outPixels, width, height, edgeAction);
         }
     }
 
+    /**
+     * Convolve with a large 2D kernel in the frequency domain.
+     * The result is the same as with convolveHV, except that
+     * the pixels off the edges are treated as their documentation
+     * says, and there are small differences due to rounding.
+     *
+     * @param kernel     the kernel
+     * @param inPixels   the input pixels
+     * @param outPixels  the output pixels
+     * @param width      the width
+     * @param height     the height
+     * @param edgeAction what to do at the edges
+     */
+    public void convolveFFT(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, int edgeAction) {
+        int numPixels = width * height;
+        float[] r = new float[numPixels];
+        float[] g = new float[numPixels];
+        float[] b = new float[numPixels];
+        for (int i = 0; i < numPixels; i++) {
+            int rgb = inPixels[i];
+            r[i] = (rgb >> 16) & 0xff;
+            g[i] = (rgb >> 8) & 0xff;
+            b[i] = rgb & 0xff;
+        }
+
+        var convolver = new FFTConvolver(kernel.getKernelData(null), kernel.getWidth(), kernel.getHeight());
+        pt = createProgressTracker(convolver.getWorkUnits(width, height));
+        convolver.convolve(new float[][]{r, g, b}, width, height, edgeAction, pt);
+        finishProgressTracker();
+
+        for (int i = 0; i < numPixels; i++) {
+            int ir = PixelUtils.clamp((int) (r[i] + 0.5));
+            int ig = PixelUtils.clamp((int) (g[i] + 0.5));
+            int ib = PixelUtils.clamp((int) (b[i] + 0.5));
+            outPixels[i] = (inPixels[i] & 0xff000000) | (ir << 16) | (ig << 8) | ib;
+        }
+    }
+
     /**
      * Convolve with a 2D kernel.
      *
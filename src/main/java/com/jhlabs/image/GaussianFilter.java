@@ -17,11 +17,12 @@ limitations under the License.
 package com.jhlabs.image;
 
 import pixelitor.ThreadPool;
+import pixelitor.filters.convolve.FFTConvolver;
+import pixelitor.filters.convolve.RecursiveGaussian;
 import pixelitor.utils.ProgressTracker;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.Kernel;
-import java.util.concurrent.Future;
 
 /**
  * A filter which applies Gaussian blur to an image. This is a subclass of ConvolveFilter
@@ -30,6 +31,9 @@ import java.util.concurrent.Future;
  * @author Jerry Huxtable
  */
 public class GaussianFilter extends ConvolveFilter {
+    // from this radius the blur is approximated by a recursive filter
+    private static final float MIN_RECURSIVE_RADIUS = 30;
+
     /**
      * The blur radius.
      */
@@ -94,8 +98,8 @@ public class GaussianFilter extends ConvolveFilter {
 
         if (radius > 0) {
             int[] outPixels = new int[width * height];
-            convolveAndTranspose(kernel, inPixels, outPixels, width, height, premultiplyAlpha, false, CLAMP_EDGES, pt);
-            convolveAndTranspose(kernel, outPixels, inPixels, height, width, false, premultiplyAlpha, CLAMP_EDGES, pt);
+            blurAndTranspose(inPixels, outPixels, width, height, premultiplyAlpha, false, pt);
+            blurAndTranspose(outPixels, inPixels, height, width, false, premultiplyAlpha, pt);
         }
 
 //        dst.setRGB(0, 0, width, height, inPixels, 0, width);
@@ -106,6 +110,22 @@ public class GaussianFilter extends ConvolveFilter {
         return dst;
     }
 
+    /**
+     * Blur and transpose a block of ARGB pixels with the current radius.
+     * Small radii use the kernel, which is convolved in the frequency
+     * domain from a radius of 20, and large ones use a recursive filter.
+     */
+    protected void blurAndTranspose(int[] inPixels, int[] outPixels, int width, int height,
+                                    boolean premultiply, boolean unpremultiply, ProgressTracker pt) {
+        if (radius >= MIN_RECURSIVE_RADIUS) {
+            new RecursiveGaussian(radius / 3.0).blurAndTranspose(
+                inPixels, outPixels, width, height, premultiply, unpremultiply, pt);
+        } else {
+            convolveAndTranspose(kernel, inPixels, outPixels, width, height,
+                premultiply, unpremultiply, CLAMP_EDGES, pt);
+        }
+    }
+
     /**
      * Blur and transpose a block of ARGB pixels.
      *
@@ -124,14 +144,75 @@ public class GaussianFilter extends ConvolveFilter {
         int cols = kernel.getWidth();
         int cols2 = cols / 2;
 
-        Future<?>[] resultLines = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> convolveAndTransposeLine(inPixels, outPixels, width, height, premultiply, unpremultiply, edgeAction, matrix, cols2, finalY);
-            resultLines[y] = ThreadPool.submit(lineTask);
+        if (edgeAction == CLAMP_EDGES && FFTConvolver.isFasterForLines(cols)) {
+            convolveAndTransposeFFT(matrix, inPixels, outPixels, width, height, premultiply, unpremultiply, pt);
+            return;
         }
 
-        ThreadPool.waitFor(resultLines, pt);
+        ThreadPool.parallelRows(height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                convolveAndTransposeLine(inPixels, outPixels, width, height, premultiply, unpremultiply, edgeAction, matrix, cols2, y);
+            }
+        }, pt);
+    }
+
+    // the same as the spatial version, but with a large kernel it's faster
+    private static void convolveAndTransposeFFT(float[] matrix, int[] inPixels, int[] outPixels,
+                                                int width, int height,
+                                                boolean premultiply, boolean unpremultiply,
+                                                ProgressTracker pt) {
+        ThreadPool.parallelRows(height, (startY, endY) -> {
+            var convolver = new FFTConvolver.LineConvolver(matrix, width);
+            float[] a = new float[width];
+            float[] r = new float[width];
+            float[] g = new float[width];
+            float[] b = new float[width];
+            for (int y = startY; y < endY; y++) {
+                int ioffset = y * width;
+                for (int x = 0; x < width; x++) {
+                    int rgb = inPixels[ioffset + x];
+                    int pa = (rgb >> 24) & 0xff;
+                    int pr = (rgb >> 16) & 0xff;
+                    int pg = (rgb >> 8) & 0xff;
+                    int pb = rgb & 0xff;
+                    if (premultiply) {
+                        float a255 = pa * (1.0f / 255.0f);
+                        pr = (int) (pr * a255);
+                        pg = (int) (pg * a255);
+                        pb = (int) (pb * a255);
+                    }
+                    a[x] = pa;
+                    r[x] = pr;
+                    g[x] = pg;
+                    b[x] = pb;
+                }
+
+                convolver.convolve(a, r);
+                convolver.convolve(g, b);
+
+                int index = y;
+                for (int x = 0; x < width; x++) {
+                    float fa = a[x];
+                    float fr = r[x];
+                    float fg = g[x];
+                    float fb = b[x];
+                    if (unpremultiply && fa != 0 && fa != 255) {
+                        float f = 255.0f / fa;
+                        fr *= f;
+                        fg *= f;
+                        fb *= f;
+                    }
+
+                    int ir = PixelUtils.clamp((int) (fr + 0.5));
+                    int ig = PixelUtils.clamp((int) (fg + 0.5));
+                    int ib = PixelUtils.clamp((int) (fb + 0.5));
+                    int ia = PixelUtils.clamp((int) (fa + 0.5));
+                    outPixels[index] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+
+                    index += height;
+                }
+            }
+        }, pt);
     }
 
     private static void convolveAndTransposeLine(int[] inPixels, int[] outPixels, int width, int height, boolean premultiply, boolean unpremultiply, int edgeAction, float[] matrix, int cols2, int y) {
@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.simd.PixelKernels;
+
 /**
  * A class containing static math methods useful for image processing.
  */
@@ -862,19 +864,7 @@ public class ImageMath {
      * Premultiply a block of pixels
      */
     public static void premultiply(int[] p, int offset, int length) {
-        length += offset;
-        for (int i = offset; i < length; i++) {
-            int rgb = p[i];
-            int a = (rgb >> 24) & 0xff;
-            int r = (rgb >> 16) & 0xff;
-            int g = (rgb >> 8) & 0xff;
-            int b = rgb & 0xff;
-            float f = a * (1.0f / 255.0f);
-            r = (int) (r * f);
-            g = (int) (g * f);
-            b = (int) (b * f);
-            p[i] = (a << 24) | (r << 16) | (g << 8) | b;
-        }
+        PixelKernels.premultiply(p, offset, offset + length);
     }
 
     public static void unpremultiply(int[] p) {
@@ -885,30 +875,7 @@ public class ImageMath {
      * Premultiply a block of pixels
      */
     public static void unpremultiply(int[] p, int offset, int length) {
-        length += offset;
-        for (int i = offset; i < length; i++) {
-            int rgb = p[i];
-            int a = (rgb >> 24) & 0xff;
-            int r = (rgb >> 16) & 0xff;
-            int g = (rgb >> 8) & 0xff;
-            int b = rgb & 0xff;
-            if (a != 0 && a != 255) {
-                float f = 255.0f / a;
-                r = (int) (r * f);
-                g = (int) (g * f);
-                b = (int) (b * f);
-                if (r > 255) {
-                    r = 255;
-                }
-                if (g > 255) {
-                    g = 255;
-                }
-                if (b > 255) {
-                    b = 255;
-                }
-                p[i] = (a << 24) | (r << 16) | (g << 8) | b;
-            }
-        }
+        PixelKernels.unpremultiply(p, offset, offset + length);
     }
 }
 
@@ -19,7 +19,6 @@ package com.jhlabs.image;
 import pixelitor.ThreadPool;
 
 import java.awt.*;
-import java.util.concurrent.Future;
 
 /**
  * A filter which produces a "oil-painting" effect.
@@ -71,14 +70,11 @@ public class OilFilter extends WholeImageFilter {
         int[] outPixels = new int[width * height];
 
         pt = createProgressTracker(height);
-        Future<?>[] futures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> calculateLine(width, height, inPixels, outPixels, finalY);
-            futures[y] = ThreadPool.submit(lineTask);
-        }
-
-        ThreadPool.waitFor(futures, pt);
+        ThreadPool.parallelRows(height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                calculateLine(width, height, inPixels, outPixels, y);
+            }
+        }, pt);
         finishProgressTracker();
 
         return outPixels;
@@ -19,10 +19,7 @@ package com.jhlabs.image;
 import pixelitor.ThreadPool;
 
 import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
-import java.util.concurrent.Future;
 
 public class SmearFilter extends WholeImageFilter {
     public static final int CROSSES = 0;
@@ -155,20 +152,17 @@ public class SmearFilter extends WholeImageFilter {
 
         int numShapes = (int) (2 * density * width * height / 2);
 
+        // the lines are rendered in chunks of stride lines,
+        // and each chunk is a row for the progress tracking
         int stride = numShapes / 100 + 1;
-        int estimatedWorkUnits = numShapes / stride;
-        pt = createProgressTracker(estimatedWorkUnits);
-
-        List<Future<?>> futures = new ArrayList<>(estimatedWorkUnits + 1);
-        for (int i = 0; i < numShapes; i = i + stride) {
-            Runnable r = () -> {
-                for (int j = 0; j < stride; j++) {
-                    renderOneLine(width, height, inPixels, outPixels, sin, cos);
-                }
-            };
-            futures.add(ThreadPool.submit(r));
-        }
-        ThreadPool.waitFor(futures, pt);
+        int numChunks = (numShapes + stride - 1) / stride;
+        pt = createProgressTracker(numChunks);
+
+        ThreadPool.parallelRows(numChunks, (startChunk, endChunk) -> {
+            for (int i = startChunk * stride; i < endChunk * stride; i++) {
+                renderOneLine(width, height, inPixels, outPixels, sin, cos);
+            }
+        }, pt);
     }
 
     private void renderOneLine(int width, int height, int[] inPixels, int[] outPixels, float sin, float cos) {
@@ -255,13 +249,11 @@ public class SmearFilter extends WholeImageFilter {
         int numShapes = (int) (2 * density * width * height / radius);
 
         pt = createProgressTracker(numShapes);
-        Future<?>[] futures = new Future[numShapes];
-
-        for (int i = 0; i < numShapes; i++) {
-            Runnable r = () -> renderOneShape(width, height, inPixels, outPixels, radius, radius2);
-            futures[i] = ThreadPool.submit(r);
-        }
-        ThreadPool.waitFor(futures, pt);
+        ThreadPool.parallelRows(numShapes, (startShape, endShape) -> {
+            for (int i = startShape; i < endShape; i++) {
+                renderOneShape(width, height, inPixels, outPixels, radius, radius2);
+            }
+        }, pt);
     }
 
     private void renderOneShape(int width, int height, int[] inPixels, int[] outPixels, int radius, int radius2) {
@@ -22,8 +22,6 @@ import pixelitor.ThreadPool;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
 
 /**
  * An abstract superclass for filters which distort images in some way. The subclass only needs to override
@@ -260,30 +258,21 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
 
         pt = createProgressTracker(outHeight);
 
-        @SuppressWarnings("unchecked")
-        Future<int[]>[] resultLines = new Future[outHeight];
-
-        for (int y = 0; y < outHeight; y++) {
+        ThreadPool.parallelRows(outHeight, (startY, endY) -> {
             float[] out = new float[2];
-            int finalY = y;
-            Callable<int[]> calculateLineTask = () -> {
-                int srcX, srcY;
-                int[] outPixels = new int[outWidth];
-
+            int[] outPixels = new int[outWidth * (endY - startY)];
+            int index = 0;
+            for (int y = startY; y < endY; y++) {
                 for (int x = 0; x < outWidth; x++) {
-                    transformInverse(x, finalY, out);
-                    srcX = (int) out[0];
-                    srcY = (int) out[1];
+                    transformInverse(x, y, out);
+                    int srcX = (int) out[0];
+                    int srcY = (int) out[1];
                     // int casting rounds towards zero, so we check out[0] < 0, not srcX < 0
-                    outPixels[x] = getPixelNN(inPixels, srcWidth, srcHeight, srcX, srcY, out);
+                    outPixels[index++] = getPixelNN(inPixels, srcWidth, srcHeight, srcX, srcY, out);
                 }
-
-                return outPixels;
-
-            };
-            resultLines[finalY] = ThreadPool.submit2(calculateLineTask);
-        }
-        ThreadPool.waitFor2(resultLines, dst, width, pt);
+            }
+            setRGB(dst, 0, startY, outWidth, endY - startY, outPixels);
+        }, pt);
         finishProgressTracker();
 
         return dst;
@@ -296,21 +285,16 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
         int srcHeight1 = height - 1;
         int outWidth = width;
         int outHeight = height;
-//        int outX, outY;
-//		int index = 0;
 
         pt = createProgressTracker(outHeight);
 
-        @SuppressWarnings("unchecked")
-        Future<int[]>[] resultLines = new Future[outHeight];
-
-        for (int y = 0; y < outHeight; y++) {
+        ThreadPool.parallelRows(outHeight, (startY, endY) -> {
             float[] out = new float[2];
-            int finalY = y;
-            Callable<int[]> calculateLineTask = () -> {
-                int[] outPixels = new int[outWidth];
+            int[] outPixels = new int[outWidth * (endY - startY)];
+            int index = 0;
+            for (int y = startY; y < endY; y++) {
                 for (int x = 0; x < outWidth; x++) {
-                    transformInverse(x, finalY, out);
+                    transformInverse(x, y, out);
                     int srcX = (int) FastMath.floor(out[0]);
                     int srcY = (int) FastMath.floor(out[1]);
                     float xWeight = out[0] - srcX;
@@ -331,14 +315,11 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
                         sw = getPixelBL(inPixels, srcX, srcY + 1, srcWidth, srcHeight);
                         se = getPixelBL(inPixels, srcX + 1, srcY + 1, srcWidth, srcHeight);
                     }
-                    outPixels[x] = ImageMath.bilinearInterpolate(xWeight, yWeight, nw, ne, sw, se);
+                    outPixels[index++] = ImageMath.bilinearInterpolate(xWeight, yWeight, nw, ne, sw, se);
                 }
-                return outPixels;
-            };
-
-            resultLines[finalY] = ThreadPool.submit2(calculateLineTask);
-        }
-        ThreadPool.waitFor2(resultLines, dst, width, pt);
+            }
+            setRGB(dst, 0, startY, outWidth, endY - startY, outPixels);
+        }, pt);
         finishProgressTracker();
 
         return dst;
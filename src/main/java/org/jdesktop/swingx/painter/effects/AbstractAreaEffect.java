@@ -23,18 +23,23 @@
 package org.jdesktop.swingx.painter.effects;
 
 import com.jhlabs.image.ImageMath;
+import pixelitor.ThreadPool;
 import pixelitor.colors.Colors;
 import pixelitor.filters.gui.UserPreset;
+import pixelitor.utils.DistanceTransform;
 
 import java.awt.*;
 import java.awt.geom.Area;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.Objects;
 
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
 /**
  * The abstract base class for path effects. It takes care
  * of soft clipping and interpolating brush sizes and colors. Subclasses
@@ -49,6 +54,24 @@ public class AbstractAreaEffect implements AreaEffect {
     // for compatibility with pixelitor versions before 4.2.0
     private static final long serialVersionUID = -9104855683480422662L;
 
+    /**
+     * The number of samples per pixel in the distance profiles.
+     */
+    protected static final int PROFILE_RESOLUTION = 16;
+
+    /**
+     * Java2D normalizes the coordinates of the strokes, and because of this
+     * the stroke-based effects were shifted by half a pixel to the bottom right.
+     * The distance-based rendering keeps this shift in order to look the same.
+     */
+    private static final double STROKE_NORMALIZATION_SHIFT = 0.5;
+
+    /**
+     * The distance transform has a fixed cost per pixel, and stroking
+     * is faster for the narrow effects (about 16 pixels wide or less).
+     */
+    private static final double MIN_DISTANCE_RENDERING_REACH = 8.5;
+
     /**
      * Creates a new instance of AreaEffect
      */
@@ -64,6 +87,199 @@ public class AbstractAreaEffect implements AreaEffect {
 
     @Override
     public void apply(Graphics2D g, Shape clipShape, int width, int height) {
+        if (usesDistances() && getMaxDistance() > MIN_DISTANCE_RENDERING_REACH) {
+            applyWithDistances(g, clipShape);
+        } else {
+            applyByStroking(g, clipShape, width, height);
+        }
+    }
+
+    /**
+     * Returns true if the effect can be rendered based on the distance
+     * transform. The unmasked effects are painted behind the existing
+     * content, and they are still rendered by stroking.
+     */
+    protected boolean usesDistances() {
+        return isShapeMasked();
+    }
+
+    /**
+     * Renders the effect by rasterizing the shape (once as the source of the
+     * effect and once as a mask), and then calculating the color of each pixel
+     * from its exact distance to the outline of the shape. The result looks like
+     * the result of {@link #applyByStroking}, but instead of drawing the
+     * shape many times, the work per pixel doesn't depend on the effect width.
+     */
+    void applyWithDistances(Graphics2D g, Shape clipShape) {
+        Rectangle2D shapeBounds = clipShape.getBounds2D();
+        if (shapeBounds.isEmpty()) {
+            return;
+        }
+
+        double dx = offset.getX();
+        double dy = offset.getY();
+        boolean hasOffset = dx != 0 || dy != 0;
+        boolean inside = isRenderInsideShape();
+        boolean masked = isShapeMasked();
+        boolean fill = isShouldFillShape() && !inside;
+
+        int reach = (int) Math.ceil(getMaxDistance()) + 2;
+        Rectangle area = new Rectangle2D.Double(
+            shapeBounds.getX() + dx, shapeBounds.getY() + dy,
+            shapeBounds.getWidth(), shapeBounds.getHeight()).getBounds();
+        area.grow(reach, reach);
+        if (masked && inside) {
+            Rectangle insideArea = shapeBounds.getBounds();
+            insideArea.grow(1, 1);
+            area = area.intersection(insideArea);
+        }
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            // the pixels outside the clip can still
+            // be the nearest ones for the visible pixels
+            clip.grow(reach, reach);
+            area = area.intersection(clip);
+        }
+        if (area.isEmpty()) {
+            return;
+        }
+
+        int areaWidth = area.width;
+        int numPixels = areaWidth * area.height;
+        // the shape that is the source of the effect, and the shape used for masking
+        int[] shiftedCoverage = rasterize(clipShape, area,
+            dx + STROKE_NORMALIZATION_SHIFT, dy + STROKE_NORMALIZATION_SHIFT);
+        int[] coverage = rasterize(clipShape, area, 0, 0);
+
+        // the distances of the outside pixels from the shape, and the other way
+        // around, but only if the affected pixels are not masked out anyway
+        float[] outsideDistances = null;
+        if (!(masked && inside && !hasOffset)) {
+            boolean[] insidePixels = new boolean[numPixels];
+            for (int i = 0; i < numPixels; i++) {
+                insidePixels[i] = shiftedCoverage[i] >= 128;
+            }
+            outsideDistances = DistanceTransform.compute(insidePixels, area.width, area.height);
+        }
+        float[] insideDistances = null;
+        if (!(masked && !inside && (fill || !hasOffset))) {
+            boolean[] outsidePixels = new boolean[numPixels];
+            for (int i = 0; i < numPixels; i++) {
+                outsidePixels[i] = shiftedCoverage[i] < 128;
+            }
+            insideDistances = DistanceTransform.compute(outsidePixels, area.width, area.height);
+        }
+
+        int[] profile = createDistanceProfile(reach * PROFILE_RESOLUTION + 1);
+        float fillAlpha = brushColor.getAlpha() / 255.0f;
+
+        BufferedImage effectImage = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_ARGB);
+        int[] effectPixels = ((DataBufferInt) effectImage.getRaster().getDataBuffer()).getData();
+        float[] finalOutsideDistances = outsideDistances;
+        float[] finalInsideDistances = insideDistances;
+        ThreadPool.parallelRows(area.height, (startY, endY) -> {
+            for (int i = startY * areaWidth, end = endY * areaWidth; i < end; i++) {
+                int shifted = shiftedCoverage[i];
+                float[] distances = shifted >= 128 ? finalInsideDistances : finalOutsideDistances;
+                // the distances are between the pixel centers,
+                // but the outline is between the pixels
+                float distance = distances == null ? 0 : distances[i] - 0.5f;
+                int profileIndex = distance <= 0 ? 0 : (int) (distance * PROFILE_RESOLUTION + 0.5f);
+                if (profileIndex >= profile.length) {
+                    profileIndex = profile.length - 1;
+                }
+                int argb = profile[profileIndex];
+
+                float alpha = (argb >>> 24) / 255.0f;
+                if (fill) {
+                    float shapeAlpha = fillAlpha * shifted / 255.0f;
+                    alpha = shapeAlpha + (1 - shapeAlpha) * alpha;
+                }
+                if (masked) {
+                    float shapeCoverage = coverage[i] / 255.0f;
+                    alpha *= inside ? shapeCoverage : 1 - shapeCoverage;
+                }
+                effectPixels[i] = (int) (alpha * 255 + 0.5f) << 24 | (argb & 0x00_FF_FF_FF);
+            }
+        }, NULL_TRACKER);
+
+        Composite savedComposite = g.getComposite();
+        if (opacity < 1.0f) {
+            g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+        }
+        g.drawImage(effectImage, area.x, area.y, null);
+        g.setComposite(savedComposite);
+    }
+
+    /**
+     * Returns the antialiased coverage (0-255) of each pixel
+     * of the given area by the shape translated by dx, dy.
+     */
+    private static int[] rasterize(Shape shape, Rectangle area, double dx, double dy) {
+        BufferedImage img = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = img.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.translate(dx - area.x, dy - area.y);
+        g2.setColor(Color.WHITE);
+        g2.fill(shape);
+        g2.dispose();
+
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] >>>= 24;
+        }
+        return pixels;
+    }
+
+    /**
+     * Returns the largest distance from the outline
+     * which is still affected by the effect.
+     */
+    protected double getMaxDistance() {
+        return effectWidthDouble / 2 + 0.5;
+    }
+
+    /**
+     * Returns the (not premultiplied) colors of the effect as a function
+     * of the distance from the outline, sampled with {@link #PROFILE_RESOLUTION}
+     * samples per pixel. The default implementation calculates what the stacked
+     * strokes of {@link #paintBorderGlow} would produce at each distance.
+     */
+    protected int[] createDistanceProfile(int length) {
+        int steps = Math.max(1, getBrushSteps());
+        float strokeAlpha = brushColor.getAlpha() / 255.0f / steps;
+        double[] halfWidths = new double[steps];
+        for (int i = 0; i < steps; i++) {
+            // the zero-width strokes are still drawn as thin lines
+            halfWidths[i] = Math.max(0.5, i * effectWidthDouble / steps / 2);
+        }
+
+        int rgb = brushColor.getRGB() & 0x00_FF_FF_FF;
+        int[] profile = new int[length];
+        for (int k = 0; k < length; k++) {
+            double distance = k / (double) PROFILE_RESOLUTION;
+            double transparency = 1.0;
+            for (double halfWidth : halfWidths) {
+                transparency *= 1 - strokeAlpha * strokeCoverage(halfWidth, distance);
+            }
+            profile[k] = (int) ((1 - transparency) * 255 + 0.5) << 24 | rgb;
+        }
+        return profile;
+    }
+
+    /**
+     * Approximates the antialiased coverage of a pixel whose center
+     * is at the given distance from the center line of a stroke.
+     */
+    protected static double strokeCoverage(double halfWidth, double distance) {
+        return ImageMath.clamp01(halfWidth - distance + 0.5);
+    }
+
+    /**
+     * The original implementation, which draws the shape
+     * many times with increasing stroke widths.
+     */
+    void applyByStroking(Graphics2D g, Shape clipShape, int width, int height) {
         // opacity support added by lbalazscs
         Composite savedComposite = g.getComposite();
         if (opacity < 1.0f) {
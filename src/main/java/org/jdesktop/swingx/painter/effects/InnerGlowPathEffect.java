@@ -52,7 +52,7 @@ public class InnerGlowPathEffect extends AbstractAreaEffect {
 
     // copied the entire method from the superclass in order to safely fix issue #63
     @Override
-    public void apply(Graphics2D g, Shape clipShape, int width, int height) {
+    void applyByStroking(Graphics2D g, Shape clipShape, int width, int height) {
         // opacity support added by lbalazscs
         Composite savedComposite = g.getComposite();
         if (opacity < 1.0f) {
@@ -93,24 +93,11 @@ public class NeonBorderEffect extends AbstractAreaEffect {
         */
         gfx.translate(getOffset().getX(), getOffset().getY());
         gfx.setComposite(AlphaComposite.SrcOver);
-        int steps = getEffectWidthInt();
-        if (borderPosition == BorderPosition.Centered) {
-            steps = steps / 2;
-        }
+        int steps = getNumStrokes();
         for (int i = 0; i < steps; i++) {
             // make the brush width smaller each time until there is nothing left
             float brushWidth = steps + 1 - i;
-            float half = steps / 2.0f;
-
-            if (borderPosition == BorderPosition.Centered) {
-                gfx.setPaint(interpolateColor((float) (steps - i) / steps, getEdgeColor(), getCenterColor()));
-            } else {
-                if (i < half) {
-                    gfx.setPaint(interpolateColor((half - i) / half, getEdgeColor(), getCenterColor()));
-                } else {
-                    gfx.setPaint(interpolateColor((i - half) / half, getEdgeColor(), getCenterColor()));
-                }
-            }
+            gfx.setPaint(getStrokeColor(i, steps));
 
             // to make the effect softer use a different stroke
             gfx.setStroke(new BasicStroke(brushWidth,
@@ -122,6 +109,77 @@ public class NeonBorderEffect extends AbstractAreaEffect {
 
     }
 
+    private int getNumStrokes() {
+        int steps = getEffectWidthInt();
+        if (borderPosition == BorderPosition.Centered) {
+            steps = steps / 2;
+        }
+        return steps;
+    }
+
+    private Color getStrokeColor(int i, int steps) {
+        if (borderPosition == BorderPosition.Centered) {
+            return interpolateColor((float) (steps - i) / steps, getEdgeColor(), getCenterColor());
+        }
+        float half = steps / 2.0f;
+        if (i < half) {
+            return interpolateColor((half - i) / half, getEdgeColor(), getCenterColor());
+        } else {
+            return interpolateColor((i - half) / half, getEdgeColor(), getCenterColor());
+        }
+    }
+
+    // the centered border is also rendered with distances,
+    // because it is painted over the existing content
+    @Override
+    protected boolean usesDistances() {
+        return true;
+    }
+
+    @Override
+    protected double getMaxDistance() {
+        return (getNumStrokes() + 1) / 2.0 + 0.5;
+    }
+
+    /**
+     * Calculates the colors produced by the narrowing strokes,
+     * each of which is painted over the previous ones.
+     */
+    @Override
+    protected int[] createDistanceProfile(int length) {
+        int steps = getNumStrokes();
+        float[][] strokeColors = new float[steps][];
+        for (int i = 0; i < steps; i++) {
+            strokeColors[i] = getStrokeColor(i, steps).getRGBComponents(null);
+        }
+
+        int[] profile = new int[length];
+        for (int k = 0; k < length; k++) {
+            double distance = k / (double) PROFILE_RESOLUTION;
+            // premultiplied components
+            double r = 0, g = 0, b = 0, a = 0;
+            for (int i = 0; i < steps; i++) {
+                double coverage = strokeCoverage((steps + 1 - i) / 2.0, distance);
+                if (coverage == 0) {
+                    break; // the following strokes are even narrower
+                }
+                float[] color = strokeColors[i];
+                double srcAlpha = color[3] * coverage;
+                r = color[0] * srcAlpha + r * (1 - srcAlpha);
+                g = color[1] * srcAlpha + g * (1 - srcAlpha);
+                b = color[2] * srcAlpha + b * (1 - srcAlpha);
+                a = srcAlpha + a * (1 - srcAlpha);
+            }
+            if (a > 0) {
+                profile[k] = (int) (a * 255 + 0.5) << 24
+                    | (int) (r / a * 255 + 0.5) << 16
+                    | (int) (g / a * 255 + 0.5) << 8
+                    | (int) (b / a * 255 + 0.5);
+            }
+        }
+        return profile;
+    }
+
     private static Color interpolateColor(float t, Color start, Color end) {
         float[] partsS = start.getRGBComponents(null);
         float[] partsE = end.getRGBComponents(null);
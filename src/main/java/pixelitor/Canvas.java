@@ -18,6 +18,7 @@
 package pixelitor;
 
 import pixelitor.gui.View;
+import pixelitor.selection.SelectionMask;
 import pixelitor.tools.Symmetry;
 import pixelitor.tools.util.PPoint;
 import pixelitor.utils.ImageUtils;
@@ -180,6 +181,11 @@ public class Canvas implements Serializable {
     }
 
     public Shape invertShape(Shape shape) {
+        if (SelectionMask.isComplex(shape)) {
+            return SelectionMask.fromShape(shape, getBounds())
+                .invert(getBounds())
+                .toShape();
+        }
         Area area = new Area(shape);
         Area fullArea = new Area(getBounds());
         fullArea.subtract(area);
@@ -201,6 +207,13 @@ public class Canvas implements Serializable {
             return rect.createIntersection(canvasBounds);
         }
 
+        if (canvasBounds.contains(shape.getBounds2D())) {
+            return shape;
+        }
+        if (SelectionMask.isComplex(shape)) {
+            return SelectionMask.fromShape(shape, getBounds()).toShape();
+        }
+
         Area canvasArea = new Area(canvasBounds);
         Area shapeArea = new Area(shape);
         shapeArea.intersect(canvasArea);
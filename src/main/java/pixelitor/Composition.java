@@ -20,7 +20,6 @@ package pixelitor;
 import pixelitor.compactions.EnlargeCanvas;
 import pixelitor.gui.*;
 import pixelitor.gui.utils.Dialogs;
-import pixelitor.gui.utils.ImagePreviewPanel;
 import pixelitor.guides.Guides;
 import pixelitor.guides.GuidesChangeEdit;
 import pixelitor.history.*;
@@ -28,10 +27,12 @@ import pixelitor.io.FileFormat;
 import pixelitor.io.FileUtils;
 import pixelitor.io.IOTasks;
 import pixelitor.io.SaveSettings;
+import pixelitor.io.ThumbnailService;
 import pixelitor.layers.*;
 import pixelitor.menus.file.RecentFilesMenu;
 import pixelitor.selection.Selection;
 import pixelitor.selection.SelectionActions;
+import pixelitor.selection.SelectionMask;
 import pixelitor.selection.ShapeCombination;
 import pixelitor.tools.Tools;
 import pixelitor.tools.move.MoveMode;
@@ -42,6 +43,7 @@ import pixelitor.tools.util.PRectangle;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 import pixelitor.utils.Shapes;
+import pixelitor.utils.TiledHistograms;
 import pixelitor.utils.VisibleForTesting;
 
 import javax.swing.*;
@@ -102,7 +104,18 @@ public class Composition implements Serializable {
     private transient File file;
     private transient boolean dirty = false;
 
-    private transient BufferedImage compositeImage;
+    private transient TiledComposite compositeCache = new TiledComposite();
+    private transient TiledHistograms histograms = new TiledHistograms();
+
+    // Incremented when the composite image is fully recalculated or
+    // when the active layer changes. The images cached during the
+    // partial updates (the masked layer images and the composite
+    // below the active layer) are valid only within one version.
+    private transient int compositeVersion;
+
+    // the composite of the layers below the active layer
+    private transient BufferedImage belowActiveImage;
+    private transient int belowActiveVersion = -1;
 
     private transient View view;
 
@@ -221,7 +234,9 @@ public class Composition implements Serializable {
     @Serial
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         // init transient variables
-        compositeImage = null; // will be set when needed
+        compositeCache = new TiledComposite(); // will be filled when needed
+        histograms = new TiledHistograms();
+        belowActiveVersion = -1;
         file = null; // will be set later
         debugName = null; // will be set later
         dirty = false;
@@ -586,6 +601,7 @@ public class Composition implements Serializable {
         if (wasActive) {
             activeLayer = after;
         }
+        compositeVersion++;
         Tools.editedObjectChanged(activeLayer);
     }
 
@@ -603,6 +619,7 @@ public class Composition implements Serializable {
 
         Layer oldLayer = activeLayer;
         activeLayer = newActiveLayer;
+        compositeVersion++;
 
         if (activeLayer.hasUI()) {
             activeLayer.activateUI();
@@ -945,20 +962,57 @@ public class Composition implements Serializable {
         assert ConsistencyChecks.fadeWouldWorkOn(this);
     }
 
-    private BufferedImage calculateCompositeImage() {
+    private void updateCompositeCache() {
+        // the composite image is updated in place, therefore the
+        // composites of the open images are only accessed on the EDT
+        assert view == null || calledOnEDT() || AppContext.isUnitTesting() : threadInfo();
+
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        int activeIndex = layerList.indexOf(activeLayer);
+        if (compositeCache.canUpdatePartially(width, height)
+            && !hasVisibleAdjustmentLayer(activeIndex)) {
+            BufferedImage below = getCompositeBelowActive(activeIndex);
+            int fromIndex = below == null ? 0 : activeIndex;
+
+            BufferedImage image = compositeCache.getImage();
+            for (Rectangle area : compositeCache.getDirtyAreas()) {
+                recompositeArea(image, area, below, fromIndex);
+            }
+            compositeCache.markClean();
+        } else {
+            calculateCompositeImage();
+        }
+    }
+
+    private void calculateCompositeImage() {
+        compositeVersion++;
+        releaseBelowActiveImage();
+
         if (layerList.size() == 1) { // shortcut
             Layer layer = layerList.get(0);
             if (Tools.currentTool.isDirectDrawing() && layer.isVisible()) {
-                return layer.asImage(true, true);
+                // the returned image can be the layer's own image
+                compositeCache.setImage(layer.asImage(true, true), false);
+                return;
             }
         }
 
+        compositeCache.setImage(compositeLayers(layerList.size()), true);
+    }
+
+    /**
+     * Returns a new image with the composite of the layers
+     * with an index smaller than the given end index.
+     */
+    private BufferedImage compositeLayers(int endIndex) {
         var imageSoFar = new BufferedImage(
             canvas.getWidth(), canvas.getHeight(), TYPE_INT_ARGB_PRE);
         Graphics2D g = imageSoFar.createGraphics();
 
         boolean firstVisibleLayer = true;
-        for (Layer layer : layerList) {
+        for (int i = 0; i < endIndex; i++) {
+            Layer layer = layerList.get(i);
             if (layer.isVisible()) {
                 BufferedImage result = layer.applyLayer(g, imageSoFar, firstVisibleLayer);
                 if (result != null) { // adjustment layer or watermarking text layer
@@ -973,16 +1027,109 @@ public class Composition implements Serializable {
         }
 
         g.dispose();
-
         return imageSoFar;
     }
 
+    /**
+     * Returns the composite of the layers below the active layer,
+     * which doesn't change while only the active layer is edited.
+     * It is calculated at the first partial update after a full
+     * recalculation, so that the following updates don't have to
+     * re-blend (or re-adjust) the layers below the active one.
+     * Returns null if there are no visible layers below the active layer.
+     */
+    private BufferedImage getCompositeBelowActive(int activeIndex) {
+        if (belowActiveVersion == compositeVersion) {
+            return belowActiveImage;
+        }
+        releaseBelowActiveImage();
+
+        // it's worth it only if it replaces more than a single simple layer
+        int numVisible = 0;
+        boolean simple = true;
+        for (int i = 0; i < activeIndex; i++) {
+            Layer layer = layerList.get(i);
+            if (layer.isVisible()) {
+                numVisible++;
+                simple = simple && !layer.isAdjustment() && !layer.usesMask();
+            }
+        }
+        if (numVisible > 1 || (numVisible == 1 && !simple)) {
+            belowActiveImage = compositeLayers(activeIndex);
+        }
+        belowActiveVersion = compositeVersion;
+        return belowActiveImage;
+    }
+
+    private void releaseBelowActiveImage() {
+        if (belowActiveImage != null) {
+            belowActiveImage.flush();
+            belowActiveImage = null;
+        }
+        belowActiveVersion = -1;
+    }
+
+    /**
+     * Re-blends the visible layers into the given area of the
+     * composite image, leaving the pixels outside the area unchanged.
+     * If the composite of the layers below the active layer is given, then
+     * it's copied and only the layers starting from the given index are
+     * re-blended. Assumes that there are no visible adjustment layers
+     * among the re-blended layers.
+     */
+    private void recompositeArea(BufferedImage image, Rectangle area,
+                                 BufferedImage below, int fromIndex) {
+        Graphics2D g = image.createGraphics();
+        g.setClip(area);
+        if (below != null) {
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(below, 0, 0, null);
+        } else {
+            g.setComposite(AlphaComposite.Clear);
+            g.fill(area);
+        }
+
+        boolean firstVisibleLayer = below == null;
+        for (int i = fromIndex; i < layerList.size(); i++) {
+            Layer layer = layerList.get(i);
+            if (layer.isVisible()) {
+                BufferedImage result = layer.applyLayer(g, image, firstVisibleLayer);
+                assert result == null || result == image;
+                firstVisibleLayer = false;
+            }
+        }
+        g.dispose();
+    }
+
+    private boolean hasVisibleAdjustmentLayer(int fromIndex) {
+        for (int i = Math.max(fromIndex, 0); i < layerList.size(); i++) {
+            Layer layer = layerList.get(i);
+            if (layer.isVisible() && layer.isAdjustment()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the version of the composite image. The images cached
+     * by the layers for the composition are valid only within a version.
+     */
+    public int getCompositeVersion() {
+        return compositeVersion;
+    }
+
     public void repaint() {
         view.repaint();
     }
 
     public void repaintRegion(PPoint start, PPoint end, double thickness) {
-        invalidateCompositeCache();
+        double minX = Math.min(start.getImX(), end.getImX()) - thickness;
+        double minY = Math.min(start.getImY(), end.getImY()) - thickness;
+        double maxX = Math.max(start.getImX(), end.getImX()) + thickness;
+        double maxY = Math.max(start.getImY(), end.getImY()) + thickness;
+        invalidateCompositeRegion(new Rectangle2D.Double(
+            minX, minY, maxX - minX, maxY - minY));
         if (view != null) { // during reload image it can be null
             view.repaintRegion(start, end, thickness);
             view.repaintNavigator(false);
@@ -990,7 +1137,7 @@ public class Composition implements Serializable {
     }
 
     public void repaintRegion(PRectangle area) {
-        invalidateCompositeCache();
+        invalidateCompositeRegion(area.getIm());
         if (view != null) { // during reload image it can be null
             view.repaintRegion(area);
             view.repaintNavigator(false);
@@ -1196,15 +1343,25 @@ public class Composition implements Serializable {
     public void invertSelection() {
         if (selection != null) {
             Shape backupShape = selection.getShape();
-            Shape inverted = canvas.invertShape(backupShape);
-            if (inverted.getBounds2D().isEmpty()) {
-                // everything was selected, and now nothing is
-                deselect(true);
+            if (selection.hasComplexShape()) {
+                SelectionMask inverted = selection.getMask().invert(canvas.getBounds());
+                if (inverted.isEmpty()) {
+                    // everything was selected, and now nothing is
+                    deselect(true);
+                    return;
+                }
+                selection.setMask(inverted);
             } else {
+                Shape inverted = canvas.invertShape(backupShape);
+                if (inverted.getBounds2D().isEmpty()) {
+                    // everything was selected, and now nothing is
+                    deselect(true);
+                    return;
+                }
                 selection.setShape(inverted);
-                History.add(new SelectionShapeChangeEdit(
-                    "Invert Selection", this, backupShape));
             }
+            History.add(new SelectionShapeChangeEdit(
+                "Invert Selection", this, backupShape));
         }
     }
 
@@ -1215,6 +1372,16 @@ public class Composition implements Serializable {
      */
     public void intersectSelection(Rectangle2D cropRect) {
         if (selection != null) {
+            if (selection.hasComplexShape()) {
+                SelectionMask intersection = selection.getMask().intersect(cropRect);
+                if (intersection.isEmpty()) {
+                    selection.die();
+                    setSelectionRef(null);
+                } else {
+                    selection.setMask(intersection);
+                }
+                return;
+            }
             Shape currentShape = selection.getShape();
             Shape intersection = ShapeCombination.INTERSECT.combine(currentShape, cropRect);
             if (intersection.getBounds().isEmpty()) {
@@ -1266,12 +1433,16 @@ public class Composition implements Serializable {
 
     /**
      * Returns the (canvas-sized) composite image.
+     * The returned image can be updated in place by later local changes
+     * (see {@link #invalidateCompositeRegion(Rectangle2D)}), therefore
+     * callers that keep a reference to it should make a copy, and for the
+     * open images it must be called on the EDT.
      */
     public BufferedImage getCompositeImage() {
-        if (compositeImage == null) {
-            compositeImage = calculateCompositeImage();
+        if (!compositeCache.isValid()) {
+            updateCompositeCache();
         }
-        return compositeImage;
+        return compositeCache.getImage();
     }
 
     /**
@@ -1280,10 +1451,29 @@ public class Composition implements Serializable {
      */
     public void invalidateCompositeCache() {
 //        Debug.debugCall(getName() + " cache invalidated", 1);
-        if (compositeImage != null) {
-            compositeImage.flush();
-        }
-        compositeImage = null;
+        compositeCache.invalidateAll();
+        histograms.invalidateAll();
+        releaseBelowActiveImage();
+    }
+
+    /**
+     * Forces the recalculation of the given image-space area of the
+     * composite image the next time when getCompositeImage() is called.
+     * Only the composite tiles intersecting the area will be re-blended.
+     */
+    public void invalidateCompositeRegion(Rectangle2D imArea) {
+        Rectangle area = imArea.getBounds();
+        // include the antialiased edges
+        area.grow(2, 2);
+        compositeCache.invalidateRegion(area);
+        histograms.invalidateRegion(area);
+    }
+
+    /**
+     * Returns the incrementally updated histograms of the composite image.
+     */
+    public TiledHistograms getHistograms() {
+        return histograms;
     }
 
     public void update() {
@@ -1313,6 +1503,26 @@ public class Composition implements Serializable {
         }
     }
 
+    /**
+     * Signals that only the given image-space area of this composition
+     * has been changed, so only that part of the composite image
+     * (and of its histograms) has to be recalculated.
+     */
+    public void updateRegion(UpdateActions actions, Rectangle2D imArea) {
+        invalidateCompositeRegion(imArea);
+
+        if (actions.repaintNeeded()) {
+            if (view != null) {
+                view.repaint();
+                view.repaintNavigator(false);
+            }
+        }
+
+        if (actions.histogramChanged()) {
+            HistogramsPanel.updateFrom(this);
+        }
+    }
+
     public boolean isActive() {
         return OpenImages.activeCompIs(this);
     }
@@ -1377,19 +1587,6 @@ public class Composition implements Serializable {
         return true;
     }
 
-    public int calcNumImages() {
-        int count = 0;
-        for (Layer layer : layerList) {
-            if (layer instanceof ImageLayer) {
-                count++;
-            }
-            if (layer.hasMask()) {
-                count++;
-            }
-        }
-        return count;
-    }
-
     public CompletableFuture<Void> saveAsync(SaveSettings saveSettings,
                                              boolean addToRecentMenus) {
         assert calledOnEDT() : threadInfo();
@@ -1433,7 +1630,7 @@ public class Composition implements Serializable {
         if (addToRecentMenus) {
             RecentFilesMenu.INSTANCE.addFile(file);
         }
-        ImagePreviewPanel.removeThumbFromCache(file);
+        ThumbnailService.get().invalidate(file);
         Messages.showFileSavedMessage(file);
     }
 
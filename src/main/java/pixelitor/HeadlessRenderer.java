@@ -0,0 +1,217 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import pixelitor.automate.BatchPipeline;
+import pixelitor.automate.RenderScript;
+import pixelitor.automate.RenderScript.Step;
+import pixelitor.io.FileFormat;
+import pixelitor.io.FileUtils;
+import pixelitor.utils.ConsoleMessageHandler;
+import pixelitor.utils.Language;
+import pixelitor.utils.Messages;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The main class of the headless mode, which renders
+ * images with a script without creating the GUI.
+ * See {@link RenderScript} for the script format. Usage:
+ * <pre>
+ * java -cp Pixelitor.jar pixelitor.HeadlessRenderer
+ *     -script chain.txt -out outDir [-format png] inputs...
+ * java -cp Pixelitor.jar pixelitor.HeadlessRenderer
+ *     -script chain.txt -bench [runs] inputs...
+ * </pre>
+ * The inputs can be image files (including pxc and ora files,
+ * which are flattened) or directories. The benchmark mode
+ * doesn't write anything, it only reports the time of each step.
+ */
+public class HeadlessRenderer {
+    private File scriptFile;
+    private File outDir;
+    private FileFormat outFormat = FileFormat.PNG;
+    private int benchRuns = 0;
+    private final List<File> inputs = new ArrayList<>();
+
+    private HeadlessRenderer() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Locale.setDefault(Locale.US);
+        Language.load();
+        Messages.setMsgHandler(new ConsoleMessageHandler());
+
+        int exitCode;
+        try {
+            exitCode = parseArgs(args).run();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            exitCode = 2;
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            exitCode = 1;
+        }
+        // the thread pools are not daemons
+        System.exit(exitCode);
+    }
+
+    private static HeadlessRenderer parseArgs(String[] args) {
+        var renderer = new HeadlessRenderer();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-script" -> renderer.scriptFile = new File(nextArg(args, ++i));
+                case "-out" -> renderer.outDir = new File(nextArg(args, ++i));
+                case "-format" -> {
+                    String ext = nextArg(args, ++i);
+                    renderer.outFormat = FileFormat.fromExtension(ext)
+                        .filter(f -> !f.hasLayers())
+                        .orElseThrow(() -> new IllegalArgumentException("unsupported output format: " + ext));
+                }
+                case "-bench" -> {
+                    renderer.benchRuns = 3;
+                    if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                        renderer.benchRuns = Math.max(1, Integer.parseInt(args[++i]));
+                    }
+                }
+                default -> {
+                    if (args[i].startsWith("-")) {
+                        throw new IllegalArgumentException("unknown option: " + args[i]);
+                    }
+                    renderer.addInput(new File(args[i]));
+                }
+            }
+        }
+
+        if (renderer.scriptFile == null) {
+            throw new IllegalArgumentException("no script was given");
+        }
+        if (renderer.outDir == null && renderer.benchRuns == 0) {
+            throw new IllegalArgumentException("no output directory was given");
+        }
+        if (renderer.inputs.isEmpty()) {
+            throw new IllegalArgumentException("no input files were found");
+        }
+        return renderer;
+    }
+
+    private static String nextArg(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(args[index - 1] + " needs an argument");
+        }
+        return args[index];
+    }
+
+    private void addInput(File file) {
+        if (file.isDirectory()) {
+            inputs.addAll(FileUtils.listSupportedInputFilesIn(file));
+        } else if (file.exists()) {
+            inputs.add(file);
+        } else {
+            throw new IllegalArgumentException(file + " doesn't exist");
+        }
+    }
+
+    private int run() throws IOException {
+        RenderScript script = RenderScript.load(scriptFile);
+        if (benchRuns > 0) {
+            benchmark(script);
+            return 0;
+        }
+        return render(script);
+    }
+
+    private int render(RenderScript script) throws IOException {
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("can't create " + outDir);
+        }
+        var pipeline = new BatchPipeline(inputs, outDir, outFormat, script::apply);
+        var report = pipeline.run(file -> true, numDone -> {
+        }, () -> false);
+
+        for (Throwable error : pipeline.getErrors()) {
+            System.err.println("Error: " + error.getMessage());
+        }
+        System.out.println(report.getSummary());
+        return report.numFailed() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Runs the script several times on each input image,
+     * and reports the average time of each step.
+     */
+    private void benchmark(RenderScript script) {
+        List<Step> steps = script.getSteps();
+        long[] stepNanos = new long[steps.size()];
+        long[] stepPixels = new long[steps.size()];
+        int numImages = 0;
+
+        for (File file : inputs) {
+            BufferedImage input;
+            try {
+                input = BatchPipeline.readImage(file);
+            } catch (RuntimeException e) {
+                System.err.println("Skipping " + file.getName() + ": " + e.getMessage());
+                continue;
+            }
+            numImages++;
+
+            // the first run only warms up the JIT compiler
+            for (int run = 0; run <= benchRuns; run++) {
+                BufferedImage img = input;
+                for (int i = 0; i < steps.size(); i++) {
+                    long pixels = (long) img.getWidth() * img.getHeight();
+                    long start = System.nanoTime();
+                    img = steps.get(i).apply(img);
+                    if (run > 0) {
+                        stepNanos[i] += System.nanoTime() - start;
+                        stepPixels[i] += pixels;
+                    }
+                }
+            }
+        }
+
+        System.out.printf("%d image(s), %d run(s) each%n", numImages, benchRuns);
+        int numRuns = numImages * benchRuns;
+        if (numRuns == 0) {
+            return;
+        }
+        long totalNanos = 0;
+        for (int i = 0; i < steps.size(); i++) {
+            totalNanos += stepNanos[i];
+            double megaPixelsPerSec = stepNanos[i] == 0 ? 0 : stepPixels[i] * 1.0e3 / stepNanos[i];
+            System.out.printf("%-30s %10.2f ms/image %10.2f MP/s%n",
+                steps.get(i).getName(), stepNanos[i] / 1.0e6 / numRuns, megaPixelsPerSec);
+        }
+        System.out.printf("%-30s %10.2f ms/image%n", "Total", totalNanos / 1.0e6 / numRuns);
+    }
+
+    private static void printUsage() {
+        System.err.println("""
+            Usage:
+              HeadlessRenderer -script <file> -out <dir> [-format <ext>] <inputs...>
+              HeadlessRenderer -script <file> -bench [runs] <inputs...>""");
+    }
+}
@@ -28,6 +28,7 @@ import pixelitor.gui.utils.Dialogs;
 import pixelitor.gui.utils.Themes;
 import pixelitor.io.IO;
 import pixelitor.io.IOTasks;
+import pixelitor.io.PngCompression;
 import pixelitor.tools.util.DragDisplay;
 import pixelitor.utils.AppPreferences;
 import pixelitor.utils.Language;
@@ -131,6 +132,7 @@ public class Pixelitor {
 
         MouseZoomMethod.load();
         PanMethod.load();
+        PngCompression.load();
 
         // The IO-intensive pre-loading of fonts is scheduled
         // to run after all the files have been opened,
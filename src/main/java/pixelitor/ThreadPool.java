@@ -17,11 +17,11 @@
 
 package pixelitor;
 
-import com.jhlabs.image.AbstractBufferedImageOp;
 import pixelitor.utils.ProgressTracker;
 
-import java.awt.image.BufferedImage;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A thread pool for parallel execution on multiple CPU cores
@@ -32,84 +32,170 @@ public class ThreadPool {
     private static final ExecutorService pool =
         Executors.newFixedThreadPool(NUM_CORES);
 
-    private ThreadPool() {
-    }
+    // the number of bands per core: more bands than cores
+    // allow the faster threads to take over more work
+    private static final int BANDS_PER_CORE = 4;
 
-    /**
-     * Submits a task that doesn't return anything
-     */
-    public static Future<?> submit(Runnable task) {
-        return pool.submit(task);
+    // how often the calling thread forwards the progress
+    // of the helpers while it waits for them
+    private static final long PROGRESS_POLL_MILLIS = 50;
+
+    private ThreadPool() {
     }
 
     /**
-     * Submits a task that returns something, such as
-     * the calculated pixels in a line
+     * Processes a range of consecutive rows, from startRow (inclusive)
+     * to endRow (exclusive).
      */
-    public static <T> Future<T> submit2(Callable<T> task) {
-        return pool.submit(task);
+    @FunctionalInterface
+    public interface RowBandTask {
+        void process(int startRow, int endRow);
     }
 
     /**
-     * Waits until all the given futures complete their
-     * computation, and updates the given
-     * {@link ProgressTracker} in the meantime.
+     * Processes the given number of rows in parallel, and returns
+     * when all rows are done. The rows are split into a few bands, which
+     * are picked up one by one by the pool threads and the calling thread,
+     * so that no thread sits idle while there is work left.
+     * The progress is reported to the given tracker in rows, always
+     * on the calling thread, because the trackers can update Swing
+     * components if they were created on the EDT.
+     *
+     * If the calling thread is interrupted, then no new bands are
+     * started, and a {@link CancellationException} is thrown.
      */
-    public static void waitFor(Iterable<Future<?>> futures, ProgressTracker pt) {
+    public static void parallelRows(int numRows, RowBandTask task, ProgressTracker pt) {
         assert pt != null;
+        if (numRows <= 0) {
+            return;
+        }
 
-        for (var future : futures) {
-            try {
-                future.get();
-
-                // not completely accurate because the submit order is not
-                // necessarily the same as the finish order, but
-                // good enough in practice
-                pt.unitDone();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
+        int numBands = Math.min(numRows, NUM_CORES * BANDS_PER_CORE);
+        if (numBands == 1 || NUM_CORES == 1) {
+            task.process(0, numRows);
+            pt.unitsDone(numRows);
+            return;
         }
-    }
 
-    // same as the above, but with array argument
-    public static void waitFor(Future<?>[] futures, ProgressTracker pt) {
-        assert pt != null;
+        var nextBand = new AtomicInteger();
+        var stop = new AtomicBoolean();
+        // the rows finished by the helpers, but not yet reported
+        var helperRows = new AtomicInteger();
+
+        // the calling thread also works, therefore one helper less is needed
+        int numHelpers = Math.min(NUM_CORES, numBands) - 1;
+        Future<?>[] helpers = new Future[numHelpers];
+        for (int i = 0; i < numHelpers; i++) {
+            helpers[i] = pool.submit(() ->
+                processBands(numRows, numBands, task, null, helperRows, nextBand, stop));
+        }
 
-        for (var future : futures) {
-            try {
-                future.get();
-                pt.unitDone();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            } catch (ExecutionException e) {
-                e.getCause().printStackTrace();
+        Throwable failure = null;
+        try {
+            processBands(numRows, numBands, task, pt, helperRows, nextBand, stop);
+        } catch (Throwable e) {
+            failure = e;
+        }
+
+        // At this point all bands are taken. The helpers that haven't
+        // started yet are canceled (this also avoids a deadlock if all pool
+        // threads are waiting here), but the running ones must finish before
+        // returning, even if this thread is interrupted.
+        boolean interrupted = false;
+        for (Future<?> helper : helpers) {
+            if (helper.cancel(false)) {
+                continue;
             }
+            while (true) {
+                try {
+                    helper.get(PROGRESS_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    reportHelperRows(helperRows, pt);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    stop.set(true);
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                } catch (CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        reportHelperRows(helperRows, pt);
+
+        if (failure instanceof RuntimeException re) {
+            throw re;
+        } else if (failure instanceof Error err) {
+            throw err;
+        } else if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+        if (stop.get()) {
+            throw new CancellationException();
         }
     }
 
-    /**
-     * Similar to waitFor, but works with futures
-     * that return an int array representing a line, and
-     * updates the given destination image with the new pixels.
-     */
-    public static void waitFor2(Future<int[]>[] futures, BufferedImage dst, int width, ProgressTracker pt) {
-        assert pt != null;
-
-        try {
-            for (int i = 0; i < futures.length; i++) {
-                var lineFuture = futures[i];
-                int[] linePixels = lineFuture.get();
-                AbstractBufferedImageOp.setRGB(dst, 0, i, width, 1, linePixels);
+    // The calling thread gets the tracker, and the helpers get null.
+    // The helpers only count their finished rows, and the calling
+    // thread reports them together with its own rows.
+    private static void processBands(int numRows, int numBands,
+                                     RowBandTask task, ProgressTracker pt,
+                                     AtomicInteger helperRows,
+                                     AtomicInteger nextBand, AtomicBoolean stop) {
+        boolean callingThread = pt != null;
+        int band;
+        while (!stop.get() && (band = nextBand.getAndIncrement()) < numBands) {
+            if (callingThread && Thread.currentThread().isInterrupted()) {
+                stop.set(true);
+                return;
+            }
+            int startRow = (int) ((long) band * numRows / numBands);
+            int endRow = (int) ((long) (band + 1) * numRows / numBands);
+            try {
+                task.process(startRow, endRow);
+            } catch (Throwable e) {
+                stop.set(true);
+                throw e;
+            }
 
-                pt.unitDone();
+            if (callingThread) {
+                pt.unitsDone(endRow - startRow);
+                reportHelperRows(helperRows, pt);
+            } else {
+                helperRows.addAndGet(endRow - startRow);
             }
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+        }
+    }
+
+    private static void reportHelperRows(AtomicInteger helperRows, ProgressTracker pt) {
+        int rows = helperRows.getAndSet(0);
+        if (rows > 0) {
+            pt.unitsDone(rows);
         }
     }
 
     public static Executor getExecutor() {
         return pool;
     }
+
+    /**
+     * Creates a separate executor with a fixed number of daemon threads
+     * for pipelines whose stages must not occupy the shared pool,
+     * because their work might itself use the shared pool.
+     */
+    public static ExecutorService newDaemonExecutor(String name, int numThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, name + " " + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
 }
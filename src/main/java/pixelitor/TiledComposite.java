@@ -0,0 +1,173 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The cached composite image of a {@link Composition}.
+ *
+ * The image is logically divided into square tiles, and the tiles
+ * touched by a local change (such as a brush dab) are tracked as dirty,
+ * so that only they have to be re-blended, instead of the whole canvas.
+ */
+class TiledComposite {
+    static final int TILE_SIZE = 256;
+
+    private BufferedImage image;
+
+    // false if the image is shared with someone else (for example
+    // it's the image of a layer), and therefore it must not be
+    // updated in place, only replaced by a new image
+    private boolean ownsImage;
+
+    private int numTilesX;
+    private int numTilesY;
+    private final BitSet dirtyTiles = new BitSet();
+
+    public boolean isValid() {
+        return image != null && dirtyTiles.isEmpty();
+    }
+
+    /**
+     * Returns true if the cached image exists and only
+     * some of its tiles must be recalculated.
+     */
+    public boolean canUpdatePartially(int canvasWidth, int canvasHeight) {
+        return image != null
+            && ownsImage
+            && image.getWidth() == canvasWidth
+            && image.getHeight() == canvasHeight;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Sets a new, fully calculated composite image.
+     */
+    public void setImage(BufferedImage newImage, boolean owned) {
+        image = newImage;
+        ownsImage = owned;
+        numTilesX = (newImage.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+        numTilesY = (newImage.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+        dirtyTiles.clear();
+    }
+
+    public void invalidateAll() {
+        if (image != null) {
+            image.flush();
+        }
+        image = null;
+        dirtyTiles.clear();
+    }
+
+    /**
+     * Marks the tiles intersecting the given image-space area as dirty.
+     */
+    public void invalidateRegion(Rectangle area) {
+        if (image == null) {
+            return; // already fully invalid
+        }
+        if (!ownsImage) {
+            invalidateAll();
+            return;
+        }
+
+        Rectangle r = area.intersection(
+            new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        if (r.isEmpty()) {
+            return;
+        }
+
+        int firstCol = r.x / TILE_SIZE;
+        int lastCol = (r.x + r.width - 1) / TILE_SIZE;
+        int firstRow = r.y / TILE_SIZE;
+        int lastRow = (r.y + r.height - 1) / TILE_SIZE;
+        for (int row = firstRow; row <= lastRow; row++) {
+            int rowStart = row * numTilesX;
+            dirtyTiles.set(rowStart + firstCol, rowStart + lastCol + 1);
+        }
+    }
+
+    /**
+     * Returns the dirty tiles as a list of non-overlapping rectangles:
+     * the horizontal runs of dirty tiles within a tile row are joined,
+     * and the runs that have the same horizontal span in consecutive
+     * tile rows are also merged.
+     */
+    public List<Rectangle> getDirtyAreas() {
+        List<Rectangle> areas = new ArrayList<>();
+        List<Rectangle> prevRowRuns = new ArrayList<>();
+        for (int row = 0; row < numTilesY; row++) {
+            List<Rectangle> rowRuns = new ArrayList<>();
+            int rowStart = row * numTilesX;
+            int rowEnd = rowStart + numTilesX;
+            int col = dirtyTiles.nextSetBit(rowStart);
+            while (col >= 0 && col < rowEnd) {
+                int runEnd = Math.min(dirtyTiles.nextClearBit(col), rowEnd);
+                Rectangle run = toImageArea(col - rowStart, runEnd - rowStart, row);
+
+                Rectangle above = findSameSpan(prevRowRuns, run);
+                if (above != null) {
+                    above.height += run.height;
+                    rowRuns.add(above);
+                } else {
+                    areas.add(run);
+                    rowRuns.add(run);
+                }
+                col = dirtyTiles.nextSetBit(runEnd);
+            }
+            prevRowRuns = rowRuns;
+        }
+        return areas;
+    }
+
+    private static Rectangle findSameSpan(List<Rectangle> runs, Rectangle run) {
+        for (Rectangle r : runs) {
+            if (r.x == run.x && r.width == run.width) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private Rectangle toImageArea(int firstCol, int endCol, int row) {
+        int x = firstCol * TILE_SIZE;
+        int y = row * TILE_SIZE;
+        int width = Math.min(endCol * TILE_SIZE, image.getWidth()) - x;
+        int height = Math.min(y + TILE_SIZE, image.getHeight()) - y;
+        return new Rectangle(x, y, width, height);
+    }
+
+    /**
+     * Signals that all the dirty tiles have been recalculated.
+     */
+    public void markClean() {
+        dirtyTiles.clear();
+    }
+
+    public int getNumDirtyTiles() {
+        return dirtyTiles.cardinality();
+    }
+}
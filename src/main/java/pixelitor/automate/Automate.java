@@ -27,9 +27,14 @@ import pixelitor.io.*;
 import pixelitor.utils.Messages;
 
 import javax.swing.*;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 import static java.lang.String.format;
 import static javax.swing.JOptionPane.WARNING_MESSAGE;
@@ -55,6 +60,18 @@ public class Automate {
      * with the given {@link CompAction}
      */
     public static void processFiles(CompAction action, String dialogTitle) {
+        processFiles(action, null, dialogTitle);
+    }
+
+    /**
+     * Processes each file in the input directory. If the image action is
+     * given and all files are single-layered, then the files are processed
+     * by a {@link BatchPipeline} without opening them, otherwise each file
+     * is opened and processed with the given {@link CompAction}.
+     */
+    public static void processFiles(CompAction action,
+                                    UnaryOperator<BufferedImage> imageAction,
+                                    String dialogTitle) {
         assert calledOnEDT() : threadInfo();
 
         File openDir = Dirs.getLastOpen();
@@ -67,6 +84,13 @@ public class Automate {
             return;
         }
 
+        var format = FileFormat.getLastOutput();
+        if (imageAction != null && BatchPipeline.canProcess(inputFiles, format)) {
+            var pipeline = new BatchPipeline(inputFiles, saveDir, format, imageAction);
+            processFilesInPipeline(pipeline, inputFiles, dialogTitle);
+            return;
+        }
+
         stopProcessing = false;
         var pm = GUIUtils.createPercentageProgressMonitor(dialogTitle);
         var worker = new SwingWorker<Void, Void>() {
@@ -78,6 +102,86 @@ public class Automate {
         worker.execute();
     }
 
+    private static void processFilesInPipeline(BatchPipeline pipeline,
+                                               List<File> inputFiles,
+                                               String dialogTitle) {
+        Predicate<File> fileFilter = askAboutExistingFiles(pipeline, inputFiles);
+        if (fileFilter == null) {
+            return; // cancelled
+        }
+
+        int numFiles = inputFiles.size();
+        var pm = GUIUtils.createPercentageProgressMonitor(dialogTitle);
+        var worker = new SwingWorker<BatchPipeline.Report, Void>() {
+            @Override
+            public BatchPipeline.Report doInBackground() {
+                return pipeline.run(fileFilter,
+                    numDone -> EventQueue.invokeLater(() -> {
+                        pm.setProgress(numDone * 100 / numFiles);
+                        pm.setNote("Processed " + numDone + " of " + numFiles);
+                    }),
+                    pm::isCanceled);
+            }
+
+            @Override
+            protected void done() {
+                pm.close();
+                try {
+                    showReport(pipeline, get());
+                } catch (InterruptedException | ExecutionException e) {
+                    Messages.showException(e);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private static void showReport(BatchPipeline pipeline, BatchPipeline.Report report) {
+        String summary = report.getSummary();
+        List<Throwable> errors = pipeline.getErrors();
+        if (!errors.isEmpty()) {
+            Messages.showException(errors.get(0));
+        }
+        Messages.showInfo("Batch Processing Finished",
+            "<html>" + summary.replace(System.lineSeparator(), "<br>"));
+    }
+
+    /**
+     * Asks about the overwriting before starting, because the files are
+     * written in parallel, in an unknown order. Returns the filter for the
+     * files that should be processed, or null if the processing is cancelled.
+     */
+    private static Predicate<File> askAboutExistingFiles(BatchPipeline pipeline,
+                                                         List<File> inputFiles) {
+        long numExisting = inputFiles.stream()
+            .filter(file -> pipeline.getOutputFile(file).exists())
+            .count();
+        if (numExisting == 0) {
+            return file -> true;
+        }
+
+        String msg = numExisting == 1
+            ? "1 output file already exists. Overwrite it?"
+            : format("%d output files already exist. Overwrite them?", numExisting);
+        var optionPane = new JOptionPane(msg, WARNING_MESSAGE);
+
+        optionPane.setOptions(new String[]{
+            OVERWRITE_YES_ALL, OVERWRITE_NO, OVERWRITE_CANCEL});
+        optionPane.setInitialValue(OVERWRITE_NO);
+
+        JDialog dialog = optionPane.createDialog(PixelitorWindow.get(), "Warning");
+        dialog.setVisible(true);
+        String value = (String) optionPane.getValue();
+
+        if (value == null || value.equals(OVERWRITE_CANCEL)) {
+            return null;
+        }
+        if (value.equals(OVERWRITE_NO)) {
+            return file -> !pipeline.getOutputFile(file).exists();
+        }
+        return file -> true;
+    }
+
     private static Void processFilesOutsideTheEDT(List<File> inputFiles,
                                                   CompAction action,
                                                   File saveDir,
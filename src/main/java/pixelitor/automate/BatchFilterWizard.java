@@ -47,7 +47,7 @@ public class BatchFilterWizard extends Wizard {
             filter.startOn(comp.getActiveDrawableOrThrow(), BATCH_AUTOMATE, busyCursorParent);
             return CompletableFuture.completedFuture(comp);
         };
-        Automate.processFiles(batchFilterAction, dialogTitle);
+        Automate.processFiles(batchFilterAction, filter::transformImage, dialogTitle);
     }
 
     @Override
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate;
+
+import pixelitor.ThreadPool;
+import pixelitor.io.FileFormat;
+import pixelitor.io.IO;
+import pixelitor.io.SaveSettings;
+import pixelitor.io.TrackedIO;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import static pixelitor.io.FileUtils.replaceExt;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+import static pixelitor.utils.Threads.calledOutsideEDT;
+
+/**
+ * Batch processing of single-layered image files without opening them
+ * in the GUI. The files are decoded, processed and encoded in a bounded
+ * pipeline: several files are decoded and encoded in parallel while
+ * the images are processed one after the other.
+ * The processing runs on a single thread, because the filters keep their
+ * settings in fields, but the filters themselves use the thread pool.
+ */
+public class BatchPipeline {
+    private final List<File> inputFiles;
+    private final File saveDir;
+    private final FileFormat outputFormat;
+    private final UnaryOperator<BufferedImage> processor;
+
+    private final int numDecodeThreads;
+    private final int numEncodeThreads;
+
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LongAdder processNanos = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final AtomicInteger numDone = new AtomicInteger();
+    private final AtomicInteger numFailed = new AtomicInteger();
+    private final List<Throwable> errors = new ArrayList<>();
+
+    public BatchPipeline(List<File> inputFiles, File saveDir,
+                         FileFormat outputFormat, UnaryOperator<BufferedImage> processor) {
+        this(inputFiles, saveDir, outputFormat, processor, defaultNumThreads(), defaultNumThreads());
+    }
+
+    public BatchPipeline(List<File> inputFiles, File saveDir,
+                         FileFormat outputFormat, UnaryOperator<BufferedImage> processor,
+                         int numDecodeThreads, int numEncodeThreads) {
+        assert !outputFormat.hasLayers();
+
+        this.inputFiles = inputFiles;
+        this.saveDir = saveDir;
+        this.outputFormat = outputFormat;
+        this.processor = processor;
+        this.numDecodeThreads = numDecodeThreads;
+        this.numEncodeThreads = numEncodeThreads;
+    }
+
+    private static int defaultNumThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    /**
+     * Returns true if the given files can be processed by this class
+     * without losing their layers. Layered input files can be
+     * processed only by flattening them.
+     */
+    public static boolean canProcess(List<File> inputFiles, FileFormat outputFormat) {
+        if (outputFormat.hasLayers()) {
+            return false;
+        }
+        for (File file : inputFiles) {
+            // unknown extensions are read as single-layered images
+            if (FileFormat.fromFile(file).map(FileFormat::hasLayers).orElse(false)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public File getOutputFile(File inputFile) {
+        return new File(saveDir, replaceExt(inputFile.getName(), outputFormat.toString()));
+    }
+
+    /**
+     * Processes the files that are accepted by the given filter.
+     * The calling thread only submits the files and then waits
+     * for them. The progress listener is called with the number
+     * of finished files on the pipeline threads.
+     */
+    public Report run(Predicate<File> fileFilter,
+                      IntConsumer progressListener,
+                      BooleanSupplier cancelled) {
+        assert calledOutsideEDT() : "on EDT";
+
+        ExecutorService decodeExecutor = ThreadPool.newDaemonExecutor("Batch Decode", numDecodeThreads);
+        ExecutorService processExecutor = ThreadPool.newDaemonExecutor("Batch Process", 1);
+        ExecutorService encodeExecutor = ThreadPool.newDaemonExecutor("Batch Encode", numEncodeThreads);
+
+        // limits the number of images in memory
+        Semaphore inFlight = new Semaphore(numDecodeThreads + numEncodeThreads + 2);
+
+        long startTime = System.nanoTime();
+        int numSkipped = 0;
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try {
+            for (File file : inputFiles) {
+                if (cancelled.getAsBoolean()) {
+                    break;
+                }
+                if (!fileFilter.test(file)) {
+                    numSkipped++;
+                    continue;
+                }
+                inFlight.acquire();
+                futures.add(CompletableFuture
+                    .supplyAsync(() -> decode(file), decodeExecutor)
+                    .thenApplyAsync(this::process, processExecutor)
+                    .thenAcceptAsync(img -> encode(img, file), encodeExecutor)
+                    .whenComplete((v, e) -> {
+                        inFlight.release();
+                        if (e != null) {
+                            numFailed.incrementAndGet();
+                            synchronized (errors) {
+                                errors.add(e);
+                            }
+                        }
+                        progressListener.accept(numDone.incrementAndGet());
+                    }));
+            }
+            for (var future : futures) {
+                future.exceptionally(e -> null).join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            decodeExecutor.shutdown();
+            processExecutor.shutdown();
+            encodeExecutor.shutdown();
+        }
+
+        return new Report(futures.size() - numFailed.get(), numFailed.get(), numSkipped,
+            System.nanoTime() - startTime, decodeNanos.sum(), processNanos.sum(), encodeNanos.sum());
+    }
+
+    private BufferedImage decode(File file) {
+        long start = System.nanoTime();
+        BufferedImage img = readImage(file);
+        decodeNanos.add(System.nanoTime() - start);
+        return img;
+    }
+
+    /**
+     * Reads the given file as a single image without opening it.
+     * The layered files are flattened (only in headless mode,
+     * because the GUI opens these files instead).
+     */
+    public static BufferedImage readImage(File file) {
+        BufferedImage img;
+        var format = FileFormat.fromFile(file);
+        if (format.isPresent() && format.get().hasLayers()) {
+            img = format.get().readFrom(file).join().getCompositeImage();
+        } else {
+            img = TrackedIO.uncheckedRead(file, NULL_TRACKER);
+        }
+        // the filters expect the same image types as in the GUI
+        return ImageUtils.toSysCompatibleImage(img);
+    }
+
+    private BufferedImage process(BufferedImage img) {
+        long start = System.nanoTime();
+        BufferedImage result = processor.apply(img);
+        processNanos.add(System.nanoTime() - start);
+        return result;
+    }
+
+    private void encode(BufferedImage img, File inputFile) {
+        long start = System.nanoTime();
+        var settings = new SaveSettings(outputFormat, getOutputFile(inputFile));
+        IO.saveImageToFile(outputFormat.prepareForSaving(img), settings, NULL_TRACKER);
+        encodeNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the errors of the failed files.
+     */
+    public List<Throwable> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<>(errors);
+        }
+    }
+
+    /**
+     * The throughput statistics of a batch run. The stage times
+     * are summed over all threads of the stage.
+     */
+    public record Report(int numProcessed, int numFailed, int numSkipped,
+                         long elapsedNanos, long decodeNanos,
+                         long processNanos, long encodeNanos) {
+        public double filesPerSecond() {
+            if (elapsedNanos == 0) {
+                return 0;
+            }
+            return numProcessed * 1.0e9 / elapsedNanos;
+        }
+
+        public String getSummary() {
+            return String.format("%d files processed in %.1f s (%.2f files/s)%n" +
+                                 "%d failed, %d skipped%n" +
+                                 "decoding: %.1f s, processing: %.1f s, encoding: %.1f s",
+                numProcessed, elapsedNanos / 1.0e9, filesPerSecond(),
+                numFailed, numSkipped,
+                decodeNanos / 1.0e9, processNanos / 1.0e9, encodeNanos / 1.0e9);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import pixelitor.gui.utils.DialogBuilder;
 import pixelitor.gui.utils.IntTextField;
 import pixelitor.gui.utils.ValidatedPanel;
 import pixelitor.gui.utils.ValidationResult;
+import pixelitor.utils.ImageUtils;
 
 import javax.swing.*;
 
@@ -50,7 +51,9 @@ public class BatchResize {
         int maxHeight = p.getNewHeight();
 
         var resizeAction = new Resize(maxWidth, maxHeight, true);
-        Automate.processFiles(resizeAction, "Batch Resize...");
+        Automate.processFiles(resizeAction,
+            img -> ImageUtils.resizeInBox(img, maxWidth, maxHeight),
+            "Batch Resize...");
     }
 
     /**
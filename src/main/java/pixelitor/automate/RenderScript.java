@@ -0,0 +1,412 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate;
+
+import pixelitor.compactions.Flip;
+import pixelitor.filters.Filter;
+import pixelitor.filters.ParametrizedFilter;
+import pixelitor.filters.gui.FilterState;
+import pixelitor.filters.gui.FilterWithGUI;
+import pixelitor.filters.gui.UserPreset;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.QuadrantAngle;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+
+/**
+ * A chain of image operations read from a text file,
+ * used by the headless rendering mode. Example:
+ * <pre>
+ * # comments start with a hash mark
+ * fit 800 600
+ * filter JHGaussianBlur
+ *     Radius = 5
+ * filter Starburst
+ *     &#64;preset Glow
+ * filter pixelitor.filters.Invert
+ * rotate 90
+ * </pre>
+ *
+ * The indented lines after a filter set its parameters: either
+ * individually (with the same keys as in the user preset files),
+ * or with "&#64;preset" (the name of a built-in preset),
+ * or with "&#64;file" (the path of a saved user preset).
+ *
+ * The other steps are "resize width height", "fit maxWidth maxHeight",
+ * "crop x y width height", "rotate 90|180|270" and "flip horizontal|vertical",
+ * the image-level equivalents of the composition actions.
+ */
+public class RenderScript {
+    private static final String[] FILTER_PACKAGES = {
+        "pixelitor.filters",
+        "pixelitor.filters.jhlabsproxies",
+        "pixelitor.filters.convolve",
+        "pixelitor.filters.lookup",
+        "pixelitor.filters.painters",
+        "pixelitor.filters.curves",
+        "pixelitor.filters.levels",
+    };
+
+    private final List<Step> steps;
+
+    private RenderScript(List<Step> steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * A single operation of the script
+     */
+    public interface Step {
+        String getName();
+
+        BufferedImage apply(BufferedImage src);
+    }
+
+    public static RenderScript load(File file) throws IOException {
+        return parse(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses the given lines, throwing an {@link IllegalArgumentException}
+     * with the line number if a line can't be understood.
+     */
+    public static RenderScript parse(List<String> lines) {
+        List<Step> steps = new ArrayList<>();
+        FilterStep currentFilter = null;
+        int filterLineIndex = -1;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            boolean indented = Character.isWhitespace(line.charAt(0));
+            if (!indented && currentFilter != null) {
+                configure(currentFilter, filterLineIndex);
+                currentFilter = null;
+            }
+            try {
+                if (indented) {
+                    if (currentFilter == null) {
+                        throw new IllegalArgumentException("parameter without a filter");
+                    }
+                    currentFilter.addSetting(trimmed);
+                    continue;
+                }
+
+                String[] words = trimmed.split("\\s+");
+                Step step = switch (words[0]) {
+                    case "filter" -> {
+                        currentFilter = new FilterStep(createFilter(args(words, 1)[0]));
+                        filterLineIndex = i;
+                        yield currentFilter;
+                    }
+                    case "resize" -> createResize(args(words, 2));
+                    case "fit" -> createFit(args(words, 2));
+                    case "crop" -> createCrop(args(words, 4));
+                    case "rotate" -> createRotate(args(words, 1)[0]);
+                    case "flip" -> createFlip(args(words, 1)[0]);
+                    default -> throw new IllegalArgumentException("unknown step: " + words[0]);
+                };
+                steps.add(step);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                    "line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        if (currentFilter != null) {
+            configure(currentFilter, filterLineIndex);
+        }
+        return new RenderScript(steps);
+    }
+
+    private static void configure(FilterStep filterStep, int lineIndex) {
+        try {
+            filterStep.configure();
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                "line " + (lineIndex + 1) + ": " + e.getMessage(), e);
+        }
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Runs all steps on the given image
+     */
+    public BufferedImage apply(BufferedImage src) {
+        BufferedImage img = src;
+        for (Step step : steps) {
+            img = step.apply(img);
+        }
+        return img;
+    }
+
+    private static String[] args(String[] words, int num) {
+        if (words.length != num + 1) {
+            throw new IllegalArgumentException(
+                "\"" + words[0] + "\" needs " + num + " argument(s)");
+        }
+        String[] args = new String[num];
+        System.arraycopy(words, 1, args, 0, num);
+        return args;
+    }
+
+    private static int[] parseInts(String[] args) {
+        int[] values = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            try {
+                values[i] = Integer.parseInt(args[i]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not an integer: " + args[i]);
+            }
+        }
+        return values;
+    }
+
+    private static int[] parseSize(String[] args) {
+        int[] size = parseInts(args);
+        if (size[0] <= 0 || size[1] <= 0) {
+            throw new IllegalArgumentException("invalid size: " + size[0] + "x" + size[1]);
+        }
+        return size;
+    }
+
+    private static Step createResize(String[] args) {
+        int[] size = parseSize(args);
+        return step("Resize", img -> ImageUtils.resize(img, size[0], size[1]));
+    }
+
+    private static Step createFit(String[] args) {
+        int[] size = parseSize(args);
+        return step("Fit", img -> ImageUtils.resizeInBox(img, size[0], size[1]));
+    }
+
+    private static Step createCrop(String[] args) {
+        int[] r = parseInts(args);
+        if (r[0] < 0 || r[1] < 0 || r[2] <= 0 || r[3] <= 0) {
+            throw new IllegalArgumentException("invalid crop rectangle");
+        }
+        return step("Crop", img -> ImageUtils.crop(img, r[0], r[1],
+            Math.min(r[2], img.getWidth() - r[0]),
+            Math.min(r[3], img.getHeight() - r[1])));
+    }
+
+    private static Step createRotate(String arg) {
+        QuadrantAngle angle = switch (arg) {
+            case "90" -> QuadrantAngle.ANGLE_90;
+            case "180" -> QuadrantAngle.ANGLE_180;
+            case "270" -> QuadrantAngle.ANGLE_270;
+            default -> throw new IllegalArgumentException("invalid angle: " + arg);
+        };
+        return step("Rotate " + arg, img -> transform(img,
+            angle.createDestImage(img), angle.createImageTransform(img)));
+    }
+
+    private static Step createFlip(String arg) {
+        Flip.Direction direction = switch (arg) {
+            case "horizontal" -> Flip.Direction.HORIZONTAL;
+            case "vertical" -> Flip.Direction.VERTICAL;
+            default -> throw new IllegalArgumentException("invalid flip direction: " + arg);
+        };
+        return step(direction.getName(), img -> transform(img,
+            ImageUtils.createImageWithSameCM(img), direction.createImageTransform(img)));
+    }
+
+    private static BufferedImage transform(BufferedImage src, BufferedImage dest, AffineTransform at) {
+        Graphics2D g2 = dest.createGraphics();
+        // nearest neighbor is enough for these exact transformations
+        g2.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.setTransform(at);
+        g2.drawImage(src, 0, 0, src.getWidth(), src.getHeight(), null);
+        g2.dispose();
+        return dest;
+    }
+
+    private static Step step(String name, UnaryOperator<BufferedImage> op) {
+        return new Step() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public BufferedImage apply(BufferedImage src) {
+                return op.apply(src);
+            }
+        };
+    }
+
+    /**
+     * Creates a filter from its simple or fully qualified class name.
+     * The filters are not taken from the menus, because those
+     * are created only together with the GUI.
+     */
+    static Filter createFilter(String className) {
+        Class<?> filterClass = findClass(className);
+        if (filterClass == null || !Filter.class.isAssignableFrom(filterClass)
+            || Modifier.isAbstract(filterClass.getModifiers())) {
+            throw new IllegalArgumentException("unknown filter: " + className);
+        }
+        Filter filter;
+        try {
+            filter = (Filter) filterClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("can't create the filter " + className, e);
+        }
+
+        // the menu name is also the name used in the preset files
+        try {
+            Field nameField = filterClass.getField("NAME");
+            if (nameField.getType() == String.class && Modifier.isStatic(nameField.getModifiers())) {
+                filter.setName((String) nameField.get(null));
+            }
+        } catch (ReflectiveOperationException e) {
+            // keep the class name
+        }
+        return filter;
+    }
+
+    private static Class<?> findClass(String className) {
+        if (className.contains(".")) {
+            return loadClass(className);
+        }
+        for (String pkg : FILTER_PACKAGES) {
+            Class<?> c = loadClass(pkg + "." + className);
+            if (c != null) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private static Class<?> loadClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A filter with the settings given in the script
+     */
+    private static class FilterStep implements Step {
+        private final Filter filter;
+        private final Map<String, String> settings = new LinkedHashMap<>();
+        private String builtinPreset;
+        private File presetFile;
+
+        FilterStep(Filter filter) {
+            this.filter = filter;
+        }
+
+        void addSetting(String line) {
+            if (line.startsWith("@preset ")) {
+                builtinPreset = line.substring("@preset ".length()).strip();
+                return;
+            }
+            if (line.startsWith("@file ")) {
+                presetFile = new File(line.substring("@file ".length()).strip());
+                return;
+            }
+            int index = line.indexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("expected \"key = value\", found \"" + line + "\"");
+            }
+            settings.put(line.substring(0, index).strip(), line.substring(index + 1).strip());
+        }
+
+        // applies the settings in the order preset file, built-in preset, individual values
+        void configure() {
+            boolean hasSettings = presetFile != null || builtinPreset != null || !settings.isEmpty();
+            if (!hasSettings) {
+                return;
+            }
+            if (!(filter instanceof FilterWithGUI fwg) || !fwg.canHaveUserPresets()) {
+                throw new IllegalArgumentException(getName() + " has no settings");
+            }
+
+            UserPreset preset = fwg.createUserPreset("");
+            if (presetFile != null) {
+                try {
+                    preset.loadFromString(Files.readString(presetFile.toPath(), StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("can't read " + presetFile, e);
+                }
+                fwg.loadUserPreset(preset);
+            }
+            if (builtinPreset != null) {
+                if (!(filter instanceof ParametrizedFilter pf)) {
+                    throw new IllegalArgumentException(getName() + " has no built-in presets");
+                }
+                pf.getParamSet().setState(findBuiltinPreset(pf), false);
+                preset = fwg.createUserPreset("");
+            }
+            if (!settings.isEmpty()) {
+                for (var entry : settings.entrySet()) {
+                    if (!preset.containsKey(entry.getKey())) {
+                        throw new IllegalArgumentException(
+                            getName() + " has no parameter called " + entry.getKey());
+                    }
+                    preset.put(entry.getKey(), entry.getValue());
+                }
+                fwg.loadUserPreset(preset);
+            }
+        }
+
+        private FilterState findBuiltinPreset(ParametrizedFilter pf) {
+            if (pf.hasBuiltinPresets()) {
+                for (FilterState state : pf.getBuiltinPresets()) {
+                    if (state.getName().equals(builtinPreset)) {
+                        return state;
+                    }
+                }
+            }
+            throw new IllegalArgumentException(getName() + " has no preset called " + builtinPreset);
+        }
+
+        @Override
+        public String getName() {
+            return filter.getName();
+        }
+
+        @Override
+        public BufferedImage apply(BufferedImage src) {
+            return filter.transformImage(src);
+        }
+    }
+}
@@ -17,11 +17,11 @@
 
 package pixelitor.filters;
 
-import com.jhlabs.image.PixelUtils;
 import pixelitor.filters.gui.*;
 import pixelitor.gui.utils.PAction;
 import pixelitor.layers.Drawable;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.simd.PixelKernels;
 
 import javax.swing.*;
 import java.awt.image.BandCombineOp;
@@ -423,23 +423,11 @@ public class ChannelMixer extends ParametrizedFilter {
             int length = srcData.length;
             assert length == destData.length;
 
-            for (int i = 0; i < length; i++) {
-                int rgb = srcData[i];
-                int a = rgb & 0xFF000000;
-                int r = (rgb >>> 16) & 0xFF;
-                int g = (rgb >>> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                int newRed = (int) (rfr * r + rfg * g + rfb * b);
-                int newGreen = (int) (gfr * r + gfg * g + gfb * b);
-                int newBlue = (int) (bfr * r + bfg * g + bfb * b);
-
-                newRed = PixelUtils.clamp(newRed);
-                newGreen = PixelUtils.clamp(newGreen);
-                newBlue = PixelUtils.clamp(newBlue);
-
-                destData[i] = a | newRed << 16 | newGreen << 8 | newBlue;
-            }
+            PixelKernels.colorMatrix(srcData, destData, 0, length, new float[]{
+                rfr, rfg, rfb,
+                gfr, gfg, gfb,
+                bfr, bfg, bfb
+            });
         } else { // not packed int
             var bandCombineOp = new BandCombineOp(new float[][]{
                 {rfr, rfg, rfb},
@@ -29,7 +29,6 @@ import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.util.concurrent.Future;
 
 /**
  * Renders a color wheel
@@ -86,14 +85,11 @@ public class ColorWheel extends ParametrizedFilter {
 
         var pt = new StatusBarProgressTracker(NAME, height);
 
-        Future<?>[] futures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> calculateLine(
-                    destData, width, finalY, cx, cy, hueShift, sat, brgLum, space);
-            futures[y] = ThreadPool.submit(lineTask);
-        }
-        ThreadPool.waitFor(futures, pt);
+        ThreadPool.parallelRows(height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                calculateLine(destData, width, y, cx, cy, hueShift, sat, brgLum, space);
+            }
+        }, pt);
         pt.finished();
 
         return dest;
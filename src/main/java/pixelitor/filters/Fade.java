@@ -69,6 +69,12 @@ public class Fade extends ParametrizedFilter {
         return dest;
     }
 
+    @Override
+    public boolean supportsAsyncPreview() {
+        // accesses the history
+        return false;
+    }
+
     public void setOpacity(int newOpacity) {
         opacityParam.setValue(newOpacity);
     }
@@ -119,29 +119,38 @@ public abstract class Filter implements Serializable {
             } else {
                 dr.filterWithoutDialogFinished(dest, context, getName());
             }
-        } catch (OutOfMemoryError e) {
-            Dialogs.showOutOfMemoryDialog(e);
         } catch (Throwable e) {
-            Layer layer = dr.getLayer();
-            String errorDetails = String.format(
-                "Error while running the filter '%s'%n" +
-                "composition = '%s'%n" +
-                "layer = '%s' (%s)%n" +
-                "hasMask = '%s'%n" +
-                "mask editing = '%b'%n" +
-                "params = %s",
-                getName(), layer.getComp().getName(),
-                layer.getName(), layer.getClass().getSimpleName(),
-                layer.hasMask(), layer.isMaskEditing(), paramsAsString());
-
-            var ise = new IllegalStateException(errorDetails, e);
-            if (RandomGUITest.isRunning()) {
-                throw ise; // we can debug the exact filter parameters only in RandomGUITest
-            }
-            Messages.showException(ise);
+            handleException(e, dr);
         }
     }
 
+    /**
+     * Reports an error that occurred while running this filter on the given {@link Drawable}.
+     */
+    void handleException(Throwable e, Drawable dr) {
+        if (e instanceof OutOfMemoryError oome) {
+            Dialogs.showOutOfMemoryDialog(oome);
+            return;
+        }
+        Layer layer = dr.getLayer();
+        String errorDetails = String.format(
+            "Error while running the filter '%s'%n" +
+            "composition = '%s'%n" +
+            "layer = '%s' (%s)%n" +
+            "hasMask = '%s'%n" +
+            "mask editing = '%b'%n" +
+            "params = %s",
+            getName(), layer.getComp().getName(),
+            layer.getName(), layer.getClass().getSimpleName(),
+            layer.hasMask(), layer.isMaskEditing(), paramsAsString());
+
+        var ise = new IllegalStateException(errorDetails, e);
+        if (RandomGUITest.isRunning()) {
+            throw ise; // we can debug the exact filter parameters only in RandomGUITest
+        }
+        Messages.showException(ise);
+    }
+
     public BufferedImage transformImage(BufferedImage src) {
         boolean convertFromGray = false;
         if (src.getType() == TYPE_BYTE_GRAY) { // editing a mask
@@ -195,6 +204,38 @@ public abstract class Filter implements Serializable {
         return true;
     }
 
+    /**
+     * Whether the previews of this filter can run outside the EDT.
+     * These previews run on the copies returned by {@link #copyForPreview},
+     * therefore filters that access the GUI or the history while running,
+     * or that keep some state outside their settings should return false.
+     */
+    public boolean supportsAsyncPreview() {
+        return true;
+    }
+
+    /**
+     * Returns an independent copy with the current settings, which can
+     * calculate a preview outside the EDT while the settings of this filter
+     * keep changing. Returns null if the settings can't be copied,
+     * and then the previews run on the EDT.
+     * Must be called on the EDT.
+     */
+    public Filter copyForPreview(Drawable dr) {
+        Filter copy = copy();
+        return copy == this ? null : copy;
+    }
+
+    /**
+     * Whether a fast preview can be calculated from a downscaled
+     * version of the source image.
+     * Filters whose results depend on the exact image position
+     * or size should return false.
+     */
+    public boolean supportsDownscaledPreview() {
+        return true;
+    }
+
     public String paramsAsString() {
         return "";
     }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import pixelitor.filters.util.FilterUtils;
+import pixelitor.gui.utils.GUIUtils;
+import pixelitor.layers.Drawable;
+import pixelitor.utils.ImagePyramid;
+import pixelitor.utils.Messages;
+
+import java.awt.Component;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static pixelitor.FilterContext.PREVIEWING;
+import static pixelitor.utils.Threads.calledOnEDT;
+import static pixelitor.utils.Threads.onEDT;
+import static pixelitor.utils.Threads.threadInfo;
+
+/**
+ * Runs the previews of a filter dialog outside the EDT, so that
+ * the dialog stays responsive while a slow filter is running.
+ * Each preview runs on a copy of the filter taken on the EDT, because
+ * the settings of the filter can change while the preview is running.
+ *
+ * The previews run one at a time on a dedicated thread. A new request
+ * supersedes the earlier ones: the queued runs are skipped and the result
+ * of the running one is discarded. If the full-resolution previews are
+ * slow, then a downscaled version of the source image (taken from a
+ * cached {@link ImagePyramid}) is filtered first, and the full-resolution
+ * preview is shown when it's ready.
+ */
+public class FilterPreviewer {
+    // a separate thread, because the filters themselves
+    // submit tasks to the thread pool and wait for them
+    private static final ExecutorService previewThread =
+        Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "Filter Preview");
+            t.setDaemon(true);
+            return t;
+        });
+
+    // full-resolution previews slower than this are preceded by a downscaled one
+    private static final long SLOW_PREVIEW_MILLIS = 300;
+
+    // the maximum width/height of the downscaled previews
+    private static final int LOW_RES_SIZE = 800;
+
+    private final Filter filter;
+    private final Drawable dr;
+    private final Component busyCursorParent;
+
+    // incremented for each request, only the results
+    // of the latest request are shown
+    private volatile long latestRequest = 0;
+    private long appliedRequest = 0;
+    private volatile boolean closed = false;
+
+    private volatile long lastFullResMillis = 0;
+    private ImagePyramid pyramid;
+
+    private CompletableFuture<Void> lastRun = CompletableFuture.completedFuture(null);
+    private BufferedImage lastResult;
+    private long lastResultRequest;
+
+    public FilterPreviewer(Filter filter, Drawable dr, Component busyCursorParent) {
+        this.filter = filter;
+        this.dr = dr;
+        this.busyCursorParent = busyCursorParent;
+    }
+
+    /**
+     * Starts a new preview with the current filter settings.
+     */
+    public void requestPreview() {
+        assert calledOnEDT() : threadInfo();
+        assert !closed;
+
+        Filter snapshot = filter.supportsAsyncPreview() ? filter.copyForPreview(dr) : null;
+        if (snapshot == null) {
+            filter.startOn(dr, PREVIEWING, busyCursorParent);
+            return;
+        }
+
+        long request = ++latestRequest;
+
+        // the source image must be obtained on the EDT
+        BufferedImage src = dr.getFilterSourceImage();
+        if (pyramid == null || pyramid.getSource() != src) {
+            pyramid = new ImagePyramid(src);
+        }
+        ImagePyramid currentPyramid = pyramid;
+
+        boolean lowResFirst = lastFullResMillis > SLOW_PREVIEW_MILLIS
+            && filter.supportsDownscaledPreview()
+            && Math.max(src.getWidth(), src.getHeight()) > 2 * LOW_RES_SIZE;
+
+        lastRun = CompletableFuture.runAsync(
+            () -> runPreview(snapshot, request, currentPyramid, lowResFirst), previewThread);
+    }
+
+    // runs on the preview thread
+    private void runPreview(Filter snapshot, long request,
+                            ImagePyramid srcPyramid, boolean lowResFirst) {
+        if (request != latestRequest) {
+            return; // superseded before it could start
+        }
+        BufferedImage src = srcPyramid.getSource();
+        try {
+            if (lowResFirst) {
+                BufferedImage small = srcPyramid.getLevelFor(LOW_RES_SIZE);
+                BufferedImage smallResult = snapshot.transformImage(small);
+                if (smallResult == small) {
+                    // the filter decided that no change is necessary
+                    publish(request, src, 0);
+                    return;
+                }
+                if (request != latestRequest) {
+                    return;
+                }
+                BufferedImage upscaled = srcPyramid.upscaleToSource(smallResult);
+                onEDT.execute(() -> apply(request, upscaled, false));
+            }
+
+            long startTime = System.nanoTime();
+            BufferedImage dest = snapshot.transformImage(src);
+            long millis = (System.nanoTime() - startTime) / 1_000_000;
+            lastFullResMillis = millis;
+
+            publish(request, dest, millis);
+        } catch (Throwable e) {
+            onEDT.execute(() -> {
+                if (!closed) {
+                    filter.handleException(e, dr);
+                }
+            });
+        }
+    }
+
+    private void publish(long request, BufferedImage result, long millis) {
+        synchronized (this) {
+            lastResult = result;
+            lastResultRequest = request;
+        }
+        onEDT.execute(() -> {
+            if (apply(request, result, true)) {
+                Messages.showPerformanceMessage(filter.getName(), millis);
+            }
+        });
+    }
+
+    /**
+     * Shows the given result, unless the dialog was closed or a
+     * newer preview was requested in the meantime.
+     * Returns true if the result was shown.
+     */
+    private boolean apply(long request, BufferedImage result, boolean fullRes) {
+        assert calledOnEDT() : threadInfo();
+        if (closed || request != latestRequest || appliedRequest == request) {
+            return false;
+        }
+
+        dr.changePreviewImage(result, filter.getName(), PREVIEWING);
+        if (fullRes) {
+            appliedRequest = request;
+            FilterUtils.setLastFilter(filter);
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the last preview to finish and shows its full-resolution
+     * result. Should be called before the dialog is accepted.
+     */
+    public void finish() {
+        assert calledOnEDT() : threadInfo();
+
+        if (!lastRun.isDone()) {
+            GUIUtils.runWithBusyCursor(busyCursorParent, lastRun::join);
+        }
+
+        BufferedImage result;
+        long resultRequest;
+        synchronized (this) {
+            result = lastResult;
+            resultRequest = lastResultRequest;
+        }
+        if (result != null) {
+            apply(resultRequest, result, true);
+        }
+        close();
+    }
+
+    /**
+     * Discards the running and the queued previews.
+     */
+    public void cancel() {
+        assert calledOnEDT() : threadInfo();
+
+        latestRequest++; // the queued runs will be skipped
+        close();
+    }
+
+    private void close() {
+        closed = true;
+        pyramid = null;
+        synchronized (this) {
+            lastResult = null;
+        }
+    }
+}
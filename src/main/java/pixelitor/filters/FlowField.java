@@ -25,29 +25,25 @@ import pixelitor.colors.Colors;
 import pixelitor.filters.gui.*;
 import pixelitor.particles.Modifier;
 import pixelitor.particles.ParticleSystem;
-import pixelitor.particles.SmoothPathParticle;
+import pixelitor.particles.Particles;
+import pixelitor.particles.Spawner;
 import pixelitor.utils.*;
 
 import java.awt.*;
-import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
-import java.util.concurrent.Future;
-import java.util.function.Supplier;
+import java.util.SplittableRandom;
 
 import static net.jafama.FastMath.*;
 import static pixelitor.filters.gui.ColorParam.TransparencyPolicy.FREE_TRANSPARENCY;
 import static pixelitor.filters.gui.RandomizePolicy.IGNORE_RANDOMIZE;
 import static pixelitor.gui.utils.SliderSpinner.TextPosition.BORDER;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
 
 public class FlowField extends ParametrizedFilter {
     public static final String NAME = "Flow Field";
 
-    private static final boolean IS_MULTI_THREADED = true;
     private static final int PAD = 100;
-    private static final int PARTICLES_PER_GROUP = 100;
     private static final float QUALITY = 0.8f;
     private static final float SMOOTHNESS = 1224.3649f;
     private static final float LIMITING_ITERATIONS = 100;
@@ -90,47 +86,11 @@ public class FlowField extends ParametrizedFilter {
         return out;
     }
 
-    private enum ForceMode implements Modifier<FlowFieldParticle> {
-        FORCE_MODE_VELOCITY("No Mass") {
-            @Override
-            public void modify(FlowFieldParticle particle) {
-                particle.pos.setLocation(
-                    particle.pos.getX() + particle.delta.x,
-                    particle.pos.getY() + particle.delta.y
-                );
-            }
-        },
-        FORCE_MODE_ACCELERATION("Uniform Mass") {
-            @Override
-            public void modify(FlowFieldParticle particle) {
-                particle.vel.add(particle.delta);
-                particle.pos.setLocation(
-                    particle.pos.getX() + particle.vel.x,
-                    particle.pos.getY() + particle.vel.y
-                );
-            }
-        },
-        FORCE_MODE_JOLT("Jolt") {
-            @Override
-            public void modify(FlowFieldParticle particle) {
-                particle.acc.add(particle.delta);
-                particle.vel.add(particle.acc);
-                particle.pos.setLocation(
-                    particle.pos.getX() + particle.vel.x,
-                    particle.pos.getY() + particle.vel.y
-                );
-            }
-        },
-        FORCE_MODE_VELOCITY_AND_NOISE_BASED_RANDOMNESS("Thicken") {
-            @Override
-            public void modify(FlowFieldParticle particle) {
-                particle.delta.add(Noise.noise2((float) particle.delta.x, (float) particle.delta.y) * 10);
-                particle.pos.setLocation(
-                    particle.pos.getX() + particle.delta.x,
-                    particle.pos.getY() + particle.delta.y
-                );
-            }
-        };
+    private enum ForceMode {
+        FORCE_MODE_VELOCITY("No Mass"),
+        FORCE_MODE_ACCELERATION("Uniform Mass"),
+        FORCE_MODE_JOLT("Jolt"),
+        FORCE_MODE_VELOCITY_AND_NOISE_BASED_RANDOMNESS("Thicken");
 
         final String name;
 
@@ -144,11 +104,11 @@ public class FlowField extends ParametrizedFilter {
         }
     }
 
-    private enum ColorSource implements Modifier<FlowFieldParticle> {
+    private enum ColorSource {
         DEFAULT("Default", false) {
             @Override
-            Color getColor(FlowFieldParticle particle) {
-                return particle.startingColor;
+            int getColor(Particles particles, int i, FlowFieldMeta meta) {
+                return particles.color[i];
             }
         },
         SOURCE_IMAGE("Source Image", true) {
@@ -159,26 +119,26 @@ public class FlowField extends ParametrizedFilter {
             }
 
             @Override
-            Color getColor(FlowFieldParticle particle) {
-                return particle.meta.fieldColors[particle.getFieldX()][particle.getFieldY()];
+            int getColor(Particles particles, int i, FlowFieldMeta meta) {
+                return meta.fieldColors[meta.getFieldIndex(particles.x[i], particles.y[i])];
             }
         },
         RGB("RGB", false) {
             @Override
-            Color getColor(FlowFieldParticle particle) {
-                return rgbColorFromAcceleration(particle.delta, particle.startingColor);
+            int getColor(Particles particles, int i, FlowFieldMeta meta) {
+                return rgbColorFromAcceleration(particles.fx[i], particles.fy[i], particles.color[i]);
             }
         },
         HSB_Cycle("HSB Cycle", false) {
             @Override
-            Color getColor(FlowFieldParticle particle) {
-                return hsbColorFromAcceleration(particle.delta, particle.startingColor, 6);
+            int getColor(Particles particles, int i, FlowFieldMeta meta) {
+                return hsbColorFromAcceleration(particles.fx[i], particles.fy[i], particles.color[i], 6);
             }
         },
         Warm("Warm", false) {
             @Override
-            Color getColor(FlowFieldParticle particle) {
-                return hsbColorFromAcceleration(particle.delta, particle.startingColor, 400);
+            int getColor(Particles particles, int i, FlowFieldMeta meta) {
+                return hsbColorFromAcceleration(particles.fx[i], particles.fy[i], particles.color[i], 400);
             }
         };
 
@@ -193,12 +153,11 @@ public class FlowField extends ParametrizedFilter {
         public void initializeColorField(FlowFieldMeta meta) {
         }
 
-        @Override
-        public void modify(FlowFieldParticle particle) {
-            particle.color = getColor(particle);
-        }
-
-        abstract Color getColor(FlowFieldParticle particle);
+        /**
+         * Returns the color of the path of the given particle
+         * based on the last field force acting on it.
+         */
+        abstract int getColor(Particles particles, int i, FlowFieldMeta meta);
 
         @Override
         public String toString() {
@@ -222,6 +181,7 @@ public class FlowField extends ParametrizedFilter {
     private final EnumParam<ForceMode> forceModeParam = new EnumParam<>("Force Mode", ForceMode.class);
     private final RangeParam maxVelocityParam = new RangeParam("Maximum Velocity", 1, 4000, 5000);
     private final RangeParam iterationsParam = new RangeParam("Path Length", 1, 100, 100, true, BORDER, IGNORE_RANDOMIZE);
+    private final BooleanParam reproducibleParam = new BooleanParam("Reproducible Output", true, IGNORE_RANDOMIZE);
 
     private final RangeParam particlesParam = new RangeParam("Particle Count", 1, 1000, 20000, true, BORDER, IGNORE_RANDOMIZE);
     private final StrokeParam strokeParam = new StrokeParam("Stroke");
@@ -245,7 +205,7 @@ public class FlowField extends ParametrizedFilter {
         DialogParam noiseAdjustmentParam = new DialogParam("Noise", zoomParam, varianceParam, turbulenceParam, windParam);
         noiseParam.setupEnableOtherIfNotZero(noiseAdjustmentParam);
 
-        DialogParam advancedParam = new DialogParam("Advanced", forceModeParam, maxVelocityParam, iterationsParam);
+        DialogParam advancedParam = new DialogParam("Advanced", forceModeParam, maxVelocityParam, iterationsParam, reproducibleParam);
 
         setParams(
             forceMixerParam,
@@ -280,6 +240,7 @@ public class FlowField extends ParametrizedFilter {
         forceModeParam.setToolTip("Advanced control over how forces act.");
         maxVelocityParam.setToolTip("Adjust maximum velocity to make particles look more organised.");
         iterationsParam.setToolTip("Make individual particles cover longer paths.");
+        reproducibleParam.setToolTip("Give the same result for the same settings on any number of processor cores, at the cost of some speed.");
 
         particlesParam.setToolTip("Adjust the number of particles flowing in the field.");
         strokeParam.setToolTip("Adjust how particles are drawn - their width, shape, joins...");
@@ -305,6 +266,7 @@ public class FlowField extends ParametrizedFilter {
         ForceMode forceMode = forceModeParam.getSelected();
         float maximumVelocitySq = maxVelocityParam.getValue() * maxVelocityParam.getValue() / 10000.0f;
         int iterationCount = iterationsParam.getValue() + 1;
+        boolean reproducible = reproducibleParam.isChecked();
 
         int particleCount = particlesParam.getValue();
         Stroke stroke = strokeParam.createStroke();
@@ -342,48 +304,41 @@ public class FlowField extends ParametrizedFilter {
         float variantPI = (float) FastMath.PI * variance;
         float initTheta = (float) (r.nextFloat() * 2 * FastMath.PI);
 
-        int groupCount = IS_MULTI_THREADED ? ceilToInt(particleCount / (double) PARTICLES_PER_GROUP) : 1;
-        var pt = new StatusBarProgressTracker(NAME, groupCount);
-
-        Graphics2D g2 = dest.createGraphics();
         boolean useColorField = colorRandomness != 0 || colorSource.requiresColorField();
         boolean randomizeRadius = radiusRandomness != 0;
 
         ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-        g2.setStroke(stroke);
+        Graphics2D g2 = dest.createGraphics();
         Colors.fillWith(bgColor, g2, imgWidth, imgHeight);
-        g2.setColor(particleColor);
-        if (antialias) {
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        }
-        Graphics2D[] graphicsCopies = new Graphics2D[groupCount];
-        for (int i = 0; i < groupCount; i++) {
-            graphicsCopies[i] = (Graphics2D) g2.create();
-        }
+        g2.dispose();
 
-        Color[][] fieldColors = getIf(useColorField, () -> new Color[fieldWidth][fieldHeight]);
-        Stroke[] strokes = getIf(randomizeRadius, () -> new Stroke[100]);
-        Vector2D[][] fieldAccelerations = new Vector2D[fieldWidth][fieldHeight];
-        int[] sourcePixels = getIf(useColorField | inheritSpawnPoints, () -> ImageUtils.getPixelsAsArray(src));
+        int[] fieldColors = useColorField ? new int[fieldWidth * fieldHeight] : null;
+        Stroke[] strokes = {stroke};
+        float[] fieldForcesX = new float[fieldWidth * fieldHeight];
+        float[] fieldForcesY = new float[fieldWidth * fieldHeight];
+        int[] sourcePixels = useColorField | inheritSpawnPoints ? ImageUtils.getPixelsAsArray(src) : null;
 
         if (randomizeRadius) {
-            fill(strokes, strokes.length, () -> strokeParam.createStrokeWithRandomWidth(r, radiusRandomness));
+            strokes = new Stroke[100];
+            for (int i = 0; i < strokes.length; i++) {
+                strokes[i] = strokeParam.createStrokeWithRandomWidth(r, radiusRandomness);
+            }
         }
 
-        initializeAcceleration(multiplierNoise, multiplierSink, multiplierRevolve, zoom, turbulence, fieldWidth, fieldHeight, noise, center, variantPI, initTheta, fieldAccelerations);
+        initializeAcceleration(multiplierNoise, multiplierSink, multiplierRevolve, zoom, turbulence, fieldWidth, fieldHeight, noise, center, variantPI, initTheta, fieldForcesX, fieldForcesY);
 
-        List<Point2D> spawns = null;
+        float[] spawns = null;
         if (inheritSpawnPoints) {
             spawns = initializeSpawnPoints(imgWidth, fieldDensity, sourcePixels);
         }
 
         GoldenRatio goldenRatio = new GoldenRatio(r, particleColor, colorRandomness);
-        FlowFieldMeta meta = new FlowFieldMeta(fieldWidth - 1, fieldHeight - 1, fieldDensity, bounds, tolerance, maximumVelocitySq, zFactor, zoom, turbulence, noise, multiplierNoise, initTheta, variantPI, forceMode, goldenRatio, fieldColors, imgWidth, sourcePixels);
+        FlowFieldMeta meta = new FlowFieldMeta(fieldWidth, fieldHeight, fieldDensity, maximumVelocitySq, zFactor, zoom, turbulence, noise, multiplierNoise, initTheta, variantPI, forceMode, goldenRatio, fieldColors, fieldForcesX, fieldForcesY, imgWidth, sourcePixels);
 
         if (useColorField) {
             if (colorRandomness != 0) {
-                fill(fieldColors, fieldWidth, fieldHeight, goldenRatio::next);
+                fill(fieldColors, fieldWidth, fieldHeight, (x, y) -> goldenRatio.next());
             }
 
             if (colorSource.requiresColorField) {
@@ -391,27 +346,23 @@ public class FlowField extends ParametrizedFilter {
             }
         }
 
-        PositionRandomizer positionRandomizer = new PositionRandomizer(bounds.x, bounds.y, bounds.width, bounds.height, spawns, r);
-        ParticleInitializer particleInitializer = new ParticleInitializer(particleColor, useColorField, fieldColors);
-        ForceModeUpdater forceModeUpdater = new ForceModeUpdater(forceMode, fieldAccelerations);
-
-        ParticleSystem<FlowFieldParticle> particleSystem = ParticleSystem.<FlowFieldParticle>createSystem(particleCount)
-            .setParticleCreator(() -> new FlowFieldParticle(graphicsCopies, randomizeRadius ? strokes[
-                r.nextInt(strokes.length)] : stroke, meta))
-            .addModifier(positionRandomizer)
-            .addModifier(particleInitializer)
-            .addUpdater(forceModeUpdater)
-            .addUpdater(colorSource)
+        ParticleSystem particleSystem = ParticleSystem.builder(particleCount, iterationCount)
+            .addSpawner(createPositionRandomizer(bounds, spawns))
+            .addSpawner(new ParticleInitializer(particleColor.getRGB(), useColorField, meta))
+            .addModifier(new FlowFieldUpdater(meta))
+            .pathColor((particles, i) -> colorSource.getColor(particles, i, meta))
+            .strokes(strokes)
+            .antialias(antialias)
+            .bounds(bounds)
+            .pathTolerance(tolerance)
+            .pathScale(1.0f / fieldDensity)
+            .seed(r.nextLong())
+            .reproducible(reproducible)
             .build();
 
-        Future<?>[] futures = particleSystem.iterate(iterationCount, groupCount);
-        ThreadPool.waitFor(futures, pt);
-        particleSystem.flush();
+        var pt = new StatusBarProgressTracker(NAME, particleSystem.getNumWorkUnits());
+        particleSystem.render(dest, pt);
         pt.finished();
-        for (Graphics2D gcmn : graphicsCopies) {
-            gcmn.dispose();
-        }
-        g2.dispose();
 
         return dest;
     }
@@ -421,62 +372,61 @@ public class FlowField extends ParametrizedFilter {
         return false;
     }
 
-    private static void initializeAcceleration(float multiplierNoise, float multiplierSink, float multiplierRevolve, float zoom, int turbulence, int fieldWidth, int fieldHeight, OpenSimplex2F noise, Vector2D center, float variantPI, float initTheta, Vector2D[][] fieldAccelerations) {
-        Vector2D position = new Vector2D();
-        Vector2D forceDueToNoise = new Vector2D();
-        Vector2D forceDueToSink = new Vector2D();
-        Vector2D forceDueToRevolution = new Vector2D();
+    private static void initializeAcceleration(float multiplierNoise, float multiplierSink, float multiplierRevolve, float zoom, int turbulence, int fieldWidth, int fieldHeight, OpenSimplex2F noise, Vector2D center, float variantPI, float initTheta, float[] fieldForcesX, float[] fieldForcesY) {
+        ThreadPool.parallelRows(fieldHeight, (startRow, endRow) -> {
+            Vector2D position = new Vector2D();
+            Vector2D forceDueToNoise = new Vector2D();
+            Vector2D forceDueToSink = new Vector2D();
+            Vector2D forceDueToRevolution = new Vector2D();
 
-        for (int i = 0; i < fieldWidth; i++) {
-            for (int j = 0; j < fieldHeight; j++) {
+            for (int j = startRow; j < endRow; j++) {
+                for (int i = 0; i < fieldWidth; i++) {
 
-                position.set(i, j);
+                    position.set(i, j);
 
-                createSinkForce(position, center, multiplierSink, forceDueToSink);
+                    createSinkForce(position, center, multiplierSink, forceDueToSink);
 
-                createRevolveForce(position, center, multiplierRevolve, forceDueToRevolution);
+                    createRevolveForce(position, center, multiplierRevolve, forceDueToRevolution);
 
-                createNoiseForce(multiplierNoise, initTheta, variantPI, position.x / zoom,
-                    position.y / zoom, 0, turbulence, noise, forceDueToNoise);
+                    createNoiseForce(multiplierNoise, initTheta, variantPI, position.x / zoom,
+                        position.y / zoom, 0, turbulence, noise, forceDueToNoise);
 
-                fieldAccelerations[i][j] = Vector2D.add(forceDueToRevolution, forceDueToSink, forceDueToNoise);
+                    int index = i + j * fieldWidth;
+                    fieldForcesX[index] = (float) (forceDueToRevolution.x + forceDueToSink.x + forceDueToNoise.x);
+                    fieldForcesY[index] = (float) (forceDueToRevolution.y + forceDueToSink.y + forceDueToNoise.y);
+                }
             }
-        }
+        }, NULL_TRACKER);
     }
 
-    private static List<Point2D> initializeSpawnPoints(int imgWidth, float fieldDensity, int[] sourcePixels) {
-        List<Point2D> spawns = new ArrayList<>();
-        for (int i = 0; i < sourcePixels.length; i++) {
+    /**
+     * Returns the field coordinates of the non-transparent
+     * source pixels as consecutive x, y pairs.
+     */
+    private static float[] initializeSpawnPoints(int imgWidth, float fieldDensity, int[] sourcePixels) {
+        int numSpawns = 0;
+        for (int pixel : sourcePixels) {
+            if ((pixel & 0xFF000000) != 0) {
+                numSpawns++;
+            }
+        }
+
+        float[] spawns = new float[2 * numSpawns];
+        for (int i = 0, k = 0; i < sourcePixels.length; i++) {
             if ((sourcePixels[i] & 0xFF000000) != 0) {
                 int y = i / imgWidth;
                 int x = i - y * imgWidth;
-                spawns.add(new Point(x *= fieldDensity, y *= fieldDensity));
+                spawns[k++] = (int) (x * fieldDensity);
+                spawns[k++] = (int) (y * fieldDensity);
             }
         }
         return spawns;
     }
 
-    private static <T> T getIf(boolean value, Supplier<T> supplier) {
-        if (value) {
-            return supplier.get();
-        }
-        return null;
-    }
-
-    public static <T> void fill(T[] array, int w, Supplier<T> value) {
-        for (int i = 0; i < w; i++) {
-            array[i] = value.get();
-        }
-    }
-
-    public static <T> void fill(T[][] array, int w, int h, Supplier<T> value) {
-        fill(array, w, h, (x, y) -> value.get());
-    }
-
-    public static <T> void fill(T[][] array, int w, int h, Coord2DFunction<T> value) {
+    private static void fill(int[] array, int w, int h, Coord2DFunction value) {
         for (int i = 0; i < w; i++) {
             for (int j = 0; j < h; j++) {
-                array[i][j] = value.get(i, j);
+                array[i + j * w] = value.get(i, j).getRGB();
             }
         }
     }
@@ -488,28 +438,36 @@ public class FlowField extends ParametrizedFilter {
         return new Color(sourcePixels[i], true);
     }
 
-    private static Color rgbColorFromAcceleration(Vector2D acc, Color particleColor) {
-        double ra = sigmoidFit(acc.x) / 255, rb = sigmoidFit(acc.y) / 255;
-        return new Color(
-            (float) ra * particleColor.getRed(),
-            (float) rb * particleColor.getGreen(),
-            (float) ra * particleColor.getBlue(),
-            (float) particleColor.getAlpha() / 255.0f);
+    private static int rgbColorFromAcceleration(float accX, float accY, int particleColor) {
+        double ra = sigmoidFit(accX) / 255, rb = sigmoidFit(accY) / 255;
+        return toARGB(
+            (float) ra * ((particleColor >> 16) & 0xFF),
+            (float) rb * ((particleColor >> 8) & 0xFF),
+            (float) ra * (particleColor & 0xFF),
+            (particleColor >>> 24) / 255.0f);
     }
 
-    private static Color hsbColorFromAcceleration(Vector2D acc, Color particleColor, float dividend) {
-        int hsbColor = Color.HSBtoRGB((float) (acc.x + acc.y) / dividend, 0.8f, 1.0f);
+    private static int hsbColorFromAcceleration(float accX, float accY, int particleColor, float dividend) {
+        int hsbColor = Color.HSBtoRGB((accX + accY) / dividend, 0.8f, 1.0f);
         int r = (hsbColor >> 16) & 0xFF;
         int g = (hsbColor >> 8) & 0xFF;
         int b = hsbColor & 0xFF;
-        int a = particleColor.getAlpha();
-        return new Color(
-            r * particleColor.getRed() / 65025.0f,
-            g * particleColor.getGreen() / 65025.0f,
-            b * particleColor.getBlue() / 65025.0f,
+        int a = particleColor >>> 24;
+        return toARGB(
+            r * ((particleColor >> 16) & 0xFF) / 65025.0f,
+            g * ((particleColor >> 8) & 0xFF) / 65025.0f,
+            b * (particleColor & 0xFF) / 65025.0f,
             a / 255.0f);
     }
 
+    // the same rounding as in the float constructor of Color
+    private static int toARGB(float r, float g, float b, float a) {
+        return (int) (a * 255 + 0.5f) << 24
+            | (int) (r * 255 + 0.5f) << 16
+            | (int) (g * 255 + 0.5f) << 8
+            | (int) (b * 255 + 0.5f);
+    }
+
     private static double sigmoidFit(double v) {
         return (1 + sigmoid(v)) / 2;
     }
@@ -518,133 +476,120 @@ public class FlowField extends ParametrizedFilter {
         return 1 / (1 + FastMath.exp(-v));
     }
 
-    public interface Coord2DFunction<T> {
-        T get(int x, int y);
+    private interface Coord2DFunction {
+        Color get(int x, int y);
     }
 
-    private static class PositionRandomizer implements Modifier<FlowFieldParticle> {
-        final Modifier<FlowFieldParticle> modifier;
-
-        public PositionRandomizer(int x, int y, int width, int height, List<Point2D> spawnPoints, Random random) {
-            if (spawnPoints == null || spawnPoints.size() <= 0) {
-                modifier = new RandomizePosition<>(x, y, width, height, random);
-            } else {
-                int size = spawnPoints.size();
-                modifier = particle -> particle.pos.setLocation(spawnPoints.get(random.nextInt(size)));
-            }
-        }
-
-        @Override
-        public void modify(FlowFieldParticle particle) {
-            modifier.modify(particle);
-        }
-    }
-
-    private static record ParticleInitializer(Color particleColor,
-                                              boolean randomizeColor,
-                                              Color[][] fieldColors) implements Modifier<FlowFieldParticle> {
-
-        @Override
-        public void modify(FlowFieldParticle particle) {
-            particle.addPoint(particle.pos);
-            int fieldX = particle.getFieldX();
-            int fieldY = particle.getFieldY();
-            particle.startingColor = particle.color = randomizeColor ? fieldColors[fieldX][fieldY] : particleColor;
+    private static Spawner createPositionRandomizer(Rectangle bounds, float[] spawnPoints) {
+        if (spawnPoints == null || spawnPoints.length == 0) {
+            return new Spawner.RandomPosition(bounds.x, bounds.y, bounds.width, bounds.height);
         }
+        int numSpawnPoints = spawnPoints.length / 2;
+        return (particles, i, random) -> {
+            int index = 2 * random.nextInt(numSpawnPoints);
+            particles.x[i] = spawnPoints[index];
+            particles.y[i] = spawnPoints[index + 1];
+        };
     }
 
-    private static record ForceModeUpdater(ForceMode forceMode,
-                                           Vector2D[][] fieldAccelerations) implements Modifier<FlowFieldParticle> {
+    private record ParticleInitializer(int particleColor,
+                                       boolean randomizeColor,
+                                       FlowFieldMeta meta) implements Spawner {
         @Override
-        public void modify(FlowFieldParticle particle) {
-            particle.delta.set(fieldAccelerations[particle.getFieldX()][particle.getFieldY()]);
+        public void spawn(Particles particles, int i, SplittableRandom random) {
+            particles.color[i] = randomizeColor
+                ? meta.fieldColors[meta.getFieldIndex(particles.x[i], particles.y[i])]
+                : particleColor;
         }
     }
 
-    public static class FlowFieldParticle extends SmoothPathParticle {
-        public final Vector2D delta = new Vector2D();
-        public final Vector2D acc = new Vector2D();
-        public Color startingColor;
-
-        private final Stroke stroke;
-        private final FlowFieldMeta meta;
-
-        public FlowFieldParticle(Graphics2D[] gc, Stroke stroke, FlowFieldMeta meta) {
-            super(gc);
-            this.vel = new Vector2D();
-            this.pos = new Point2D.Float();
-            this.lastPos = new Point2D.Float();
-
-            this.stroke = stroke;
-            this.meta = meta;
-        }
-
+    /**
+     * Moves the particles according to the field forces. The particles keep
+     * their velocity and acceleration when they are reborn, as before.
+     */
+    private record FlowFieldUpdater(FlowFieldMeta meta) implements Modifier {
         @Override
-        public void addPoint(Point2D point) {
-            lastPos.setLocation(point);
-            super.addPoint(Geometry.deScale(Geometry.newFrom(point), meta.fieldDensity));
-        }
-
-        @Override
-        public void flush() {
-            getGraphics().setStroke(stroke);
-            super.flush();
-        }
-
-        @Override
-        public void reset() {
-            lastPos.setLocation(pos);
-        }
-
-        @Override
-        public boolean isDead() {
-            return !meta.bounds.contains(pos);
-        }
-
-        @Override
-        public void update() {
-            Vector2D oldVel = new Vector2D(vel.x, vel.y);
-
-            if (meta.zFactor != 0) {
-                double sampleX = pos.getX() / meta.zoom;
-                double sampleY = pos.getY() / meta.zoom;
-                double sampleZ = meta.zFactor * iterationIndex;
-                Vector2D noiseDelta = new Vector2D();
-                createNoiseForce(meta.multiplierNoise, meta.initTheta, meta.variantPI, sampleX, sampleY, sampleZ, meta.turbulence, meta.noise, noiseDelta);
-                delta.add(noiseDelta);
-            }
-
-            meta.forceMode.modify(this);
-
-            if (vel.lengthSq() > meta.maximumVelocitySq) {
-                vel.set(oldVel);
-            }
-
-            if (positionChangeIsBigEnough()) {
-                addPoint(Geometry.newFrom(pos));
+        public void modify(Particles particles, int iteration) {
+            float[] x = particles.x;
+            float[] y = particles.y;
+            float[] vx = particles.vx;
+            float[] vy = particles.vy;
+            float[] ax = particles.ax;
+            float[] ay = particles.ay;
+            float[] fx = particles.fx;
+            float[] fy = particles.fy;
+            float[] fieldForcesX = meta.fieldForcesX;
+            float[] fieldForcesY = meta.fieldForcesY;
+            ForceMode forceMode = meta.forceMode;
+            boolean wind = meta.zFactor != 0;
+
+            for (int i = 0, size = particles.size(); i < size; i++) {
+                float px = x[i];
+                float py = y[i];
+
+                // the field force is also used for the coloring
+                int fieldIndex = meta.getFieldIndex(px, py);
+                float dx = fieldForcesX[fieldIndex];
+                float dy = fieldForcesY[fieldIndex];
+                fx[i] = dx;
+                fy[i] = dy;
+
+                if (wind) {
+                    double value = meta.initTheta + meta.noise.turbulence3(
+                        px / meta.zoom, py / meta.zoom, meta.zFactor * particles.getIndex(i),
+                        meta.turbulence) * meta.variantPI;
+                    dx += (float) (meta.multiplierNoise * cos(value));
+                    dy += (float) (meta.multiplierNoise * sin(value));
+                }
+
+                float oldVx = vx[i];
+                float oldVy = vy[i];
+                switch (forceMode) {
+                    case FORCE_MODE_VELOCITY -> {
+                        px += dx;
+                        py += dy;
+                    }
+                    case FORCE_MODE_ACCELERATION -> {
+                        vx[i] += dx;
+                        vy[i] += dy;
+                        px += vx[i];
+                        py += vy[i];
+                    }
+                    case FORCE_MODE_JOLT -> {
+                        ax[i] += dx;
+                        ay[i] += dy;
+                        vx[i] += ax[i];
+                        vy[i] += ay[i];
+                        px += vx[i];
+                        py += vy[i];
+                    }
+                    case FORCE_MODE_VELOCITY_AND_NOISE_BASED_RANDOMNESS -> {
+                        float n = Noise.noise2(dx, dy) * 10;
+                        px += dx + n;
+                        py += dy + n;
+                    }
+                }
+                x[i] = px;
+                y[i] = py;
+
+                if (vx[i] * vx[i] + vy[i] * vy[i] > meta.maximumVelocitySq) {
+                    vx[i] = oldVx;
+                    vy[i] = oldVy;
+                }
             }
         }
-
-        private boolean positionChangeIsBigEnough() {
-            double xChange = abs(lastPos.getX() - pos.getX());
-            double yChange = abs(lastPos.getY() - pos.getY());
-            return xChange > meta.tolerance || yChange > meta.tolerance;
-        }
-
-        public int getFieldX() {
-            return FastMath.toRange(0, meta.fieldWidth, (int) pos.getX());
-        }
-
-        public int getFieldY() {
-            return FastMath.toRange(0, meta.fieldHeight, (int) pos.getY());
-        }
     }
 
-    private record FlowFieldMeta(int fieldWidth, int fieldHeight, float fieldDensity, Rectangle bounds,
-                                 double tolerance,
+    private record FlowFieldMeta(int fieldWidth, int fieldHeight, float fieldDensity,
                                  float maximumVelocitySq, double zFactor, double zoom, int turbulence,
                                  OpenSimplex2F noise, float multiplierNoise, float initTheta, float variantPI,
                                  ForceMode forceMode, GoldenRatio goldenRatio,
-                                 Color[][] fieldColors, int imgWidth, int[] sourcePixels) {
+                                 int[] fieldColors, float[] fieldForcesX, float[] fieldForcesY,
+                                 int imgWidth, int[] sourcePixels) {
+        int getFieldIndex(float x, float y) {
+            int fieldX = FastMath.toRange(0, fieldWidth - 1, (int) x);
+            int fieldY = FastMath.toRange(0, fieldHeight - 1, (int) y);
+            return fieldX + fieldY * fieldWidth;
+        }
     }
 }
@@ -16,9 +16,9 @@
  */
 package pixelitor.filters;
 
-import com.jhlabs.image.PixelUtils;
 import pixelitor.filters.util.FilterPalette;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.simd.PixelKernels;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
@@ -75,64 +75,14 @@ public class Invert extends Filter {
         int[] srcData = ImageUtils.getPixelsAsArray(src);
         int[] destData = ImageUtils.getPixelsAsArray(dest);
 
-        boolean simple = !src.isAlphaPremultiplied();
-
-        for (int i = 0; i < destData.length; i++) {
-            int srcPixel = srcData[i];
-//            int alpha = srcPixel & 0xFF000000;
-            int a = (srcPixel >>> 24) & 0xFF;
-
-            if (a == 255 || simple) {
-                destData[i] = srcPixel ^ 0x00FFFFFF;  // invert the r, g, b values
-            } else if (a == 0) {
-                destData[i] = 0;
-            } else {
-                int r = (srcPixel >>> 16) & 0xFF;
-                int g = (srcPixel >>> 8) & 0xFF;
-                int b = srcPixel & 0xFF;
-
-                // unpremultiply
-                float f = 255.0f / a;
-                int ur = (int) (r * f);
-                int ug = (int) (g * f);
-                int ub = (int) (b * f);
-
-                if (ur > 255) {
-                    ur = 255;
-                }
-                if (ug > 255) {
-                    ug = 255;
-                }
-                if (ub > 255) {
-                    ub = 255;
-                }
-
-                // invert
-                ur = 255 - ur;
-                ug = 255 - ug;
-                ub = 255 - ub;
-
-                // premultiply
-                float f2 = a * (1.0f / 255.0f);
-                r = (int) (ur * f2);
-                g = (int) (ug * f2);
-                b = (int) (ub * f2);
-
-                r = PixelUtils.clamp(r);
-                g = PixelUtils.clamp(g);
-                b = PixelUtils.clamp(b);
-
-                destData[i] = a << 24 | r << 16 | g << 8 | b;
-            }
-        }
+        PixelKernels.invert(srcData, destData, 0, destData.length,
+            src.isAlphaPremultiplied());
         return dest;
     }
 
     public static void quickInvert(BufferedImage dest) {
         int[] pixels = ImageUtils.getPixelsAsArray(dest);
-        for (int i = 0, pixelsLength = pixels.length; i < pixelsLength; i++) {
-            pixels[i] ^= 0x00FFFFFF;
-        }
+        PixelKernels.invert(pixels, pixels, 0, pixels.length, false);
     }
 
     @Override
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import pixelitor.filters.gui.IntChoiceParam;
+import pixelitor.filters.gui.IntChoiceParam.Item;
+import pixelitor.filters.gui.RangeParam;
+import pixelitor.filters.impl.RankFilter;
+import pixelitor.gui.GUIText;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A median filter with a large radius, which can also
+ * calculate the minimum, maximum or any other percentile
+ * of the neighborhood, separately for each channel.
+ */
+public class Median extends ParametrizedFilter {
+    public static final String NAME = "Median";
+
+    private static final int RANK_MEDIAN = 50;
+    private static final int RANK_MINIMUM = 0;
+    private static final int RANK_MAXIMUM = 100;
+    private static final int RANK_PERCENTILE = -1;
+
+    private final RangeParam radius = new RangeParam(GUIText.RADIUS, 1, 2, 50);
+    private final IntChoiceParam rank = new IntChoiceParam("Rank", new Item[]{
+        new Item("Median", RANK_MEDIAN),
+        new Item("Minimum", RANK_MINIMUM),
+        new Item("Maximum", RANK_MAXIMUM),
+        new Item("Percentile", RANK_PERCENTILE),
+    });
+    private final RangeParam percentile = new RangeParam("Percentile", 0, 50, 100);
+
+    public Median() {
+        super(true);
+
+        rank.setupEnableOtherIf(percentile,
+            item -> item.getValue() == RANK_PERCENTILE);
+
+        setParams(radius, rank, percentile);
+    }
+
+    @Override
+    public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
+        var filter = new RankFilter(NAME);
+        filter.setRadius(radius.getValue());
+
+        int selectedRank = rank.getValue();
+        if (selectedRank == RANK_PERCENTILE) {
+            filter.setPercentile(percentile.getValue());
+        } else {
+            filter.setPercentile(selectedRank);
+        }
+
+        return filter.filter(src, dest);
+    }
+}
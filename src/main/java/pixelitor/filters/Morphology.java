@@ -22,12 +22,11 @@ import pixelitor.filters.gui.IntChoiceParam.Item;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.impl.MorphologyFilter;
 import pixelitor.gui.GUIText;
-import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.image.BufferedImage;
 
-import static pixelitor.filters.impl.MorphologyFilter.OP_DILATE;
-import static pixelitor.filters.impl.MorphologyFilter.OP_ERODE;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static pixelitor.filters.impl.MorphologyFilter.*;
 
 /**
  * A morphology filter
@@ -35,19 +34,20 @@ import static pixelitor.filters.impl.MorphologyFilter.OP_ERODE;
 public class Morphology extends ParametrizedFilter {
     public static final String NAME = "Morphology";
 
-    private static final int OP_OPEN = 10;
-    private static final int OP_CLOSE = 11;
-
-    private final RangeParam radius = new RangeParam(GUIText.RADIUS, 1, 1, 21);
+    private final RangeParam radius = new RangeParam(GUIText.RADIUS, 1, 1, 100);
     private final IntChoiceParam kernel = new IntChoiceParam("Kernel Shape", new Item[]{
-        new Item("Diamond", MorphologyFilter.KERNEL_DIAMOND),
-        new Item("Square", MorphologyFilter.KERNEL_SQUARE),
+        new Item("Diamond", KERNEL_DIAMOND),
+        new Item("Square", KERNEL_SQUARE),
+        new Item("Disk", KERNEL_DISK),
     });
     private final IntChoiceParam op = new IntChoiceParam("Operation", new Item[]{
         new Item("Maximum (Dilate)", OP_DILATE),
         new Item("Minimum (Erode)", OP_ERODE),
         new Item("Open (Erode, then Dilate)", OP_OPEN),
         new Item("Close (Dilate, then Erode)", OP_CLOSE),
+        new Item("Gradient (Dilate - Erode)", OP_GRADIENT),
+        new Item("Top Hat (Image - Open)", OP_TOP_HAT),
+        new Item("Black Hat (Close - Image)", OP_BLACK_HAT),
     });
 
     public Morphology() {
@@ -59,37 +59,13 @@ public class Morphology extends ParametrizedFilter {
     @Override
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
         var filter = new MorphologyFilter(NAME);
-
-        int iterations = radius.getValue();
-        filter.setIterations(iterations);
+        filter.setRadius(radius.getValue());
         filter.setKernel(kernel.getValue());
+        filter.setOp(op.getValue());
 
-        int selectedOp = op.getValue();
-
-        if (selectedOp == OP_DILATE || selectedOp == OP_ERODE) {
-            filter.setOp(selectedOp);
-            dest = filter.filter(src, dest);
-        } else {
-            var pt = new StatusBarProgressTracker(NAME, 2 * iterations);
-            filter.setProgressTracker(pt);
-
-            if (selectedOp == OP_OPEN) {
-                filter.setOp(OP_ERODE);
-                dest = filter.filter(src, dest);
-                filter.setOp(OP_DILATE);
-                dest = filter.filter(dest, dest);
-            } else if (selectedOp == OP_CLOSE) {
-                filter.setOp(OP_DILATE);
-                dest = filter.filter(src, dest);
-                filter.setOp(OP_ERODE);
-                dest = filter.filter(dest, dest);
-            } else {
-                throw new IllegalStateException("selectedOp = " + selectedOp);
-            }
-
-            pt.finished();
+        if (src.getType() == TYPE_BYTE_GRAY) { // editing a mask
+            return filter.filterGray(src);
         }
-
-        return dest;
+        return filter.filter(src, dest);
     }
 }
@@ -100,6 +100,33 @@ public abstract class ParametrizedFilter extends FilterWithGUI {
         return paramSet;
     }
 
+    @Override
+    public Filter copyForPreview(Drawable dr) {
+        // unlike copy(), this also works for the filters without user presets
+        ParametrizedFilter copy;
+        try {
+            copy = getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+        copy.setName(getName());
+
+        ParamSet copyParams = copy.getParamSet();
+        copyParams.updateOptions(dr);
+        copyParams.loadPreset(createUserPreset(""));
+        // the presets are rounded and the loaded values are clamped
+        // to the ranges, therefore the exact values are set again
+        copyParams.setState(paramSet.copyState(true), true);
+        return copy;
+    }
+
+    @Override
+    public boolean supportsAsyncPreview() {
+        // the copies would see the changes of the global
+        // state (for example, the reseeded noise) while running
+        return !paramSet.hasGlobalStateAction();
+    }
+
     public void setAffectedAreaShapes(Shape[] affectedAreaShapes) {
         this.affectedAreaShapes = affectedAreaShapes;
     }
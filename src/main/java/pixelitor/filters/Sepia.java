@@ -19,6 +19,8 @@ package pixelitor.filters;
 
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.impl.SepiaFilter;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.simd.PixelKernels;
 
 import java.awt.image.BufferedImage;
 
@@ -40,6 +42,15 @@ public class Sepia extends ParametrizedFilter {
 
     @Override
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
+        if (ImageUtils.hasPackedIntArray(src)) {
+            int[] srcData = ImageUtils.getPixelsAsArray(src);
+            int[] destData = ImageUtils.getPixelsAsArray(dest);
+            assert srcData.length == destData.length;
+
+            PixelKernels.sepia(srcData, destData, 0, srcData.length, intensity.getValue());
+            return dest;
+        }
+
         if (filter == null) {
             filter = new SepiaFilter(NAME);
         }
@@ -274,6 +274,12 @@ public abstract class ShapeFilter extends ParametrizedFilter {
         return !waterMark.isChecked();
     }
 
+    @Override
+    public boolean supportsAsyncPreview() {
+        // the exported shape is set while running
+        return false;
+    }
+
     private void exportSVG() {
         IO.saveSVG(exportedShape, strokeParam, getName() + ".svg");
     }
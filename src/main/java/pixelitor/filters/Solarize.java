@@ -22,6 +22,7 @@ import pixelitor.filters.gui.IntChoiceParam.Item;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.gui.GUIText;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.simd.PixelKernels;
 
 import java.awt.image.BufferedImage;
 
@@ -119,24 +120,8 @@ public class Solarize extends ParametrizedFilter {
             }
         }
 
-        for (int i = 0, destDataLength = destData.length; i < destDataLength; i++) {
-            int rgb = srcData[i];
-
-            int a = (rgb >>> 24) & 0xFF;
-            if (a == 0) {
-                destData[i] = 0;
-            } else {
-                int r = (rgb >>> 16) & 0xFF;
-                int g = (rgb >>> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                int newR = redLookup[r];
-                int newG = greenLookup[g];
-                int newB = blueLookup[b];
-
-                destData[i] = a << 24 | newR << 16 | newG << 8 | newB;
-            }
-        }
+        PixelKernels.lookup(srcData, destData, 0, destData.length,
+            redLookup, greenLookup, blueLookup, false, true);
 
         return dest;
     }
@@ -77,6 +77,12 @@ public class TransformLayer extends ParametrizedFilter {
         return g;
     }
 
+    @Override
+    public boolean supportsDownscaledPreview() {
+        // the transform depends on the layer's translation
+        return false;
+    }
+
     private void fillWithBgColor(BufferedImage dest, Graphics2D g) {
         Colors.fillWith(bgColorParam.getColor(), g, dest.getWidth(), dest.getHeight());
     }
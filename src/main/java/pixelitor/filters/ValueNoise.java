@@ -29,7 +29,6 @@ import pixelitor.utils.StatusBarProgressTracker;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.util.Random;
-import java.util.concurrent.Future;
 
 import static java.awt.Color.BLACK;
 import static java.awt.Color.WHITE;
@@ -100,14 +99,12 @@ public class ValueNoise extends ParametrizedFilter {
         var pt = new StatusBarProgressTracker(NAME, height);
         NoiseInterpolation interp = interpolation.getSelected();
 
-        Future<?>[] futures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> calculateLine(lookupTable, destData,
-                width, frequency, persistence, finalY, interp);
-            futures[y] = ThreadPool.submit(lineTask);
-        }
-        ThreadPool.waitFor(futures, pt);
+        ThreadPool.parallelRows(height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                calculateLine(lookupTable, destData,
+                    width, frequency, persistence, y, interp);
+            }
+        }, pt);
 
         pt.finished();
 
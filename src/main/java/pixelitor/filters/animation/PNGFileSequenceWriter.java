@@ -17,8 +17,10 @@
 
 package pixelitor.filters.animation;
 
-import pixelitor.io.TrackedIO;
+import pixelitor.io.PngCompression;
+import pixelitor.io.PngEncoder;
 import pixelitor.utils.Messages;
+import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -45,7 +47,8 @@ public class PNGFileSequenceWriter implements AnimationWriter {
         fileSequenceNumber++;
         File outputFile = new File(outputDir, fileName);
 
-        TrackedIO.write(image, "PNG", outputFile, null);
+        var tracker = new StatusBarProgressTracker("Writing " + fileName, 100);
+        PngEncoder.write(image, outputFile, PngCompression.CURRENT, tracker);
         numWrittenImages++;
     }
 
@@ -17,30 +17,55 @@
 
 package pixelitor.filters.animation;
 
-import pixelitor.filters.Filter;
+import pixelitor.ThreadPool;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.FilterState;
-import pixelitor.gui.PixelitorWindow;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.layers.Drawable;
+import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 
 import javax.swing.*;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.String.format;
 import static pixelitor.FilterContext.TWEEN_PREVIEW;
 import static pixelitor.utils.Threads.calledOutsideEDT;
 
 /**
- * A SwingWorker for rendering the frames of a tween animation
+ * A SwingWorker for rendering the frames of a tween animation.
+ *
+ * The frames are rendered in a pipeline: the filter runs on several
+ * frames in parallel (each frame with its own copy of the filter),
+ * the results are composited on the EDT in the frame order,
+ * and the finished frames are written on a separate writer thread.
  */
 class RenderTweenFramesTask extends SwingWorker<Void, Void> {
+    // the maximum number of composited frames waiting for the writer
+    private static final int MAX_QUEUED_WRITES = 2;
+
+    // the frames that are rendered in parallel (or already rendered,
+    // but not yet composited) can use at most this fraction of the max memory
+    private static final int RENDER_MEMORY_FRACTION = 8;
+
     private final TweenAnimation animation;
     private final Drawable dr;
     private final ProgressMonitor progressMonitor;
 
+    private BufferedImage src;
+    private boolean parallel;
+    private int numRenderThreads;
+
     public RenderTweenFramesTask(TweenAnimation animation, Drawable dr) {
         this.animation = animation;
         this.dr = dr;
@@ -85,50 +110,97 @@ class RenderTweenFramesTask extends SwingWorker<Void, Void> {
 
         AnimationWriter animationWriter = animation.createAnimationWriter();
 
-        dr.tweenCalculatingStarted();
+        GUIUtils.invokeAndWait(() -> {
+            dr.tweenCalculatingStarted();
+            src = dr.getFilterSourceImage();
+        });
+
+        // the frames started before the current one is composited
+        int maxFramesInFlight = calcMaxFramesInFlight();
+
+        // filters that can't run outside the EDT or can't be
+        // copied (see Filter.copy) are rendered on the EDT, one frame at a time
+        parallel = filter.supportsAsyncPreview() && filter.canHaveUserPresets();
+        numRenderThreads = parallel ? Math.min(maxFramesInFlight,
+            Runtime.getRuntime().availableProcessors()) : 1;
 
-        int numTotalFrames = numFrames;
         boolean pingPong = animation.isPingPong() && numFrames > 2;
-        if (pingPong) {
-            numTotalFrames = 2 * numFrames - 2;
-        }
+        int numTotalFrames = pingPong ? 2 * numFrames - 2 : numFrames;
+
+        ExecutorService renderExecutor = ThreadPool.newDaemonExecutor("Tween Frames", numRenderThreads);
+        ExecutorService writeExecutor = ThreadPool.newDaemonExecutor("Tween Writer", 1);
+
+        // the rendered frames are started this much ahead of the compositing
+        int renderAhead = Math.min(2 * numRenderThreads, maxFramesInFlight - 1);
+        List<CompletableFuture<BufferedImage>> renderedFrames = new ArrayList<>(numFrames);
+
+        // the composited frames that are needed again while animating backwards
+        List<SoftReference<BufferedImage>> pongFrames = new ArrayList<>();
+
+        Semaphore writeSlots = new Semaphore(MAX_QUEUED_WRITES);
+        AtomicInteger numWrittenFrames = new AtomicInteger();
+        CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
 
         boolean canceled = false;
-        for (int frameNr = 0; frameNr < numTotalFrames; frameNr++) {
-            if (isCancelled()) {
-                canceled = true;
-                break;
-            }
-            int percentProgress = (int) ((100.0 * frameNr) / numTotalFrames);
-            setProgress(percentProgress);
-
-            double time;
-            if (frameNr < numFrames) { // ping: normal animation forwards
-                time = ((double) frameNr) / numFrames;
-            } else { // pong: animating backwards
-                // Here the same frames are calculated again.
-                // They could be cached in an array of soft references
-                // or in the case of the file sequence output,
-                // the output files could be copied.
-                // However, "ping-pong" animations are probably uncommon.
-                int effectiveFrame = 2 * (numFrames - 1) - frameNr;
-                time = ((double) effectiveFrame) / numFrames;
-            }
+        try {
+            for (int frameNr = 0; frameNr < numTotalFrames; frameNr++) {
+                if (isCancelled() || lastWrite.isCompletedExceptionally()) {
+                    canceled = true;
+                    break;
+                }
+
+                BufferedImage frame;
+                if (frameNr < numFrames) { // ping: normal animation forwards
+                    int lastToStart = Math.min(frameNr + renderAhead, numFrames - 1);
+                    for (int i = renderedFrames.size(); i <= lastToStart; i++) {
+                        int frameIndex = i;
+                        renderedFrames.add(CompletableFuture.supplyAsync(
+                            () -> renderFilteredFrame(filter, frameIndex), renderExecutor));
+                    }
 
-            try {
-                // first render the frame...
-                BufferedImage image = renderFrame(filter, time);
-
-                // ...then write the file
-                // TODO ideally while writing out the frame,
-                // the rendering of the next frame should be
-                // started on another thread
-                animationWriter.addFrame(image);
-            } catch (Exception e) {
-                canceled = true;
-                Messages.showException(e);
-                break;
+                    BufferedImage filtered = renderedFrames.get(frameNr).join();
+                    // let the memory be reclaimed after compositing
+                    renderedFrames.set(frameNr, null);
+                    frame = compositeFrame(filter, filtered);
+                    if (pingPong) {
+                        pongFrames.add(new SoftReference<>(frame));
+                    }
+                } else { // pong: animating backwards, reusing the frames if possible
+                    int effectiveFrame = 2 * (numFrames - 1) - frameNr;
+                    frame = pongFrames.get(effectiveFrame).get();
+                    if (frame == null) {
+                        frame = compositeFrame(filter, renderFilteredFrame(filter, effectiveFrame));
+                    }
+                }
+
+                writeSlots.acquire();
+                BufferedImage frameToWrite = frame;
+                lastWrite = lastWrite.thenRunAsync(() -> {
+                    try {
+                        animationWriter.addFrame(frameToWrite);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        writeSlots.release();
+                    }
+                    setProgress((int) ((100.0 * numWrittenFrames.incrementAndGet()) / numTotalFrames));
+                }, writeExecutor);
             }
+            lastWrite.join();
+        } catch (Exception e) {
+            canceled = true;
+            Messages.showException(e);
+        } finally {
+            renderedFrames.forEach(f -> {
+                if (f != null) {
+                    f.cancel(false);
+                }
+            });
+            renderExecutor.shutdown();
+
+            // the writer must be idle before it's finished or canceled
+            lastWrite.exceptionally(e -> null).join();
+            writeExecutor.shutdown();
         }
 
         setProgress(100);
@@ -137,26 +209,60 @@ class RenderTweenFramesTask extends SwingWorker<Void, Void> {
         SwingUtilities.invokeLater(() -> finishOnEDT(animationWriter, finalCanceled));
     }
 
-    private BufferedImage renderFrame(ParametrizedFilter filter, double time) {
-        long runCountBefore = Filter.runCount;
+    /**
+     * Returns how many filtered frames can be in memory
+     * at the same time without exceeding the memory budget.
+     */
+    private int calcMaxFramesInFlight() {
+        long frameBytes = 4L * src.getWidth() * src.getHeight();
+        long budget = Runtime.getRuntime().maxMemory() / RENDER_MEMORY_FRACTION;
+        return (int) Math.max(1, Math.min(budget / frameBytes, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Runs the filter with the tweened settings of the given frame
+     * on the source image, without changing the drawable.
+     */
+    private BufferedImage renderFilteredFrame(ParametrizedFilter filter, int frameIndex) {
+        double time = ((double) frameIndex) / animation.getNumFrames();
+        FilterState intermediateState = animation.tween(time);
+
+        if (parallel) {
+            var frameFilter = (ParametrizedFilter) filter.copy();
+            frameFilter.getParamSet().setState(intermediateState, true);
+            return frameFilter.transformImage(src);
+        }
 
         // all sorts of problems can happen
-        // if filters run outside of EDT
-        var busyCursorParent = PixelitorWindow.get();
-        Runnable filterRunTask = () -> {
-            FilterState intermediateState = animation.tween(time);
+        // if these filters run outside of EDT
+        BufferedImage[] result = new BufferedImage[1];
+        GUIUtils.invokeAndWait(() -> {
             filter.getParamSet().setState(intermediateState, true);
-            filter.startOn(dr, TWEEN_PREVIEW, busyCursorParent);
-        };
-        GUIUtils.invokeAndWait(filterRunTask);
-
-        long runCountAfter = Filter.runCount;
-        assert runCountAfter == runCountBefore + 1;
+            result[0] = filter.transformImage(src);
+        });
+        if (result[0] == null) {
+            throw new IllegalStateException("frame " + frameIndex + " could not be rendered");
+        }
+        return result[0];
+    }
 
-        var comp = dr.getComp();
-        comp.repaint();
+    /**
+     * Shows the filtered image in the drawable and returns a copy of the
+     * composite image, because the composite image is updated in place.
+     */
+    private BufferedImage compositeFrame(ParametrizedFilter filter, BufferedImage filtered) {
+        BufferedImage[] result = new BufferedImage[1];
+        GUIUtils.invokeAndWait(() -> {
+            dr.changePreviewImage(filtered, filter.getName(), TWEEN_PREVIEW);
 
-        return comp.getCompositeImage();
+            var comp = dr.getComp();
+            comp.repaint();
+            result[0] = ImageUtils.copyImage(comp.getCompositeImage());
+        });
+        if (result[0] == null) {
+            throw new IllegalStateException("the frame could not be composited");
+        }
+        return result[0];
     }
 
     private void finishOnEDT(AnimationWriter animationWriter, boolean canceled) {
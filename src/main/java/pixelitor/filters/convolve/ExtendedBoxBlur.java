@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.convolve;
+
+/**
+ * Repeated box blurs, where the boxes are extended by a fractional
+ * pixel on both sides, so that the variance of the result can be
+ * set exactly, and not only in integer steps. See "Theoretical
+ * Foundations of Gaussian Convolution by Extended Box Filtering"
+ * by Gwosdek, Grewenig, Bruhn and Weickert.
+ */
+public class ExtendedBoxBlur extends SeparableBlur {
+    private final int numPasses;
+
+    // the integer radius of the boxes
+    private final int r;
+
+    // the weight of the inner pixels and of the two extra pixels
+    private final double innerWeight;
+    private final double outerWeight;
+
+    /**
+     * Creates a blur with the given standard deviation, calculated
+     * with the given number of box passes. Three passes are
+     * usually a good enough approximation of a Gaussian blur.
+     */
+    public ExtendedBoxBlur(double sigma, int numPasses) {
+        this.numPasses = numPasses;
+
+        double variance = sigma * sigma / numPasses;
+        r = (int) Math.floor(0.5 * Math.sqrt(12 * variance + 1) - 0.5);
+        double alpha = (2 * r + 1) * (r * (r + 1) - 3 * variance)
+            / (6 * (variance - (r + 1) * (r + 1)));
+        innerWeight = 1.0 / (2 * alpha + 2 * r + 1);
+        outerWeight = alpha * innerWeight;
+    }
+
+    /**
+     * Returns the standard deviation of numPasses box blurs, as
+     * in {@link com.jhlabs.image.BoxBlurFilter}, with the given radius.
+     * For integer radii the result is the same as the result of
+     * these box blurs, and for fractional radii it's interpolated.
+     */
+    public static double boxSigma(float radius, int numPasses) {
+        return Math.sqrt(numPasses * radius * (radius + 1) / 3.0);
+    }
+
+    @Override
+    protected void blurLine(float[] line, float[] scratch, int length) {
+        float[] src = line;
+        float[] dst = scratch;
+        for (int pass = 0; pass < numPasses; pass++) {
+            boxPass(src, dst, length);
+            float[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        if (src != line) {
+            System.arraycopy(src, 0, line, 0, length);
+        }
+    }
+
+    private void boxPass(float[] src, float[] dst, int length) {
+        int last = length - 1;
+        float inner = (float) innerWeight;
+        float outer = (float) outerWeight;
+
+        float sum = 0;
+        for (int k = -r; k <= r; k++) {
+            sum += src[clamp(k, last)];
+        }
+
+        // the clamping is necessary only near the edges
+        int safeStart = Math.min(r + 1, length);
+        int safeEnd = Math.max(safeStart, length - r - 1);
+        for (int i = 0; i < safeStart; i++) {
+            float entering = src[Math.min(i + r + 1, last)];
+            float leaving = src[Math.max(i - r, 0)];
+            dst[i] = inner * sum + outer * (src[Math.max(i - r - 1, 0)] + entering);
+            sum += entering - leaving;
+        }
+        for (int i = safeStart; i < safeEnd; i++) {
+            float entering = src[i + r + 1];
+            dst[i] = inner * sum + outer * (src[i - r - 1] + entering);
+            sum += entering - src[i - r];
+        }
+        for (int i = safeEnd; i < length; i++) {
+            float entering = src[Math.min(i + r + 1, last)];
+            float leaving = src[Math.max(i - r, 0)];
+            dst[i] = inner * sum + outer * (src[Math.max(i - r - 1, 0)] + entering);
+            sum += entering - leaving;
+        }
+    }
+
+    private static int clamp(int i, int last) {
+        return i < 0 ? 0 : (i > last ? last : i);
+    }
+}
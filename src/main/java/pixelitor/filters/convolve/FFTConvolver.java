@@ -0,0 +1,522 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.convolve;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.jhlabs.image.ConvolveFilter.CLAMP_EDGES;
+import static com.jhlabs.image.ConvolveFilter.WRAP_EDGES;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * Convolves float image planes with a kernel in the frequency domain,
+ * so that the cost per pixel grows only logarithmically with the kernel size.
+ *
+ * The kernel is applied in the same way as in
+ * {@link com.jhlabs.image.ConvolveFilter}: the output pixel is the sum of
+ * the input pixels around it, weighted by the kernel element at the same
+ * offset from the kernel center (at kernelWidth / 2, kernelHeight / 2).
+ *
+ * Two real planes are transformed together as the real and imaginary
+ * parts of one complex plane, which is possible because the kernel is real.
+ * Large images are processed in tiles with the overlap-add method, and
+ * the 2D transforms of each tile are parallelized over rows and columns.
+ * The transformed kernels are cached, so that repeated runs (for example
+ * while adjusting other settings in a preview) don't recalculate them.
+ */
+public class FFTConvolver {
+    // if the padded image is not larger than this, then it's not split into tiles
+    private static final int MAX_SINGLE_TILE_SIZE = 2048;
+
+    // the approximate transform size for the tiles of larger images
+    private static final int TILE_FFT_SIZE = 1024;
+
+    // a kernel with this many elements is faster in the frequency domain
+    private static final int MIN_2D_KERNEL_AREA = 9 * 9;
+
+    // a 1D kernel of this length is faster in the frequency domain
+    private static final int MIN_1D_KERNEL_LENGTH = 41;
+
+    // the cached spectra are evicted in least recently used order
+    // when their total size exceeds this. A spectrum of the largest
+    // single tile needs 32 MB, the spectrum of a tile size needs 8 MB.
+    private static final long MAX_CACHED_BYTES = 64L * 1024 * 1024;
+    private static final Map<SpectrumKey, float[][]> spectrumCache =
+        new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedBytes = 0;
+
+    private final float[] kernel;
+    private final int kernelWidth;
+    private final int kernelHeight;
+
+    /**
+     * Creates a convolver for the given kernel, stored in row-major order.
+     */
+    public FFTConvolver(float[] kernel, int kernelWidth, int kernelHeight) {
+        if (kernel.length != kernelWidth * kernelHeight) {
+            throw new IllegalArgumentException("kernel.length = " + kernel.length
+                + ", kernelWidth = " + kernelWidth + ", kernelHeight = " + kernelHeight);
+        }
+        this.kernel = kernel;
+        this.kernelWidth = kernelWidth;
+        this.kernelHeight = kernelHeight;
+    }
+
+    /**
+     * Returns true if a 2D kernel with the given size should
+     * be applied with this class instead of spatial convolution.
+     */
+    public static boolean isFasterFor(int kernelWidth, int kernelHeight) {
+        return kernelWidth * kernelHeight >= MIN_2D_KERNEL_AREA;
+    }
+
+    /**
+     * Returns true if a 1D kernel with the given length should
+     * be applied with a {@link LineConvolver}.
+     */
+    public static boolean isFasterForLines(int kernelLength) {
+        return kernelLength >= MIN_1D_KERNEL_LENGTH;
+    }
+
+    /**
+     * Returns the number of progress units reported by
+     * {@link #convolve} for an image with the given size.
+     */
+    public int getWorkUnits(int width, int height) {
+        return new Tiling(width + kernelWidth - 1, kernelWidth).numTiles
+            * new Tiling(height + kernelHeight - 1, kernelHeight).numTiles;
+    }
+
+    /**
+     * Convolves the given planes, and replaces their contents with the result.
+     * The number of planes can be odd, and a plane can also be null,
+     * in which case it's skipped. The pixels outside the image are
+     * determined by the edge action, one of the constants in
+     * {@link com.jhlabs.image.ConvolveFilter}.
+     */
+    public void convolve(float[][] planes, int width, int height, int edgeAction, ProgressTracker pt) {
+        // The input of the convolution is the image extended with the
+        // pixels outside it which are needed for the output pixels.
+        // An output pixel at x is the full convolution at x + kernelWidth - 1
+        // of the extended image, in which x = 0 is at -kernelWidth / 2.
+        int extWidth = width + kernelWidth - 1;
+        int extHeight = height + kernelHeight - 1;
+        var tilingX = new Tiling(extWidth, kernelWidth);
+        var tilingY = new Tiling(extHeight, kernelHeight);
+        int fftWidth = tilingX.fftSize;
+        int fftHeight = tilingY.fftSize;
+
+        float[][] spectrum = getSpectrum(kernel, kernelWidth, kernelHeight, fftWidth, fftHeight);
+        int[] srcX = createSourceMap(extWidth, width, kernelWidth / 2, edgeAction);
+        int[] srcY = createSourceMap(extHeight, height, kernelHeight / 2, edgeAction);
+
+        float[] tileRe = new float[fftWidth * fftHeight];
+        float[] tileIm = new float[fftWidth * fftHeight];
+
+        // The contributions of a strip of tiles can reach the next
+        // kernelHeight - 1 rows, which are accumulated together
+        // with the next strip.
+        int accHeight = tilingY.blockSize + kernelHeight - 1;
+        float[][] results = new float[planes.length][];
+        float[][] acc = new float[planes.length][];
+        for (int i = 0; i < planes.length; i++) {
+            if (planes[i] != null) {
+                results[i] = new float[width * height];
+                acc[i] = new float[width * accHeight];
+            }
+        }
+
+        for (int tileY = 0; tileY < tilingY.numTiles; tileY++) {
+            int startY = tileY * tilingY.blockSize;
+            int blockHeight = Math.min(tilingY.blockSize, extHeight - startY);
+
+            for (int tileX = 0; tileX < tilingX.numTiles; tileX++) {
+                int startX = tileX * tilingX.blockSize;
+                int blockWidth = Math.min(tilingX.blockSize, extWidth - startX);
+
+                for (int i = 0; i < planes.length; i += 2) {
+                    float[] plane0 = planes[i];
+                    float[] plane1 = i + 1 < planes.length ? planes[i + 1] : null;
+                    if (plane0 == null && plane1 == null) {
+                        continue;
+                    }
+                    loadTile(plane0, plane1, width, tileRe, tileIm, fftWidth, fftHeight,
+                        startX, blockWidth, startY, blockHeight, srcX, srcY);
+                    transform2D(tileRe, tileIm, fftWidth, fftHeight);
+                    multiplyConjugate(tileRe, tileIm, spectrum);
+                    transform2D(tileRe, tileIm, fftWidth, fftHeight);
+                    accumulate(tileRe, tileIm, acc[i], i + 1 < planes.length ? acc[i + 1] : null,
+                        width, fftWidth, startX, startY, blockWidth, blockHeight,
+                        tilingX.numTiles == 1, tilingY.numTiles == 1, extWidth, extHeight);
+                }
+                pt.unitDone();
+            }
+
+            // the rows before the next strip are complete
+            int stripStart = startY;
+            int stripEnd = tileY == tilingY.numTiles - 1 ? extHeight : startY + tilingY.blockSize;
+            for (int i = 0; i < planes.length; i++) {
+                if (acc[i] != null) {
+                    flushRows(acc[i], results[i], width, height, stripStart, stripEnd, accHeight, kernelHeight);
+                }
+            }
+        }
+
+        for (int i = 0; i < planes.length; i++) {
+            if (planes[i] != null) {
+                System.arraycopy(results[i], 0, planes[i], 0, width * height);
+            }
+        }
+    }
+
+    /**
+     * How an extended dimension is split into blocks,
+     * and the transform size for the blocks.
+     */
+    private static class Tiling {
+        final int blockSize;
+        final int numTiles;
+        final int fftSize;
+
+        Tiling(int extLength, int kernelLength) {
+            int singleSize = MixedRadixFFT.goodSize(extLength);
+            if (singleSize <= MAX_SINGLE_TILE_SIZE) {
+                // Only the outputs between kernelLength - 1 and extLength
+                // are needed, and these are not affected by the wrap-around
+                // of the circular convolution, so no padding is necessary.
+                blockSize = extLength;
+                numTiles = 1;
+                fftSize = singleSize;
+            } else {
+                int overlap = kernelLength - 1;
+                int size = MixedRadixFFT.goodSize(Math.max(TILE_FFT_SIZE, 2 * overlap));
+                blockSize = size - overlap;
+                numTiles = (extLength + blockSize - 1) / blockSize;
+                fftSize = size;
+            }
+        }
+    }
+
+    // for each extended coordinate, the image coordinate, or -1 for zero
+    private static int[] createSourceMap(int extLength, int length, int kernelCenter, int edgeAction) {
+        int[] map = new int[extLength];
+        for (int e = 0; e < extLength; e++) {
+            int c = e - kernelCenter;
+            if (c < 0 || c >= length) {
+                if (edgeAction == CLAMP_EDGES) {
+                    c = c < 0 ? 0 : length - 1;
+                } else if (edgeAction == WRAP_EDGES) {
+                    c = Math.floorMod(c, length);
+                } else {
+                    c = -1;
+                }
+            }
+            map[e] = c;
+        }
+        return map;
+    }
+
+    private static void loadTile(float[] plane0, float[] plane1, int width,
+                                 float[] re, float[] im, int fftWidth, int fftHeight,
+                                 int startX, int blockWidth, int startY, int blockHeight,
+                                 int[] srcX, int[] srcY) {
+        ThreadPool.parallelRows(fftHeight, (start, end) -> {
+            for (int v = start; v < end; v++) {
+                int rowStart = v * fftWidth;
+                Arrays.fill(re, rowStart, rowStart + fftWidth, 0);
+                Arrays.fill(im, rowStart, rowStart + fftWidth, 0);
+                if (v >= blockHeight) {
+                    continue;
+                }
+                int sy = srcY[startY + v];
+                if (sy < 0) {
+                    continue;
+                }
+                int srcRowStart = sy * width;
+                for (int u = 0; u < blockWidth; u++) {
+                    int sx = srcX[startX + u];
+                    if (sx >= 0) {
+                        if (plane0 != null) {
+                            re[rowStart + u] = plane0[srcRowStart + sx];
+                        }
+                        if (plane1 != null) {
+                            im[rowStart + u] = plane1[srcRowStart + sx];
+                        }
+                    }
+                }
+            }
+        }, NULL_TRACKER);
+    }
+
+    // Multiplies with the kernel spectrum, and takes the complex conjugate,
+    // so that the next forward transform calculates the inverse transform
+    private static void multiplyConjugate(float[] re, float[] im, float[][] spectrum) {
+        float[] kRe = spectrum[0];
+        float[] kIm = spectrum[1];
+        for (int i = 0; i < re.length; i++) {
+            float r = re[i];
+            float m = im[i];
+            re[i] = r * kRe[i] - m * kIm[i];
+            im[i] = -(r * kIm[i] + m * kRe[i]);
+        }
+    }
+
+    // adds the part of the tile's result that is inside the image to the accumulators,
+    // which start at the row startY of the full convolution
+    private void accumulate(float[] re, float[] im, float[] acc0, float[] acc1,
+                            int width, int fftWidth, int startX, int startY,
+                            int blockWidth, int blockHeight,
+                            boolean singleTileX, boolean singleTileY,
+                            int extWidth, int extHeight) {
+        // the range of the full convolution that this tile contributes to
+        int endX = startX + (singleTileX ? extWidth : blockWidth + kernelWidth - 1);
+        int endY = startY + (singleTileY ? extHeight : blockHeight + kernelHeight - 1);
+
+        // the range of the full convolution that corresponds to the image
+        int minX = Math.max(startX, kernelWidth - 1);
+        int maxX = Math.min(endX, extWidth);
+        int minY = Math.max(startY, kernelHeight - 1);
+        int maxY = Math.min(endY, extHeight);
+
+        for (int fy = minY; fy < maxY; fy++) {
+            // the real part is the first plane and the negated
+            // imaginary part is the second, see multiplyConjugate
+            int tileRow = (fy - startY) * fftWidth - startX;
+            int accRow = (fy - startY) * width - (kernelWidth - 1);
+            if (acc0 != null) {
+                for (int fx = minX; fx < maxX; fx++) {
+                    acc0[accRow + fx] += re[tileRow + fx];
+                }
+            }
+            if (acc1 != null) {
+                for (int fx = minX; fx < maxX; fx++) {
+                    acc1[accRow + fx] -= im[tileRow + fx];
+                }
+            }
+        }
+    }
+
+    // copies the complete rows into the result, and moves
+    // the remaining rows to the beginning of the accumulator
+    private static void flushRows(float[] acc, float[] result, int width, int height,
+                                  int stripStart, int stripEnd, int accHeight, int kernelHeight) {
+        for (int fy = stripStart; fy < stripEnd; fy++) {
+            int y = fy - (kernelHeight - 1);
+            if (y >= 0 && y < height) {
+                System.arraycopy(acc, (fy - stripStart) * width, result, y * width, width);
+            }
+        }
+        int completeRows = stripEnd - stripStart;
+        int remainingRows = accHeight - completeRows;
+        if (remainingRows > 0) {
+            System.arraycopy(acc, completeRows * width, acc, 0, remainingRows * width);
+        }
+        Arrays.fill(acc, Math.max(remainingRows, 0) * width, acc.length, 0);
+    }
+
+    /**
+     * The forward 2D transform, in place, parallelized over the rows and then the columns.
+     */
+    private static void transform2D(float[] re, float[] im, int width, int height) {
+        var rowFFT = MixedRadixFFT.forSize(width);
+        ThreadPool.parallelRows(height, (startRow, endRow) -> {
+            float[] outRe = new float[width];
+            float[] outIm = new float[width];
+            for (int y = startRow; y < endRow; y++) {
+                int offset = y * width;
+                rowFFT.transform(re, im, offset, 1, outRe, outIm);
+                System.arraycopy(outRe, 0, re, offset, width);
+                System.arraycopy(outIm, 0, im, offset, width);
+            }
+        }, NULL_TRACKER);
+
+        var colFFT = MixedRadixFFT.forSize(height);
+        ThreadPool.parallelRows(width, (startCol, endCol) -> {
+            float[] outRe = new float[height];
+            float[] outIm = new float[height];
+            for (int x = startCol; x < endCol; x++) {
+                colFFT.transform(re, im, x, width, outRe, outIm);
+                for (int y = 0, index = x; y < height; y++, index += width) {
+                    re[index] = outRe[y];
+                    im[index] = outIm[y];
+                }
+            }
+        }, NULL_TRACKER);
+    }
+
+    /**
+     * Returns the spectrum of the mirrored kernel (because the kernel is
+     * applied as a correlation) padded to the given size, and divided
+     * by the number of elements, so that the inverse transforms
+     * don't have to be normalized.
+     */
+    private static float[][] getSpectrum(float[] kernel, int kernelWidth, int kernelHeight,
+                                         int fftWidth, int fftHeight) {
+        var key = new SpectrumKey(kernel, kernelWidth, kernelHeight, fftWidth, fftHeight);
+        synchronized (spectrumCache) {
+            float[][] cached = spectrumCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        float[] re = new float[fftWidth * fftHeight];
+        float[] im = new float[fftWidth * fftHeight];
+        float scale = 1.0f / (fftWidth * fftHeight);
+        for (int ky = 0; ky < kernelHeight; ky++) {
+            for (int kx = 0; kx < kernelWidth; kx++) {
+                int mirrored = (kernelHeight - 1 - ky) * kernelWidth + (kernelWidth - 1 - kx);
+                re[ky * fftWidth + kx] = kernel[mirrored] * scale;
+            }
+        }
+        transform2D(re, im, fftWidth, fftHeight);
+        float[][] spectrum = {re, im};
+
+        cacheSpectrum(key, spectrum);
+        return spectrum;
+    }
+
+    private static void cacheSpectrum(SpectrumKey key, float[][] spectrum) {
+        long bytes = spectrumBytes(spectrum);
+        if (bytes > MAX_CACHED_BYTES) {
+            return;
+        }
+        synchronized (spectrumCache) {
+            float[][] replaced = spectrumCache.put(key, spectrum);
+            if (replaced != null) {
+                cachedBytes -= spectrumBytes(replaced);
+            }
+            cachedBytes += bytes;
+
+            var it = spectrumCache.values().iterator();
+            while (cachedBytes > MAX_CACHED_BYTES) {
+                cachedBytes -= spectrumBytes(it.next());
+                it.remove();
+            }
+        }
+    }
+
+    private static long spectrumBytes(float[][] spectrum) {
+        return 4L * (spectrum[0].length + spectrum[1].length);
+    }
+
+    private static final class SpectrumKey {
+        private final float[] kernel;
+        private final int kernelWidth;
+        private final int kernelHeight;
+        private final int fftWidth;
+        private final int fftHeight;
+        private final int hash;
+
+        SpectrumKey(float[] kernel, int kernelWidth, int kernelHeight, int fftWidth, int fftHeight) {
+            this.kernel = kernel.clone();
+            this.kernelWidth = kernelWidth;
+            this.kernelHeight = kernelHeight;
+            this.fftWidth = fftWidth;
+            this.fftHeight = fftHeight;
+            hash = 31 * (31 * (31 * (31 * Arrays.hashCode(kernel)
+                + kernelWidth) + kernelHeight) + fftWidth) + fftHeight;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SpectrumKey other
+                && hash == other.hash
+                && kernelWidth == other.kernelWidth
+                && kernelHeight == other.kernelHeight
+                && fftWidth == other.fftWidth
+                && fftHeight == other.fftHeight
+                && Arrays.equals(kernel, other.kernel);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Convolves single lines with a 1D kernel, which is the
+     * only way to use large separable kernels efficiently.
+     * The lines are extended by clamping. An instance has buffers
+     * for lines with a given length, and can be used only by one thread,
+     * but the transformed kernel is shared between the instances.
+     */
+    public static class LineConvolver {
+        private final int length;
+        private final int kernelLength;
+        private final MixedRadixFFT fft;
+        private final float[][] spectrum;
+        private final float[] re;
+        private final float[] im;
+        private final float[] outRe;
+        private final float[] outIm;
+
+        public LineConvolver(float[] kernel, int length) {
+            this.length = length;
+            kernelLength = kernel.length;
+
+            // as with a single tile, only the outputs that
+            // are not affected by the wrap-around are needed
+            int extLength = length + kernelLength - 1;
+            fft = MixedRadixFFT.forSize(MixedRadixFFT.goodSize(extLength));
+            spectrum = getSpectrum(kernel, kernelLength, 1, fft.getSize(), 1);
+
+            re = new float[fft.getSize()];
+            im = new float[fft.getSize()];
+            outRe = new float[fft.getSize()];
+            outIm = new float[fft.getSize()];
+        }
+
+        /**
+         * Convolves two lines at the same time, and replaces
+         * their contents with the result. The second one can be null.
+         */
+        public void convolve(float[] line0, float[] line1) {
+            int n = fft.getSize();
+            int center = kernelLength / 2;
+            int extLength = length + kernelLength - 1;
+            for (int e = 0; e < n; e++) {
+                if (e < extLength) {
+                    int x = Math.min(Math.max(e - center, 0), length - 1);
+                    re[e] = line0[x];
+                    im[e] = line1 == null ? 0 : line1[x];
+                } else {
+                    re[e] = 0;
+                    im[e] = 0;
+                }
+            }
+
+            fft.transform(re, im, 0, 1, outRe, outIm);
+            multiplyConjugate(outRe, outIm, spectrum);
+            fft.transform(outRe, outIm, 0, 1, re, im);
+
+            System.arraycopy(re, kernelLength - 1, line0, 0, length);
+            if (line1 != null) {
+                for (int x = 0; x < length; x++) {
+                    line1[x] = -im[x + kernelLength - 1];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.convolve;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A forward complex FFT for any size, with fast butterflies for
+ * the radices 2, 3, 4 and 5. It is a recursive decimation-in-time
+ * algorithm, similar to the one in KISS FFT.
+ *
+ * The instances are immutable, and can be used by several threads at
+ * the same time. The inverse transform can be calculated by conjugating
+ * the input and the output of the forward transform, and dividing by n.
+ */
+public final class MixedRadixFFT {
+    private static final Map<Integer, MixedRadixFFT> cache = new ConcurrentHashMap<>();
+
+    private final int n;
+
+    // pairs of (radix, remaining size after this radix)
+    private final int[] factors;
+
+    // exp(-2 * PI * i * k / n)
+    private final float[] twRe;
+    private final float[] twIm;
+
+    private MixedRadixFFT(int n) {
+        this.n = n;
+        factors = factorize(n);
+        twRe = new float[n];
+        twIm = new float[n];
+        for (int k = 0; k < n; k++) {
+            double angle = -2 * Math.PI * k / n;
+            twRe[k] = (float) Math.cos(angle);
+            twIm[k] = (float) Math.sin(angle);
+        }
+    }
+
+    /**
+     * Returns a shared instance for the given size.
+     */
+    public static MixedRadixFFT forSize(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n = " + n);
+        }
+        return cache.computeIfAbsent(n, MixedRadixFFT::new);
+    }
+
+    /**
+     * Returns the smallest size that is at least n and has
+     * no prime factors other than 2, 3 and 5.
+     */
+    public static int goodSize(int n) {
+        if (n <= 1) {
+            return 1;
+        }
+        long best = Long.MAX_VALUE;
+        for (long p5 = 1; p5 < best; p5 *= 5) {
+            for (long p35 = p5; p35 < best; p35 *= 3) {
+                long size = p35;
+                while (size < n) {
+                    size *= 2;
+                }
+                best = Math.min(best, size);
+            }
+        }
+        return (int) best;
+    }
+
+    public int getSize() {
+        return n;
+    }
+
+    /**
+     * Transforms n values read from the input arrays, starting at
+     * the given offset with the given stride, and writes
+     * the result into the first n elements of the output arrays.
+     */
+    public void transform(float[] inRe, float[] inIm, int inOffset, int inStride,
+                          float[] outRe, float[] outIm) {
+        work(outRe, outIm, 0, inRe, inIm, inOffset, 1, inStride, 0);
+    }
+
+    private void work(float[] re, float[] im, int outOffset,
+                      float[] inRe, float[] inIm, int inOffset,
+                      int fStride, int inStride, int factorIndex) {
+        int p = factors[factorIndex];
+        int m = factors[factorIndex + 1];
+        int step = fStride * inStride;
+
+        if (m == 1) {
+            for (int j = 0, in = inOffset; j < p; j++, in += step) {
+                re[outOffset + j] = inRe[in];
+                im[outOffset + j] = inIm[in];
+            }
+        } else {
+            for (int j = 0, in = inOffset; j < p; j++, in += step) {
+                work(re, im, outOffset + j * m, inRe, inIm, in,
+                    fStride * p, inStride, factorIndex + 2);
+            }
+        }
+
+        switch (p) {
+            case 2 -> butterfly2(re, im, outOffset, fStride, m);
+            case 3 -> butterfly3(re, im, outOffset, fStride, m);
+            case 4 -> butterfly4(re, im, outOffset, fStride, m);
+            case 5 -> butterfly5(re, im, outOffset, fStride, m);
+            default -> butterflyGeneric(re, im, outOffset, fStride, m, p);
+        }
+    }
+
+    private void butterfly2(float[] re, float[] im, int offset, int fStride, int m) {
+        for (int k = 0; k < m; k++) {
+            int i0 = offset + k;
+            int i1 = i0 + m;
+            int tw = k * fStride;
+
+            float tRe = re[i1] * twRe[tw] - im[i1] * twIm[tw];
+            float tIm = re[i1] * twIm[tw] + im[i1] * twRe[tw];
+            re[i1] = re[i0] - tRe;
+            im[i1] = im[i0] - tIm;
+            re[i0] += tRe;
+            im[i0] += tIm;
+        }
+    }
+
+    private void butterfly3(float[] re, float[] im, int offset, int fStride, int m) {
+        float epi3Im = twIm[fStride * m];
+        for (int k = 0; k < m; k++) {
+            int i0 = offset + k;
+            int i1 = i0 + m;
+            int i2 = i1 + m;
+            int tw1 = k * fStride;
+            int tw2 = 2 * tw1;
+
+            float s1Re = re[i1] * twRe[tw1] - im[i1] * twIm[tw1];
+            float s1Im = re[i1] * twIm[tw1] + im[i1] * twRe[tw1];
+            float s2Re = re[i2] * twRe[tw2] - im[i2] * twIm[tw2];
+            float s2Im = re[i2] * twIm[tw2] + im[i2] * twRe[tw2];
+
+            float s3Re = s1Re + s2Re;
+            float s3Im = s1Im + s2Im;
+            float s0Re = (s1Re - s2Re) * epi3Im;
+            float s0Im = (s1Im - s2Im) * epi3Im;
+
+            float midRe = re[i0] - s3Re * 0.5f;
+            float midIm = im[i0] - s3Im * 0.5f;
+            re[i0] += s3Re;
+            im[i0] += s3Im;
+            re[i2] = midRe + s0Im;
+            im[i2] = midIm - s0Re;
+            re[i1] = midRe - s0Im;
+            im[i1] = midIm + s0Re;
+        }
+    }
+
+    private void butterfly4(float[] re, float[] im, int offset, int fStride, int m) {
+        for (int k = 0; k < m; k++) {
+            int i0 = offset + k;
+            int i1 = i0 + m;
+            int i2 = i1 + m;
+            int i3 = i2 + m;
+            int tw1 = k * fStride;
+            int tw2 = 2 * tw1;
+            int tw3 = 3 * tw1;
+
+            float s0Re = re[i1] * twRe[tw1] - im[i1] * twIm[tw1];
+            float s0Im = re[i1] * twIm[tw1] + im[i1] * twRe[tw1];
+            float s1Re = re[i2] * twRe[tw2] - im[i2] * twIm[tw2];
+            float s1Im = re[i2] * twIm[tw2] + im[i2] * twRe[tw2];
+            float s2Re = re[i3] * twRe[tw3] - im[i3] * twIm[tw3];
+            float s2Im = re[i3] * twIm[tw3] + im[i3] * twRe[tw3];
+
+            float s5Re = re[i0] - s1Re;
+            float s5Im = im[i0] - s1Im;
+            float f0Re = re[i0] + s1Re;
+            float f0Im = im[i0] + s1Im;
+            float s3Re = s0Re + s2Re;
+            float s3Im = s0Im + s2Im;
+            float s4Re = s0Re - s2Re;
+            float s4Im = s0Im - s2Im;
+
+            re[i2] = f0Re - s3Re;
+            im[i2] = f0Im - s3Im;
+            re[i0] = f0Re + s3Re;
+            im[i0] = f0Im + s3Im;
+            re[i1] = s5Re + s4Im;
+            im[i1] = s5Im - s4Re;
+            re[i3] = s5Re - s4Im;
+            im[i3] = s5Im + s4Re;
+        }
+    }
+
+    private void butterfly5(float[] re, float[] im, int offset, int fStride, int m) {
+        float yaRe = twRe[fStride * m];
+        float yaIm = twIm[fStride * m];
+        float ybRe = twRe[2 * fStride * m];
+        float ybIm = twIm[2 * fStride * m];
+
+        for (int k = 0; k < m; k++) {
+            int i0 = offset + k;
+            int i1 = i0 + m;
+            int i2 = i1 + m;
+            int i3 = i2 + m;
+            int i4 = i3 + m;
+            int tw1 = k * fStride;
+            int tw2 = 2 * tw1;
+            int tw3 = 3 * tw1;
+            int tw4 = 4 * tw1;
+
+            float s0Re = re[i0];
+            float s0Im = im[i0];
+            float s1Re = re[i1] * twRe[tw1] - im[i1] * twIm[tw1];
+            float s1Im = re[i1] * twIm[tw1] + im[i1] * twRe[tw1];
+            float s2Re = re[i2] * twRe[tw2] - im[i2] * twIm[tw2];
+            float s2Im = re[i2] * twIm[tw2] + im[i2] * twRe[tw2];
+            float s3Re = re[i3] * twRe[tw3] - im[i3] * twIm[tw3];
+            float s3Im = re[i3] * twIm[tw3] + im[i3] * twRe[tw3];
+            float s4Re = re[i4] * twRe[tw4] - im[i4] * twIm[tw4];
+            float s4Im = re[i4] * twIm[tw4] + im[i4] * twRe[tw4];
+
+            float s7Re = s1Re + s4Re;
+            float s7Im = s1Im + s4Im;
+            float s10Re = s1Re - s4Re;
+            float s10Im = s1Im - s4Im;
+            float s8Re = s2Re + s3Re;
+            float s8Im = s2Im + s3Im;
+            float s9Re = s2Re - s3Re;
+            float s9Im = s2Im - s3Im;
+
+            re[i0] = s0Re + s7Re + s8Re;
+            im[i0] = s0Im + s7Im + s8Im;
+
+            float s5Re = s0Re + s7Re * yaRe + s8Re * ybRe;
+            float s5Im = s0Im + s7Im * yaRe + s8Im * ybRe;
+            float s6Re = s10Im * yaIm + s9Im * ybIm;
+            float s6Im = -s10Re * yaIm - s9Re * ybIm;
+            re[i1] = s5Re - s6Re;
+            im[i1] = s5Im - s6Im;
+            re[i4] = s5Re + s6Re;
+            im[i4] = s5Im + s6Im;
+
+            float s11Re = s0Re + s7Re * ybRe + s8Re * yaRe;
+            float s11Im = s0Im + s7Im * ybRe + s8Im * yaRe;
+            float s12Re = -s10Im * ybIm + s9Im * yaIm;
+            float s12Im = s10Re * ybIm - s9Re * yaIm;
+            re[i2] = s11Re + s12Re;
+            im[i2] = s11Im + s12Im;
+            re[i3] = s11Re - s12Re;
+            im[i3] = s11Im - s12Im;
+        }
+    }
+
+    // O(p^2) butterfly for the other prime factors
+    private void butterflyGeneric(float[] re, float[] im, int offset, int fStride, int m, int p) {
+        float[] scratchRe = new float[p];
+        float[] scratchIm = new float[p];
+
+        for (int u = 0; u < m; u++) {
+            for (int q = 0; q < p; q++) {
+                scratchRe[q] = re[offset + u + q * m];
+                scratchIm[q] = im[offset + u + q * m];
+            }
+            for (int q1 = 0, k = u; q1 < p; q1++, k += m) {
+                float sumRe = scratchRe[0];
+                float sumIm = scratchIm[0];
+                int tw = 0;
+                for (int q = 1; q < p; q++) {
+                    tw += fStride * k;
+                    tw %= n;
+                    sumRe += scratchRe[q] * twRe[tw] - scratchIm[q] * twIm[tw];
+                    sumIm += scratchRe[q] * twIm[tw] + scratchIm[q] * twRe[tw];
+                }
+                re[offset + k] = sumRe;
+                im[offset + k] = sumIm;
+            }
+        }
+    }
+
+    private static int[] factorize(int n) {
+        List<Integer> factors = new ArrayList<>();
+        int p = 4;
+        int remaining = n;
+        do {
+            while (remaining % p != 0) {
+                p = switch (p) {
+                    case 4 -> 2;
+                    case 2 -> 3;
+                    default -> p + 2;
+                };
+                if (p * p > remaining) {
+                    p = remaining; // no more factors
+                }
+            }
+            remaining /= p;
+            factors.add(p);
+            factors.add(remaining);
+        } while (remaining > 1);
+
+        return factors.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.convolve;
+
+/**
+ * A Gaussian blur approximated by a third order recursive (IIR) filter,
+ * which runs forward and then backward on each line. The coefficients
+ * are from "Recursive Gabor filtering" by Young, van Vliet and van Ginkel,
+ * and the edges are handled as in "Boundary conditions for Young -
+ * van Vliet recursive filtering" by Triggs and Sdika.
+ */
+public class RecursiveGaussian extends SeparableBlur {
+    // the gain and the feedback coefficients
+    private final double b;
+    private final double a1;
+    private final double a2;
+    private final double a3;
+
+    // the matrix for the initial values of the backward pass
+    private final double[] m = new double[9];
+
+    public RecursiveGaussian(double sigma) {
+        if (sigma < 0.5) {
+            throw new IllegalArgumentException("sigma = " + sigma);
+        }
+
+        double m0 = 1.16680;
+        double m1 = 1.10783;
+        double m2 = 1.40586;
+        double m1sq = m1 * m1;
+        double m2sq = m2 * m2;
+        double q = sigma < 3.556
+            ? -0.2568 + 0.5784 * sigma + 0.0561 * sigma * sigma
+            : 2.5091 + 0.9804 * (sigma - 3.556);
+        double qsq = q * q;
+        double scale = (m0 + q) * (m1sq + m2sq + 2 * m1 * q + qsq);
+
+        b = m0 * (m1sq + m2sq) / scale;
+        a1 = q * (2 * m0 * m1 + m1sq + m2sq + (2 * m0 + 4 * m1) * q + 3 * qsq) / scale;
+        a2 = -qsq * (m0 + 2 * m1 + 3 * q) / scale;
+        a3 = qsq * q / scale;
+
+        double s = 1.0 / ((1 + a1 - a2 + a3) * (1 - a1 - a2 - a3) * (1 + a2 + (a1 - a3) * a3));
+        m[0] = s * (-a3 * a1 + 1 - a3 * a3 - a2);
+        m[1] = s * (a3 + a1) * (a2 + a3 * a1);
+        m[2] = s * a3 * (a1 + a3 * a2);
+        m[3] = s * (a1 + a3 * a2);
+        m[4] = -s * (a2 - 1) * (a2 + a3 * a1);
+        m[5] = -s * a3 * (a3 * a1 + a3 * a3 + a2 - 1);
+        m[6] = s * (a3 * a1 + a2 + a1 * a1 - a2 * a2);
+        m[7] = s * (a1 * a2 + a3 * a2 * a2 - a1 * a3 * a3 - a3 * a3 * a3 - a3 * a2 + a3);
+        m[8] = s * a3 * (a1 + a3 * a2);
+    }
+
+    @Override
+    protected void blurLine(float[] line, float[] scratch, int length) {
+        // forward pass, starting from the steady state of the first value
+        double w1 = line[0] / b;
+        double w2 = w1;
+        double w3 = w1;
+        for (int i = 0; i < length; i++) {
+            double w0 = line[i] + a1 * w1 + a2 * w2 + a3 * w3;
+            scratch[i] = (float) w0;
+            w3 = w2;
+            w2 = w1;
+            w1 = w0;
+        }
+
+        // the initial values of the backward pass, which
+        // continue the last value to infinity
+        double bb = b * b;
+        double last = line[length - 1];
+        double uPlus = last / b;
+        double vPlus = uPlus / b;
+        double u0 = w1 - uPlus;
+        double u1 = w2 - uPlus;
+        double u2 = w3 - uPlus;
+        double y1 = (m[0] * u0 + m[1] * u1 + m[2] * u2 + vPlus) * bb;
+        double y2 = (m[3] * u0 + m[4] * u1 + m[5] * u2 + vPlus) * bb;
+        double y3 = (m[6] * u0 + m[7] * u1 + m[8] * u2 + vPlus) * bb;
+        line[length - 1] = (float) y1;
+
+        // backward pass
+        for (int i = length - 2; i >= 0; i--) {
+            double y0 = bb * scratch[i] + a1 * y1 + a2 * y2 + a3 * y3;
+            line[i] = (float) y0;
+            y3 = y2;
+            y2 = y1;
+            y1 = y0;
+        }
+    }
+}
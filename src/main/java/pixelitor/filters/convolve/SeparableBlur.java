@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.convolve;
+
+import com.jhlabs.image.PixelUtils;
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+/**
+ * A blur that can be calculated by filtering the rows and then
+ * the columns of the image, with a cost per pixel that doesn't
+ * depend on the radius. The pixels outside the image
+ * are replaced by the nearest edge pixels.
+ *
+ * Like {@link com.jhlabs.image.GaussianFilter#convolveAndTranspose},
+ * each pass filters the rows of packed ARGB pixels and writes them
+ * transposed, so that calling it twice blurs in both directions.
+ */
+public abstract class SeparableBlur {
+    /**
+     * Filters the first length values of the given line in place.
+     * The scratch array has at least the same length, and can be
+     * used for temporary values.
+     */
+    protected abstract void blurLine(float[] line, float[] scratch, int length);
+
+    /**
+     * Blurs the rows of the input pixels, and writes them into the columns
+     * of the output. If premultiply is true, the input is premultiplied
+     * before blurring, and if unpremultiply is true, then the output is
+     * unpremultiplied. The progress is reported in rows.
+     */
+    public void blurAndTranspose(int[] inPixels, int[] outPixels, int width, int height,
+                                 boolean premultiply, boolean unpremultiply,
+                                 ProgressTracker pt) {
+        ThreadPool.parallelRows(height, (startY, endY) -> {
+            float[] a = new float[width];
+            float[] r = new float[width];
+            float[] g = new float[width];
+            float[] b = new float[width];
+            float[] scratch = new float[width];
+
+            for (int y = startY; y < endY; y++) {
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    int rgb = inPixels[offset + x];
+                    float pa = (rgb >>> 24);
+                    float pr = (rgb >> 16) & 0xFF;
+                    float pg = (rgb >> 8) & 0xFF;
+                    float pb = rgb & 0xFF;
+                    if (premultiply) {
+                        float a255 = pa * (1.0f / 255.0f);
+                        pr *= a255;
+                        pg *= a255;
+                        pb *= a255;
+                    }
+                    a[x] = pa;
+                    r[x] = pr;
+                    g[x] = pg;
+                    b[x] = pb;
+                }
+
+                blurLine(a, scratch, width);
+                blurLine(r, scratch, width);
+                blurLine(g, scratch, width);
+                blurLine(b, scratch, width);
+
+                int index = y;
+                for (int x = 0; x < width; x++) {
+                    float fa = a[x];
+                    float fr = r[x];
+                    float fg = g[x];
+                    float fb = b[x];
+                    if (unpremultiply && fa > 0.5f && fa < 254.5f) {
+                        float f = 255.0f / fa;
+                        fr *= f;
+                        fg *= f;
+                        fb *= f;
+                    }
+                    int ia = PixelUtils.clamp((int) (fa + 0.5f));
+                    int ir = PixelUtils.clamp((int) (fr + 0.5f));
+                    int ig = PixelUtils.clamp((int) (fg + 0.5f));
+                    int ib = PixelUtils.clamp((int) (fb + 0.5f));
+                    outPixels[index] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+                    index += height;
+                }
+            }
+        }, pt);
+    }
+}
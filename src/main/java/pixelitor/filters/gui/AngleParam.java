@@ -170,13 +170,19 @@ public class AngleParam extends AbstractFilterParam {
     @Override
     public AngleParamState copyState() {
         // save the degrees so that the interpolation
-        // does not confuse the user
-        return new AngleParamState(getValueInDegrees());
+        // does not confuse the user, but also the exact
+        // radians, because the conversion isn't exact
+        return new AngleParamState(getValueInDegrees(), angle);
     }
 
     @Override
     public void loadStateFrom(ParamState<?> state, boolean updateGUI) {
-        setValueInDegrees(((AngleParamState) state).angle, false);
+        AngleParamState angleState = (AngleParamState) state;
+        if (Double.isNaN(angleState.radians)) {
+            setValueInDegrees(angleState.angle, false);
+        } else {
+            setValue(angleState.radians, false);
+        }
     }
 
     @Override
@@ -196,11 +202,14 @@ public class AngleParam extends AbstractFilterParam {
             getClass().getSimpleName(), getName(), angle);
     }
 
-    private record AngleParamState(double angle) implements ParamState<AngleParamState> {
+    /**
+     * The radians are NaN if the state was interpolated.
+     */
+    private record AngleParamState(double angle, double radians) implements ParamState<AngleParamState> {
         @Override
         public AngleParamState interpolate(AngleParamState endState, double progress) {
             double interpolatedAngle = ImageMath.lerp(progress, angle, endState.angle);
-            return new AngleParamState(interpolatedAngle);
+            return new AngleParamState(interpolatedAngle, Double.NaN);
         }
 
         @Override
@@ -42,6 +42,9 @@ public class FilterButtonModel implements FilterSetting {
 
     private final boolean triggerFilter;
 
+    // true if the task changes some global state used by the filter
+    private boolean changesGlobalState = false;
+
     public FilterButtonModel(String text, Runnable task, String toolTipText) {
         this(text, task, null, toolTipText, null, true);
     }
@@ -108,6 +111,14 @@ public class FilterButtonModel implements FilterSetting {
         return enabledByFilterLogic && enabledByAnimationSetting;
     }
 
+    public void setChangesGlobalState(boolean changesGlobalState) {
+        this.changesGlobalState = changesGlobalState;
+    }
+
+    public boolean changesGlobalState() {
+        return changesGlobalState;
+    }
+
     public void setIgnoreFinalAnimationSettingMode(boolean ignoreFinalAnimationSettingMode) {
         this.ignoreFinalAnimationSettingMode = ignoreFinalAnimationSettingMode;
     }
@@ -18,6 +18,7 @@
 package pixelitor.filters.gui;
 
 import pixelitor.filters.Filter;
+import pixelitor.filters.FilterPreviewer;
 import pixelitor.layers.Drawable;
 
 import javax.swing.*;
@@ -32,12 +33,46 @@ public abstract class FilterGUI extends JPanel {
     protected Filter filter;
     private final Drawable dr;
 
+    // null if the previews run synchronously on the EDT
+    private FilterPreviewer asyncPreviewer;
+
     protected FilterGUI(Filter filter, Drawable dr) {
         this.filter = filter;
         this.dr = dr;
     }
 
     public void runFilterPreview() {
-        filter.startOn(dr, PREVIEWING, this);
+        if (asyncPreviewer != null) {
+            asyncPreviewer.requestPreview();
+        } else {
+            filter.startOn(dr, PREVIEWING, this);
+        }
+    }
+
+    /**
+     * Makes the subsequent previews run outside the EDT.
+     * Only for filter dialogs, where the preview session is ended by
+     * {@link #finishPreviews()} or {@link #cancelPreviews()}.
+     */
+    public void enableAsyncPreviews() {
+        asyncPreviewer = new FilterPreviewer(filter, dr, this);
+    }
+
+    /**
+     * Waits for the running preview, if there is one,
+     * and makes sure that its result is shown.
+     */
+    public void finishPreviews() {
+        if (asyncPreviewer != null) {
+            asyncPreviewer.finish();
+            asyncPreviewer = null;
+        }
+    }
+
+    public void cancelPreviews() {
+        if (asyncPreviewer != null) {
+            asyncPreviewer.cancel();
+            asyncPreviewer = null;
+        }
     }
 }
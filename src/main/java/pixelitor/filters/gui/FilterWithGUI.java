@@ -112,6 +112,8 @@ public abstract class FilterWithGUI extends Filter implements DialogMenuOwner {
         Tools.editedObjectChanged(dr.getLayer());
 
         FilterGUI gui = createGUI(dr, reset);
+        // the first preview ran synchronously in the constructor of the GUI
+        gui.enableAsyncPreviews();
 
         MouseZoomMethod.CURRENT.installOnJComponent(gui, dr.getComp().getView());
         ZoomMenu.setupZoomKeys(gui);
@@ -124,8 +126,14 @@ public abstract class FilterWithGUI extends Filter implements DialogMenuOwner {
             .align(FRAME_RIGHT)
             .withScrollbars()
             .enableCopyVisibleShortcut()
-            .okAction(() -> dr.onFilterDialogAccepted(getName()))
-            .cancelAction(dr::onFilterDialogCanceled)
+            .okAction(() -> {
+                gui.finishPreviews();
+                dr.onFilterDialogAccepted(getName());
+            })
+            .cancelAction(() -> {
+                gui.cancelPreviews();
+                dr.onFilterDialogCanceled();
+            })
             .show()
             .wasAccepted();
     }
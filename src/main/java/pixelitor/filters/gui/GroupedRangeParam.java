@@ -359,7 +359,7 @@ public class GroupedRangeParam extends AbstractFilterParam {
     @Override
     public GroupedRangeParamState copyState() {
         double[] values = Arrays.stream(children)
-            .mapToDouble(RangeParam::getValue)
+            .mapToDouble(RangeParam::getValueAsDouble)
             .toArray();
 
         return new GroupedRangeParamState(values, isLinked());
@@ -217,6 +217,18 @@ public class ParamSet {
         return Utils.anyMatch(paramList, p -> p instanceof GradientParam);
     }
 
+    /**
+     * Returns true if any of the actions, including the
+     * actions of the parameters, changes some global state.
+     */
+    public boolean hasGlobalStateAction() {
+        if (Utils.anyMatch(actionList, FilterButtonModel::changesGlobalState)) {
+            return true;
+        }
+        return Utils.anyMatch(paramList, p -> p instanceof AbstractFilterParam afp
+            && afp.action != null && afp.action.changesGlobalState());
+    }
+
     public List<FilterButtonModel> getActions() {
         return actionList;
     }
@@ -34,7 +34,26 @@ public class ReseedActions {
     }
 
     public static FilterButtonModel reseedNoise(String text, String toolTip) {
-        return reseedByCalling(Noise::reseed, text, toolTip);
+        return reseedNoiseAnd(() -> {}, text, toolTip);
+    }
+
+    /**
+     * The returned action reseeds the global {@link Noise}
+     * after running the given task.
+     */
+    public static FilterButtonModel reseedNoiseAnd(Runnable task) {
+        return reseedNoiseAnd(task, "Reseed", "Reinitialize the randomness");
+    }
+
+    private static FilterButtonModel reseedNoiseAnd(Runnable task,
+                                                    String text, String toolTip) {
+        var filterAction = reseedByCalling(() -> {
+            task.run();
+            Noise.reseed();
+        }, text, toolTip);
+        // the previews running on copies of the filter would also see it
+        filterAction.setChangesGlobalState(true);
+        return filterAction;
     }
 
     public static FilterButtonModel reseedByCalling(Runnable beforeTriggeringTask) {
@@ -21,6 +21,7 @@ import pixelitor.Composition;
 import pixelitor.OpenImages;
 import pixelitor.gui.View;
 import pixelitor.layers.Drawable;
+import pixelitor.utils.ImageUtils;
 
 import java.awt.image.BufferedImage;
 import java.util.List;
@@ -91,8 +92,9 @@ public class SelectImageParam extends AbstractMultipleChoiceParam<NamedImage> {
 
         NamedImage(Composition comp) {
             // it's important to store this image before the filter starts,
-            // because the current composite image is affected by the filter
-            this.image = comp.getCompositeImage();
+            // because the current composite image is affected by the filter,
+            // and a copy, because the composite image can be updated in place
+            this.image = ImageUtils.copyImage(comp.getCompositeImage());
             this.comp = comp;
         }
 
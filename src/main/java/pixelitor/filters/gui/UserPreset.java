@@ -17,7 +17,6 @@
 
 package pixelitor.filters.gui;
 
-import com.bric.util.JVM;
 import pixelitor.colors.Colors;
 import pixelitor.gui.utils.PAction;
 import pixelitor.io.FileUtils;
@@ -45,17 +44,7 @@ public class UserPreset {
     private final Map<String, String> content = new LinkedHashMap<>();
 
     public static final String FILE_SEPARATOR = System.getProperty("file.separator");
-    public static final String PRESETS_DIR;
-
-    static {
-        if (JVM.isWindows) {
-            PRESETS_DIR = System.getenv("APPDATA") +
-                FILE_SEPARATOR + "Pixelitor" + FILE_SEPARATOR + "presets";
-        } else {
-            PRESETS_DIR = System.getProperty("user.home") +
-                FILE_SEPARATOR + ".pixelitor" + FILE_SEPARATOR + "presets";
-        }
-    }
+    public static final String PRESETS_DIR = FileUtils.getAppDataDir("presets").getPath();
 
     /**
      * Used when a new preset is created by the user
@@ -93,6 +82,10 @@ public class UserPreset {
         return value;
     }
 
+    public boolean containsKey(String key) {
+        return content.containsKey(key);
+    }
+
     public void put(String key, String value) {
         assert !key.isBlank();
 
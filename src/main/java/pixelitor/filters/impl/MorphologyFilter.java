@@ -18,24 +18,55 @@
 package pixelitor.filters.impl;
 
 import com.jhlabs.image.WholeImageFilter;
+import pixelitor.ThreadPool;
 import pixelitor.filters.Morphology;
 
-import java.awt.*;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
 
 /**
  * The implementation of the {@link Morphology} filter.
+ *
+ * The channels are processed separately, and the cost per pixel
+ * doesn't depend on the radius: the structuring elements are decomposed
+ * into line segments, and the minimum along each segment is calculated
+ * with the van Herk/Gil-Werman algorithm. A square is a horizontal and
+ * a vertical segment. A diamond is the union of two "sparse diamonds"
+ * (containing every second pixel), and each of these is the sum of two
+ * diagonal segments. A disk is approximated by an octagon, which is
+ * the sum of a square and a diamond. The pixels outside the image
+ * don't affect the result. The dilation is calculated as the
+ * erosion of the inverted image.
  */
 public class MorphologyFilter extends WholeImageFilter {
-    private int iterations = 1;
-
     public static final int OP_ERODE = 1;
     public static final int OP_DILATE = 2;
+    public static final int OP_OPEN = 10;
+    public static final int OP_CLOSE = 11;
+    public static final int OP_GRADIENT = 12;
+    public static final int OP_TOP_HAT = 13;
+    public static final int OP_BLACK_HAT = 14;
     private int op;
 
     public static final int KERNEL_DIAMOND = 3;
     public static final int KERNEL_SQUARE = 4;
+    public static final int KERNEL_DISK = 5;
     private int kernel;
 
+    private int radius = 1;
+
+    // the directions of the segments
+    private static final int HORIZONTAL = 0;
+    private static final int VERTICAL = 1;
+    private static final int DIAGONAL = 2; // down and right
+    private static final int ANTI_DIAGONAL = 3; // up and right
+
+    private static final int IDENTITY = 0xFF; // the neutral value of the erosion
+
     public MorphologyFilter(String filterName) {
         super(filterName);
     }
@@ -48,94 +79,310 @@ public class MorphologyFilter extends WholeImageFilter {
         this.op = op;
     }
 
-    public void setIterations(int iterations) {
-        this.iterations = iterations;
+    /**
+     * Sets the radius of the structuring element. The result with a
+     * given radius is the same as repeating the radius 1 operation
+     * that many times (except for the disk, which has no radius 1 version).
+     */
+    public void setRadius(int radius) {
+        this.radius = radius;
     }
 
     @Override
     protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
-        int numPixels = inPixels.length;
-        short[] inA = new short[numPixels];
-        short[] inR = new short[numPixels];
-        short[] inG = new short[numPixels];
-        short[] inB = new short[numPixels];
-
-        pt = createProgressTracker(iterations);
-        int[] outPixels = new int[width * height];
-        for (int it = 0; it < iterations; it++) {
-            if (it > 0) {
-                System.arraycopy(outPixels, 0, inPixels, 0, numPixels);
+        int numPixels = width * height;
+
+        // the differences are calculated only for the colors, because
+        // otherwise the uniform areas would become transparent
+        boolean difference = op == OP_GRADIENT || op == OP_TOP_HAT || op == OP_BLACK_HAT;
+        boolean keepAlpha = difference || isOpaque(inPixels);
+        int numChannels = keepAlpha ? 3 : 4;
+
+        pt = createProgressTracker(numChannels * getNumPasses());
+        int[] outPixels = new int[numPixels];
+        if (keepAlpha) {
+            for (int i = 0; i < numPixels; i++) {
+                outPixels[i] = inPixels[i] & 0xFF_00_00_00;
             }
+        }
+
+        byte[] plane = new byte[numPixels];
+        for (int c = 0; c < numChannels; c++) {
+            int shift = 8 * c;
             for (int i = 0; i < numPixels; i++) {
-                int rgb = inPixels[i];
-                inA[i] = (short) ((rgb >> 24) & 0xff);
-                inR[i] = (short) ((rgb >> 16) & 0xff);
-                inG[i] = (short) ((rgb >> 8) & 0xff);
-                inB[i] = (short) (rgb & 0xff);
+                plane[i] = (byte) (inPixels[i] >>> shift);
             }
+            byte[] result = filterPlane(plane, width, height);
+            for (int i = 0; i < numPixels; i++) {
+                outPixels[i] |= (result[i] & 0xFF) << shift;
+            }
+        }
+        finishProgressTracker();
+
+        return outPixels;
+    }
+
+    /**
+     * Filters a grayscale image (such as a layer mask)
+     * directly, without converting it into an ARGB image.
+     */
+    public BufferedImage filterGray(BufferedImage src) {
+        assert src.getType() == TYPE_BYTE_GRAY;
 
-            int index = 0;
+        int width = src.getWidth();
+        int height = src.getHeight();
+        byte[] plane = (byte[]) src.getRaster().getDataElements(0, 0, width, height, null);
+
+        pt = createProgressTracker(getNumPasses());
+        byte[] result = filterPlane(plane, width, height);
+        finishProgressTracker();
+
+        BufferedImage dest = new BufferedImage(width, height, TYPE_BYTE_GRAY);
+        dest.getRaster().setDataElements(0, 0, width, height, result);
+        return dest;
+    }
+
+    private int getNumPasses() {
+        return op == OP_ERODE || op == OP_DILATE ? 1 : 2;
+    }
+
+    private byte[] filterPlane(byte[] plane, int width, int height) {
+        return switch (op) {
+            case OP_ERODE -> erode(plane, width, height);
+            case OP_DILATE -> dilate(plane, width, height);
+            case OP_OPEN -> dilate(erode(plane, width, height), width, height);
+            case OP_CLOSE -> erode(dilate(plane, width, height), width, height);
+            case OP_GRADIENT -> subtract(dilate(plane, width, height), erode(plane, width, height));
+            case OP_TOP_HAT -> subtract(plane, dilate(erode(plane, width, height), width, height));
+            case OP_BLACK_HAT -> subtract(erode(dilate(plane, width, height), width, height), plane);
+            default -> throw new IllegalStateException("op = " + op);
+        };
+    }
+
+    private byte[] dilate(byte[] plane, int width, int height) {
+        byte[] result = erode(invert(plane), width, height);
+        invertInPlace(result);
+        return result;
+    }
+
+    private byte[] erode(byte[] plane, int width, int height) {
+        byte[] result;
+        if (radius <= 0) {
+            result = plane.clone();
+        } else {
+            // the border must be wide enough for all intermediate
+            // results that can affect the pixels of the image
+            int border = radius + 1;
+            int paddedWidth = width + 2 * border;
+            int paddedHeight = height + 2 * border;
+            byte[] padded = new byte[paddedWidth * paddedHeight];
+            Arrays.fill(padded, (byte) IDENTITY);
             for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    short a = 0xff;
-                    short r = 0xff;
-                    short g = 0xff;
-                    short b = 0xff;
-
-                    if (op == OP_DILATE) {
-                        r = 0;
-                        g = 0;
-                        b = 0;
-                    }
+                System.arraycopy(plane, y * width,
+                    padded, (y + border) * paddedWidth + border, width);
+            }
+
+            byte[] eroded = switch (kernel) {
+                case KERNEL_SQUARE -> erodeSquare(padded, paddedWidth, paddedHeight, radius);
+                case KERNEL_DIAMOND -> erodeDiamond(padded, paddedWidth, paddedHeight, radius);
+                case KERNEL_DISK -> erodeOctagon(padded, paddedWidth, paddedHeight, radius);
+                default -> throw new IllegalStateException("kernel = " + kernel);
+            };
+
+            result = new byte[width * height];
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(eroded, (y + border) * paddedWidth + border,
+                    result, y * width, width);
+            }
+        }
+        pt.unitDone();
+        return result;
+    }
 
-                    for (int dy = -1; dy <= 1; dy++) {
-                        int iy = y + dy;
-                        if (0 <= iy && iy < height) {
-                            int xOffset = iy * width;
-                            for (int dx = -1; dx <= 1; dx++) {
-                                if (kernel == KERNEL_DIAMOND) {
-                                    if (dx == dy && dx != 0) {
-                                        continue;
-                                    }
-                                    if (dx == -dy && dx != 0) {
-                                        continue;
-                                    }
-                                }
-
-                                int ix = x + dx;
-                                if (0 <= ix && ix < width) {
-                                    int comparedIndex = xOffset + ix;
-
-                                    if (op == OP_ERODE) {
-                                        a = min(a, inA[comparedIndex]);
-                                        r = min(r, inR[comparedIndex]);
-                                        g = min(g, inG[comparedIndex]);
-                                        b = min(b, inB[comparedIndex]);
-                                    } else {
-                                        a = max(a, inA[comparedIndex]);
-                                        r = max(r, inR[comparedIndex]);
-                                        g = max(g, inG[comparedIndex]);
-                                        b = max(b, inB[comparedIndex]);
-                                    }
-                                }
-                            }
-                        }
+    private static byte[] erodeSquare(byte[] plane, int width, int height, int r) {
+        linePass(plane, width, height, HORIZONTAL, -r, r);
+        linePass(plane, width, height, VERTICAL, -r, r);
+        return plane;
+    }
+
+    private static byte[] erodeDiamond(byte[] plane, int width, int height, int r) {
+        byte[] even = erodeSparseDiamond(plane.clone(), width, height, r);
+        byte[] odd = erodeSparseDiamond(plane, width, height, r - 1);
+        for (int i = 0; i < even.length; i++) {
+            if ((odd[i] & 0xFF) < (even[i] & 0xFF)) {
+                even[i] = odd[i];
+            }
+        }
+        return even;
+    }
+
+    // the regular octagon that is the closest to a disk with the given radius
+    private static byte[] erodeOctagon(byte[] plane, int width, int height, int r) {
+        int squareRadius = (int) Math.round(r * (Math.sqrt(2) - 1));
+        int diamondRadius = r - squareRadius;
+        if (squareRadius > 0) {
+            erodeSquare(plane, width, height, squareRadius);
+        }
+        return erodeDiamond(plane, width, height, diamondRadius);
+    }
+
+    /**
+     * Erodes with the pixels (dx, dy) for which |dx| + |dy| <= k and
+     * dx + dy has the same parity as k. These are the sums of two
+     * diagonal segments, and for an odd k, an additional shift.
+     */
+    private static byte[] erodeSparseDiamond(byte[] plane, int width, int height, int k) {
+        if (k <= 0) {
+            return plane;
+        }
+        int m = k / 2;
+        int lo = k % 2 == 0 ? -m : -m - 1;
+        linePass(plane, width, height, ANTI_DIAGONAL, lo, m);
+        linePass(plane, width, height, DIAGONAL, lo, m);
+        if (k % 2 == 1) {
+            // shift by one pixel to the left: the last column is in
+            // the border, so its value doesn't matter
+            System.arraycopy(plane, 1, plane, 0, plane.length - 1);
+        }
+        return plane;
+    }
+
+    /**
+     * Replaces every pixel with the minimum of the pixels between lo
+     * and hi steps away from it in the given direction. All the lines
+     * in the given direction are processed in parallel.
+     */
+    private static void linePass(byte[] plane, int width, int height, int dir, int lo, int hi) {
+        int numLines = switch (dir) {
+            case HORIZONTAL -> height;
+            case VERTICAL -> width;
+            default -> width + height - 1;
+        };
+        int maxLength = Math.max(width, height);
+        int windowSize = hi - lo + 1;
+
+        ThreadPool.parallelRows(numLines, (startLine, endLine) -> {
+            int[] line = new int[maxLength];
+            int[] result = new int[maxLength];
+            int[] prefixMin = new int[maxLength + windowSize];
+            int[] suffixMin = new int[maxLength + windowSize];
+
+            for (int lineIndex = startLine; lineIndex < endLine; lineIndex++) {
+                int x;
+                int y;
+                int length;
+                int step;
+                switch (dir) {
+                    case HORIZONTAL -> {
+                        x = 0;
+                        y = lineIndex;
+                        length = width;
+                        step = 1;
+                    }
+                    case VERTICAL -> {
+                        x = lineIndex;
+                        y = 0;
+                        length = height;
+                        step = width;
+                    }
+                    case DIAGONAL -> {
+                        x = Math.max(0, lineIndex - height + 1);
+                        y = Math.max(0, height - 1 - lineIndex);
+                        length = Math.min(width - x, height - y);
+                        step = width + 1;
+                    }
+                    case ANTI_DIAGONAL -> {
+                        x = Math.max(0, lineIndex - height + 1);
+                        y = Math.min(lineIndex, height - 1);
+                        length = Math.min(width - x, y + 1);
+                        step = 1 - width;
                     }
-                    outPixels[index++] = a << 24 | r << 16 | g << 8 | b;
+                    default -> throw new IllegalStateException("dir = " + dir);
                 }
+
+                int start = y * width + x;
+                for (int i = 0, index = start; i < length; i++, index += step) {
+                    line[i] = plane[index] & 0xFF;
+                }
+                runningMin(line, length, lo, hi, result, prefixMin, suffixMin);
+                for (int i = 0, index = start; i < length; i++, index += step) {
+                    plane[index] = (byte) result[i];
+                }
+            }
+        }, NULL_TRACKER);
+    }
+
+    /**
+     * The van Herk/Gil-Werman algorithm: calculates the minimum of
+     * line[i + lo]...line[i + hi] for every i with three comparisons
+     * per value, independently of the window size. The values
+     * outside the line are considered to be the identity.
+     */
+    private static void runningMin(int[] line, int length, int lo, int hi,
+                                   int[] result, int[] prefixMin, int[] suffixMin) {
+        int windowSize = hi - lo + 1;
+        int extendedLength = length + windowSize - 1;
+
+        // the extended index j corresponds to the line index j + lo,
+        // and the minimums are calculated in blocks of windowSize
+        for (int j = 0; j < extendedLength; j++) {
+            int value = valueAt(line, length, j + lo);
+            if (j % windowSize == 0) {
+                prefixMin[j] = value;
+            } else {
+                prefixMin[j] = Math.min(prefixMin[j - 1], value);
             }
-            pt.unitDone();
         }
-        finishProgressTracker();
-        return outPixels;
+        for (int j = extendedLength - 1; j >= 0; j--) {
+            int value = valueAt(line, length, j + lo);
+            if (j == extendedLength - 1 || j % windowSize == windowSize - 1) {
+                suffixMin[j] = value;
+            } else {
+                suffixMin[j] = Math.min(suffixMin[j + 1], value);
+            }
+        }
+
+        // the window [i, i + windowSize - 1] spans at most two blocks
+        for (int i = 0; i < length; i++) {
+            result[i] = Math.min(suffixMin[i], prefixMin[i + windowSize - 1]);
+        }
+    }
+
+    private static int valueAt(int[] line, int length, int index) {
+        if (index < 0 || index >= length) {
+            return IDENTITY;
+        }
+        return line[index];
+    }
+
+    private static byte[] invert(byte[] plane) {
+        byte[] inverted = plane.clone();
+        invertInPlace(inverted);
+        return inverted;
+    }
+
+    private static void invertInPlace(byte[] plane) {
+        for (int i = 0; i < plane.length; i++) {
+            plane[i] = (byte) ~plane[i];
+        }
     }
 
-    private static short min(short a, short b) {
-        return (a <= b) ? a : b;
+    // a - b, where a >= b for every pixel
+    private static byte[] subtract(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = (byte) ((a[i] & 0xFF) - (b[i] & 0xFF));
+        }
+        return result;
     }
 
-    private static short max(short a, short b) {
-        return (a >= b) ? a : b;
+    private static boolean isOpaque(int[] pixels) {
+        for (int pixel : pixels) {
+            if ((pixel >>> 24) != 0xFF) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -143,4 +390,3 @@ public class MorphologyFilter extends WholeImageFilter {
         return "Blur/Minimum";
     }
 }
-
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import com.jhlabs.image.WholeImageFilter;
+import pixelitor.ThreadPool;
+import pixelitor.filters.Median;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The implementation of the {@link Median} filter: a per-channel
+ * rank filter (median, minimum, maximum or any percentile)
+ * with a square window, whose cost doesn't depend on the radius.
+ *
+ * It uses the algorithm from "Median Filtering in Constant Time" by
+ * Perreault and Hébert: every column has a histogram of the pixels in
+ * the window's height, which is updated with one pixel per row, and the
+ * histogram of the window is updated by adding the entering column's
+ * histogram and subtracting the leaving one's. The histograms have
+ * 16 coarse bins and 256 fine bins, and the fine bins of the window
+ * are updated lazily, only for the coarse bins where the rank is searched.
+ * The pixels outside the image are replaced by the nearest edge pixels.
+ */
+public class RankFilter extends WholeImageFilter {
+    private static final int NUM_FINE = 256;
+    private static final int NUM_COARSE = 16;
+    private static final int FINE_PER_COARSE = NUM_FINE / NUM_COARSE;
+
+    // the bit shifts of the blue, green, red and alpha channels
+    private static final int[] CHANNEL_SHIFTS = {0, 8, 16, 24};
+
+    private int radius = 1;
+    private double percentile = 50;
+
+    public RankFilter(String filterName) {
+        super(filterName);
+    }
+
+    public void setRadius(int radius) {
+        this.radius = radius;
+    }
+
+    /**
+     * Sets the rank as a percentage: 0 is the minimum,
+     * 50 is the median and 100 is the maximum.
+     */
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    @Override
+    protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
+        int[] outPixels = new int[width * height];
+        if (radius <= 0) {
+            System.arraycopy(inPixels, 0, outPixels, 0, outPixels.length);
+            return outPixels;
+        }
+
+        // the alpha channel is processed only if it's not constant
+        boolean opaque = isOpaque(inPixels);
+        int numChannels = opaque ? 3 : 4;
+        int diameter = 2 * radius + 1;
+        int rank = (int) Math.round(percentile / 100.0 * (diameter * diameter - 1));
+
+        // the column histograms are large, therefore they are
+        // allocated only once for each thread working at the same time
+        Queue<Band> freeBands = new ConcurrentLinkedQueue<>();
+
+        pt = createProgressTracker(height);
+        ThreadPool.parallelRows(height, (startY, endY) -> {
+            Band band = freeBands.poll();
+            if (band == null) {
+                band = new Band(width, height, inPixels, outPixels, numChannels, rank);
+            } else {
+                band.clear();
+            }
+            band.process(startY, endY, opaque);
+            freeBands.add(band);
+        }, pt);
+        finishProgressTracker();
+
+        return outPixels;
+    }
+
+    private static boolean isOpaque(int[] pixels) {
+        for (int pixel : pixels) {
+            if ((pixel >>> 24) != 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The column histograms and the window histogram of a row band
+     */
+    private class Band {
+        private final int width;
+        private final int height;
+        private final int[] in;
+        private final int[] out;
+        private final int numChannels;
+        private final int rank;
+
+        // for each channel, the fine and coarse histograms of all columns
+        private final short[][] colFine;
+        private final short[][] colCoarse;
+
+        // the histogram of the current window
+        private final int[] fine = new int[NUM_FINE];
+        private final int[] coarse = new int[NUM_COARSE];
+
+        // the x coordinates where the fine segments were last updated
+        private final int[] segmentX = new int[NUM_COARSE];
+
+        Band(int width, int height, int[] in, int[] out, int numChannels, int rank) {
+            this.width = width;
+            this.height = height;
+            this.in = in;
+            this.out = out;
+            this.numChannels = numChannels;
+            this.rank = rank;
+
+            colFine = new short[numChannels][width * NUM_FINE];
+            colCoarse = new short[numChannels][width * NUM_COARSE];
+        }
+
+        // resets the column histograms, so that another band can be processed
+        void clear() {
+            for (int c = 0; c < numChannels; c++) {
+                Arrays.fill(colFine[c], (short) 0);
+                Arrays.fill(colCoarse[c], (short) 0);
+            }
+        }
+
+        void process(int startY, int endY, boolean opaque) {
+            initColumns(startY);
+            for (int y = startY; y < endY; y++) {
+                if (y > startY) {
+                    updateColumns(clampY(y - radius - 1), clampY(y + radius));
+                }
+
+                int rowStart = y * width;
+                int initial = opaque ? 0xFF_00_00_00 : 0;
+                for (int x = 0; x < width; x++) {
+                    out[rowStart + x] = initial;
+                }
+                for (int c = 0; c < numChannels; c++) {
+                    processRow(c, rowStart);
+                }
+            }
+        }
+
+        private void initColumns(int y) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                int rowStart = clampY(y + dy) * width;
+                for (int x = 0; x < width; x++) {
+                    int rgb = in[rowStart + x];
+                    for (int c = 0; c < numChannels; c++) {
+                        int v = (rgb >>> CHANNEL_SHIFTS[c]) & 0xFF;
+                        colFine[c][x * NUM_FINE + v]++;
+                        colCoarse[c][x * NUM_COARSE + (v >> 4)]++;
+                    }
+                }
+            }
+        }
+
+        // moves the column histograms one row down
+        private void updateColumns(int removedY, int addedY) {
+            if (removedY == addedY) {
+                return;
+            }
+            int removedStart = removedY * width;
+            int addedStart = addedY * width;
+            for (int x = 0; x < width; x++) {
+                int removedRGB = in[removedStart + x];
+                int addedRGB = in[addedStart + x];
+                for (int c = 0; c < numChannels; c++) {
+                    int shift = CHANNEL_SHIFTS[c];
+                    int removed = (removedRGB >>> shift) & 0xFF;
+                    int added = (addedRGB >>> shift) & 0xFF;
+                    colFine[c][x * NUM_FINE + removed]--;
+                    colFine[c][x * NUM_FINE + added]++;
+                    colCoarse[c][x * NUM_COARSE + (removed >> 4)]--;
+                    colCoarse[c][x * NUM_COARSE + (added >> 4)]++;
+                }
+            }
+        }
+
+        private void processRow(int c, int rowStart) {
+            short[] cFine = colFine[c];
+            short[] cCoarse = colCoarse[c];
+            int shift = CHANNEL_SHIFTS[c];
+
+            // the window at x = 0
+            for (int i = 0; i < NUM_COARSE; i++) {
+                coarse[i] = 0;
+                segmentX[i] = Integer.MIN_VALUE;
+            }
+            for (int dx = -radius; dx <= radius; dx++) {
+                addColumn(coarse, cCoarse, clampX(dx) * NUM_COARSE, NUM_COARSE, 1);
+            }
+
+            for (int x = 0; x < width; x++) {
+                if (x > 0) {
+                    addColumn(coarse, cCoarse, clampX(x + radius) * NUM_COARSE, NUM_COARSE, 1);
+                    addColumn(coarse, cCoarse, clampX(x - radius - 1) * NUM_COARSE, NUM_COARSE, -1);
+                }
+
+                // find the coarse bin containing the rank...
+                int count = 0;
+                int bin = 0;
+                while (count + coarse[bin] <= rank) {
+                    count += coarse[bin];
+                    bin++;
+                }
+
+                // ...then the fine bin within it
+                updateSegment(cFine, bin, x);
+                int value = bin * FINE_PER_COARSE;
+                while (count + fine[value] <= rank) {
+                    count += fine[value];
+                    value++;
+                }
+
+                out[rowStart + x] |= value << shift;
+            }
+        }
+
+        // brings the fine bins of the given coarse bin up to date for x
+        private void updateSegment(short[] cFine, int bin, int x) {
+            int offset = bin * FINE_PER_COARSE;
+            int lastX = segmentX[bin];
+            segmentX[bin] = x;
+
+            if (lastX == x) {
+                return;
+            }
+            if (lastX == Integer.MIN_VALUE || x - lastX > radius) {
+                // recalculating is cheaper than updating
+                for (int i = offset; i < offset + FINE_PER_COARSE; i++) {
+                    fine[i] = 0;
+                }
+                for (int dx = -radius; dx <= radius; dx++) {
+                    addSegment(cFine, clampX(x + dx), offset, 1);
+                }
+                return;
+            }
+            for (int t = lastX + 1; t <= x; t++) {
+                int added = clampX(t + radius);
+                int removed = clampX(t - radius - 1);
+                if (added != removed) {
+                    addSegment(cFine, added, offset, 1);
+                    addSegment(cFine, removed, offset, -1);
+                }
+            }
+        }
+
+        private void addSegment(short[] cFine, int colX, int offset, int sign) {
+            int colOffset = colX * NUM_FINE + offset;
+            for (int i = 0; i < FINE_PER_COARSE; i++) {
+                fine[offset + i] += sign * cFine[colOffset + i];
+            }
+        }
+
+        private int clampX(int x) {
+            return x < 0 ? 0 : (x >= width ? width - 1 : x);
+        }
+
+        private int clampY(int y) {
+            return y < 0 ? 0 : (y >= height ? height - 1 : y);
+        }
+    }
+
+    private static void addColumn(int[] dest, short[] src, int srcOffset, int length, int sign) {
+        for (int i = 0; i < length; i++) {
+            dest[i] += sign * src[srcOffset + i];
+        }
+    }
+}
@@ -18,7 +18,6 @@
 package pixelitor.filters.jhlabsproxies;
 
 import com.jhlabs.image.CellularFilter;
-import com.jhlabs.math.Noise;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.AngleParam;
 import pixelitor.filters.gui.GradientParam;
@@ -30,7 +29,7 @@ import pixelitor.utils.CachedFloatRandom;
 
 import java.awt.image.BufferedImage;
 
-import static pixelitor.filters.gui.ReseedActions.reseedByCalling;
+import static pixelitor.filters.gui.ReseedActions.reseedNoiseAnd;
 import static pixelitor.gui.GUIText.ZOOM;
 
 /**
@@ -77,10 +76,7 @@ public class JHCells extends ParametrizedFilter {
             scale.withAdjustedRange(0.5),
             stretch,
             angle
-        ).withAction(reseedByCalling(() -> {
-            CachedFloatRandom.reseedCache();
-            Noise.reseed();
-        }));
+        ).withAction(reseedNoiseAnd(CachedFloatRandom::reseedCache));
     }
 
     @Override
@@ -18,7 +18,6 @@
 package pixelitor.filters.jhlabsproxies;
 
 import com.jhlabs.image.CrystallizeFilter;
-import com.jhlabs.math.Noise;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.BooleanParam;
 import pixelitor.filters.gui.ColorParam;
@@ -30,7 +29,7 @@ import java.awt.image.BufferedImage;
 
 import static java.awt.Color.BLACK;
 import static pixelitor.filters.gui.ColorParam.TransparencyPolicy.FREE_TRANSPARENCY;
-import static pixelitor.filters.gui.ReseedActions.reseedByCalling;
+import static pixelitor.filters.gui.ReseedActions.reseedNoiseAnd;
 
 /**
  * Crystallize filter based on the JHLabs CrystallizeFilter
@@ -57,10 +56,7 @@ public class JHCrystallize extends ParametrizedFilter {
             randomness,
             edgeColor,
             fadeEdges
-        ).withAction(reseedByCalling(() -> {
-            CachedFloatRandom.reseedCache();
-            Noise.reseed();
-        }));
+        ).withAction(reseedNoiseAnd(CachedFloatRandom::reseedCache));
     }
 
     @Override
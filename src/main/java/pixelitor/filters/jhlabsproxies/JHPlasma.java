@@ -51,6 +51,9 @@ public class JHPlasma extends ParametrizedFilter {
 
     private PlasmaFilter filter;
 
+    // static, so that it's also used by the copies calculating the previews
+    private static int seed = 567;
+
     private final float[] defaultThumbPositions = {0.0f, 0.3f, 0.7f, 1.0f};
     private final Color[] defaultValues = {BLACK, RED, ORANGE, YELLOW};
     private final GradientParam gradient = new GradientParam("Gradient", defaultThumbPositions, defaultValues);
@@ -64,7 +67,7 @@ public class JHPlasma extends ParametrizedFilter {
             turbulence,
             type,
             gradient
-        ).withAction(reseedByCalling(() -> filter.randomize()));
+        ).withAction(reseedByCalling(JHPlasma::reseed));
     }
 
     @Override
@@ -73,6 +76,7 @@ public class JHPlasma extends ParametrizedFilter {
             filter = new PlasmaFilter(NAME);
         }
 
+        filter.setSeed(seed);
         filter.setLessColors(type.getValue() != MORE_COLORS);
         filter.setTurbulence(turbulence.getPercentageValF());
         filter.setUseColormap(type.getValue() == GRADIENT_COLORS);
@@ -80,4 +84,8 @@ public class JHPlasma extends ParametrizedFilter {
 
         return filter.filter(src, dest);
     }
+
+    private static void reseed() {
+        seed = (int) System.nanoTime();
+    }
 }
\ No newline at end of file
@@ -18,7 +18,6 @@
 package pixelitor.filters.jhlabsproxies;
 
 import com.jhlabs.image.PointillizeFilter;
-import com.jhlabs.math.Noise;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.BooleanParam;
 import pixelitor.filters.gui.ColorParam;
@@ -30,7 +29,7 @@ import java.awt.image.BufferedImage;
 
 import static java.awt.Color.BLACK;
 import static pixelitor.filters.gui.ColorParam.TransparencyPolicy.FREE_TRANSPARENCY;
-import static pixelitor.filters.gui.ReseedActions.reseedByCalling;
+import static pixelitor.filters.gui.ReseedActions.reseedNoiseAnd;
 
 /**
  * Pointillize filter based on the JHLabs PointillizeFilter
@@ -60,10 +59,7 @@ public class JHPointillize extends ParametrizedFilter {
             edgeColor,
             dotSize,
             fuzziness
-        ).withAction(reseedByCalling(() -> {
-            CachedFloatRandom.reseedCache();
-            Noise.reseed();
-        }));
+        ).withAction(reseedNoiseAnd(CachedFloatRandom::reseedCache));
 
         fadeEdges.setupDisableOtherIfChecked(edgeColor);
         fadeEdges.setupDisableOtherIfChecked(dotSize);
@@ -57,10 +57,6 @@ public class LevelsModel {
     }
 
     public void settingsChanged() {
-        if (lastGUI == null) {
-            return; // it's null when loading a smart filter
-        }
-
         GrayScaleLookup rgb = rgbModel.getLookup();
 
         GrayScaleLookup r = rModel.getLookup();
@@ -69,7 +65,12 @@ public class LevelsModel {
 
         RGBLookup unifiedLookup = new RGBLookup(rgb, r, g, b);
         filter.setRGBLookup(unifiedLookup);
-        lastGUI.runFilterPreview();
+
+        // it's null when loading a smart filter or
+        // when a copy of the filter calculates a preview
+        if (lastGUI != null) {
+            lastGUI.runFilterPreview();
+        }
     }
 
     public void resetAllToDefault() {
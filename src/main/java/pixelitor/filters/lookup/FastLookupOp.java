@@ -17,9 +17,9 @@
 
 package pixelitor.filters.lookup;
 
-import com.jhlabs.image.PixelUtils;
 import pixelitor.filters.util.FilterPalette;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.simd.PixelKernels;
 
 import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
@@ -56,56 +56,9 @@ public class FastLookupOp implements BufferedImageOp {
             assert numPixels == destData.length;
 
             short[][] table = lut.getTable();
-
-            for (int i = 0; i < numPixels; i++) {
-                int rgb = srcData[i];
-                int a = (rgb >>> 24) & 0xFF;
-                int r = (rgb >>> 16) & 0xFF;
-                int g = (rgb >>> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                if (a == 255 || notPremultiplied) {
-                    r = table[0][r];
-                    g = table[1][g];
-                    b = table[2][b];
-                } else if (a == 0) {
-                    r = 0;
-                    g = 0;
-                    b = 0;
-                } else {
-                    // unpremultiply
-                    float f = 255.0f / a;
-                    int ur = (int) (r * f);
-                    int ug = (int) (g * f);
-                    int ub = (int) (b * f);
-
-                    if (ur > 255) {
-                        ur = 255;
-                    }
-                    if (ug > 255) {
-                        ug = 255;
-                    }
-                    if (ub > 255) {
-                        ub = 255;
-                    }
-
-                    // lookup
-                    ur = table[0][ur];
-                    ug = table[1][ug];
-                    ub = table[2][ub];
-
-                    // premultiply
-                    float f2 = a * (1.0f / 255.0f);
-                    r = (int) (ur * f2);
-                    g = (int) (ug * f2);
-                    b = (int) (ub * f2);
-
-                    r = PixelUtils.clamp(r);
-                    g = PixelUtils.clamp(g);
-                    b = PixelUtils.clamp(b);
-                }
-                destData[i] = a << 24 | r << 16 | g << 8 | b;
-            }
+            PixelKernels.lookup(srcData, destData, 0, numPixels,
+                toIntTable(table[0]), toIntTable(table[1]), toIntTable(table[2]),
+                !notPremultiplied, false);
         } else if (src.getColorModel() instanceof IndexColorModel) {
             short[][] table = lut.getTable();
             return new FilterPalette(src) {
@@ -133,6 +86,14 @@ public class FastLookupOp implements BufferedImageOp {
         return dst;
     }
 
+    private static int[] toIntTable(short[] table) {
+        int[] intTable = new int[256];
+        for (int i = 0; i < intTable.length; i++) {
+            intTable[i] = table[i];
+        }
+        return intTable;
+    }
+
     @Override
     public Rectangle2D getBounds2D(BufferedImage src) {
         return null;
@@ -107,4 +107,10 @@ public class TextFilter extends FilterWithGUI {
     public boolean supportsGray() {
         return !settings.hasWatermark();
     }
+
+    @Override
+    public boolean supportsDownscaledPreview() {
+        // the font size is given in pixels
+        return false;
+    }
 }
\ No newline at end of file
@@ -19,7 +19,11 @@ package pixelitor.gui;
 
 import pixelitor.Composition;
 import pixelitor.OpenImages;
-import pixelitor.utils.ImageUtils;
+import pixelitor.ThreadPool;
+import pixelitor.layers.ImageLayer;
+import pixelitor.selection.SelectionMask;
+import pixelitor.utils.CoalescingTask;
+import pixelitor.utils.Histograms;
 import pixelitor.utils.ViewActivationListener;
 
 import javax.swing.*;
@@ -38,22 +42,45 @@ import static javax.swing.BorderFactory.createTitledBorder;
 import static pixelitor.utils.Texts.i18n;
 
 /**
- * The panel that shows the histograms
+ * The panel that shows the histograms.
+ *
+ * The histograms are calculated outside the EDT, and the requests
+ * arriving while a calculation is running are coalesced.
+ * The pixels are copied on the EDT, because the images can be edited
+ * while they are counted. The histograms of the composite image are
+ * updated incrementally (only the changed tiles are copied and counted),
+ * and while a filter preview is running, only a sample of the pixels is counted.
  */
 public class HistogramsPanel extends JPanel implements ViewActivationListener {
     private static final HistogramsPanel INSTANCE = new HistogramsPanel();
 
-    public static final int HISTOGRAM_RESOLUTION = 256;
+    public static final int HISTOGRAM_RESOLUTION = Histograms.NUM_BINS;
 
     private static final String TYPE_LOGARITHMIC = "Logarithmic";
     private static final String TYPE_LINEAR = "Linear";
     private final JComboBox<String> typeChooser;
 
+    private static final String SOURCE_IMAGE = "Image";
+    private static final String SOURCE_LAYER = "Active Layer";
+    private final JComboBox<String> sourceChooser;
+    private final JCheckBox selectionOnlyCB;
+
     private final HistogramPainter red;
     private final HistogramPainter green;
     private final HistogramPainter blue;
+    private final HistogramPainter luminance;
 
     private boolean logarithmic;
+    private boolean layerSource;
+    private boolean selectionOnly;
+
+    // The counting uses the shared thread pool, therefore
+    // it can't run as a task of the shared thread pool.
+    private final CoalescingTask histogramsTask = new CoalescingTask(
+        this::calcHistogramsOffEDT, ThreadPool.newDaemonExecutor("Histograms", 1));
+
+    // the last request, read by the histograms task
+    private volatile Request lastRequest;
 
     private HistogramsPanel() {
         setLayout(new BorderLayout());
@@ -61,26 +88,44 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
         red = new HistogramPainter(RED);
         green = new HistogramPainter(GREEN);
         blue = new HistogramPainter(BLUE);
+        luminance = new HistogramPainter(DARK_GRAY);
 
         JPanel painters = new JPanel();
-        painters.setLayout(new GridLayout(3, 1, 0, 0));
+        painters.setLayout(new GridLayout(4, 1, 0, 0));
 
         var size = new Dimension(
             HISTOGRAM_RESOLUTION + 2,
-            3 * HistogramPainter.PREFERRED_HEIGHT);
+            4 * HistogramPainter.PREFERRED_HEIGHT);
         painters.setPreferredSize(size);
         painters.setMinimumSize(size);
 
         painters.add(red);
         painters.add(green);
         painters.add(blue);
+        painters.add(luminance);
 
         typeChooser = new JComboBox<>(new String[]{TYPE_LINEAR, TYPE_LOGARITHMIC});
         typeChooser.addActionListener(e -> typeChanged());
 
-        JPanel northPanel = new JPanel(new FlowLayout(LEFT));
-        northPanel.add(new JLabel(GUIText.TYPE + ":"));
-        northPanel.add(typeChooser);
+        sourceChooser = new JComboBox<>(new String[]{SOURCE_IMAGE, SOURCE_LAYER});
+        sourceChooser.addActionListener(e -> sourceChanged());
+
+        selectionOnlyCB = new JCheckBox("Selection");
+        selectionOnlyCB.setToolTipText("Count only the selected pixels");
+        selectionOnlyCB.addActionListener(e -> sourceChanged());
+
+        JPanel typePanel = new JPanel(new FlowLayout(LEFT));
+        typePanel.add(new JLabel(GUIText.TYPE + ":"));
+        typePanel.add(typeChooser);
+
+        JPanel sourcePanel = new JPanel(new FlowLayout(LEFT));
+        sourcePanel.add(new JLabel("Source:"));
+        sourcePanel.add(sourceChooser);
+        sourcePanel.add(selectionOnlyCB);
+
+        JPanel northPanel = new JPanel(new GridLayout(2, 1, 0, 0));
+        northPanel.add(typePanel);
+        northPanel.add(sourcePanel);
         add(northPanel, NORTH);
 
         setBorder(createTitledBorder(i18n("histograms")));
@@ -97,11 +142,19 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
         }
     }
 
+    private void sourceChanged() {
+        layerSource = SOURCE_LAYER.equals(sourceChooser.getSelectedItem());
+        selectionOnly = selectionOnlyCB.isSelected();
+        OpenImages.onActiveComp(this::update);
+    }
+
     @Override
     public void allViewsClosed() {
+        lastRequest = null;
         red.allViewsClosed();
         green.allViewsClosed();
         blue.allViewsClosed();
+        luminance.allViewsClosed();
         repaint();
     }
 
@@ -118,31 +171,75 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
         INSTANCE.update(comp);
     }
 
+    /**
+     * Copies the data needed for the calculation on the EDT,
+     * and requests the calculation on a background thread.
+     */
     private void update(Composition comp) {
         Objects.requireNonNull(comp);
         if (!isShown()) {
             return;
         }
-        BufferedImage image = comp.getCompositeImage();
-
-        int[] reds = new int[HISTOGRAM_RESOLUTION];
-        int[] blues = new int[HISTOGRAM_RESOLUTION];
-        int[] greens = new int[HISTOGRAM_RESOLUTION];
-
-        int[] data = ImageUtils.getPixelsAsArray(image);
-        for (int rgb : data) {
-            int a = (rgb >>> 24) & 0xFF;
-            if (a > 0) {
-                int r = (rgb >>> 16) & 0xFF;
-                int g = (rgb >>> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                reds[r]++;
-                greens[g]++;
-                blues[b]++;
-            }
+
+        BufferedImage image = null;
+        int tx = 0;
+        int ty = 0;
+        if (layerSource && comp.getActiveDrawable() instanceof ImageLayer layer) {
+            image = layer.getVisibleImage();
+            tx = layer.getTx();
+            ty = layer.getTy();
+        }
+        boolean composite = image == null;
+        if (composite) {
+            image = comp.getCompositeImage();
+        }
+
+        SelectionMask selection = null;
+        if (selectionOnly && comp.hasSelection()) {
+            selection = comp.getSelection().getMask();
         }
 
+        boolean sampled = isPreviewing(comp);
+        if (composite && selection == null && !sampled) {
+            comp.getHistograms().copyDirtyTiles(image);
+            lastRequest = new Request(comp, null);
+        } else {
+            int step = sampled ? Histograms.sampleStep(image) : 1;
+            lastRequest = new Request(comp, Histograms.snapshot(image, selection, tx, ty, step));
+        }
+        histogramsTask.request();
+    }
+
+    private static boolean isPreviewing(Composition comp) {
+        return comp.getActiveLayer() instanceof ImageLayer layer
+            && layer.getState() == ImageLayer.State.PREVIEW;
+    }
+
+    private void calcHistogramsOffEDT() {
+        Request request = lastRequest;
+        if (request == null) {
+            return;
+        }
+        Histograms histograms;
+        if (request.snapshot() == null) {
+            histograms = request.comp().getHistograms().update();
+        } else {
+            histograms = request.snapshot().count();
+        }
+        SwingUtilities.invokeLater(() -> showHistograms(request, histograms));
+    }
+
+    private void showHistograms(Request request, Histograms histograms) {
+        if (request != lastRequest) {
+            // outdated, the newer request will be shown soon
+            return;
+        }
+
+        int[] reds = histograms.getReds();
+        int[] greens = histograms.getGreens();
+        int[] blues = histograms.getBlues();
+        int[] luminances = histograms.getLuminances();
+
         if (logarithmic) {
             for (int i = 0; i < HISTOGRAM_RESOLUTION; i++) {
                 // Add one before taking the logarithm to avoid calculating log(0)
@@ -151,12 +248,14 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
                 reds[i] = (int) (1000.0 * Math.log(reds[i] + 1));
                 greens[i] = (int) (1000.0 * Math.log(greens[i] + 1));
                 blues[i] = (int) (1000.0 * Math.log(blues[i] + 1));
+                luminances[i] = (int) (1000.0 * Math.log(luminances[i] + 1));
             }
         }
 
         red.updateData(reds);
         green.updateData(greens);
         blue.updateData(blues);
+        luminance.updateData(luminances);
         repaint();
     }
 
@@ -167,4 +266,11 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
     public static boolean isShown() {
         return INSTANCE.getParent() != null;
     }
+
+    /**
+     * The data copied on the EDT for a histogram calculation. The snapshot
+     * is null if the incrementally updated histograms of the composition are used.
+     */
+    private record Request(Composition comp, Histograms.Snapshot snapshot) {
+    }
 }
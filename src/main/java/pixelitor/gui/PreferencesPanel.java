@@ -27,6 +27,8 @@ import pixelitor.guides.GuideStrokeType;
 import pixelitor.guides.GuideStyle;
 import pixelitor.history.History;
 import pixelitor.io.FileChoosers;
+import pixelitor.io.PngCompression;
+import pixelitor.io.ThumbnailService;
 import pixelitor.layers.LayerButtonLayout;
 import pixelitor.utils.AppPreferences;
 import pixelitor.utils.Cursors;
@@ -57,8 +59,10 @@ public class PreferencesPanel extends JPanel {
     private JComboBox<Item> thumbSizeCB;
     private JComboBox<MouseZoomMethod> zoomMethodCB;
     private JComboBox<PanMethod> panMethodCB;
+    private JComboBox<PngCompression> pngCompressionCB;
     private JTextField magickDirTF;
     private JCheckBox nativeChoosersCB;
+    private JCheckBox thumbDiskCacheCB;
     private JCheckBox experimentalCB;
 
     // the panel is re-created every time, but the last selected tab
@@ -96,8 +100,10 @@ public class PreferencesPanel extends JPanel {
         }
         addUndoLevelsChooser(gbh);
         addThumbSizeChooser(gbh);
+        addPngCompressionChooser(gbh);
         addMagickDirField(gbh);
         addNativeChoosersCB(gbh);
+        addThumbDiskCacheCB(gbh);
         addExperimentalCB(gbh);
 
         generalPanel.setBorder(EMPTY_BORDER);
@@ -181,6 +187,14 @@ public class PreferencesPanel extends JPanel {
         thumbSizeCB.addActionListener(e -> updateThumbSize());
     }
 
+    private void addPngCompressionChooser(GridBagHelper gbh) {
+        pngCompressionCB = new JComboBox<>(PngCompression.values());
+        pngCompressionCB.setSelectedItem(PngCompression.CURRENT);
+        pngCompressionCB.setName("pngCompressionCB");
+        // no action listener, set only when OK is pressed
+        gbh.addLabelAndControl("PNG/ORA Compression:", pngCompressionCB);
+    }
+
     private void addMagickDirField(GridBagHelper gbh) {
         magickDirTF = new JTextField(AppPreferences.magickDirName);
         // don't let the textfield grow too large
@@ -194,6 +208,11 @@ public class PreferencesPanel extends JPanel {
         gbh.addLabelAndControl("Use System File Choosers:", nativeChoosersCB);
     }
 
+    private void addThumbDiskCacheCB(GridBagHelper gbh) {
+        thumbDiskCacheCB = new JCheckBox("", ThumbnailService.useDiskCache());
+        gbh.addLabelAndControl("Cache Preview Thumbnails on Disk:", thumbDiskCacheCB);
+    }
+
     private void addExperimentalCB(GridBagHelper gbh) {
         experimentalCB = new JCheckBox("", AppContext.enableExperimentalFeatures);
         gbh.addLabelAndControl("Enable Experimental Features:", experimentalCB);
@@ -319,8 +338,10 @@ public class PreferencesPanel extends JPanel {
         // these can't be set interactively => set it here
         MouseZoomMethod.changeTo((MouseZoomMethod) zoomMethodCB.getSelectedItem());
         PanMethod.changeTo((PanMethod) panMethodCB.getSelectedItem());
+        PngCompression.CURRENT = (PngCompression) pngCompressionCB.getSelectedItem();
         AppPreferences.magickDirName = magickDirName;
         FileChoosers.setUseNativeDialogs(nativeChoosersCB.isSelected());
+        ThumbnailService.setUseDiskCache(thumbDiskCacheCB.isSelected());
         AppContext.enableExperimental(experimentalCB.isSelected());
 
         return true;
@@ -18,7 +18,7 @@
 package pixelitor.gui.utils;
 
 import pixelitor.io.FileUtils;
-import pixelitor.io.TrackedIO;
+import pixelitor.io.ThumbnailService;
 import pixelitor.utils.JProgressBarTracker;
 import pixelitor.utils.ProgressPanel;
 import pixelitor.utils.ProgressTracker;
@@ -31,10 +31,6 @@ import java.awt.Graphics2D;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
-import java.lang.ref.SoftReference;
-import java.nio.file.Files;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Image preview panel for the open file chooser
@@ -42,7 +38,6 @@ import java.util.Map;
 public class ImagePreviewPanel extends JPanel implements PropertyChangeListener {
     private static final int SIZE = 200;
     public static final int EMPTY_SPACE_AT_LEFT = 5;
-    private static final Map<String, SoftReference<ThumbInfo>> thumbsCache = new HashMap<>();
 
     private final Color backgroundColor;
     private ThumbInfo thumbInfo;
@@ -74,44 +69,16 @@ public class ImagePreviewPanel extends JPanel implements PropertyChangeListener
     }
 
     private ThumbInfo getOrCreateThumb(File file) {
-        String filePath = file.getAbsolutePath();
-        if (thumbsCache.containsKey(filePath)) {
-            SoftReference<ThumbInfo> thumbRef = thumbsCache.get(filePath);
-            ThumbInfo cachedInfo = thumbRef.get();
-            if (cachedInfo != null) {
-                return cachedInfo;
-            }
-        }
-
-        if (!Files.isReadable(file.toPath())) {
-            return ThumbInfo.failure(ThumbInfo.PREVIEW_ERROR);
-        }
-
-        // Currently no thumb extraction is attempted for ora and pxc files.
-        if (FileUtils.hasMultiLayerExtension(file)) {
-            ThumbInfo fakeThumbInfo = ThumbInfo.failure(ThumbInfo.NO_PREVIEW);
-            thumbsCache.put(filePath, new SoftReference<>(fakeThumbInfo));
-            return fakeThumbInfo;
-        }
-
         int availableWidth = getWidth() - EMPTY_SPACE_AT_LEFT;
         int availableHeight = getHeight();
-        try {
-            ProgressTracker pt = new JProgressBarTracker(progressPanel);
-            ThumbInfo newThumbInfo = TrackedIO.readSubsampledThumb(file, availableWidth, availableHeight, pt);
-            thumbsCache.put(filePath, new SoftReference<>(newThumbInfo));
-            return newThumbInfo;
-        } catch (Exception ex) {
-            ThumbInfo fakeThumbInfo = ThumbInfo.failure(ThumbInfo.PREVIEW_ERROR);
-            thumbsCache.put(filePath, new SoftReference<>(fakeThumbInfo));
 
-            ex.printStackTrace();
-            return fakeThumbInfo;
-        }
-    }
+        ThumbnailService service = ThumbnailService.get();
+        ProgressTracker pt = new JProgressBarTracker(progressPanel);
+        ThumbInfo info = service.getThumb(file, availableWidth, availableHeight, pt);
 
-    public static void removeThumbFromCache(File file) {
-        thumbsCache.remove(file.getAbsolutePath());
+        // the user will probably look at the nearby files next
+        service.prefetchNeighbors(file, availableWidth, availableHeight);
+        return info;
     }
 
     @Override
@@ -26,6 +26,8 @@ import java.awt.image.BufferedImage;
 
 import static java.awt.Color.BLACK;
 import static java.awt.Color.WHITE;
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
 
 /**
  * Information associated with a thumbnail image
@@ -65,6 +67,33 @@ public class ThumbInfo {
         return failure(-1, -1, errMsg);
     }
 
+    public BufferedImage getThumb() {
+        return thumb;
+    }
+
+    public boolean isSuccess() {
+        return errMsg == null;
+    }
+
+    public int getOrigWidth() {
+        return origWidth;
+    }
+
+    public int getOrigHeight() {
+        return origHeight;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the thumbnail pixels
+     */
+    public long getMemorySize() {
+        if (thumb == null) {
+            return 0;
+        }
+        int bytesPerPixel = thumb.getColorModel().getPixelSize() / 8;
+        return (long) thumb.getWidth() * thumb.getHeight() * Math.max(1, bytesPerPixel);
+    }
+
     public void paint(Graphics2D g, JPanel panel) {
         int width = panel.getWidth();
         int height = panel.getHeight();
@@ -77,9 +106,21 @@ public class ThumbInfo {
             return;
         }
 
-        int x = (width - thumb.getWidth()) / 2 + ImagePreviewPanel.EMPTY_SPACE_AT_LEFT;
-        int y = (height - thumb.getHeight()) / 2;
-        g.drawImage(thumb, x, y, null);
+        // the cached thumbs can be somewhat larger than the panel
+        int thumbWidth = thumb.getWidth();
+        int thumbHeight = thumb.getHeight();
+        double scale = Math.min(1.0, Math.min(
+            (width - ImagePreviewPanel.EMPTY_SPACE_AT_LEFT) / (double) thumbWidth,
+            height / (double) thumbHeight));
+        if (scale < 1.0) {
+            thumbWidth = Math.max(1, (int) (thumbWidth * scale));
+            thumbHeight = Math.max(1, (int) (thumbHeight * scale));
+            g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+        }
+
+        int x = (width - thumbWidth) / 2 + ImagePreviewPanel.EMPTY_SPACE_AT_LEFT;
+        int y = (height - thumbHeight) / 2;
+        g.drawImage(thumb, x, y, thumbWidth, thumbHeight, null);
 
         paintImageSize(g);
     }
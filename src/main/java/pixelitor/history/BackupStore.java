@@ -0,0 +1,339 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.history;
+
+import pixelitor.utils.Messages;
+import pixelitor.utils.VisibleForTesting;
+
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps the backup images of the history within a memory budget.
+ *
+ * The recent backups are kept as they are. When the budget is exceeded,
+ * the oldest backups are compressed in the background, and if that is
+ * still not enough, the compressed data is moved into a temporary file.
+ * Unlike soft references, this never loses a backup that might be needed.
+ */
+public class BackupStore {
+    private static long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+
+    // the compressible backups in memory, the oldest first
+    private static final Deque<StoredBackup> uncompressed = new ArrayDeque<>();
+    private static final Deque<StoredBackup> compressed = new ArrayDeque<>();
+
+    private static long memoryUsage;
+    private static long fileUsage;
+
+    // true while a budget check is scheduled or running
+    private static boolean enforcing;
+
+    private static final ExecutorService worker =
+        Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "History Backups");
+            t.setDaemon(true);
+            return t;
+        });
+
+    private static BackupFile backupFile;
+    private static boolean fileFailed;
+
+    private static final List<Runnable> usageListeners = new ArrayList<>();
+
+    private BackupStore() {
+    }
+
+    static StoredBackup store(BufferedImage image) {
+        return add(new StoredBackup(image));
+    }
+
+    static StoredBackup store(Raster raster) {
+        return add(new StoredBackup(raster));
+    }
+
+    private static StoredBackup add(StoredBackup backup) {
+        synchronized (BackupStore.class) {
+            memoryUsage += backup.getRawBytes();
+            if (backup.canBeCompressed()) {
+                uncompressed.addLast(backup);
+            }
+            scheduleBudgetCheck();
+        }
+        fireUsageChanged();
+        return backup;
+    }
+
+    static void dispose(StoredBackup backup) {
+        if (backup == null) {
+            return;
+        }
+        var state = backup.dispose();
+        if (state == null) {
+            return;
+        }
+        BackupFile file;
+        synchronized (BackupStore.class) {
+            uncompressed.remove(backup);
+            compressed.remove(backup);
+            memoryUsage -= state.memoryBytes();
+            fileUsage -= state.fileBytes();
+            file = backupFile;
+        }
+        if (state.fileOffset() >= 0 && file != null) {
+            file.free(state.fileOffset(), state.fileBytes());
+        }
+        fireUsageChanged();
+    }
+
+    private static void scheduleBudgetCheck() {
+        assert Thread.holdsLock(BackupStore.class);
+        if (!enforcing && memoryUsage > memoryBudget) {
+            enforcing = true;
+            worker.execute(BackupStore::enforceBudget);
+        }
+    }
+
+    // runs on the worker thread
+    private static void enforceBudget() {
+        while (true) {
+            StoredBackup victim;
+            boolean toFile;
+            synchronized (BackupStore.class) {
+                if (memoryUsage <= memoryBudget) {
+                    enforcing = false;
+                    return;
+                }
+                victim = uncompressed.pollFirst();
+                toFile = false;
+                if (victim == null && !fileFailed) {
+                    victim = compressed.pollFirst();
+                    toFile = true;
+                }
+                if (victim == null) {
+                    enforcing = false;
+                    return;
+                }
+            }
+
+            if (toFile) {
+                moveToFile(victim);
+            } else {
+                compress(victim);
+            }
+            fireUsageChanged();
+        }
+    }
+
+    private static void compress(StoredBackup backup) {
+        long rawBytes = backup.getRawBytes();
+        int compressedBytes = backup.compress();
+        if (compressedBytes >= 0) {
+            synchronized (BackupStore.class) {
+                memoryUsage += compressedBytes - rawBytes;
+                compressed.addLast(backup);
+            }
+        }
+    }
+
+    private static void moveToFile(StoredBackup backup) {
+        try {
+            int movedBytes = backup.moveToFile();
+            if (movedBytes >= 0) {
+                synchronized (BackupStore.class) {
+                    memoryUsage -= movedBytes;
+                    fileUsage += movedBytes;
+                }
+            }
+        } catch (IOException e) {
+            // keep the compressed backups in memory from now on
+            synchronized (BackupStore.class) {
+                fileFailed = true;
+                compressed.addFirst(backup);
+            }
+            Messages.showExceptionOnEDT(e);
+        }
+    }
+
+    static long writeToFile(byte[] data) throws IOException {
+        BackupFile file;
+        synchronized (BackupStore.class) {
+            if (backupFile == null) {
+                backupFile = new BackupFile();
+            }
+            file = backupFile;
+        }
+        return file.write(data);
+    }
+
+    static byte[] readFromFile(long offset, int length) throws IOException {
+        BackupFile file;
+        synchronized (BackupStore.class) {
+            file = backupFile;
+        }
+        if (file == null) {
+            throw new IOException("no history backup file");
+        }
+        return file.read(offset, length);
+    }
+
+    public static synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    public static synchronized long getFileUsage() {
+        return fileUsage;
+    }
+
+    public static synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public static synchronized void setMemoryBudget(long newBudget) {
+        memoryBudget = newBudget;
+        scheduleBudgetCheck();
+    }
+
+    /**
+     * Waits until the memory budget is enforced.
+     */
+    @VisibleForTesting
+    public static void waitForBudget() {
+        try {
+            worker.submit(() -> {
+            }).get();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds a listener that is notified on the EDT
+     * when the memory or file usage changes.
+     */
+    public static void addUsageListener(Runnable listener) {
+        assert EventQueue.isDispatchThread();
+        usageListeners.add(listener);
+    }
+
+    private static void fireUsageChanged() {
+        if (EventQueue.isDispatchThread()) {
+            usageListeners.forEach(Runnable::run);
+        } else {
+            EventQueue.invokeLater(() -> usageListeners.forEach(Runnable::run));
+        }
+    }
+
+    /**
+     * A temporary file holding compressed backups. The space of
+     * the disposed backups is reused for the new ones.
+     */
+    private static class BackupFile {
+        private final FileChannel channel;
+        private long size;
+
+        // offset => length of the reusable regions
+        private final TreeMap<Long, Integer> freeRegions = new TreeMap<>();
+
+        BackupFile() throws IOException {
+            Path path = Files.createTempFile("pixelitor_history", ".tmp");
+            path.toFile().deleteOnExit();
+            channel = FileChannel.open(path, READ, WRITE, DELETE_ON_CLOSE);
+        }
+
+        synchronized long write(byte[] data) throws IOException {
+            long offset = allocate(data.length);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            return offset;
+        }
+
+        private long allocate(int length) {
+            for (var region : freeRegions.entrySet()) {
+                int regionLength = region.getValue();
+                if (regionLength >= length) {
+                    long offset = region.getKey();
+                    freeRegions.remove(offset);
+                    if (regionLength > length) {
+                        freeRegions.put(offset + length, regionLength - length);
+                    }
+                    return offset;
+                }
+            }
+            long offset = size;
+            size += length;
+            return offset;
+        }
+
+        synchronized byte[] read(long offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                int numRead = channel.read(buffer, position);
+                if (numRead < 0) {
+                    throw new IOException("unexpected end of the history backup file");
+                }
+                position += numRead;
+            }
+            return buffer.array();
+        }
+
+        synchronized void free(long offset, int length) {
+            freeRegions.put(offset, length);
+
+            // merge with the following region
+            var next = freeRegions.higherEntry(offset);
+            if (next != null && next.getKey() == offset + length) {
+                freeRegions.remove(next.getKey());
+                length += next.getValue();
+                freeRegions.put(offset, length);
+            }
+
+            // merge with the previous region
+            var prev = freeRegions.lowerEntry(offset);
+            if (prev != null && prev.getKey() + prev.getValue() == offset) {
+                freeRegions.remove(offset);
+                freeRegions.put(prev.getKey(), prev.getValue() + length);
+                offset = prev.getKey();
+                length = prev.getValue() + length;
+            }
+
+            // give back the space at the end of the file
+            if (offset + length == size) {
+                freeRegions.remove(offset);
+                size = offset;
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.awt.event.ActionListener;
 
 import static java.awt.BorderLayout.CENTER;
 import static java.awt.BorderLayout.SOUTH;
+import static pixelitor.utils.Utils.BYTES_IN_1_MEGABYTE;
 
 /**
  * The history panel.
@@ -33,6 +34,7 @@ import static java.awt.BorderLayout.SOUTH;
 public class HistoryPanel extends JPanel {
     private final JButton undoButton;
     private final JButton redoButton;
+    private final JLabel usageLabel;
     private final PixelitorUndoManager pum;
 
     public HistoryPanel(PixelitorUndoManager pum, JList<PixelitorEdit> historyList) {
@@ -51,7 +53,16 @@ public class HistoryPanel extends JPanel {
 
         buttonsPanel.add(undoButton);
         buttonsPanel.add(redoButton);
-        add(buttonsPanel, SOUTH);
+
+        usageLabel = new JLabel();
+        usageLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        BackupStore.addUsageListener(this::updateUsageLabel);
+        updateUsageLabel();
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(buttonsPanel, CENTER);
+        southPanel.add(usageLabel, SOUTH);
+        add(southPanel, SOUTH);
     }
 
     private static JButton createButton(Icon icon, String name,
@@ -64,6 +75,16 @@ public class HistoryPanel extends JPanel {
         return b;
     }
 
+    private void updateUsageLabel() {
+        long memoryMB = BackupStore.getMemoryUsage() / BYTES_IN_1_MEGABYTE;
+        long fileMB = BackupStore.getFileUsage() / BYTES_IN_1_MEGABYTE;
+        usageLabel.setText("Memory: " + memoryMB + " MB, disk: " + fileMB + " MB");
+        usageLabel.setToolTipText("<html>The size of the image backups in the history."
+            + "<br>Older backups are compressed and moved to the disk"
+            + "<br>if they need more than " + BackupStore.getMemoryBudget()
+            / BYTES_IN_1_MEGABYTE + " MB of memory.");
+    }
+
     private void updateButtonsEnabledState() {
         undoButton.setEnabled(pum.canUndo());
         redoButton.setEnabled(pum.canRedo());
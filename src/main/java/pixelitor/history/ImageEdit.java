@@ -19,12 +19,13 @@ package pixelitor.history;
 
 import pixelitor.Composition;
 import pixelitor.layers.Drawable;
+import pixelitor.utils.Messages;
 import pixelitor.utils.debug.DebugNode;
 
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import java.awt.image.BufferedImage;
-import java.lang.ref.SoftReference;
+import java.io.IOException;
 
 /**
  * A PixelitorEdit that represents the changes made to an image.
@@ -33,7 +34,7 @@ public class ImageEdit extends FadeableEdit {
     // selections are ignored for example when the image is enlarged by the move tool
     private final boolean ignoreSelection;
 
-    private SoftReference<BufferedImage> imgRef;
+    private StoredBackup backup;
     protected Drawable dr;
 
     public ImageEdit(String name, Composition comp, Drawable dr,
@@ -47,8 +48,8 @@ public class ImageEdit extends FadeableEdit {
 
 //        Utils.debugImage(backupImage, "Backup for " + name);
 
-        // the backup image is stored in an SoftReference
-        imgRef = new SoftReference<>(backupImage);
+        // the backup image is managed by the BackupStore
+        backup = BackupStore.store(backupImage);
         this.dr = dr;
 
         checkBackupDifferentFromActive();
@@ -58,7 +59,7 @@ public class ImageEdit extends FadeableEdit {
     // otherwise the backup might be also edited
     private void checkBackupDifferentFromActive() {
         BufferedImage layerImage = dr.getImage();
-        if (layerImage == imgRef.get()) {
+        if (backup.isSameImage(layerImage)) {
             throw new IllegalStateException("backup image is identical to the active one");
         }
     }
@@ -97,7 +98,7 @@ public class ImageEdit extends FadeableEdit {
      * Returns true if successful
      */
     private boolean swapImages() {
-        BufferedImage backupImage = imgRef.get();
+        BufferedImage backupImage = getBackupImage();
         if (backupImage == null) {
             return false;
         }
@@ -111,7 +112,8 @@ public class ImageEdit extends FadeableEdit {
         dr.changeImageForUndoRedo(backupImage, ignoreSelection);
 
         // create new backup image from tmp
-        imgRef = new SoftReference<>(tmp);
+        BackupStore.dispose(backup);
+        backup = BackupStore.store(tmp);
 
         if (!embedded) {
             comp.update();
@@ -126,29 +128,30 @@ public class ImageEdit extends FadeableEdit {
     public void die() {
         super.die();
 
-        BufferedImage backupImage = imgRef.get();
-        if (backupImage != null) {
-            backupImage.flush();
-        }
-
-        imgRef = null;
+        BackupStore.dispose(backup);
+        backup = null;
         dr = null;
     }
 
     @Override
     public BufferedImage getBackupImage() {
-        if (imgRef != null) {
-            // this still could be null
-            return imgRef.get();
+        if (backup == null) { // died
+            return null;
+        }
+        try {
+            return backup.getImage();
+        } catch (IOException e) {
+            // the backup was moved into the temporary file, and can't be read back
+            Messages.showException(e);
+            return null;
         }
-        return null;
     }
 
     @Override
     public DebugNode createDebugNode() {
         var node = super.createDebugNode();
 
-        BufferedImage img = imgRef.get();
+        BufferedImage img = getBackupImage();
         if (img != null) {
             node.addInt("backup image width", img.getWidth());
             node.addInt("backup image height", img.getHeight());
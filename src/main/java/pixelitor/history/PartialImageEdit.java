@@ -20,6 +20,7 @@ package pixelitor.history;
 import pixelitor.Composition;
 import pixelitor.layers.Drawable;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Messages;
 import pixelitor.utils.debug.Debug;
 import pixelitor.utils.debug.DebugNode;
 
@@ -29,7 +30,7 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
-import java.lang.ref.SoftReference;
+import java.io.IOException;
 
 import static java.lang.String.format;
 
@@ -39,7 +40,7 @@ import static java.lang.String.format;
  */
 public class PartialImageEdit extends FadeableEdit {
     private final Rectangle saveRect;
-    private SoftReference<Raster> backupRasterRef;
+    private StoredBackup backup;
 
     private final Drawable dr;
 
@@ -51,7 +52,7 @@ public class PartialImageEdit extends FadeableEdit {
         this.saveRect = saveRect;
 
         Raster backupRaster = image.getData(this.saveRect);
-        backupRasterRef = new SoftReference<>(backupRaster);
+        backup = BackupStore.store(backupRaster);
     }
 
     @Override
@@ -76,7 +77,7 @@ public class PartialImageEdit extends FadeableEdit {
      * Returns true if successful
      */
     private boolean swapRasters() {
-        Raster backupRaster = backupRasterRef.get();
+        Raster backupRaster = getBackupRaster();
         if (backupRaster == null) {
             return false;
         }
@@ -99,7 +100,8 @@ public class PartialImageEdit extends FadeableEdit {
             throw e;
         }
 
-        backupRasterRef = new SoftReference<>(tmpRaster);
+        BackupStore.dispose(backup);
+        backup = BackupStore.store(tmpRaster);
 
         comp.update();
         dr.updateIconImage();
@@ -133,16 +135,27 @@ public class PartialImageEdit extends FadeableEdit {
     public void die() {
         super.die();
 
-        backupRasterRef = null;
+        BackupStore.dispose(backup);
+        backup = null;
     }
 
-    @Override
-    public BufferedImage getBackupImage() {
-        if (backupRasterRef == null) { // died
+    private Raster getBackupRaster() {
+        if (backup == null) { // died
+            return null;
+        }
+        try {
+            return backup.getRaster();
+        } catch (IOException e) {
+            // the backup was moved into the temporary file, and can't be read back
+            Messages.showException(e);
             return null;
         }
-        Raster backupRaster = backupRasterRef.get();
-        if (backupRaster == null) { // soft reference lost
+    }
+
+    @Override
+    public BufferedImage getBackupImage() {
+        Raster backupRaster = getBackupRaster();
+        if (backupRaster == null) {
             return null;
         }
 
@@ -169,7 +182,7 @@ public class PartialImageEdit extends FadeableEdit {
 
         int width = -1;
         int height = -1;
-        Raster backupRaster = backupRasterRef.get();
+        Raster backupRaster = getBackupRaster();
         if (backupRaster != null) {
             width = backupRaster.getWidth();
             height = backupRaster.getHeight();
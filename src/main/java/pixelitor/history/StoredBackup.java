@@ -0,0 +1,268 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.history;
+
+import java.awt.Point;
+import java.awt.image.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A backup image or raster managed by the {@link BackupStore}.
+ * The pixels are either kept as they are, or compressed
+ * in memory, or compressed in the backup file.
+ */
+class StoredBackup {
+    // only for image backups
+    private final ColorModel colorModel;
+    private final boolean premultiplied;
+
+    private final SampleModel sampleModel;
+    private final Point location;
+    private final int dataSize;
+    private final boolean byteData;
+    private final long rawBytes;
+
+    // non-null while the backup is not compressed
+    private Raster raster;
+    private BufferedImage image;
+
+    // non-null while the backup is compressed in memory
+    private byte[] compressed;
+
+    // valid while the backup is in the backup file
+    private long fileOffset = -1;
+    private int fileLength;
+
+    private boolean disposed;
+
+    StoredBackup(BufferedImage image) {
+        this(image.getRaster(), image.getColorModel(), image.isAlphaPremultiplied(), image);
+    }
+
+    StoredBackup(Raster raster) {
+        this(raster, null, false, null);
+    }
+
+    private StoredBackup(Raster raster, ColorModel colorModel,
+                         boolean premultiplied, BufferedImage image) {
+        this.colorModel = colorModel;
+        this.premultiplied = premultiplied;
+        this.image = image;
+
+        DataBuffer buffer = raster.getDataBuffer();
+        byteData = buffer instanceof DataBufferByte;
+        if (isCompact(raster)) {
+            this.raster = raster;
+        } else if (byteData || buffer instanceof DataBufferInt) {
+            // a child raster: copy only the relevant part
+            WritableRaster copy = raster.createCompatibleWritableRaster(
+                raster.getMinX(), raster.getMinY(), raster.getWidth(), raster.getHeight());
+            copy.setRect(raster);
+            this.raster = copy;
+            if (image != null) {
+                this.image = new BufferedImage(colorModel, copy, premultiplied, null);
+            }
+        } else {
+            // can't be compressed, it will be always kept in memory
+            this.raster = raster;
+        }
+
+        sampleModel = this.raster.getSampleModel();
+        location = new Point(this.raster.getMinX(), this.raster.getMinY());
+        dataSize = this.raster.getDataBuffer().getSize();
+        rawBytes = (long) dataSize * (byteData ? 1 : 4);
+    }
+
+    // true if the data buffer of the raster can be saved and restored as it is
+    private static boolean isCompact(Raster raster) {
+        DataBuffer buffer = raster.getDataBuffer();
+        return (buffer instanceof DataBufferInt || buffer instanceof DataBufferByte)
+            && raster.getParent() == null
+            && buffer.getNumBanks() == 1
+            && buffer.getOffset() == 0
+            && raster.getSampleModelTranslateX() == raster.getMinX()
+            && raster.getSampleModelTranslateY() == raster.getMinY();
+    }
+
+    boolean canBeCompressed() {
+        return isCompact(raster);
+    }
+
+    synchronized boolean isSameImage(BufferedImage other) {
+        return image == other;
+    }
+
+    long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * Returns the backup image, which is either the original
+     * object or a new image restored from the compressed data.
+     */
+    synchronized BufferedImage getImage() throws IOException {
+        assert colorModel != null;
+        if (image != null) {
+            return image;
+        }
+        return new BufferedImage(colorModel, restoreRaster(), premultiplied, null);
+    }
+
+    synchronized Raster getRaster() throws IOException {
+        if (raster != null) {
+            return raster;
+        }
+        return restoreRaster();
+    }
+
+    private WritableRaster restoreRaster() throws IOException {
+        byte[] data = compressed;
+        if (data == null) {
+            data = BackupStore.readFromFile(fileOffset, fileLength);
+        }
+
+        DataBuffer buffer;
+        if (byteData) {
+            byte[] bytes = new byte[dataSize];
+            inflate(data, bytes);
+            buffer = new DataBufferByte(bytes, dataSize);
+        } else {
+            byte[] bytes = new byte[4 * dataSize];
+            inflate(data, bytes);
+            int[] pixels = new int[dataSize];
+            ByteBuffer.wrap(bytes).asIntBuffer().get(pixels);
+            buffer = new DataBufferInt(pixels, dataSize);
+        }
+        return Raster.createWritableRaster(sampleModel, buffer, location);
+    }
+
+    /**
+     * Compresses the pixels in memory. Returns the size
+     * of the compressed data, or -1 if nothing was done.
+     */
+    synchronized int compress() {
+        if (disposed || raster == null) {
+            return -1;
+        }
+
+        DataBuffer buffer = raster.getDataBuffer();
+        byte[] bytes;
+        if (byteData) {
+            bytes = ((DataBufferByte) buffer).getData();
+        } else {
+            int[] pixels = ((DataBufferInt) buffer).getData();
+            ByteBuffer byteBuffer = ByteBuffer.allocate(4 * dataSize);
+            byteBuffer.asIntBuffer().put(pixels, 0, dataSize);
+            bytes = byteBuffer.array();
+        }
+        compressed = deflate(bytes, byteData ? dataSize : 4 * dataSize);
+
+        if (image != null) {
+            image.flush();
+        }
+        raster = null;
+        image = null;
+        return compressed.length;
+    }
+
+    /**
+     * Moves the compressed data into the backup file.
+     * Returns the number of moved bytes, or -1 if nothing was done.
+     */
+    synchronized int moveToFile() throws IOException {
+        if (disposed || compressed == null) {
+            return -1;
+        }
+        fileOffset = BackupStore.writeToFile(compressed);
+        fileLength = compressed.length;
+        compressed = null;
+        return fileLength;
+    }
+
+    /**
+     * Releases the pixels. Returns the state that the
+     * store must forget about, or null if already disposed.
+     */
+    synchronized State dispose() {
+        if (disposed) {
+            return null;
+        }
+        disposed = true;
+
+        State state;
+        if (raster != null) {
+            state = new State(rawBytes, 0, -1);
+        } else if (compressed != null) {
+            state = new State(compressed.length, 0, -1);
+        } else {
+            state = new State(0, fileLength, fileOffset);
+        }
+
+        // the image isn't flushed here, because
+        // it might have been given back to a layer
+        raster = null;
+        image = null;
+        compressed = null;
+        return state;
+    }
+
+    /**
+     * The memory and file usage of a backup when it was disposed.
+     */
+    record State(long memoryBytes, int fileBytes, long fileOffset) {
+    }
+
+    private static byte[] deflate(byte[] bytes, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(bytes, 0, length);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(length / 4, 64));
+        byte[] chunk = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            int numBytes = deflater.deflate(chunk);
+            out.write(chunk, 0, numBytes);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static void inflate(byte[] data, byte[] dest) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        try {
+            int done = 0;
+            while (done < dest.length) {
+                int numBytes = inflater.inflate(dest, done, dest.length - done);
+                if (numBytes == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("truncated history backup");
+                }
+                done += numBytes;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -40,7 +40,8 @@ public enum FileFormat {
     }, ORA(true, null, FileChoosers.oraFilter) {
         @Override
         public Runnable createSaveTask(Composition comp, SaveSettings settings) {
-            return () -> OpenRaster.uncheckedWrite(comp, settings.getFile());
+            BufferedImage composite = copyComposite(comp);
+            return () -> OpenRaster.uncheckedWrite(comp, composite, settings.getFile());
         }
 
         @Override
@@ -54,7 +55,8 @@ public enum FileFormat {
     }, PXC(true, null, FileChoosers.pxcFilter) {
         @Override
         public Runnable createSaveTask(Composition comp, SaveSettings settings) {
-            return () -> PXCFormat.write(comp, settings.getFile());
+            BufferedImage preview = PXCFormat.createPreview(comp.getCompositeImage());
+            return () -> PXCFormat.write(comp, preview, settings.getFile());
         }
 
         @Override
@@ -79,7 +81,17 @@ public enum FileFormat {
     public Runnable createSaveTask(Composition comp, SaveSettings settings) {
         assert !hasLayers; // overwritten for multi-layered formats
 
-        return () -> saveSingleLayered(comp, settings);
+        BufferedImage composite = copyComposite(comp);
+        return () -> IO.saveImageToFile(prepareForSaving(composite), settings);
+    }
+
+    /**
+     * Returns a copy of the composite image, because the save task runs
+     * on the IO thread, while the composite image can be updated in
+     * place on the EDT.
+     */
+    private static BufferedImage copyComposite(Composition comp) {
+        return ImageUtils.copyImage(comp.getCompositeImage());
     }
 
     public CompletableFuture<Composition> readFrom(File file) {
@@ -95,15 +107,19 @@ public enum FileFormat {
             .thenApplyAsync(img -> Composition.fromImage(img, file, null), onEDT);
     }
 
-    private void saveSingleLayered(Composition comp, SaveSettings settings) {
-        BufferedImage img = comp.getCompositeImage();
+    /**
+     * Does the final conversion of the given image,
+     * which might be necessary before writing it in this format.
+     */
+    public BufferedImage prepareForSaving(BufferedImage img) {
         if (converter != null) {
-            // do the final conversion, which might be
-            // necessary before writing the image
-            img = converter.apply(img);
+            return converter.apply(img);
         }
+        return img;
+    }
 
-        IO.saveImageToFile(img, settings);
+    public boolean hasLayers() {
+        return hasLayers;
     }
 
     public FileFilter getFileFilter() {
@@ -16,6 +16,8 @@
  */
 package pixelitor.io;
 
+import com.bric.util.JVM;
+
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.File;
 import java.io.FileFilter;
@@ -41,6 +43,19 @@ public class FileUtils {
     private FileUtils() {
     }
 
+    /**
+     * Returns the given subdirectory of the per-user
+     * directory where Pixelitor keeps its own files.
+     */
+    public static File getAppDataDir(String subDirName) {
+        String sep = File.separator;
+        if (JVM.isWindows) {
+            return new File(System.getenv("APPDATA") + sep + "Pixelitor" + sep + subDirName);
+        } else {
+            return new File(System.getProperty("user.home") + sep + ".pixelitor" + sep + subDirName);
+        }
+    }
+
     public static String calcExtension(String fileName) {
         int lastIndex = fileName.lastIndexOf('.');
         if (lastIndex == -1) {
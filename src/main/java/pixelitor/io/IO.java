@@ -27,7 +27,9 @@ import pixelitor.gui.utils.Dialogs;
 import pixelitor.io.magick.ImageMagick;
 import pixelitor.layers.Layer;
 import pixelitor.utils.Messages;
+import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.Shapes;
+import pixelitor.utils.StatusBarProgressTracker;
 import pixelitor.utils.Utils;
 
 import javax.imageio.ImageWriteParam;
@@ -159,6 +161,15 @@ public class IO {
 
     public static void saveImageToFile(BufferedImage image,
                                        SaveSettings saveSettings) {
+        File selectedFile = saveSettings.getFile();
+        var tracker = new StatusBarProgressTracker(
+            "Writing " + selectedFile.getName(), 100);
+        saveImageToFile(image, saveSettings, tracker);
+    }
+
+    public static void saveImageToFile(BufferedImage image,
+                                       SaveSettings saveSettings,
+                                       ProgressTracker tracker) {
         FileFormat format = saveSettings.getFormat();
         File selectedFile = saveSettings.getFile();
 
@@ -171,9 +182,11 @@ public class IO {
             if (format == FileFormat.JPG) {
                 JpegSettings settings = JpegSettings.from(saveSettings);
                 Consumer<ImageWriteParam> customizer = settings.getJpegInfo().toCustomizer();
-                TrackedIO.write(image, "jpg", selectedFile, customizer);
+                TrackedIO.write(image, "jpg", selectedFile, customizer, tracker);
+            } else if (format == FileFormat.PNG) {
+                PngEncoder.write(image, selectedFile, PngCompression.CURRENT, tracker);
             } else {
-                TrackedIO.write(image, format.toString(), selectedFile, null);
+                TrackedIO.write(image, format.toString(), selectedFile, null, tracker);
             }
         } catch (IOException e) {
             if (e.getMessage().contains("another process")) {
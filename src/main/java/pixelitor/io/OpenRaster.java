@@ -30,11 +30,13 @@ import pixelitor.layers.ImageLayer;
 import pixelitor.layers.Layer;
 import pixelitor.utils.*;
 
+import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.*;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -51,101 +53,160 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 public class OpenRaster {
     private static final String MERGED_IMAGE_NAME = "mergedimage.png";
 
+    // the images that are encoded in parallel (or already encoded, but
+    // not yet written) can use at most this fraction of the max memory
+    private static final int ENCODING_MEMORY_FRACTION = 8;
+
     private OpenRaster() {
     }
 
-    public static void uncheckedWrite(Composition comp, File outFile) {
+    public static void uncheckedWrite(Composition comp, BufferedImage composite, File outFile) {
         try {
-            write(comp, outFile);
+            write(comp, composite, outFile, PngCompression.CURRENT);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
     public static void write(Composition comp, File outFile) throws IOException {
-        var mainTracker = new StatusBarProgressTracker("Writing " + outFile.getName(), 100);
+        write(comp, outFile, PngCompression.CURRENT);
+    }
 
-        var fos = new FileOutputStream(outFile);
-        var zos = new ZipOutputStream(fos);
+    /**
+     * Writes the composition with its current composite
+     * image as the merged image, on the calling thread.
+     */
+    public static void write(Composition comp, File outFile,
+                             PngCompression compression) throws IOException {
+        write(comp, comp.getCompositeImage(), outFile, compression);
+    }
 
-        String stackXML = format("""
+    /**
+     * Writes the composition into the given file. The layer images are
+     * encoded as PNGs in parallel, into memory buffers, while the encoded
+     * images are written into the zip file in the order of the layers.
+     * The given composite image is written as the merged image, and
+     * it must not be changed while it's written.
+     */
+    public static void write(Composition comp, BufferedImage composite, File outFile,
+                             PngCompression compression) throws IOException {
+        StringBuilder stackXML = new StringBuilder(format("""
             <?xml version='1.0' encoding='UTF-8'?>
             <image w="%d" h="%d">
             <stack>
-            """, comp.getCanvasWidth(), comp.getCanvasHeight());
+            """, comp.getCanvasWidth(), comp.getCanvasHeight()));
 
-        int numLayers = comp.getNumLayers();
-        int numImages = comp.getNumExportableImages() + 1; // +1 for the merged image
-        double workRatio = 1.0 / numImages;
+        // the images and their entry names, in the order of writing
+        List<BufferedImage> images = new ArrayList<>();
+        List<String> entryNames = new ArrayList<>();
 
         // Reverse iteration: in stack.xml the first element in a stack is the uppermost.
+        int numLayers = comp.getNumLayers();
         for (int i = numLayers - 1; i >= 0; i--) {
             Layer layer = comp.getLayer(i);
             if (layer.canExportImage()) {
-                var subTracker = new SubtaskProgressTracker(workRatio, mainTracker);
-                stackXML += writeLayer(layer, i, zos, subTracker);
+                ExportInfo exportInfo = layer.getExportInfo();
+                String entryName = format("data/%d.png", i);
+                stackXML.append(createLayerXML(layer, exportInfo, entryName));
+                images.add(exportInfo.img());
+                entryNames.add(entryName);
             }
         }
+        stackXML.append("</stack>\n</image>");
 
-        // add merged image
-        zos.putNextEntry(new ZipEntry(MERGED_IMAGE_NAME));
-        var subTaskTracker = new SubtaskProgressTracker(workRatio, mainTracker);
-        var img = comp.getCompositeImage();
-        TrackedIO.writeToStream(img, zos, "PNG", subTaskTracker);
-        zos.closeEntry();
+        images.add(composite);
+        entryNames.add(MERGED_IMAGE_NAME);
 
-        stackXML += "</stack>\n</image>";
+        var tracker = new StatusBarProgressTracker("Writing " + outFile.getName(), images.size());
+        try (var zos = new ZipOutputStream(new FileOutputStream(outFile))) {
+            // the specification requires an uncompressed mimetype as the first entry
+            writeStoredEntry(zos, "mimetype", "image/openraster".getBytes(UTF_8));
 
-        // write the stack.xml file
-        zos.putNextEntry(new ZipEntry("stack.xml"));
-        zos.write(stackXML.getBytes(UTF_8));
-        zos.closeEntry();
+            writeImages(images, entryNames, compression, zos, tracker);
 
-        // write the mimetype
-        zos.putNextEntry(new ZipEntry("mimetype"));
-        zos.write("image/openraster".getBytes(UTF_8));
-        zos.closeEntry();
-        zos.close();
+            zos.putNextEntry(new ZipEntry("stack.xml"));
+            zos.write(stackXML.toString().getBytes(UTF_8));
+            zos.closeEntry();
+        }
 
-        mainTracker.finished();
+        tracker.finished();
     }
 
-    private static String writeLayer(Layer layer,
-                                     int layerIndex,
-                                     ZipOutputStream zos,
-                                     ProgressTracker pt) throws IOException {
-        ExportInfo exportInfo = layer.getExportInfo();
-
-        String stackXML = format(Locale.ENGLISH,
+    private static String createLayerXML(Layer layer, ExportInfo exportInfo, String entryName) {
+        return format(Locale.ENGLISH,
             "<layer name=\"%s\" visibility=\"%s\" composite-op=\"%s\" " +
-            "opacity=\"%f\" src=\"data/%d.png\" x=\"%d\" y=\"%d\"/>\n",
+            "opacity=\"%f\" src=\"%s\" x=\"%d\" y=\"%d\"/>\n",
             layer.getName(),
             layer.getVisibilityAsORAString(),
             layer.getBlendingMode().toSVGName(),
             layer.getOpacity(),
-            layerIndex,
+            entryName,
             exportInfo.tx(),
             exportInfo.ty());
+    }
 
-        var entry = new ZipEntry(format("data/%d.png", layerIndex));
-        zos.putNextEntry(entry);
+    /**
+     * Encodes the images in parallel, and writes them in order. New
+     * encodings are started only while the uncompressed size of the
+     * images being encoded or waiting to be written fits into the
+     * memory budget, but the next image is always started.
+     */
+    private static void writeImages(List<BufferedImage> images,
+                                    List<String> entryNames,
+                                    PngCompression compression,
+                                    ZipOutputStream zos,
+                                    ProgressTracker pt) throws IOException {
+        long budget = Runtime.getRuntime().maxMemory() / ENCODING_MEMORY_FRACTION;
+        int numImages = images.size();
+        List<ParallelTask<byte[]>> encodings = new ArrayList<>(numImages);
+        long reserved = 0;
+
+        for (int i = 0; i < numImages; i++) {
+            while (encodings.size() < numImages) {
+                int next = encodings.size();
+                long size = rawSize(images.get(next));
+                if (next > i && reserved + size > budget) {
+                    break;
+                }
+                reserved += size;
+                BufferedImage img = images.get(next);
+                encodings.add(ParallelTask.start(() -> PngEncoder.toBytes(img, compression)));
+            }
+
+            byte[] png = encodings.get(i).get();
+            encodings.set(i, null); // let the buffer be garbage collected
+            writeStoredEntry(zos, entryNames.get(i), png);
+            reserved -= rawSize(images.get(i));
+            pt.unitDone();
+        }
+    }
+
+    private static long rawSize(BufferedImage img) {
+        return 4L * img.getWidth() * img.getHeight();
+    }
 
-        TrackedIO.writeToStream(exportInfo.img(), zos, "PNG", pt);
+    // PNGs are already compressed, there is no point in deflating them again
+    private static void writeStoredEntry(ZipOutputStream zos, String name, byte[] data) throws IOException {
+        var crc = new CRC32();
+        crc.update(data);
 
+        var entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+
+        zos.putNextEntry(entry);
+        zos.write(data);
         zos.closeEntry();
-        return stackXML;
     }
 
     public static Composition read(File file) throws IOException, ParserConfigurationException, SAXException {
         String stackXML = null;
-        var mainTracker = new StatusBarProgressTracker("Reading " + file.getName(), 100);
         Map<String, BufferedImage> images = new HashMap<>();
         try (ZipFile zipFile = new ZipFile(file)) {
-            // first iterate to count the image files...
-            int numImageFiles = countNumImageFiles(zipFile);
-            double workRatio = 1.0 / numImageFiles;
-
-            // ...then iterate again to actually read the files
+            // start decoding the layer images in parallel...
+            Map<String, ParallelTask<BufferedImage>> decodings = new LinkedHashMap<>();
             var fileEntries = zipFile.entries();
             while (fileEntries.hasMoreElements()) {
                 ZipEntry entry = fileEntries.nextElement();
@@ -156,12 +217,17 @@ public class OpenRaster {
                 } else if (name.equalsIgnoreCase(MERGED_IMAGE_NAME)) {
                     // no need for that
                 } else if (FileUtils.hasPNGExtension(name)) {
-                    var subTracker = new SubtaskProgressTracker(workRatio, mainTracker);
-                    var stream = zipFile.getInputStream(entry);
-                    var image = TrackedIO.readFromStream(stream, subTracker);
-                    images.put(name, image);
+                    decodings.put(name, ParallelTask.start(() -> decodePNG(zipFile, entry)));
                 }
             }
+
+            // ...and wait for them while the zip file is still open
+            var tracker = new StatusBarProgressTracker("Reading " + file.getName(), decodings.size());
+            for (var decoding : decodings.entrySet()) {
+                images.put(decoding.getKey(), decoding.getValue().get());
+                tracker.unitDone();
+            }
+            tracker.finished();
         }
 
         if (stackXML == null) {
@@ -199,7 +265,9 @@ public class OpenRaster {
             String layerY = element.getAttribute("y");
 
             BufferedImage image = images.get(layerImageSource);
-            image = ImageUtils.toSysCompatibleImage(image);
+            if (image == null) {
+                throw new IOException("No image found for the layer " + layerName);
+            }
 
             if (layerVisibility == null || layerVisibility.isEmpty()) {
                 //workaround: paint.net exported files use "visible" attribute instead of "visibility"
@@ -231,22 +299,43 @@ public class OpenRaster {
             comp.addLayerInInitMode(layer);
         }
 
-        mainTracker.finished();
-
         return comp;
     }
 
-    private static int countNumImageFiles(ZipFile zipFile) {
-        Enumeration<? extends ZipEntry> fileEntries = zipFile.entries();
-        int numImageFiles = 0;
-        while (fileEntries.hasMoreElements()) {
-            ZipEntry entry = fileEntries.nextElement();
-            String name = entry.getName().toLowerCase();
-            if (name.endsWith("png") && !name.equals(MERGED_IMAGE_NAME)) {
-                numImageFiles++;
+    /**
+     * Reads only the merged image of the given file, without reading
+     * the layers. Returns null if the file has no merged image.
+     */
+    static BufferedImage readMergedImage(File file) throws IOException {
+        try (ZipFile zipFile = new ZipFile(file)) {
+            ZipEntry entry = zipFile.getEntry(MERGED_IMAGE_NAME);
+            if (entry == null) {
+                return null;
+            }
+            return decodePNG(zipFile, entry);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static BufferedImage decodePNG(ZipFile zipFile, ZipEntry entry) {
+        try {
+            BufferedImage image;
+            try (var in = new BufferedInputStream(zipFile.getInputStream(entry))) {
+                image = PngDecoder.read(in, ProgressTracker.NULL_TRACKER);
             }
+            if (image == null) { // not supported by PngDecoder
+                try (var iis = new MemoryCacheImageInputStream(zipFile.getInputStream(entry))) {
+                    image = TrackedIO.readFromIIS(iis, ProgressTracker.NULL_TRACKER);
+                }
+            }
+            if (image == null) {
+                throw new IOException("Could not decode " + entry.getName());
+            }
+            return ImageUtils.toSysCompatibleImage(image);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return numImageFiles;
     }
 
     private static Document loadXMLFromString(String xml)
@@ -19,10 +19,11 @@ package pixelitor.io;
 
 import pixelitor.Composition;
 import pixelitor.layers.SmartObject;
+import pixelitor.utils.ImagePyramid;
+import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.StatusBarProgressTracker;
-import pixelitor.utils.SubtaskProgressTracker;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -35,65 +36,54 @@ import static pixelitor.utils.ImageUtils.getPixelsAsArray;
 
 /**
  * PXC file format support.
+ *
+ * In version 4 files the serialized composition contains only
+ * references to the images, and the pixels are stored separately
+ * in a {@link PXCImageTable}, which is compressed in parallel.
+ * The first image in the table is a small preview of the composite
+ * image, which can be read without reading the layers.
+ * Version 3 files (with the pixels embedded in the
+ * serialized composition) can still be read.
  */
 public class PXCFormat {
-    private static final int CURRENT_PXC_VERSION_NUMBER = 0x03;
+    private static final int CURRENT_PXC_VERSION_NUMBER = 0x04;
+    private static final int EMBEDDED_PIXELS_VERSION_NUMBER = 0x03;
 
-    // tracks the reading-writing of the whole file
-    private static ProgressTracker mainPT;
+    // the maximum width/height of the preview image
+    private static final int PREVIEW_SIZE = 1024;
+    private static final int PREVIEW_INDEX = 0;
 
-    private static double workRatioForOneImage;
+    // the image table of the file that is currently
+    // read or written by the current thread
+    private static final ThreadLocal<PXCImageTable> currentImageTable = new ThreadLocal<>();
 
     private PXCFormat() {
     }
 
     public static Composition read(File file) throws BadPxcFormatException {
         long fileSize = file.length();
-        mainPT = new StatusBarProgressTracker(
+        ProgressTracker pt = new StatusBarProgressTracker(
             "Reading " + file.getName(), (int) fileSize);
         Composition comp = null;
         try (InputStream is = new ProgressTrackingInputStream(
-            new FileInputStream(file), mainPT)) {
+            new FileInputStream(file), pt)) {
 
-            int firstByte = is.read();
-            int secondByte = is.read();
-            if (firstByte == 0xAB && secondByte == 0xC4) {
-                // identification bytes OK
+            int versionByte = readHeader(is, file);
+            if (versionByte == EMBEDDED_PIXELS_VERSION_NUMBER) {
+                comp = readComposition(is);
             } else {
-                throw new BadPxcFormatException(file.getName()
-                    + " is not in the pxc format.");
-            }
-            int versionByte = is.read();
-            if (versionByte == 0) {
-                throw new BadPxcFormatException(file.getName()
-                    + " is in an obsolete pxc format, "
-                    + "it can only be opened in the old beta Pixelitor versions 0.9.2-0.9.7");
-            }
-            if (versionByte == 1) {
-                throw new BadPxcFormatException(file.getName()
-                    + " is in an obsolete pxc format, "
-                    + "it can only be opened in the old beta Pixelitor version 0.9.8");
-            }
-            if (versionByte == 2) {
-                throw new BadPxcFormatException(file.getName()
-                    + " is in an obsolete pxc format, "
-                    + "it can only be opened in the old Pixelitor versions 0.9.9-1.1.2");
-            }
-            if (versionByte > CURRENT_PXC_VERSION_NUMBER) {
-                throw new BadPxcFormatException(file.getName()
-                    + " has unknown version byte " + versionByte);
-            }
-
-            try (GZIPInputStream gs = new GZIPInputStream(is)) {
-                try (ObjectInput ois = new ObjectInputStream(gs)) {
-                    comp = (Composition) ois.readObject();
-                    mainPT.finished();
-                    mainPT = null;
-
-                    // file is transient in Composition because the pxc file can be renamed
-                    comp.setFile(file);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+                currentImageTable.set(PXCImageTable.read(in, -1));
+                try {
+                    comp = readComposition(in);
+                } finally {
+                    currentImageTable.remove();
                 }
             }
+            pt.finished();
+
+            // file is transient in Composition because the pxc file can be renamed
+            comp.setFile(file);
         } catch (IOException | ClassNotFoundException e) {
             Messages.showException(e);
         }
@@ -101,64 +91,141 @@ public class PXCFormat {
         return comp;
     }
 
+    /**
+     * Reads only the preview of the composite image, without reading
+     * the layers. Returns null for version 3 files, which have no preview.
+     */
+    public static BufferedImage readPreview(File file) throws BadPxcFormatException, IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            int versionByte = readHeader(is, file);
+            if (versionByte == EMBEDDED_PIXELS_VERSION_NUMBER) {
+                return null;
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+            return PXCImageTable.read(in, PREVIEW_INDEX).getImage(PREVIEW_INDEX);
+        }
+    }
+
+    // checks the identification bytes and returns the version byte
+    private static int readHeader(InputStream is, File file) throws IOException, BadPxcFormatException {
+        int firstByte = is.read();
+        int secondByte = is.read();
+        if (firstByte == 0xAB && secondByte == 0xC4) {
+            // identification bytes OK
+        } else {
+            throw new BadPxcFormatException(file.getName()
+                + " is not in the pxc format.");
+        }
+        int versionByte = is.read();
+        if (versionByte == 0) {
+            throw new BadPxcFormatException(file.getName()
+                + " is in an obsolete pxc format, "
+                + "it can only be opened in the old beta Pixelitor versions 0.9.2-0.9.7");
+        }
+        if (versionByte == 1) {
+            throw new BadPxcFormatException(file.getName()
+                + " is in an obsolete pxc format, "
+                + "it can only be opened in the old beta Pixelitor version 0.9.8");
+        }
+        if (versionByte == 2) {
+            throw new BadPxcFormatException(file.getName()
+                + " is in an obsolete pxc format, "
+                + "it can only be opened in the old Pixelitor versions 0.9.9-1.1.2");
+        }
+        if (versionByte > CURRENT_PXC_VERSION_NUMBER) {
+            throw new BadPxcFormatException(file.getName()
+                + " has unknown version byte " + versionByte);
+        }
+        return versionByte;
+    }
+
+    private static Composition readComposition(InputStream is) throws IOException, ClassNotFoundException {
+        try (GZIPInputStream gs = new GZIPInputStream(is)) {
+            try (ObjectInput ois = new ObjectInputStream(gs)) {
+                return (Composition) ois.readObject();
+            }
+        }
+    }
+
     public static void write(Composition comp, File file) {
+        write(comp, createPreview(comp.getCompositeImage()), file);
+    }
+
+    /**
+     * Writes the composition into the given file, with the given
+     * preview, which must not be changed while it's written.
+     */
+    public static void write(Composition comp, BufferedImage preview, File file) {
         // If this is a composition embedded in a smart object, then make sure
         // that the owner is not written by temporarily setting it to null.
         SmartObject owner = comp.getOwner();
         comp.setOwner(null);
 
-        mainPT = new StatusBarProgressTracker(
-            "Writing " + file.getName(), 100);
-        int numImages = comp.calcNumImages();
-        if (numImages > 0) {
-            workRatioForOneImage = 1.0 / numImages;
-        } else {
-            workRatioForOneImage = -1;
-        }
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            fos.write(new byte[]{(byte) 0xAB, (byte) 0xC4, CURRENT_PXC_VERSION_NUMBER});
+        PXCImageTable imageTable = new PXCImageTable();
+        try {
+            imageTable.add(preview);
 
-            try (GZIPOutputStream gz = new GZIPOutputStream(fos)) {
-                try (ObjectOutput oos = new ObjectOutputStream(gz)) {
-                    oos.writeObject(comp);
-                    oos.flush();
-                }
+            // serialize the composition into memory, while the
+            // image table compresses the pixels in the background
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            currentImageTable.set(imageTable);
+            try (ObjectOutput oos = new ObjectOutputStream(new GZIPOutputStream(serialized))) {
+                oos.writeObject(comp);
+                oos.flush();
+            } finally {
+                currentImageTable.remove();
+                comp.setOwner(owner); // restore the original owner
+            }
+
+            ProgressTracker pt = new StatusBarProgressTracker(
+                "Writing " + file.getName(), imageTable.getNumStrips());
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.write(new byte[]{(byte) 0xAB, (byte) 0xC4, CURRENT_PXC_VERSION_NUMBER});
+                imageTable.writeTo(out, pt);
+                serialized.writeTo(out);
             }
+            pt.finished();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        comp.setOwner(owner); // restore the original owner
-        mainPT.finished();
-        mainPT = null;
+    }
+
+    /**
+     * Returns the preview image written into pxc files. It's never the given
+     * composite image, which can be updated in place by later edits.
+     */
+    public static BufferedImage createPreview(BufferedImage composite) {
+        BufferedImage preview = new ImagePyramid(composite).getLevelFor(PREVIEW_SIZE);
+        if (preview == composite) {
+            // the composite image can be changed while
+            // the preview is compressed in the background
+            preview = ImageUtils.copyImage(composite);
+        }
+        return preview;
     }
 
     public static void serializeImage(ObjectOutputStream out,
                                       BufferedImage img) throws IOException {
         assert img != null;
-        int imgType = img.getType();
-        int imgWidth = img.getWidth();
-        int imgHeight = img.getHeight();
 
-        out.writeInt(imgWidth);
-        out.writeInt(imgHeight);
-        out.writeInt(imgType);
+        PXCImageTable imageTable = currentImageTable.get();
+        if (imageTable != null) {
+            out.writeInt(imageTable.add(img));
+            return;
+        }
 
-        ProgressTracker pt = getImageTracker();
+        // serialization outside a pxc file: embed the pixels
+        int imgType = img.getType();
+        out.writeInt(img.getWidth());
+        out.writeInt(img.getHeight());
+        out.writeInt(imgType);
 
         if (imgType == TYPE_BYTE_GRAY) {
             ImageIO.write(img, "PNG", out);
         } else {
-            int[] pixels = getPixelsAsArray(img);
-            int length = pixels.length;
-            int progress = 0;
-            int fiveUnits = length / 20;
-            for (int pixel : pixels) {
+            for (int pixel : getPixelsAsArray(img)) {
                 out.writeInt(pixel);
-                progress++;
-                if (progress > fiveUnits) {
-                    pt.unitsDone(5);
-                    progress = 0;
-                }
             }
         }
     }
@@ -166,6 +233,11 @@ public class PXCFormat {
     // when deserializing, the progress tracking
     // is done at the InputStream level, not here
     public static BufferedImage deserializeImage(ObjectInputStream in) throws IOException {
+        PXCImageTable imageTable = currentImageTable.get();
+        if (imageTable != null) {
+            return imageTable.getImage(in.readInt());
+        }
+
         int width = in.readInt();
         int height = in.readInt();
         int type = in.readInt();
@@ -183,13 +255,4 @@ public class PXCFormat {
             return img;
         }
     }
-
-    private static ProgressTracker getImageTracker() {
-        if (workRatioForOneImage == -1) {
-            // a pxc without images
-            return ProgressTracker.NULL_TRACKER;
-        } else {
-            return new SubtaskProgressTracker(workRatioForOneImage, mainPT);
-        }
-    }
 }
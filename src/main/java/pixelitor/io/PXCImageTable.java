@@ -0,0 +1,282 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_BGR;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * The pixel data of the images in a version 4 pxc file.
+ *
+ * The images are split into horizontal strips, which are compressed
+ * independently of each other, so that they can be compressed and
+ * decompressed in parallel. The table of contents (the image sizes and
+ * the compressed strip lengths) is written before the compressed data,
+ * so that a single image can be found without decompressing the others.
+ */
+class PXCImageTable {
+    static final int STRIP_HEIGHT = 256;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    // an image and its compressed (or decompressed) strips
+    private static class Entry {
+        private final BufferedImage image;
+        private final List<ParallelTask<byte[]>> compressedStrips = new ArrayList<>();
+        private final List<ParallelTask<Void>> decodedStrips = new ArrayList<>();
+
+        Entry(BufferedImage image) {
+            this.image = image;
+        }
+    }
+
+    /**
+     * Starts compressing the given image in the background,
+     * and returns its index in the table. The pixels are copied
+     * strip by strip before returning, because the image can be
+     * edited while the strips are compressed.
+     */
+    int add(BufferedImage img) throws IOException {
+        BufferedImage src = withWholeDataArray(img);
+        checkType(src.getType());
+
+        Entry entry = new Entry(src);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        DataBuffer buffer = src.getRaster().getDataBuffer();
+        for (int y = 0; y < height; y += STRIP_HEIGHT) {
+            int from = y * width;
+            int to = Math.min(y + STRIP_HEIGHT, height) * width;
+            byte[] stripBytes;
+            if (buffer instanceof DataBufferByte byteBuffer) {
+                stripBytes = Arrays.copyOfRange(byteBuffer.getData(), from, to);
+            } else {
+                int[] pixels = ((DataBufferInt) buffer).getData();
+                ByteBuffer bytes = ByteBuffer.allocate(4 * (to - from));
+                bytes.asIntBuffer().put(pixels, from, to - from);
+                stripBytes = bytes.array();
+            }
+            entry.compressedStrips.add(ParallelTask.start(() -> compress(stripBytes)));
+        }
+        entries.add(entry);
+        return entries.size() - 1;
+    }
+
+    int getNumStrips() {
+        int numStrips = 0;
+        for (Entry entry : entries) {
+            numStrips += entry.compressedStrips.size();
+        }
+        return numStrips;
+    }
+
+    /**
+     * Waits for the compression of all images, and writes
+     * the table of contents followed by the compressed strips.
+     */
+    void writeTo(DataOutputStream out, ProgressTracker pt) throws IOException {
+        out.writeInt(entries.size());
+        out.writeInt(STRIP_HEIGHT);
+        for (Entry entry : entries) {
+            BufferedImage img = entry.image;
+            out.writeInt(img.getWidth());
+            out.writeInt(img.getHeight());
+            out.writeInt(img.getType());
+            for (var strip : entry.compressedStrips) {
+                out.writeInt(strip.get().length);
+                pt.unitDone();
+            }
+        }
+        for (Entry entry : entries) {
+            for (var strip : entry.compressedStrips) {
+                out.write(strip.get());
+            }
+        }
+    }
+
+    /**
+     * Reads the table of contents and the compressed strips, and starts
+     * decompressing them in the background. If onlyIndex is not negative,
+     * then only the image with that index is read and decompressed.
+     */
+    static PXCImageTable read(DataInputStream in, int onlyIndex) throws IOException {
+        int numImages = in.readInt();
+        int stripHeight = in.readInt();
+        if (numImages < 0 || stripHeight <= 0) {
+            throw new IOException("corrupt pxc image table");
+        }
+
+        PXCImageTable table = new PXCImageTable();
+        List<int[]> stripLengths = new ArrayList<>(numImages);
+        for (int i = 0; i < numImages; i++) {
+            int width = in.readInt();
+            int height = in.readInt();
+            int type = in.readInt();
+            checkType(type);
+            if (width <= 0 || height <= 0) {
+                throw new IOException("invalid image size: " + width + "x" + height);
+            }
+
+            int[] lengths = new int[(height + stripHeight - 1) / stripHeight];
+            for (int s = 0; s < lengths.length; s++) {
+                lengths[s] = in.readInt();
+            }
+            stripLengths.add(lengths);
+
+            boolean needed = onlyIndex < 0 || onlyIndex == i;
+            table.entries.add(new Entry(needed ? new BufferedImage(width, height, type) : null));
+        }
+
+        for (int i = 0; i < numImages; i++) {
+            Entry entry = table.entries.get(i);
+            int[] lengths = stripLengths.get(i);
+            for (int s = 0; s < lengths.length; s++) {
+                if (entry.image == null) {
+                    in.skipNBytes(lengths[s]);
+                    continue;
+                }
+                byte[] compressed = new byte[lengths[s]];
+                in.readFully(compressed);
+
+                int startY = s * stripHeight;
+                int endY = Math.min(startY + stripHeight, entry.image.getHeight());
+                entry.decodedStrips.add(ParallelTask.start(() -> {
+                    decompress(compressed, entry.image, startY, endY);
+                    return null;
+                }));
+            }
+            if (i == onlyIndex) {
+                break;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Returns the image with the given index, waiting
+     * for its decompression, if necessary.
+     */
+    BufferedImage getImage(int index) throws IOException {
+        if (index < 0 || index >= entries.size() || entries.get(index).image == null) {
+            throw new IOException("invalid image index: " + index);
+        }
+        Entry entry = entries.get(index);
+        for (var strip : entry.decodedStrips) {
+            strip.get();
+        }
+        return entry.image;
+    }
+
+    private static byte[] compress(byte[] stripBytes) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(stripBytes);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(stripBytes.length / 4);
+        byte[] chunk = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            int numBytes = deflater.deflate(chunk);
+            out.write(chunk, 0, numBytes);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static void decompress(byte[] compressed, BufferedImage img, int startY, int endY) {
+        int width = img.getWidth();
+        int numPixels = width * (endY - startY);
+        DataBuffer buffer = img.getRaster().getDataBuffer();
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        try {
+            if (buffer instanceof DataBufferByte byteBuffer) {
+                inflateFully(inflater, byteBuffer.getData(), startY * width, numPixels);
+            } else {
+                byte[] bytes = new byte[4 * numPixels];
+                inflateFully(inflater, bytes, 0, bytes.length);
+                int[] pixels = ((DataBufferInt) buffer).getData();
+                ByteBuffer.wrap(bytes).asIntBuffer().get(pixels, startY * width, numPixels);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void inflateFully(Inflater inflater, byte[] dest, int offset, int length) throws IOException {
+        try {
+            int done = 0;
+            while (done < length) {
+                int numBytes = inflater.inflate(dest, offset + done, length - done);
+                if (numBytes == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new ZipException("truncated pxc image data");
+                }
+                done += numBytes;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    private static void checkType(int type) throws IOException {
+        switch (type) {
+            case TYPE_INT_ARGB, TYPE_INT_ARGB_PRE, TYPE_INT_RGB, TYPE_INT_BGR, TYPE_BYTE_GRAY -> {
+            }
+            default -> throw new IOException("unsupported image type in pxc: " + type);
+        }
+    }
+
+    // returns an image whose data array contains exactly its pixels
+    private static BufferedImage withWholeDataArray(BufferedImage img) {
+        if (img.getRaster().getParent() == null
+            && img.getRaster().getDataBuffer().getSize() == img.getWidth() * img.getHeight()) {
+            return img;
+        }
+        WritableRaster copy = img.getColorModel().createCompatibleWritableRaster(
+            img.getWidth(), img.getHeight());
+        img.copyData(copy);
+        return new BufferedImage(img.getColorModel(), copy,
+            img.isAlphaPremultiplied(), null);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.ThreadPool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * A piece of encoding or decoding work that is started in the
+ * thread pool. A task that was not yet started by the pool is processed
+ * by the thread that needs its result, because that thread might be
+ * a pool thread itself, and because this way the waiting thread also works.
+ *
+ * The work can signal IO errors by throwing {@link UncheckedIOException}s,
+ * which are thrown as checked exceptions by {@link #get()}.
+ */
+class ParallelTask<T> {
+    private final Supplier<T> work;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    private ParallelTask(Supplier<T> work) {
+        this.work = work;
+    }
+
+    static <T> ParallelTask<T> start(Supplier<T> work) {
+        ParallelTask<T> task = new ParallelTask<>(work);
+        ThreadPool.getExecutor().execute(task::run);
+        return task;
+    }
+
+    private void run() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            result.complete(work.get());
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    T get() throws IOException {
+        run();
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException uioe) {
+                throw uioe.getCause();
+            }
+            throw e;
+        }
+    }
+}
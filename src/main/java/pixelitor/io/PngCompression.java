@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.utils.AppPreferences;
+
+/**
+ * The compression presets for writing PNG images,
+ * also used for the layer images in OpenRaster files.
+ * The fastest preset also skips the adaptive filter selection.
+ */
+public enum PngCompression {
+    FASTEST("Fastest", "fastest", 1),
+    BALANCED("Balanced", "balanced", 4),
+    SMALLEST("Smallest Files", "smallest", 9);
+
+    public static PngCompression CURRENT = BALANCED;
+
+    private final String guiName;
+    private final String saveCode;
+    private final int deflateLevel;
+
+    PngCompression(String guiName, String saveCode, int deflateLevel) {
+        this.guiName = guiName;
+        this.saveCode = saveCode;
+        this.deflateLevel = deflateLevel;
+    }
+
+    public int getDeflateLevel() {
+        return deflateLevel;
+    }
+
+    public static void load() {
+        String loadedCode = AppPreferences.loadPngCompression();
+
+        for (PngCompression compression : values()) {
+            if (compression.saveCode().equals(loadedCode)) {
+                CURRENT = compression;
+                break;
+            }
+        }
+    }
+
+    public String saveCode() {
+        return saveCode;
+    }
+
+    @Override
+    public String toString() {
+        return guiName;
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.SubtaskProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * The counterpart of {@link PngEncoder}: a decoder for the common
+ * (8-bit, non-interlaced, not indexed) PNG files, which writes the
+ * pixels directly into the data array of the image.
+ *
+ * The inflating and unfiltering is sequential (as the rows depend on
+ * the previous rows), but the conversion of the unfiltered rows into
+ * pixels runs in parallel with it. For the other PNG files null is
+ * returned, and they should be read with ImageIO.
+ */
+public class PngDecoder {
+    private static final byte[] SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    // the approximate number of unfiltered bytes converted in one task
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final int COLOR_TYPE_GRAY = 0;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_GRAY_ALPHA = 4;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    private final DataInputStream in;
+    private int width;
+    private int height;
+    private int colorType;
+    private int bytesPerPixel;
+    private int rowLength; // without the filter type byte
+
+    private PngDecoder(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * Reads the given PNG file, or returns null if it
+     * can't be decoded by this decoder.
+     */
+    public static BufferedImage read(File file, ProgressTracker pt) throws IOException {
+        try (var in = new BufferedInputStream(new FileInputStream(file))) {
+            return read(in, pt);
+        }
+    }
+
+    /**
+     * Reads a PNG image from the given stream, or returns null
+     * if it can't be decoded by this decoder. The progress is
+     * reported in percents, as with the ImageIO readers in {@link TrackedIO}.
+     */
+    public static BufferedImage read(InputStream in, ProgressTracker pt) throws IOException {
+        return new PngDecoder(in).read(pt);
+    }
+
+    private BufferedImage read(ProgressTracker pt) throws IOException {
+        byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE)) {
+            throw new IOException("not a PNG file");
+        }
+
+        BufferedImage img = null;
+        RowReader rowReader = null;
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length < 0) {
+                    throw new IOException("invalid chunk length: " + length);
+                }
+                byte[] typeBytes = new byte[4];
+                in.readFully(typeBytes);
+                String type = new String(typeBytes, StandardCharsets.US_ASCII);
+                byte[] data = new byte[length];
+                in.readFully(data);
+                checkCRC(typeBytes, data, in.readInt());
+
+                switch (type) {
+                    case "IHDR" -> {
+                        if (!readHeader(data)) {
+                            return null;
+                        }
+                    }
+                    case "PLTE", "tRNS", "iCCP" -> {
+                        // palettes, transparent colors and color
+                        // profiles are left to the ImageIO decoder
+                        return null;
+                    }
+                    case "IDAT" -> {
+                        if (rowReader == null) {
+                            if (width == 0) {
+                                throw new IOException("IDAT before IHDR");
+                            }
+                            img = createImage();
+                            rowReader = new RowReader(img, new SubtaskProgressTracker(100.0 / height, pt));
+                        }
+                        rowReader.addData(data);
+                    }
+                    case "IEND" -> {
+                        if (rowReader == null) {
+                            throw new IOException("no image data found");
+                        }
+                        rowReader.finish();
+                        pt.finished();
+                        return img;
+                    }
+                    default -> {
+                        // the other chunks are ignored
+                    }
+                }
+            }
+        } finally {
+            // also if the reading stops because of an error or an unsupported chunk
+            if (rowReader != null) {
+                rowReader.close();
+            }
+        }
+    }
+
+    private static void checkCRC(byte[] type, byte[] data, int expected) throws IOException {
+        var crc = new CRC32();
+        crc.update(type);
+        crc.update(data);
+        if ((int) crc.getValue() != expected) {
+            throw new IOException("CRC error in the "
+                + new String(type, StandardCharsets.US_ASCII) + " chunk");
+        }
+    }
+
+    // returns false if the image format is not supported
+    private boolean readHeader(byte[] data) throws IOException {
+        if (data.length != 13) {
+            throw new IOException("invalid IHDR chunk");
+        }
+        width = readInt(data, 0);
+        height = readInt(data, 4);
+        int bitDepth = data[8];
+        colorType = data[9];
+        int interlace = data[12];
+        if (width <= 0 || height <= 0) {
+            throw new IOException("invalid image size: " + width + "x" + height);
+        }
+        if (bitDepth != 8 || interlace != 0) {
+            return false;
+        }
+
+        bytesPerPixel = switch (colorType) {
+            case COLOR_TYPE_GRAY -> 1;
+            case COLOR_TYPE_GRAY_ALPHA -> 2;
+            case COLOR_TYPE_RGB -> 3;
+            case COLOR_TYPE_RGBA -> 4;
+            default -> 0;
+        };
+        if (bytesPerPixel == 0 || (long) width * height > Integer.MAX_VALUE) {
+            return false;
+        }
+        rowLength = width * bytesPerPixel;
+        return true;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+            | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private BufferedImage createImage() {
+        int type = switch (colorType) {
+            case COLOR_TYPE_GRAY -> TYPE_BYTE_GRAY;
+            case COLOR_TYPE_RGB -> TYPE_INT_RGB;
+            default -> TYPE_INT_ARGB;
+        };
+        return new BufferedImage(width, height, type);
+    }
+
+    /**
+     * Inflates and unfilters the rows, and starts the
+     * conversion of each chunk of rows in the thread pool.
+     */
+    private class RowReader {
+        private final BufferedImage img;
+        private final ProgressTracker pt;
+        private final Inflater inflater = new Inflater();
+        private final int rowsPerChunk = Math.max(1, CHUNK_SIZE / (rowLength + 1));
+        private final List<ParallelTask<Void>> conversions = new ArrayList<>();
+
+        // the unfiltered rows of the current chunk
+        private byte[] chunk;
+        private int chunkStartY = 0;
+        private int chunkRows;
+
+        // the row being inflated, with the filter type byte
+        private final byte[] row = new byte[rowLength + 1];
+        private int rowFilled = 0;
+        private byte[] prevRow = new byte[rowLength];
+
+        private int y = 0;
+
+        RowReader(BufferedImage img, ProgressTracker pt) {
+            this.img = img;
+            this.pt = pt;
+            startChunk();
+        }
+
+        private void startChunk() {
+            chunkRows = Math.min(rowsPerChunk, height - chunkStartY);
+            chunk = new byte[chunkRows * rowLength];
+        }
+
+        void addData(byte[] data) throws IOException {
+            inflater.setInput(data);
+            try {
+                while (y < height) {
+                    int numBytes = inflater.inflate(row, rowFilled, row.length - rowFilled);
+                    if (numBytes == 0) {
+                        if (inflater.needsInput()) {
+                            return;
+                        }
+                        if (inflater.finished()) {
+                            throw new ZipException("not enough image data");
+                        }
+                        throw new ZipException("invalid image data");
+                    }
+                    rowFilled += numBytes;
+                    if (rowFilled == row.length) {
+                        finishRow();
+                        pt.unitDone();
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+        }
+
+        private void finishRow() throws IOException {
+            int offset = (y - chunkStartY) * rowLength;
+            unfilter(row[0], row, chunk, offset, prevRow);
+            System.arraycopy(chunk, offset, prevRow, 0, rowLength);
+            rowFilled = 0;
+            y++;
+
+            if (y == chunkStartY + chunkRows) {
+                byte[] rows = chunk;
+                int startY = chunkStartY;
+                int endY = y;
+                conversions.add(ParallelTask.start(() -> {
+                    convert(rows, img, startY, endY);
+                    return null;
+                }));
+                if (y < height) {
+                    chunkStartY = y;
+                    startChunk();
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            if (y < height) {
+                throw new ZipException("not enough image data");
+            }
+            for (var conversion : conversions) {
+                conversion.get();
+            }
+        }
+
+        // releases the native memory of the inflater
+        void close() {
+            inflater.end();
+        }
+
+        // unfilters the row (after the filter type byte) into out
+        private void unfilter(int filterType, byte[] filtered, byte[] out,
+                              int offset, byte[] prev) throws IOException {
+            int bpp = bytesPerPixel;
+            switch (filterType) {
+                case 0 -> System.arraycopy(filtered, 1, out, offset, rowLength);
+                case 1 -> {
+                    System.arraycopy(filtered, 1, out, offset, bpp);
+                    for (int i = bpp; i < rowLength; i++) {
+                        out[offset + i] = (byte) (filtered[i + 1] + out[offset + i - bpp]);
+                    }
+                }
+                case 2 -> {
+                    for (int i = 0; i < rowLength; i++) {
+                        out[offset + i] = (byte) (filtered[i + 1] + prev[i]);
+                    }
+                }
+                case 3 -> {
+                    for (int i = 0; i < bpp; i++) {
+                        out[offset + i] = (byte) (filtered[i + 1] + ((prev[i] & 0xFF) >>> 1));
+                    }
+                    for (int i = bpp; i < rowLength; i++) {
+                        int avg = ((out[offset + i - bpp] & 0xFF) + (prev[i] & 0xFF)) >>> 1;
+                        out[offset + i] = (byte) (filtered[i + 1] + avg);
+                    }
+                }
+                case 4 -> {
+                    for (int i = 0; i < bpp; i++) {
+                        out[offset + i] = (byte) (filtered[i + 1] + prev[i]);
+                    }
+                    for (int i = bpp; i < rowLength; i++) {
+                        int a = out[offset + i - bpp] & 0xFF;
+                        int b = prev[i] & 0xFF;
+                        int c = prev[i - bpp] & 0xFF;
+                        out[offset + i] = (byte) (filtered[i + 1] + PngEncoder.paethPredictor(a, b, c));
+                    }
+                }
+                default -> throw new IOException("invalid filter type: " + filterType);
+            }
+        }
+    }
+
+    // converts the unfiltered rows into the pixels of the image
+    private void convert(byte[] rows, BufferedImage img, int startY, int endY) {
+        int numPixels = (endY - startY) * width;
+        int offset = startY * width;
+        if (colorType == COLOR_TYPE_GRAY) {
+            byte[] pixels = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+            System.arraycopy(rows, 0, pixels, offset, numPixels);
+            return;
+        }
+
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        switch (colorType) {
+            case COLOR_TYPE_GRAY_ALPHA -> {
+                for (int i = 0, j = 0; i < numPixels; i++, j += 2) {
+                    int gray = rows[j] & 0xFF;
+                    pixels[offset + i] = (rows[j + 1] & 0xFF) << 24
+                        | gray << 16 | gray << 8 | gray;
+                }
+            }
+            case COLOR_TYPE_RGB -> {
+                for (int i = 0, j = 0; i < numPixels; i++, j += 3) {
+                    pixels[offset + i] = 0xFF_00_00_00 | (rows[j] & 0xFF) << 16
+                        | (rows[j + 1] & 0xFF) << 8 | (rows[j + 2] & 0xFF);
+                }
+            }
+            case COLOR_TYPE_RGBA -> {
+                for (int i = 0, j = 0; i < numPixels; i++, j += 4) {
+                    pixels[offset + i] = (rows[j + 3] & 0xFF) << 24 | (rows[j] & 0xFF) << 16
+                        | (rows[j + 1] & 0xFF) << 8 | (rows[j + 2] & 0xFF);
+                }
+            }
+            default -> throw new UncheckedIOException(new IOException("colorType = " + colorType));
+        }
+    }
+}
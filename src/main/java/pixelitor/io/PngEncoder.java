@@ -0,0 +1,479 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.SubtaskProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * A PNG encoder that reads the pixels directly from the data
+ * array of the image, and compresses the image in parallel.
+ *
+ * The rows are split into chunks, which are filtered and deflated
+ * independently of each other, as in pigz: each chunk is primed with
+ * the last 32 KB of the previous chunk as the dictionary, and ends with
+ * a sync flush, so that the compressed chunks can be concatenated into
+ * a single zlib stream, which decodes as usual.
+ */
+public class PngEncoder {
+    private static final byte[] SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    // the approximate size of the filtered data in a chunk
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    // the size of the deflate window
+    private static final int DICT_SIZE = 32 * 1024;
+
+    private static final int COLOR_TYPE_GRAY = 0;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    private final BufferedImage img;
+    private final int width;
+    private final int height;
+    private final int colorType;
+    private final int bytesPerPixel;
+    private final int rowLength; // without the filter type byte
+    private final PngCompression compression;
+
+    // the data array of the image, depending on the color type
+    private final int[] intPixels;
+    private final byte[] grayPixels;
+
+    private PngEncoder(BufferedImage img, PngCompression compression) {
+        this.img = withDirectPixels(img);
+        this.compression = compression;
+        width = img.getWidth();
+        height = img.getHeight();
+
+        int type = this.img.getType();
+        if (type == TYPE_BYTE_GRAY) {
+            colorType = COLOR_TYPE_GRAY;
+            bytesPerPixel = 1;
+        } else if (type == TYPE_INT_RGB) {
+            colorType = COLOR_TYPE_RGB;
+            bytesPerPixel = 3;
+        } else {
+            colorType = COLOR_TYPE_RGBA;
+            bytesPerPixel = 4;
+        }
+        rowLength = width * bytesPerPixel;
+
+        DataBuffer buffer = this.img.getRaster().getDataBuffer();
+        if (colorType == COLOR_TYPE_GRAY) {
+            intPixels = null;
+            grayPixels = ((DataBufferByte) buffer).getData();
+        } else {
+            intPixels = ((DataBufferInt) buffer).getData();
+            grayPixels = null;
+        }
+    }
+
+    public static void write(BufferedImage img, File file,
+                             PngCompression compression,
+                             ProgressTracker pt) throws IOException {
+        try (var out = new BufferedOutputStream(new FileOutputStream(file))) {
+            write(img, out, compression, pt);
+        }
+    }
+
+    /**
+     * Writes the given image as a PNG into the given stream, without
+     * closing it. The progress is reported in percents, as with the
+     * ImageIO writers in {@link TrackedIO}.
+     */
+    public static void write(BufferedImage img, OutputStream out,
+                             PngCompression compression,
+                             ProgressTracker pt) throws IOException {
+        new PngEncoder(img, compression).write(out, pt);
+    }
+
+    public static byte[] toBytes(BufferedImage img, PngCompression compression) {
+        var bytes = new ByteArrayOutputStream();
+        try {
+            write(img, bytes, compression, ProgressTracker.NULL_TRACKER);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // can't happen
+        }
+        return bytes.toByteArray();
+    }
+
+    private void write(OutputStream os, ProgressTracker pt) throws IOException {
+        int rowsPerChunk = Math.max(1, CHUNK_SIZE / (rowLength + 1));
+        List<ParallelTask<CompressedChunk>> chunks = new ArrayList<>();
+        for (int y = 0; y < height; y += rowsPerChunk) {
+            int startY = y;
+            int endY = Math.min(y + rowsPerChunk, height);
+            chunks.add(ParallelTask.start(() -> compressChunk(startY, endY)));
+        }
+
+        var out = new DataOutputStream(os);
+        out.write(SIGNATURE);
+        writeHeader(out);
+
+        byte[] zlibHeader = {0x78, switch (compression.getDeflateLevel()) {
+            case 0, 1 -> 0x01;
+            case 2, 3, 4, 5 -> 0x5E;
+            case 6 -> (byte) 0x9C;
+            default -> (byte) 0xDA;
+        }};
+        writeChunk(out, "IDAT", zlibHeader, zlibHeader.length);
+
+        var chunkTracker = new SubtaskProgressTracker(100.0 / chunks.size(), pt);
+        long adler = 1;
+        for (var task : chunks) {
+            CompressedChunk chunk = task.get();
+            writeChunk(out, "IDAT", chunk.data, chunk.data.length);
+            adler = combineAdler32(adler, chunk.adler32, chunk.length);
+            chunkTracker.unitDone();
+        }
+
+        byte[] trailer = {
+            (byte) (adler >>> 24), (byte) (adler >>> 16),
+            (byte) (adler >>> 8), (byte) adler};
+        writeChunk(out, "IDAT", trailer, trailer.length);
+        writeChunk(out, "IEND", new byte[0], 0);
+        out.flush();
+        pt.finished();
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException {
+        var header = new ByteArrayOutputStream(13);
+        var headerOut = new DataOutputStream(header);
+        headerOut.writeInt(width);
+        headerOut.writeInt(height);
+        headerOut.writeByte(8); // bit depth
+        headerOut.writeByte(colorType);
+        headerOut.writeByte(0); // compression method
+        headerOut.writeByte(0); // filter method
+        headerOut.writeByte(0); // no interlace
+        writeChunk(out, "IHDR", header.toByteArray(), header.size());
+    }
+
+    private static void writeChunk(DataOutputStream out, String type,
+                                   byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        var crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    // the raw deflate data of a chunk, and the length
+    // and checksum of the uncompressed (filtered) data
+    private record CompressedChunk(byte[] data, long length, long adler32) {
+    }
+
+    private CompressedChunk compressChunk(int startY, int endY) {
+        byte[] filtered = filterRows(startY, endY);
+
+        var deflater = new Deflater(compression.getDeflateLevel(), true);
+        if (startY > 0) {
+            // the previous rows are filtered again, because
+            // the dictionary must be the same filtered data
+            int dictRows = Math.min(startY, DICT_SIZE / (rowLength + 1) + 1);
+            byte[] previous = filterRows(startY - dictRows, startY);
+            int dictLength = Math.min(DICT_SIZE, previous.length);
+            deflater.setDictionary(previous, previous.length - dictLength, dictLength);
+        }
+        deflater.setInput(filtered);
+        boolean last = endY == height;
+        if (last) {
+            deflater.finish();
+        }
+
+        var out = new ByteArrayOutputStream(filtered.length / 2 + 64);
+        byte[] buffer = new byte[64 * 1024];
+        while (true) {
+            int numBytes = deflater.deflate(buffer, 0, buffer.length,
+                last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+            out.write(buffer, 0, numBytes);
+            if (last ? deflater.finished() : numBytes < buffer.length) {
+                break;
+            }
+        }
+        deflater.end();
+
+        var adler32 = new Adler32();
+        adler32.update(filtered);
+        return new CompressedChunk(out.toByteArray(), filtered.length, adler32.getValue());
+    }
+
+    /**
+     * Returns the filtered rows between startY (inclusive) and
+     * endY (exclusive), each row starting with its filter type.
+     */
+    private byte[] filterRows(int startY, int endY) {
+        byte[] filtered = new byte[(endY - startY) * (rowLength + 1)];
+        byte[] prevRow = new byte[rowLength];
+        byte[] row = new byte[rowLength];
+        if (startY > 0) {
+            getRow(startY - 1, prevRow);
+        }
+
+        boolean adaptive = compression != PngCompression.FASTEST;
+        int offset = 0;
+        for (int y = startY; y < endY; y++) {
+            getRow(y, row);
+            int filterType = adaptive ? chooseFilter(row, prevRow) : FILTER_SUB;
+            filtered[offset] = (byte) filterType;
+            filter(filterType, row, prevRow, filtered, offset + 1);
+            offset += rowLength + 1;
+
+            byte[] tmp = prevRow;
+            prevRow = row;
+            row = tmp;
+        }
+        return filtered;
+    }
+
+    // the usual heuristic: the filter with the minimal sum of absolute
+    // differences (with the bytes interpreted as signed values),
+    // calculated for all filter types in a single pass
+    private int chooseFilter(byte[] row, byte[] prevRow) {
+        int bpp = bytesPerPixel;
+        long sumNone = 0;
+        long sumSub = 0;
+        long sumUp = 0;
+        long sumAvg = 0;
+        long sumPaeth = 0;
+        for (int i = 0; i < bpp; i++) {
+            int x = row[i];
+            int b = prevRow[i] & 0xFF;
+            sumNone += Math.abs(x);
+            sumSub += Math.abs(x);
+            sumUp += Math.abs((byte) (x - b));
+            sumAvg += Math.abs((byte) (x - (b >>> 1)));
+            sumPaeth += Math.abs((byte) (x - b));
+        }
+        for (int i = bpp; i < rowLength; i++) {
+            int x = row[i];
+            int a = row[i - bpp] & 0xFF;
+            int b = prevRow[i] & 0xFF;
+            int c = prevRow[i - bpp] & 0xFF;
+            sumNone += Math.abs(x);
+            sumSub += Math.abs((byte) (x - a));
+            sumUp += Math.abs((byte) (x - b));
+            sumAvg += Math.abs((byte) (x - ((a + b) >>> 1)));
+            sumPaeth += Math.abs((byte) (x - paethPredictor(a, b, c)));
+        }
+
+        int bestType = FILTER_NONE;
+        long bestSum = sumNone;
+        if (sumSub < bestSum) {
+            bestType = FILTER_SUB;
+            bestSum = sumSub;
+        }
+        if (sumUp < bestSum) {
+            bestType = FILTER_UP;
+            bestSum = sumUp;
+        }
+        if (sumAvg < bestSum) {
+            bestType = FILTER_AVERAGE;
+            bestSum = sumAvg;
+        }
+        if (sumPaeth < bestSum) {
+            bestType = FILTER_PAETH;
+        }
+        return bestType;
+    }
+
+    // filters the row into out, starting at the given offset
+    private void filter(int type, byte[] row, byte[] prevRow, byte[] out, int offset) {
+        int bpp = bytesPerPixel;
+        switch (type) {
+            case FILTER_NONE -> System.arraycopy(row, 0, out, offset, rowLength);
+            case FILTER_SUB -> {
+                System.arraycopy(row, 0, out, offset, bpp);
+                for (int i = bpp; i < rowLength; i++) {
+                    out[offset + i] = (byte) (row[i] - row[i - bpp]);
+                }
+            }
+            case FILTER_UP -> {
+                for (int i = 0; i < rowLength; i++) {
+                    out[offset + i] = (byte) (row[i] - prevRow[i]);
+                }
+            }
+            case FILTER_AVERAGE -> {
+                for (int i = 0; i < bpp; i++) {
+                    out[offset + i] = (byte) (row[i] - ((prevRow[i] & 0xFF) >>> 1));
+                }
+                for (int i = bpp; i < rowLength; i++) {
+                    int avg = ((row[i - bpp] & 0xFF) + (prevRow[i] & 0xFF)) >>> 1;
+                    out[offset + i] = (byte) (row[i] - avg);
+                }
+            }
+            case FILTER_PAETH -> {
+                for (int i = 0; i < bpp; i++) {
+                    out[offset + i] = (byte) (row[i] - prevRow[i]);
+                }
+                for (int i = bpp; i < rowLength; i++) {
+                    int a = row[i - bpp] & 0xFF;
+                    int b = prevRow[i] & 0xFF;
+                    int c = prevRow[i - bpp] & 0xFF;
+                    out[offset + i] = (byte) (row[i] - paethPredictor(a, b, c));
+                }
+            }
+            default -> throw new IllegalStateException("type = " + type);
+        }
+    }
+
+    static int paethPredictor(int a, int b, int c) {
+        // the same as |p - a|, |p - b| and |p - c| for p = a + b - c
+        int pa = Math.abs(b - c);
+        int pb = Math.abs(a - c);
+        int pc = Math.abs(a + b - c - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    // converts the pixels of a row into the bytes of the PNG format
+    private void getRow(int y, byte[] row) {
+        if (colorType == COLOR_TYPE_GRAY) {
+            System.arraycopy(grayPixels, y * width, row, 0, width);
+            return;
+        }
+
+        int offset = y * width;
+        if (colorType == COLOR_TYPE_RGB) {
+            for (int x = 0, i = 0; x < width; x++, i += 3) {
+                int rgb = intPixels[offset + x];
+                row[i] = (byte) (rgb >>> 16);
+                row[i + 1] = (byte) (rgb >>> 8);
+                row[i + 2] = (byte) rgb;
+            }
+            return;
+        }
+
+        boolean premultiplied = img.getType() == TYPE_INT_ARGB_PRE;
+        for (int x = 0, i = 0; x < width; x++, i += 4) {
+            int argb = intPixels[offset + x];
+            int a = argb >>> 24;
+            int r = (argb >>> 16) & 0xFF;
+            int g = (argb >>> 8) & 0xFF;
+            int b = argb & 0xFF;
+            if (premultiplied && a != 255) {
+                if (a == 0) {
+                    r = g = b = 0;
+                } else {
+                    // the same rounding as in the Java2D conversions
+                    r = Math.min(255, (r * 255 + a / 2) / a);
+                    g = Math.min(255, (g * 255 + a / 2) / a);
+                    b = Math.min(255, (b * 255 + a / 2) / a);
+                }
+            }
+            row[i] = (byte) r;
+            row[i + 1] = (byte) g;
+            row[i + 2] = (byte) b;
+            row[i + 3] = (byte) a;
+        }
+    }
+
+    /**
+     * Returns the Adler-32 checksum of the concatenation of two byte
+     * sequences, where the second has the given length. The same
+     * calculation as in the adler32_combine function of zlib.
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - rem;
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= (base << 1)) {
+            sum2 -= (base << 1);
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    // returns an image with a supported type, whose data
+    // array contains exactly its pixels, in the row order
+    private static BufferedImage withDirectPixels(BufferedImage img) {
+        int type = img.getType();
+        boolean supportedType = type == TYPE_INT_ARGB || type == TYPE_INT_ARGB_PRE
+            || type == TYPE_INT_RGB || type == TYPE_BYTE_GRAY;
+        WritableRaster raster = img.getRaster();
+        if (supportedType && raster.getParent() == null
+            && raster.getDataBuffer().getSize() == img.getWidth() * img.getHeight()) {
+            return img;
+        }
+        if (supportedType) {
+            WritableRaster copy = img.getColorModel().createCompatibleWritableRaster(
+                img.getWidth(), img.getHeight());
+            img.copyData(copy);
+            return new BufferedImage(img.getColorModel(), copy,
+                img.isAlphaPremultiplied(), null);
+        }
+
+        // all other types are written as ARGB, including the
+        // indexed images, which are not written with a palette
+        int w = img.getWidth();
+        int h = img.getHeight();
+        BufferedImage argb = new BufferedImage(w, h, TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) argb.getRaster().getDataBuffer()).getData();
+        img.getRGB(0, 0, w, h, pixels, 0, w);
+        return argb;
+    }
+}
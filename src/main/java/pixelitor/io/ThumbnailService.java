@@ -0,0 +1,451 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.gui.utils.ThumbInfo;
+import pixelitor.utils.AppPreferences;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates and caches the preview thumbnails of image files.
+ *
+ * The thumbnails are kept in a memory cache that evicts the least
+ * recently used thumbnails when their total size exceeds a limit,
+ * and optionally also in a disk cache. Both caches are keyed by the
+ * path, the modification time and the size of the file, so an edited
+ * file never gets a stale thumbnail. The thumbnails of the files
+ * next to the selected one can be prefetched in the background.
+ */
+public class ThumbnailService {
+    private static final long DEFAULT_MEMORY_LIMIT = 32L * 1024 * 1024;
+    private static final long DEFAULT_DISK_LIMIT = 64L * 1024 * 1024;
+
+    // the approximate memory size of a cached failure
+    private static final long FAILURE_MEMORY_SIZE = 64;
+
+    // the number of prefetched files before and after the selected one
+    private static final int NUM_PREFETCHED_NEIGHBORS = 3;
+
+    private static final int DISK_FORMAT_MAGIC = 0x50585448;
+    private static final String DISK_FILE_EXT = ".thumb";
+
+    private static final File DEFAULT_DISK_CACHE_DIR = FileUtils.getAppDataDir("thumbs");
+
+    // the requested sizes are rounded up to multiples of this, so that
+    // resizing the preview panel doesn't make all cached thumbnails useless
+    private static final int SIZE_STEP = 64;
+
+    private static ThumbnailService instance;
+    private static boolean useDiskCache = AppPreferences.loadThumbDiskCache();
+
+    private final long memoryLimit;
+    private final File diskCacheDir;
+    private final long diskLimit;
+    private final Executor prefetchExecutor;
+
+    // access-ordered, so the iteration starts with the least recently used
+    private final LinkedHashMap<ThumbKey, ThumbInfo> memoryCache =
+        new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryCacheSize;
+
+    // the thumbnails that are currently created, so that a request
+    // can wait for a running prefetch instead of repeating its work
+    private final Map<ThumbKey, CompletableFuture<ThumbInfo>> inProgress =
+        new ConcurrentHashMap<>();
+
+    // incremented by each prefetch request so that
+    // the outdated prefetch jobs can be skipped
+    private final AtomicInteger prefetchGeneration = new AtomicInteger();
+
+    private long diskCacheSize = -1; // unknown until first needed
+
+    public ThumbnailService(long memoryLimit, File diskCacheDir,
+                            long diskLimit, Executor prefetchExecutor) {
+        this.memoryLimit = memoryLimit;
+        this.diskCacheDir = diskCacheDir;
+        this.diskLimit = diskLimit;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    public static synchronized ThumbnailService get() {
+        if (instance == null) {
+            instance = new ThumbnailService(DEFAULT_MEMORY_LIMIT,
+                DEFAULT_DISK_CACHE_DIR, DEFAULT_DISK_LIMIT, createPrefetchExecutor());
+        }
+        return instance;
+    }
+
+    private static ExecutorService createPrefetchExecutor() {
+        int numThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        return Executors.newFixedThreadPool(numThreads, r -> {
+            Thread thread = new Thread(r, "Thumbnail Prefetch");
+            thread.setDaemon(true);
+            // the prefetching shouldn't slow down the interactive work
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    public static boolean useDiskCache() {
+        return useDiskCache;
+    }
+
+    public static void setUseDiskCache(boolean useDiskCache) {
+        ThumbnailService.useDiskCache = useDiskCache;
+    }
+
+    /**
+     * Returns the thumbnail of the given file, fitting into the given size
+     * rounded up to the size steps of the cache, so it might have to be
+     * scaled down when painted. It is returned from the caches
+     * if possible, otherwise it's created now.
+     */
+    public ThumbInfo getThumb(File file, int maxWidth, int maxHeight, ProgressTracker pt) {
+        ThumbKey key = ThumbKey.of(file, maxWidth, maxHeight);
+        ThumbInfo cached = getFromMemory(key);
+        if (cached != null) {
+            return cached;
+        }
+        return load(key, file, pt);
+    }
+
+    /**
+     * Creates in the background the thumbnails of the supported
+     * files which are in the same directory as the given file,
+     * and come just before or after it in alphabetical order.
+     */
+    public void prefetchNeighbors(File file, int maxWidth, int maxHeight) {
+        int generation = prefetchGeneration.incrementAndGet();
+        prefetchExecutor.execute(() -> {
+            if (generation != prefetchGeneration.get()) {
+                return;
+            }
+            for (File neighbor : findNeighbors(file, NUM_PREFETCHED_NEIGHBORS)) {
+                prefetchExecutor.execute(() -> prefetch(neighbor, maxWidth, maxHeight, generation));
+            }
+        });
+    }
+
+    private void prefetch(File file, int maxWidth, int maxHeight, int generation) {
+        if (generation != prefetchGeneration.get()) {
+            return; // the user has already selected another file
+        }
+        ThumbKey key = ThumbKey.of(file, maxWidth, maxHeight);
+        if (getFromMemory(key) == null && !inProgress.containsKey(key)) {
+            load(key, file, null);
+        }
+    }
+
+    /**
+     * Returns the supported files of the directory of the given file that
+     * are at most the given distance from it in alphabetical order,
+     * starting with the nearest ones.
+     */
+    static List<File> findNeighbors(File file, int maxDistance) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File[] files = dir == null ? null : dir.listFiles(f ->
+            f.isFile() && FileUtils.hasSupportedInputExt(f));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+
+        int index = Arrays.binarySearch(files, file.getAbsoluteFile());
+        if (index < 0) {
+            index = -index - 1; // the insertion point
+        }
+        List<File> neighbors = new ArrayList<>();
+        for (int dist = 1; dist <= maxDistance; dist++) {
+            int after = index + dist;
+            if (after < files.length) {
+                neighbors.add(files[after]);
+            }
+            int before = index - dist;
+            if (before >= 0) {
+                neighbors.add(files[before]);
+            }
+        }
+        return neighbors;
+    }
+
+    private ThumbInfo load(ThumbKey key, File file, ProgressTracker pt) {
+        CompletableFuture<ThumbInfo> future = new CompletableFuture<>();
+        CompletableFuture<ThumbInfo> running = inProgress.putIfAbsent(key, future);
+        if (running != null) {
+            return running.join();
+        }
+        try {
+            ThumbInfo thumbInfo = readFromDisk(key);
+            if (thumbInfo == null) {
+                thumbInfo = createThumb(file, key.maxWidth(), key.maxHeight(), pt);
+                if (thumbInfo.isSuccess()) {
+                    writeToDisk(key, thumbInfo);
+                }
+            }
+            putInMemory(key, thumbInfo);
+            future.complete(thumbInfo);
+            return thumbInfo;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inProgress.remove(key);
+        }
+    }
+
+    private static ThumbInfo createThumb(File file, int maxWidth, int maxHeight, ProgressTracker pt) {
+        if (!file.canRead()) {
+            return ThumbInfo.failure(ThumbInfo.PREVIEW_ERROR);
+        }
+        try {
+            FileFormat format = FileFormat.fromFile(file).orElse(null);
+            if (format == FileFormat.PXC) {
+                // the stored preview is already downscaled, so
+                // the size of the original image isn't known
+                return thumbFromPreview(PXCFormat.readPreview(file), maxWidth, maxHeight, -1, -1);
+            } else if (format == FileFormat.ORA) {
+                BufferedImage merged = OpenRaster.readMergedImage(file);
+                if (merged == null) {
+                    return ThumbInfo.failure(ThumbInfo.NO_PREVIEW);
+                }
+                return thumbFromPreview(merged, maxWidth, maxHeight,
+                    merged.getWidth(), merged.getHeight());
+            }
+            ThumbInfo thumbInfo = TrackedIO.readSubsampledThumb(file, maxWidth, maxHeight, pt);
+            if (thumbInfo == null) {
+                return ThumbInfo.failure(ThumbInfo.PREVIEW_ERROR);
+            }
+            return thumbInfo;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ThumbInfo.failure(ThumbInfo.PREVIEW_ERROR);
+        }
+    }
+
+    private static ThumbInfo thumbFromPreview(BufferedImage preview,
+                                              int maxWidth, int maxHeight,
+                                              int origWidth, int origHeight) {
+        if (preview == null) {
+            return ThumbInfo.failure(ThumbInfo.NO_PREVIEW);
+        }
+        BufferedImage thumb = preview;
+        if (preview.getWidth() > maxWidth || preview.getHeight() > maxHeight) {
+            thumb = ImageUtils.createThumbnail(preview, maxWidth, maxHeight, null);
+        }
+        return ThumbInfo.success(thumb, origWidth, origHeight);
+    }
+
+    private synchronized ThumbInfo getFromMemory(ThumbKey key) {
+        return memoryCache.get(key);
+    }
+
+    private synchronized void putInMemory(ThumbKey key, ThumbInfo thumbInfo) {
+        ThumbInfo old = memoryCache.put(key, thumbInfo);
+        if (old != null) {
+            memoryCacheSize -= memorySizeOf(old);
+        }
+        memoryCacheSize += memorySizeOf(thumbInfo);
+
+        Iterator<ThumbInfo> it = memoryCache.values().iterator();
+        while (memoryCacheSize > memoryLimit && it.hasNext()) {
+            ThumbInfo eldest = it.next();
+            if (eldest == thumbInfo) {
+                break; // keep the new thumbnail even if it's too large
+            }
+            memoryCacheSize -= memorySizeOf(eldest);
+            it.remove();
+        }
+    }
+
+    private static long memorySizeOf(ThumbInfo thumbInfo) {
+        return Math.max(FAILURE_MEMORY_SIZE, thumbInfo.getMemorySize());
+    }
+
+    /**
+     * Removes the thumbnails of the given file from the memory cache.
+     * This isn't necessary for correctness, because the changed modification
+     * time already invalidates them, but frees their memory early.
+     */
+    public synchronized void invalidate(File file) {
+        String path = file.getAbsolutePath();
+        Iterator<Map.Entry<ThumbKey, ThumbInfo>> it = memoryCache.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<ThumbKey, ThumbInfo> entry = it.next();
+            if (entry.getKey().path().equals(path)) {
+                memoryCacheSize -= memorySizeOf(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    synchronized long getMemoryCacheSize() {
+        return memoryCacheSize;
+    }
+
+    synchronized int getNumMemoryCachedThumbs() {
+        return memoryCache.size();
+    }
+
+    private boolean diskCacheEnabled() {
+        return useDiskCache && diskCacheDir != null;
+    }
+
+    private ThumbInfo readFromDisk(ThumbKey key) {
+        if (!diskCacheEnabled()) {
+            return null;
+        }
+        File cacheFile = key.getDiskFile(diskCacheDir);
+        if (!cacheFile.exists()) {
+            return null;
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != DISK_FORMAT_MAGIC || !in.readUTF().equals(key.toString())) {
+                return null; // a hash collision or an unknown file
+            }
+            int origWidth = in.readInt();
+            int origHeight = in.readInt();
+            BufferedImage thumb = PngDecoder.read(in, ProgressTracker.NULL_TRACKER);
+            if (thumb == null) {
+                return null;
+            }
+            // the modification time of the cached files is used for
+            // the least recently used eviction of the disk cache
+            cacheFile.setLastModified(System.currentTimeMillis());
+            return ThumbInfo.success(thumb, origWidth, origHeight);
+        } catch (IOException e) {
+            return null; // a corrupt cache file is simply recreated
+        }
+    }
+
+    private void writeToDisk(ThumbKey key, ThumbInfo thumbInfo) {
+        if (!diskCacheEnabled()) {
+            return;
+        }
+        if (!diskCacheDir.exists() && !diskCacheDir.mkdirs()) {
+            return;
+        }
+        byte[] png = PngEncoder.toBytes(thumbInfo.getThumb(), PngCompression.FASTEST);
+        File cacheFile = key.getDiskFile(diskCacheDir);
+        // write into a temporary file first, so that a concurrent
+        // reader can't see a partially written cache file
+        File tmpFile = new File(diskCacheDir, cacheFile.getName() + ".tmp" + Thread.currentThread().getId());
+        try (var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(DISK_FORMAT_MAGIC);
+            out.writeUTF(key.toString());
+            out.writeInt(thumbInfo.getOrigWidth());
+            out.writeInt(thumbInfo.getOrigHeight());
+            out.write(png);
+        } catch (IOException e) {
+            tmpFile.delete();
+            return;
+        }
+        cacheFile.delete();
+        if (tmpFile.renameTo(cacheFile)) {
+            addToDiskCacheSize(cacheFile.length());
+        } else {
+            tmpFile.delete();
+        }
+    }
+
+    private synchronized void addToDiskCacheSize(long bytes) {
+        if (diskCacheSize < 0) {
+            diskCacheSize = 0;
+            for (File f : listDiskCacheFiles()) {
+                diskCacheSize += f.length();
+            }
+        } else {
+            diskCacheSize += bytes;
+        }
+        if (diskCacheSize > diskLimit) {
+            trimDiskCache();
+        }
+    }
+
+    // deletes the least recently used files until
+    // the disk cache shrinks to three quarters of its limit
+    private void trimDiskCache() {
+        File[] files = listDiskCacheFiles();
+        long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastModified[i]));
+
+        long targetSize = diskLimit / 4 * 3;
+        for (Integer i : order) {
+            if (diskCacheSize <= targetSize) {
+                break;
+            }
+            long length = files[i].length();
+            if (files[i].delete()) {
+                diskCacheSize -= length;
+            }
+        }
+    }
+
+    private File[] listDiskCacheFiles() {
+        File[] files = diskCacheDir.listFiles((dir, name) -> name.endsWith(DISK_FILE_EXT));
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * Identifies a thumbnail. A modification of the file changes
+     * its modification time or size, and therefore the key.
+     */
+    record ThumbKey(String path, long lastModified, long length, int maxWidth, int maxHeight) {
+        static ThumbKey of(File file, int maxWidth, int maxHeight) {
+            return new ThumbKey(file.getAbsolutePath(), file.lastModified(),
+                file.length(), roundUpSize(maxWidth), roundUpSize(maxHeight));
+        }
+
+        private static int roundUpSize(int size) {
+            int numSteps = Math.max(1, (size + SIZE_STEP - 1) / SIZE_STEP);
+            return numSteps * SIZE_STEP;
+        }
+
+        File getDiskFile(File dir) {
+            return new File(dir, hash(toString()) + DISK_FILE_EXT);
+        }
+
+        private static String hash(String s) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                byte[] bytes = digest.digest(s.getBytes(StandardCharsets.UTF_8));
+                return HexFormat.of().formatHex(bytes);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
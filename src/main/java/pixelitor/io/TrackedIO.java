@@ -47,6 +47,14 @@ public class TrackedIO {
                              Consumer<ImageWriteParam> customizer) throws IOException {
         var tracker = new StatusBarProgressTracker(
             "Writing " + file.getName(), 100);
+        write(img, formatName, file, customizer, tracker);
+    }
+
+    public static void write(BufferedImage img,
+                             String formatName,
+                             File file,
+                             Consumer<ImageWriteParam> customizer,
+                             ProgressTracker tracker) throws IOException {
         // the creation of FileOutputStream is necessary, because if the
         // ImageOutputStream is created directly from the File, then existing files
         // are not truncated, and small files don't completely overwrite bigger files.
@@ -116,8 +124,18 @@ public class TrackedIO {
      * Reads an image from a file, and throws only runtime exceptions
      */
     public static BufferedImage uncheckedRead(File file) {
+        var tracker = new StatusBarProgressTracker(
+            "Reading " + file.getName(), 100);
+        return uncheckedRead(file, tracker);
+    }
+
+    /**
+     * Reads an image from a file with the given progress
+     * tracker, and throws only runtime exceptions
+     */
+    public static BufferedImage uncheckedRead(File file, ProgressTracker tracker) {
         try {
-            BufferedImage image = read(file);
+            BufferedImage image = read(file, tracker);
             // For some decoding problems (ImageIO bugs?) we get an
             // exception here, for others we get a null image.
             // In both cases, throw a runtime exception
@@ -156,10 +174,22 @@ public class TrackedIO {
     public static BufferedImage read(File file) {
         var tracker = new StatusBarProgressTracker(
             "Reading " + file.getName(), 100);
+        return read(file, tracker);
+    }
 
+    public static BufferedImage read(File file, ProgressTracker tracker) {
         BufferedImage image;
-        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
-            image = readFromIIS(iis, tracker);
+        try {
+            image = null;
+            if (FileUtils.hasPNGExtension(file.getName())) {
+                // null if the file is not supported by PngDecoder
+                image = PngDecoder.read(file, tracker);
+            }
+            if (image == null) {
+                try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+                    image = readFromIIS(iis, tracker);
+                }
+            }
         } catch (Exception e) {
             // an IIOException exception is thrown for example by
             // Java's JPEG reader when reading a CMYK JPEG.
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io.magick;
+
+import pixelitor.ThreadPool;
+import pixelitor.io.FileFormat;
+import pixelitor.io.IO;
+import pixelitor.io.PngCompression;
+import pixelitor.io.PngEncoder;
+import pixelitor.io.SaveSettings;
+import pixelitor.io.TrackedIO;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * Converts images with a few long-lived converter processes
+ * (ImageMagick in script mode), instead of starting a new process for
+ * each image. Each process gets one command line per image, which reads
+ * a temporary PNG file and writes the result (or the reverse for imports).
+ *
+ * The formats that Pixelitor can read and write itself (for example
+ * JPEG, TGA or the PNM formats) are converted in the JVM, without
+ * the external process, if no ImageMagick-specific settings are given.
+ *
+ * The images of a batch (and the conversions requested by several
+ * threads at the same time) run in parallel, in at most poolSize
+ * processes. The progress of a batch is reported in images to the
+ * given tracker, which can be a {@link pixelitor.utils.ThroughputTracker}.
+ */
+public class ConverterPool implements Closeable {
+    // a conversion normally takes much less than a second, a process that
+    // doesn't answer in this time is considered hung. The image can still
+    // be converted by a new process without a timeout, see ImageMagick.
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private final List<String> processCommand;
+    private final List<ConverterProcess> allProcesses = new ArrayList<>();
+    private final BlockingQueue<ConverterProcess> idleProcesses = new LinkedBlockingQueue<>();
+    private final ExecutorService workers;
+    private final File tmpDir;
+    private final AtomicInteger tmpCounter = new AtomicInteger();
+    private final boolean useInJVMCodecs;
+
+    /**
+     * Creates a pool for the given converter command, which
+     * is started (lazily) at most poolSize times.
+     */
+    public ConverterPool(List<String> processCommand, int poolSize, boolean useInJVMCodecs) {
+        this.processCommand = List.copyOf(processCommand);
+        this.useInJVMCodecs = useInJVMCodecs;
+        try {
+            tmpDir = Files.createTempDirectory("pix_magick").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        workers = ThreadPool.newDaemonExecutor("Converter Pool Worker", poolSize);
+    }
+
+    /**
+     * Returns the command that runs ImageMagick in script
+     * mode, reading the script from the standard input.
+     */
+    public static List<String> createMagickCommand(File magickCommand) {
+        return List.of(magickCommand.getAbsolutePath(), "-script", "-");
+    }
+
+    /**
+     * Exports the image to the given file, and returns when it's written.
+     */
+    public void exportImage(BufferedImage img, File outFile, ExportSettings settings) {
+        waitFor(submitExport(img, outFile, settings));
+    }
+
+    /**
+     * Exports the images to the corresponding files, and returns when
+     * all of them are done. A failed image doesn't stop the others,
+     * its conversion contains the error instead of the file.
+     */
+    public List<Conversion<File>> exportImages(List<BufferedImage> images, List<File> outFiles,
+                                               ExportSettings settings, ProgressTracker pt) {
+        assert images.size() == outFiles.size();
+        List<Future<File>> futures = new ArrayList<>(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            futures.add(submitExport(images.get(i), outFiles.get(i), settings));
+        }
+        return waitForAll(futures, pt);
+    }
+
+    private Future<File> submitExport(BufferedImage img, File outFile, ExportSettings settings) {
+        return workers.submit(() -> {
+            export(img, outFile, settings);
+            return outFile;
+        });
+    }
+
+    public BufferedImage importImage(File file) {
+        return waitFor(workers.submit(() -> importFrom(file)));
+    }
+
+    /**
+     * Imports the given files, and returns the conversions in
+     * the same order. A failed file doesn't stop the others.
+     */
+    public List<Conversion<BufferedImage>> importImages(List<File> files, ProgressTracker pt) {
+        List<Future<BufferedImage>> futures = new ArrayList<>(files.size());
+        for (File file : files) {
+            futures.add(workers.submit(() -> importFrom(file)));
+        }
+        return waitForAll(futures, pt);
+    }
+
+    private static <T> T waitFor(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            throw asUnexpected(cause);
+        }
+    }
+
+    /**
+     * Waits for all the futures, and reports each successful one to the
+     * tracker on the calling thread. I/O errors are returned in the
+     * conversions, other errors are thrown after all the futures are done.
+     */
+    private static <T> List<Conversion<T>> waitForAll(List<Future<T>> futures, ProgressTracker pt) {
+        List<Conversion<T>> conversions = new ArrayList<>(futures.size());
+        RuntimeException unexpected = null;
+        for (var future : futures) {
+            try {
+                conversions.add(new Conversion<>(future.get(), null));
+                pt.unitDone();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("interrupted");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException ioe) {
+                    conversions.add(new Conversion<>(null, ioe));
+                } else if (cause instanceof UncheckedIOException uioe) {
+                    conversions.add(new Conversion<>(null, uioe.getCause()));
+                } else if (unexpected == null) {
+                    unexpected = asUnexpected(cause);
+                }
+            }
+        }
+        if (unexpected != null) {
+            throw unexpected;
+        }
+        return conversions;
+    }
+
+    private static RuntimeException asUnexpected(Throwable cause) {
+        if (cause instanceof RuntimeException re) {
+            return re;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    private void export(BufferedImage img, File outFile, ExportSettings settings) throws IOException {
+        if (settings == ExportSettings.DEFAULTS) {
+            Optional<FileFormat> inJVMFormat = findInJVMFormat(outFile);
+            if (inJVMFormat.isPresent()) {
+                FileFormat format = inJVMFormat.get();
+                IO.saveImageToFile(format.prepareForSaving(img),
+                    new SaveSettings(format, outFile), NULL_TRACKER);
+                return;
+            }
+        }
+
+        File tmpFile = createTmpFile();
+        try {
+            PngEncoder.write(img, tmpFile, PngCompression.FASTEST, NULL_TRACKER);
+
+            List<String> args = new ArrayList<>();
+            args.add("-read");
+            args.add(tmpFile.getAbsolutePath());
+            settings.addMagickOptions(args);
+            args.add("-write");
+            args.add(settings.getFormatSpecifier() + outFile.getAbsolutePath());
+            execute(args);
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+    private BufferedImage importFrom(File file) throws IOException {
+        if (findInJVMFormat(file).isPresent()) {
+            return TrackedIO.read(file, NULL_TRACKER);
+        }
+
+        File tmpFile = createTmpFile();
+        try {
+            execute(List.of(
+                "-read", file.getAbsolutePath(),
+                "-delete", "1--1", // only the first frame
+                "-depth", "8", // don't send 16-bit data
+                "-quality", "1", // importing is faster with minimal compression
+                "-write", "png:" + tmpFile.getAbsolutePath()));
+
+            BufferedImage img = TrackedIO.read(tmpFile, NULL_TRACKER);
+            if (img == null) {
+                throw new IOException("could not read the converted " + file.getName());
+            }
+            return img;
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+    private Optional<FileFormat> findInJVMFormat(File file) {
+        if (!useInJVMCodecs) {
+            return Optional.empty();
+        }
+        return FileFormat.fromFile(file).filter(format -> !format.hasLayers());
+    }
+
+    /**
+     * Executes the given conversion with an idle process, starting a new
+     * one if there is none. A process that failed is not reused.
+     */
+    private void execute(List<String> conversion) throws IOException {
+        List<String> args = new ArrayList<>(conversion);
+        // ImageMagick writes this line only after the previous
+        // commands, which is the acknowledgement of the conversion
+        args.addAll(List.of("-format", ConverterProcess.ACK + "\\n", "-write", "info:-", "+delete"));
+
+        ConverterProcess process = idleProcesses.poll();
+        if (process == null || !process.isAlive()) {
+            process = startProcess();
+        }
+        try {
+            process.execute(args, TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            process.destroy();
+            throw e;
+        }
+        idleProcesses.add(process);
+    }
+
+    private ConverterProcess startProcess() throws IOException {
+        var process = new ConverterProcess(processCommand);
+        synchronized (allProcesses) {
+            allProcesses.add(process);
+        }
+        return process;
+    }
+
+    private File createTmpFile() {
+        return new File(tmpDir, "img_" + tmpCounter.incrementAndGet() + ".png");
+    }
+
+    /**
+     * Lets the processes exit after their current conversions.
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+        synchronized (allProcesses) {
+            allProcesses.forEach(ConverterProcess::close);
+            allProcesses.clear();
+        }
+        tmpDir.delete();
+    }
+
+    /**
+     * The outcome of one conversion of a batch: the result, or the
+     * I/O error if the pooled conversion failed.
+     */
+    public record Conversion<T>(T result, IOException failure) {
+        public boolean failed() {
+            return failure != null;
+        }
+    }
+}
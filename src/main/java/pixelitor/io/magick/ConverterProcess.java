@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io.magick;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A long-lived converter process, which reads its commands from the
+ * standard input, one command per line, and writes the {@link #ACK}
+ * line to the standard output after each command. For ImageMagick
+ * this is "magick -script -", see {@link ConverterPool}.
+ */
+class ConverterProcess {
+    // the only expected output line, written after each command
+    static final String ACK = "done";
+
+    // the end of the output stream
+    private static final String EOF = "\u0000eof";
+
+    private final Process process;
+    private final Writer commands;
+    private final BlockingQueue<String> outputLines = new LinkedBlockingQueue<>();
+
+    ConverterProcess(List<String> command) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        process = pb.start();
+        commands = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), UTF_8));
+
+        // the output is read in a separate thread, so that
+        // waiting for the acknowledgement can time out
+        Thread reader = new Thread(this::readOutput, "converter output reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readOutput() {
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                outputLines.add(line);
+            }
+        } catch (IOException e) {
+            // the process was destroyed
+        }
+        outputLines.add(EOF);
+    }
+
+    /**
+     * Sends the given arguments as a command line, and waits until
+     * the process acknowledges it. If the process doesn't answer in
+     * time or answers anything else, then it is destroyed,
+     * and an IOException is thrown.
+     */
+    void execute(List<String> args, long timeoutMillis) throws IOException {
+        if (!isAlive()) {
+            throw new IOException("the converter process exited");
+        }
+        commands.write(toCommandLine(args));
+        commands.write('\n');
+        commands.flush();
+
+        String answer;
+        try {
+            answer = outputLines.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            destroy();
+            throw new IOException("interrupted while waiting for the converter", e);
+        }
+        if (answer == null) {
+            destroy();
+            throw new IOException("the converter didn't answer in " + timeoutMillis + " ms");
+        }
+        if (answer.equals(EOF)) {
+            throw new IOException("the converter process exited with "
+                + waitForExitValue() + " while executing " + args);
+        }
+        if (!answer.equals(ACK)) {
+            // the later answers would belong to the wrong commands
+            destroy();
+            throw new IOException("unexpected converter output \"" + answer
+                + "\" while executing " + args);
+        }
+    }
+
+    // the output can end a bit before the process exits
+    private String waitForExitValue() {
+        try {
+            if (process.waitFor(1, TimeUnit.SECONDS)) {
+                return String.valueOf(process.exitValue());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "unknown exit value";
+    }
+
+    // all arguments are quoted, because the file names can contain spaces
+    static String toCommandLine(List<String> args) {
+        StringBuilder sb = new StringBuilder();
+        for (String arg : args) {
+            if (!sb.isEmpty()) {
+                sb.append(' ');
+            }
+            sb.append('"');
+            for (int i = 0; i < arg.length(); i++) {
+                char c = arg.charAt(i);
+                if (c == '"' || c == '\\') {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Closes the standard input, which makes the
+     * process exit after the last command.
+     */
+    void close() {
+        try {
+            commands.close();
+        } catch (IOException e) {
+            destroy();
+        }
+    }
+
+    void destroy() {
+        process.destroyForcibly();
+    }
+}
@@ -23,7 +23,11 @@ import pixelitor.OpenImages;
 import pixelitor.gui.GUIText;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.io.*;
+import pixelitor.io.magick.ConverterPool.Conversion;
+import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
+import pixelitor.utils.StatusBarProgressTracker;
+import pixelitor.utils.ThroughputTracker;
 import pixelitor.utils.VisibleForTesting;
 
 import javax.imageio.ImageIO;
@@ -52,6 +56,9 @@ public class ImageMagick {
     private static final boolean installed = checkInstalled();
     private static File magickCommand;
 
+    // the long-lived ImageMagick processes, created when first needed
+    private static ConverterPool pool;
+
     public static void exportActiveComp() {
         if (!isInstalled()) {
             showNotInstalledDialog();
@@ -59,7 +66,6 @@ public class ImageMagick {
         }
 
         Composition comp = getActiveComp();
-        BufferedImage image = comp.getCompositeImage();
         File file = FileChoosers.showSaveDialog(FileChooserInfo.forMagickExport(comp));
         if (file == null) { // canceled
             return;
@@ -77,6 +83,8 @@ public class ImageMagick {
             return;
         }
 
+        // the composite image can be updated in place during the export
+        BufferedImage image = ImageUtils.copyImage(comp.getCompositeImage());
         var progressHandler = Messages.startProgress("ImageMagick Export", -1);
         CompletableFuture.runAsync(() -> exportImage(image, file, settings), onIOThread)
             .thenRunAsync(() -> {
@@ -144,6 +152,91 @@ public class ImageMagick {
     @VisibleForTesting
     public static void exportImage(BufferedImage img, File outFile,
                                    ExportSettings settings) {
+        try {
+            getPool().exportImage(img, outFile, settings);
+        } catch (UncheckedIOException e) {
+            // perhaps the script mode is not supported, try the old way
+            Messages.showExceptionOnEDT(e);
+            exportWithNewProcess(img, outFile, settings);
+        }
+    }
+
+    /**
+     * Exports the images into the corresponding files with the pooled
+     * ImageMagick processes, and shows the throughput in the status bar.
+     * The images that failed in the pool are exported again with new
+     * processes. Must be called on the EDT, like the filters.
+     */
+    public static void exportImages(List<BufferedImage> images, List<File> outFiles,
+                                    ExportSettings settings) {
+        var tracker = new ThroughputTracker(new StatusBarProgressTracker(
+            "ImageMagick Export", images.size()));
+        List<Conversion<File>> conversions = getPool().exportImages(
+            images, outFiles, settings, tracker);
+        boolean failureShown = false;
+        for (int i = 0; i < conversions.size(); i++) {
+            Conversion<File> conversion = conversions.get(i);
+            if (conversion.failed()) {
+                if (!failureShown) { // the others probably failed for the same reason
+                    Messages.showException(conversion.failure());
+                    failureShown = true;
+                }
+                exportWithNewProcess(images.get(i), outFiles.get(i), settings);
+                tracker.unitDone();
+            }
+        }
+        tracker.finished();
+        showThroughput(tracker, "exported");
+    }
+
+    /**
+     * Imports the files with the pooled ImageMagick processes
+     * (or in the JVM, if possible), and returns the images in the same
+     * order. The files that failed in the pool are imported again with
+     * new processes. Must be called on the EDT, like the filters.
+     */
+    public static List<BufferedImage> importImages(List<File> files) {
+        var tracker = new ThroughputTracker(new StatusBarProgressTracker(
+            "ImageMagick Import", files.size()));
+        List<Conversion<BufferedImage>> conversions = getPool().importImages(files, tracker);
+        List<BufferedImage> images = new ArrayList<>(files.size());
+        boolean failureShown = false;
+        for (int i = 0; i < conversions.size(); i++) {
+            Conversion<BufferedImage> conversion = conversions.get(i);
+            if (conversion.failed()) {
+                if (!failureShown) {
+                    Messages.showException(conversion.failure());
+                    failureShown = true;
+                }
+                images.add(importWithNewProcess(files.get(i)));
+                tracker.unitDone();
+            } else {
+                images.add(conversion.result());
+            }
+        }
+        tracker.finished();
+        showThroughput(tracker, "imported");
+        return images;
+    }
+
+    private static void showThroughput(ThroughputTracker tracker, String verb) {
+        if (tracker.getUnitsDone() > 1) {
+            Messages.showInStatusBar(String.format("%d images %s (%.1f images/s)",
+                tracker.getUnitsDone(), verb, tracker.getUnitsPerSecond()));
+        }
+    }
+
+    private static synchronized ConverterPool getPool() {
+        if (pool == null) {
+            int poolSize = Math.min(4, Runtime.getRuntime().availableProcessors());
+            pool = new ConverterPool(ConverterPool.createMagickCommand(magickCommand),
+                poolSize, true);
+        }
+        return pool;
+    }
+
+    private static void exportWithNewProcess(BufferedImage img, File outFile,
+                                             ExportSettings settings) {
         List<String> command = new ArrayList<>();
         command.add(magickCommand.getAbsolutePath());
         command.add("convert");
@@ -157,7 +250,7 @@ public class ImageMagick {
         settings.addMagickOptions(command);
         command.add(settings.getFormatSpecifier() + outFile.getAbsolutePath());
 
-        System.out.println("ImageMagick::exportImage: command = " + command);
+        System.out.println("ImageMagick::exportWithNewProcess: command = " + command);
 
         // a process that reads a png file from the standard input,
         // and converts it to the given file
@@ -173,7 +266,7 @@ public class ImageMagick {
             }
             p.waitFor();
 
-            System.out.printf("ImageMagick::exportImage: took %.2f seconds.%n",
+            System.out.printf("ImageMagick::exportWithNewProcess: took %.2f seconds.%n",
                 (System.nanoTime() - startTime) / 1_000_000_000.0);
 
         } catch (IOException e) {
@@ -207,6 +300,15 @@ public class ImageMagick {
     }
 
     private static BufferedImage importImage(File file) {
+        try {
+            return getPool().importImage(file);
+        } catch (UncheckedIOException e) {
+            Messages.showExceptionOnEDT(e);
+            return importWithNewProcess(file);
+        }
+    }
+
+    private static BufferedImage importWithNewProcess(File file) {
         // a process that reads the given file,
         // and writes it as png (depth=8 bit) to the standard output
         ProcessBuilder pb = new ProcessBuilder(
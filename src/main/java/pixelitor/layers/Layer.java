@@ -89,6 +89,12 @@ public abstract class Layer implements Serializable {
 
     private transient List<LayerListener> listeners;
 
+    // The canvas-sized masked image painted into the composite.
+    // It's kept only while this is the active layer, so that the
+    // partial updates of the edits don't have to repaint all of it.
+    private transient BufferedImage maskedImage;
+    private transient int maskedImageVersion;
+
     // unit tests use a different LayerUI implementation
     // by assigning a different UI factory
     public static Function<Layer, LayerUI> uiFactory = LayerButton::new;
@@ -506,7 +512,7 @@ public abstract class Layer implements Serializable {
         }
     }
 
-    protected boolean usesMask() {
+    public boolean usesMask() {
         return mask != null && maskEnabled;
     }
 
@@ -548,8 +554,9 @@ public abstract class Layer implements Serializable {
         } else {
             setupDrawingComposite(g, firstVisibleLayer);
             if (usesMask()) {
-                paintLayerOnGraphicsWithMask(g, firstVisibleLayer);
+                paintCachedMaskedImage(g, firstVisibleLayer);
             } else {
+                maskedImage = null;
                 paintLayerOnGraphics(g, firstVisibleLayer);
             }
         }
@@ -562,26 +569,93 @@ public abstract class Layer implements Serializable {
     public abstract void paintLayerOnGraphics(Graphics2D g, boolean firstVisibleLayer);
 
     /**
-     * Returns the masked image for the non-adjustment case.
-     * The returned image is canvas-sized, and the masks and the
-     * translations are taken into account
+     * Paints the masked image for the non-adjustment case.
+     * The masked image covers the canvas within the clip of the graphics,
+     * and the masks and the translations are taken into account
      */
     private void paintLayerOnGraphicsWithMask(Graphics2D g, boolean firstVisibleLayer) {
-        // 1. create the masked image
-        // TODO the masked image should be cached
-        var maskedImage = new BufferedImage(
-            comp.getCanvasWidth(), comp.getCanvasHeight(), TYPE_INT_ARGB);
-        Graphics2D mig = maskedImage.createGraphics();
+        Rectangle area = new Rectangle(0, 0,
+            comp.getCanvasWidth(), comp.getCanvasHeight());
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            area = area.intersection(clip);
+        }
+        if (area.isEmpty()) {
+            return;
+        }
+
+        var img = new BufferedImage(area.width, area.height, TYPE_INT_ARGB);
+        Graphics2D mig = img.createGraphics();
+        mig.translate(-area.x, -area.y);
         paintLayerOnGraphics(mig, firstVisibleLayer);
         mig.setComposite(DstIn);
         mig.drawImage(mask.getTransparencyImage(),
             mask.getTx(), mask.getTy(), null);
         mig.dispose();
 
-        // 2. paint the masked image onto the graphics
+        g.drawImage(img, area.x, area.y, null);
+    }
+
+    /**
+     * Paints the masked image while compositing. Only the active layer
+     * keeps its masked image, which is recalculated once per composite
+     * version, and otherwise updated only within the clip of the graphics.
+     * The other layers don't change while the active layer is edited, and
+     * they paint only the clip area, so that a composition with many
+     * masked layers doesn't keep a canvas-sized image for each of them.
+     */
+    private void paintCachedMaskedImage(Graphics2D g, boolean firstVisibleLayer) {
+        if (!isActive()) {
+            maskedImage = null;
+            paintLayerOnGraphicsWithMask(g, firstVisibleLayer);
+            return;
+        }
+
+        int width = comp.getCanvasWidth();
+        int height = comp.getCanvasHeight();
+        int version = comp.getCompositeVersion();
+
+        if (maskedImage == null
+            || maskedImage.getWidth() != width
+            || maskedImage.getHeight() != height) {
+            maskedImage = new BufferedImage(width, height, TYPE_INT_ARGB);
+            paintMaskedImage(maskedImage, null, firstVisibleLayer);
+        } else if (maskedImageVersion != version) {
+            paintMaskedImage(maskedImage, null, firstVisibleLayer);
+        } else {
+            Rectangle clip = g.getClipBounds();
+            paintMaskedImage(maskedImage, clip, firstVisibleLayer);
+        }
+        maskedImageVersion = version;
+
         g.drawImage(maskedImage, 0, 0, null);
     }
 
+    // paints this layer with the mask applied into the given area of the image
+    private void paintMaskedImage(BufferedImage img, Rectangle area, boolean firstVisibleLayer) {
+        Graphics2D mig = img.createGraphics();
+        if (area != null) {
+            mig.setClip(area);
+        }
+        mig.setComposite(AlphaComposite.Clear);
+        mig.fillRect(0, 0, img.getWidth(), img.getHeight());
+        mig.setComposite(AlphaComposite.SrcOver);
+
+        paintLayerOnGraphics(mig, firstVisibleLayer);
+        mig.setComposite(DstIn);
+        mig.drawImage(mask.getTransparencyImage(),
+            mask.getTx(), mask.getTy(), null);
+        mig.dispose();
+    }
+
+    /**
+     * Returns true if this layer transforms the image below it
+     * (adjustment layers and watermarked text layers).
+     */
+    public boolean isAdjustment() {
+        return isAdjustment;
+    }
+
     /**
      * Used by adjustment layers and watermarked text layers
      */
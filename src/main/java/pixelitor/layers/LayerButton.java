@@ -19,10 +19,10 @@ package pixelitor.layers;
 
 import com.bric.util.JVM;
 import pixelitor.AppContext;
-import pixelitor.ThreadPool;
 import pixelitor.filters.Filter;
 import pixelitor.gui.View;
 import pixelitor.gui.utils.GUIUtils;
+import pixelitor.utils.CoalescingTask;
 import pixelitor.utils.Icons;
 import pixelitor.utils.ImageUtils;
 
@@ -151,6 +151,12 @@ public class LayerButton extends JToggleButton implements LayerUI {
     private JLabel layerIconLabel;
     private JLabel maskIconLabel;
 
+    // the layers whose icons were last requested, read by the icon tasks
+    private volatile Layer iconLayer;
+    private volatile Layer iconMaskLayer;
+    private final CoalescingTask layerIconTask = new CoalescingTask(() -> createIconOffEDT(false));
+    private final CoalescingTask maskIconTask = new CoalescingTask(() -> createIconOffEDT(true));
+
     private JCheckBox smartFilterCB;
     private JLabel smartFilterLabel;
 
@@ -460,14 +466,25 @@ public class LayerButton extends JToggleButton implements LayerUI {
         assert calledOnEDT() : threadInfo();
         assert layer.hasIconThumbnail();
 
-        Runnable notEDT = () -> {
-            BufferedImage thumb = layer.createIconThumbnail();
-            assert thumb != null;
-            if (thumb != null) {
-                SwingUtilities.invokeLater(() -> updateIconOnEDT(layer, thumb));
-            }
-        };
-        ThreadPool.submit(notEDT);
+        // A rapid series of edits (for example brush strokes) would
+        // queue a thumbnail job for each edit, but only the last one
+        // matters, so the requests are coalesced for both icons.
+        if (layer instanceof LayerMask) {
+            iconMaskLayer = layer;
+            maskIconTask.request();
+        } else {
+            iconLayer = layer;
+            layerIconTask.request();
+        }
+    }
+
+    private void createIconOffEDT(boolean mask) {
+        Layer layer = mask ? iconMaskLayer : iconLayer;
+        BufferedImage thumb = layer.createIconThumbnail();
+        assert thumb != null;
+        if (thumb != null) {
+            SwingUtilities.invokeLater(() -> updateIconOnEDT(layer, thumb));
+        }
     }
 
     private void updateIconOnEDT(Layer layer, BufferedImage thumb) {
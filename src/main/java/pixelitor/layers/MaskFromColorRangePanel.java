@@ -113,7 +113,8 @@ public class MaskFromColorRangePanel extends JPanel {
             refreshColorPickerImage(true);
         } else if (srcIsLayer) {
             // change to composite-based
-            srcImage = comp.getCompositeImage();
+            // the composite image can be updated in place
+            srcImage = copyImage(comp.getCompositeImage());
             srcIsLayer = false;
             refreshColorPickerImage(true);
         }
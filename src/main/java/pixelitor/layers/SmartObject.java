@@ -145,6 +145,9 @@ public class SmartObject extends ImageLayer {
         image = content.getCompositeImage();
         if (ImageUtils.isSubImage(image)) {
             image = ImageUtils.copySubImage(image);
+        } else {
+            // the composite image of the content can be updated in place
+            image = ImageUtils.copyImage(image);
         }
     }
 
@@ -0,0 +1,622 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers.tiled;
+
+import pixelitor.ThreadPool;
+import pixelitor.filters.Filter;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * Pixel storage for images that are too large for a single
+ * {@link BufferedImage} or for the heap.
+ *
+ * The pixels are packed ARGB ints (as in TYPE_INT_ARGB images),
+ * stored in square tiles in a memory-mapped temporary file.
+ * Tiles are allocated in the file only when something non-transparent
+ * is written into them, so sparse images need little disk space.
+ * The recently used tiles are kept in a small cache on the heap
+ * for the random access operations (pixel and region access, painting),
+ * while the row processing works directly on the mapped file.
+ *
+ * The adapters for the existing code are the row processing methods,
+ * the tile-by-tile filtering with {@link Filter}s and {@link BufferedImageOp}s,
+ * painting with {@link Graphics2D} into a region (for example with a brush,
+ * see {@link pixelitor.tools.brushes.Brush#setTarget}), {@link TileWindow}
+ * for editing a part as an ordinary image, {@link TiledImage} for the code
+ * that accepts a {@link java.awt.image.RenderedImage} and {@link TiledImageIO}.
+ */
+public class TileStore implements Closeable {
+    public static final int TILE_SIZE = 256;
+    private static final int TILE_INTS = TILE_SIZE * TILE_SIZE;
+    private static final long TILE_BYTES = 4L * TILE_INTS;
+
+    // the file is mapped in segments, because a single
+    // mapping can't be larger than 2 GB
+    private static final int TILES_PER_SEGMENT = 2048;
+    private static final long SEGMENT_BYTES = TILES_PER_SEGMENT * TILE_BYTES;
+
+    // 64 MB of cached tiles
+    public static final int DEFAULT_CACHED_TILES = 256;
+
+    private static final int NOT_ALLOCATED = -1;
+
+    private final int width;
+    private final int height;
+    private final int numTilesX;
+    private final int numTilesY;
+
+    // the position of each tile in the file, or NOT_ALLOCATED
+    private final int[] tileSlots;
+    private int numAllocatedTiles;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final List<IntBuffer> segments = new ArrayList<>();
+
+    private final int maxCachedTiles;
+
+    // access-ordered, so the iteration starts with the least recently used
+    private final LinkedHashMap<Integer, CachedTile> hotTiles;
+
+    private boolean closed;
+
+    private TileStore(int width, int height, int maxCachedTiles) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("width = " + width + ", height = " + height);
+        }
+        this.width = width;
+        this.height = height;
+        numTilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        numTilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        long numTiles = (long) numTilesX * numTilesY;
+        if (numTiles > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too large: " + width + "x" + height);
+        }
+        tileSlots = new int[(int) numTiles];
+        Arrays.fill(tileSlots, NOT_ALLOCATED);
+
+        this.maxCachedTiles = Math.max(1, maxCachedTiles);
+        hotTiles = new LinkedHashMap<>(this.maxCachedTiles * 2, 0.75f, true);
+
+        file = File.createTempFile("pixelitor_tiles_", ".tmp");
+        file.deleteOnExit();
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+    }
+
+    /**
+     * Creates a fully transparent image with the given size.
+     */
+    public static TileStore create(int width, int height) throws IOException {
+        return new TileStore(width, height, DEFAULT_CACHED_TILES);
+    }
+
+    public static TileStore create(int width, int height, int maxCachedTiles) throws IOException {
+        return new TileStore(width, height, maxCachedTiles);
+    }
+
+    public static TileStore fromImage(BufferedImage img) throws IOException {
+        TileStore store = create(img.getWidth(), img.getHeight());
+        store.setRegion(0, 0, img);
+        return store;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Rectangle getBounds() {
+        return new Rectangle(0, 0, width, height);
+    }
+
+    public synchronized int getNumAllocatedTiles() {
+        return numAllocatedTiles;
+    }
+
+    public synchronized int getNumCachedTiles() {
+        return hotTiles.size();
+    }
+
+    public synchronized int getRGB(int x, int y) {
+        checkPixelBounds(x, y);
+        CachedTile tile = getTile(tileIndexAt(x, y));
+        return tile.pixels[(y % TILE_SIZE) * TILE_SIZE + x % TILE_SIZE];
+    }
+
+    public synchronized void setRGB(int x, int y, int argb) {
+        checkPixelBounds(x, y);
+        CachedTile tile = getTile(tileIndexAt(x, y));
+        tile.pixels[(y % TILE_SIZE) * TILE_SIZE + x % TILE_SIZE] = argb;
+        tile.dirty = true;
+    }
+
+    /**
+     * Copies the pixels of the given area into the given array,
+     * with the same layout as in {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+     */
+    public synchronized void readRegion(int x, int y, int w, int h,
+                                        int[] dst, int offset, int scanSize) {
+        checkRegionBounds(x, y, w, h);
+        copyRegion(x, y, w, h, dst, offset, scanSize, false);
+    }
+
+    /**
+     * Copies the pixels from the given array into the given area.
+     */
+    public synchronized void writeRegion(int x, int y, int w, int h,
+                                         int[] src, int offset, int scanSize) {
+        checkRegionBounds(x, y, w, h);
+        copyRegion(x, y, w, h, src, offset, scanSize, true);
+    }
+
+    private void copyRegion(int x, int y, int w, int h,
+                            int[] array, int offset, int scanSize, boolean write) {
+        int firstTileX = x / TILE_SIZE;
+        int lastTileX = (x + w - 1) / TILE_SIZE;
+        int firstTileY = y / TILE_SIZE;
+        int lastTileY = (y + h - 1) / TILE_SIZE;
+        for (int ty = firstTileY; ty <= lastTileY; ty++) {
+            int tileTop = ty * TILE_SIZE;
+            int startY = Math.max(y, tileTop);
+            int endY = Math.min(y + h, tileTop + TILE_SIZE);
+            for (int tx = firstTileX; tx <= lastTileX; tx++) {
+                int tileLeft = tx * TILE_SIZE;
+                int startX = Math.max(x, tileLeft);
+                int len = Math.min(x + w, tileLeft + TILE_SIZE) - startX;
+
+                CachedTile tile = getTile(ty * numTilesX + tx);
+                for (int py = startY; py < endY; py++) {
+                    int tilePos = (py - tileTop) * TILE_SIZE + startX - tileLeft;
+                    int arrayPos = offset + (py - y) * scanSize + startX - x;
+                    if (write) {
+                        System.arraycopy(array, arrayPos, tile.pixels, tilePos, len);
+                    } else {
+                        System.arraycopy(tile.pixels, tilePos, array, arrayPos, len);
+                    }
+                }
+                if (write) {
+                    tile.dirty = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the given area as a new TYPE_INT_ARGB image.
+     */
+    public BufferedImage getRegion(Rectangle area) {
+        BufferedImage img = new BufferedImage(area.width, area.height, TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        readRegion(area.x, area.y, area.width, area.height, pixels, 0, area.width);
+        return img;
+    }
+
+    /**
+     * Copies the given image into this store, with its top left corner at x, y.
+     */
+    public void setRegion(int x, int y, BufferedImage img) {
+        if (img.getType() != TYPE_INT_ARGB) {
+            // drawing it on an ARGB image would change the
+            // colors of the almost transparent pixels
+            int w = img.getWidth();
+            int h = img.getHeight();
+            writeRegion(x, y, w, h, img.getRGB(0, 0, w, h, null, 0, w), 0, w);
+            return;
+        }
+        // the image can be a subimage that shares the pixel array of its parent
+        WritableRaster raster = img.getRaster();
+        var sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int scanSize = sampleModel.getScanlineStride();
+        int offset = raster.getDataBuffer().getOffset()
+            - raster.getSampleModelTranslateY() * scanSize
+            - raster.getSampleModelTranslateX();
+        int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+        writeRegion(x, y, img.getWidth(), img.getHeight(), pixels, offset, scanSize);
+    }
+
+    /**
+     * Returns the whole image as a single {@link BufferedImage},
+     * which is possible only if it's small enough.
+     */
+    public BufferedImage toImage() {
+        if ((long) width * height > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("too large for a BufferedImage: " + width + "x" + height);
+        }
+        return getRegion(getBounds());
+    }
+
+    /**
+     * Lets the given painter paint into the given area with a
+     * {@link Graphics2D}, whose coordinates are the coordinates of this image.
+     * Only the area is copied to the heap, so this works for brushes and shapes.
+     */
+    public void paint(Rectangle area, Consumer<Graphics2D> painter) {
+        Rectangle clipped = area.intersection(getBounds());
+        if (clipped.isEmpty()) {
+            return;
+        }
+        BufferedImage img = getRegion(clipped);
+        Graphics2D g = img.createGraphics();
+        g.translate(-clipped.x, -clipped.y);
+        g.setClip(clipped);
+        try {
+            painter.accept(g);
+        } finally {
+            g.dispose();
+        }
+        setRegion(clipped.x, clipped.y, img);
+    }
+
+    /**
+     * Processes a full row of the image at a time.
+     */
+    @FunctionalInterface
+    public interface RowProcessor {
+        /**
+         * The row array can be modified in place, if the caller
+         * writes the changes back.
+         */
+        void processRow(int y, int[] row);
+    }
+
+    /**
+     * Lets the given processor modify all rows in place, in parallel.
+     * The progress is reported to the given tracker in rows.
+     */
+    public void processRows(RowProcessor processor, ProgressTracker pt) {
+        forEachRow(processor, true, pt);
+    }
+
+    /**
+     * Lets the given processor read all rows in parallel,
+     * without writing anything back.
+     */
+    public void readRows(RowProcessor processor, ProgressTracker pt) {
+        forEachRow(processor, false, pt);
+    }
+
+    private void forEachRow(RowProcessor processor, boolean write, ProgressTracker pt) {
+        // the rows are accessed directly in the mapped file,
+        // therefore the cached changes must be there first
+        flushCache();
+        ThreadPool.parallelRows(height, (startRow, endRow) -> {
+            int[] row = new int[width];
+            for (int y = startRow; y < endRow; y++) {
+                readRowDirectly(y, row);
+                processor.processRow(y, row);
+                if (write) {
+                    writeRowDirectly(y, row);
+                }
+            }
+        }, pt);
+    }
+
+    private void readRowDirectly(int y, int[] row) {
+        int ty = y / TILE_SIZE;
+        int rowInTile = (y % TILE_SIZE) * TILE_SIZE;
+        for (int tx = 0; tx < numTilesX; tx++) {
+            int x = tx * TILE_SIZE;
+            int len = Math.min(TILE_SIZE, width - x);
+            int slot = getSlot(ty * numTilesX + tx);
+            if (slot == NOT_ALLOCATED) {
+                Arrays.fill(row, x, x + len, 0);
+            } else {
+                getSegment(slot).get(posInSegment(slot) + rowInTile, row, x, len);
+            }
+        }
+    }
+
+    private void writeRowDirectly(int y, int[] row) {
+        int ty = y / TILE_SIZE;
+        int rowInTile = (y % TILE_SIZE) * TILE_SIZE;
+        for (int tx = 0; tx < numTilesX; tx++) {
+            int x = tx * TILE_SIZE;
+            int len = Math.min(TILE_SIZE, width - x);
+            int tileIndex = ty * numTilesX + tx;
+            int slot = getSlot(tileIndex);
+            if (slot == NOT_ALLOCATED) {
+                if (isTransparent(row, x, len)) {
+                    continue; // still fully transparent
+                }
+                slot = allocateSlot(tileIndex);
+            }
+            getSegment(slot).put(posInSegment(slot) + rowInTile, row, x, len);
+        }
+    }
+
+    /**
+     * Applies the given filter tile by tile, and returns the result in a new store.
+     * Each tile is filtered together with a margin of the given size around it,
+     * so that filters that look at the neighbouring pixels (such as blurs)
+     * don't produce seams at the tile edges, if the margin is at least
+     * the radius of the filter. The tiles are filtered in parallel.
+     */
+    public TileStore filter(BufferedImageOp op, int margin, ProgressTracker pt) throws IOException {
+        return filterTiles(src -> op.filter(src, null), margin, true, pt);
+    }
+
+    /**
+     * Applies the given Pixelitor filter tile by tile, like
+     * {@link #filter(BufferedImageOp, int, ProgressTracker)}. The filters
+     * keep their settings in fields and parallelize the work themselves,
+     * therefore the tiles are filtered one after the other.
+     */
+    public TileStore filter(Filter filter, int margin, ProgressTracker pt) throws IOException {
+        return filterTiles(filter::transformImage, margin, false, pt);
+    }
+
+    private TileStore filterTiles(UnaryOperator<BufferedImage> tileFilter, int margin,
+                                  boolean parallel, ProgressTracker pt) throws IOException {
+        TileStore dest = create(width, height, maxCachedTiles);
+        try {
+            if (parallel) {
+                ThreadPool.parallelRows(numTilesY, (startTileY, endTileY) ->
+                    filterTileRows(tileFilter, margin, dest, startTileY, endTileY), pt);
+            } else {
+                for (int ty = 0; ty < numTilesY; ty++) {
+                    filterTileRows(tileFilter, margin, dest, ty, ty + 1);
+                    pt.unitDone();
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            dest.close();
+            throw e;
+        }
+        return dest;
+    }
+
+    private void filterTileRows(UnaryOperator<BufferedImage> tileFilter, int margin,
+                                TileStore dest, int startTileY, int endTileY) {
+        for (int ty = startTileY; ty < endTileY; ty++) {
+            for (int tx = 0; tx < numTilesX; tx++) {
+                filterTile(tileFilter, margin, dest, tx, ty);
+            }
+        }
+    }
+
+    private void filterTile(UnaryOperator<BufferedImage> tileFilter, int margin,
+                            TileStore dest, int tx, int ty) {
+        Rectangle tileRect = getTileBounds(tx, ty);
+        Rectangle srcRect = new Rectangle(tileRect);
+        srcRect.grow(margin, margin);
+        srcRect = srcRect.intersection(getBounds());
+
+        BufferedImage src = getRegion(srcRect);
+        BufferedImage filtered = tileFilter.apply(src);
+        BufferedImage tilePart = filtered.getSubimage(
+            tileRect.x - srcRect.x, tileRect.y - srcRect.y,
+            tileRect.width, tileRect.height);
+        dest.setRegion(tileRect.x, tileRect.y, tilePart);
+    }
+
+    /**
+     * Returns a small overview of the image (for example for the
+     * display of the whole image or for thumbnails) by taking every
+     * n-th pixel in both directions, so that the result fits into maxSize.
+     */
+    public BufferedImage createSubsampledImage(int maxSize) {
+        int step = (int) Math.ceil(Math.max(width, height) / (double) maxSize);
+        step = Math.max(1, step);
+        int outWidth = (width + step - 1) / step;
+        int outHeight = (height + step - 1) / step;
+        BufferedImage out = new BufferedImage(outWidth, outHeight, TYPE_INT_ARGB);
+        int[] outPixels = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+
+        flushCache();
+        int finalStep = step;
+        ThreadPool.parallelRows(outHeight, (startRow, endRow) -> {
+            int[] row = new int[width];
+            for (int outY = startRow; outY < endRow; outY++) {
+                readRowDirectly(outY * finalStep, row);
+                int outPos = outY * outWidth;
+                for (int outX = 0; outX < outWidth; outX++) {
+                    outPixels[outPos + outX] = row[outX * finalStep];
+                }
+            }
+        }, ProgressTracker.NULL_TRACKER);
+        return out;
+    }
+
+    public Rectangle getTileBounds(int tx, int ty) {
+        int x = tx * TILE_SIZE;
+        int y = ty * TILE_SIZE;
+        return new Rectangle(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+    }
+
+    public int getNumTilesX() {
+        return numTilesX;
+    }
+
+    public int getNumTilesY() {
+        return numTilesY;
+    }
+
+    private int tileIndexAt(int x, int y) {
+        return (y / TILE_SIZE) * numTilesX + x / TILE_SIZE;
+    }
+
+    // must be called with the lock held
+    private CachedTile getTile(int tileIndex) {
+        CachedTile tile = hotTiles.get(tileIndex);
+        if (tile != null) {
+            return tile;
+        }
+        checkNotClosed();
+
+        if (hotTiles.size() >= maxCachedTiles) {
+            Iterator<CachedTile> it = hotTiles.values().iterator();
+            CachedTile eldest = it.next();
+            it.remove();
+            writeBack(eldest);
+        }
+
+        tile = new CachedTile(tileIndex);
+        int slot = tileSlots[tileIndex];
+        if (slot != NOT_ALLOCATED) {
+            getSegment(slot).get(posInSegment(slot), tile.pixels, 0, TILE_INTS);
+        }
+        hotTiles.put(tileIndex, tile);
+        return tile;
+    }
+
+    // must be called with the lock held
+    private void writeBack(CachedTile tile) {
+        if (!tile.dirty) {
+            return;
+        }
+        int slot = tileSlots[tile.index];
+        if (slot == NOT_ALLOCATED) {
+            if (isTransparent(tile.pixels, 0, TILE_INTS)) {
+                return;
+            }
+            slot = allocateSlot(tile.index);
+        }
+        getSegment(slot).put(posInSegment(slot), tile.pixels, 0, TILE_INTS);
+        tile.dirty = false;
+    }
+
+    /**
+     * Writes the changed cached tiles into the file, and empties the cache.
+     */
+    public synchronized void flushCache() {
+        for (CachedTile tile : hotTiles.values()) {
+            writeBack(tile);
+        }
+        hotTiles.clear();
+    }
+
+    private synchronized int getSlot(int tileIndex) {
+        return tileSlots[tileIndex];
+    }
+
+    private synchronized int allocateSlot(int tileIndex) {
+        // another row of the same tile could have allocated it meanwhile
+        if (tileSlots[tileIndex] == NOT_ALLOCATED) {
+            tileSlots[tileIndex] = numAllocatedTiles++;
+        }
+        return tileSlots[tileIndex];
+    }
+
+    private synchronized IntBuffer getSegment(int slot) {
+        checkNotClosed();
+        int segmentIndex = slot / TILES_PER_SEGMENT;
+        while (segments.size() <= segmentIndex) {
+            long position = segments.size() * SEGMENT_BYTES;
+            try {
+                // mapping beyond the end of the file grows it, but on most
+                // file systems the unwritten parts don't use any disk space
+                IntBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+                segments.add(segment);
+            } catch (IOException e) {
+                throw new IllegalStateException("could not map " + file, e);
+            }
+        }
+        return segments.get(segmentIndex);
+    }
+
+    private static int posInSegment(int slot) {
+        return (slot % TILES_PER_SEGMENT) * TILE_INTS;
+    }
+
+    private static boolean isTransparent(int[] pixels, int from, int len) {
+        for (int i = from, end = from + len; i < end; i++) {
+            if (pixels[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkPixelBounds(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            throw new IndexOutOfBoundsException("x = " + x + ", y = " + y
+                + ", width = " + width + ", height = " + height);
+        }
+    }
+
+    private void checkRegionBounds(int x, int y, int w, int h) {
+        if (x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > width || y + h > height) {
+            throw new IndexOutOfBoundsException("region " + x + ", " + y + ", " + w + "x" + h
+                + " outside of " + width + "x" + height);
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+    }
+
+    /**
+     * Releases the cache and deletes the temporary file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        hotTiles.clear();
+        // the mappings are released when they are garbage collected
+        segments.clear();
+        channel.close();
+        raf.close();
+        file.delete();
+    }
+
+    private static class CachedTile {
+        private final int index;
+        private final int[] pixels = new int[TILE_INTS];
+        private boolean dirty;
+
+        private CachedTile(int index) {
+            this.index = index;
+        }
+    }
+}
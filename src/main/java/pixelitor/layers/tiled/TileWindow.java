@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.layers.tiled;
+
+import pixelitor.Composition;
+import pixelitor.layers.ImageLayer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * A part of a tiled image, copied into an ordinary {@link BufferedImage},
+ * so that the existing layer code (the tools, brushes and filters) can edit
+ * it, either directly or in a composition created from it. The changes
+ * are written back into the {@link TileStore} with one of the writeBack methods.
+ */
+public class TileWindow {
+    private final TileStore store;
+    private final Rectangle area;
+    private final BufferedImage image;
+
+    /**
+     * Copies the given area (clipped to the image bounds) of the store.
+     */
+    public TileWindow(TileStore store, Rectangle area) {
+        this.store = store;
+        this.area = area.intersection(store.getBounds());
+        if (this.area.isEmpty()) {
+            throw new IllegalArgumentException(area + " is outside of the image");
+        }
+        image = store.getRegion(this.area);
+    }
+
+    /**
+     * Returns the copied pixels, which can be modified in place.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public Rectangle getArea() {
+        return new Rectangle(area);
+    }
+
+    /**
+     * Creates a single-layered composition from the copied pixels,
+     * which can be edited like any other image.
+     */
+    public Composition createComposition(String name) {
+        return Composition.fromImage(image, null, name);
+    }
+
+    /**
+     * Writes the in-place changes of the copied pixels back into the store.
+     */
+    public void writeBack() {
+        store.setRegion(area.x, area.y, image);
+    }
+
+    /**
+     * Writes the canvas-sized part of the given layer back into the store.
+     * Most edits replace the image of the layer instead of
+     * changing it in place, so the layer is asked for the current one.
+     */
+    public void writeBack(ImageLayer layer) {
+        BufferedImage edited = layer.getCanvasSizedSubImage();
+        if (edited.getWidth() != area.width || edited.getHeight() != area.height) {
+            throw new IllegalArgumentException("the canvas was resized to "
+                + edited.getWidth() + "x" + edited.getHeight()
+                + ", the window is " + area.width + "x" + area.height);
+        }
+        store.setRegion(area.x, area.y, edited);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.layers.tiled;
+
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Vector;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static pixelitor.layers.tiled.TileStore.TILE_SIZE;
+
+/**
+ * A read-only {@link RenderedImage} view of a {@link TileStore},
+ * for the code that accepts any rendered image: the ImageIO writers
+ * (see {@link TiledImageIO}), and {@link java.awt.Graphics2D#drawRenderedImage},
+ * which requests only the tiles inside the clip, so it can display
+ * a part of an image that is too large for a {@link BufferedImage}.
+ */
+public class TiledImage implements RenderedImage {
+    private final TileStore store;
+    private final ColorModel colorModel = ColorModel.getRGBdefault();
+    private final SampleModel sampleModel = colorModel.createCompatibleSampleModel(TILE_SIZE, TILE_SIZE);
+
+    public TiledImage(TileStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        // the tiles at the right and bottom edges are also full-sized
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+        Rectangle bounds = store.getTileBounds(tileX, tileY);
+        store.readRegion(bounds.x, bounds.y, bounds.width, bounds.height, pixels, 0, TILE_SIZE);
+        return tile.getRaster().createTranslatedChild(bounds.x, bounds.y);
+    }
+
+    @Override
+    public Raster getData() {
+        return getData(store.getBounds());
+    }
+
+    @Override
+    public Raster getData(Rectangle rect) {
+        Rectangle area = rect.intersection(store.getBounds());
+        if (area.isEmpty()) {
+            throw new IllegalArgumentException(rect + " is outside of the image");
+        }
+        WritableRaster raster = store.getRegion(area).getRaster();
+        return raster.createTranslatedChild(area.x, area.y);
+    }
+
+    @Override
+    public WritableRaster copyData(WritableRaster outRaster) {
+        if (outRaster == null) {
+            return (WritableRaster) getData();
+        }
+        outRaster.setRect(getData(outRaster.getBounds()));
+        return outRaster;
+    }
+
+    @Override
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return Image.UndefinedProperty;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+        return colorModel;
+    }
+
+    @Override
+    public SampleModel getSampleModel() {
+        return sampleModel;
+    }
+
+    @Override
+    public int getWidth() {
+        return store.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return store.getHeight();
+    }
+
+    @Override
+    public int getMinX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinY() {
+        return 0;
+    }
+
+    @Override
+    public int getNumXTiles() {
+        return store.getNumTilesX();
+    }
+
+    @Override
+    public int getNumYTiles() {
+        return store.getNumTilesY();
+    }
+
+    @Override
+    public int getMinTileX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinTileY() {
+        return 0;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return TILE_SIZE;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return TILE_SIZE;
+    }
+
+    @Override
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getTileGridYOffset() {
+        return 0;
+    }
+}
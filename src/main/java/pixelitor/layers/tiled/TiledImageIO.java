@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.layers.tiled;
+
+import pixelitor.utils.ProgressTracker;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import static pixelitor.layers.tiled.TileStore.TILE_SIZE;
+
+/**
+ * Reads and writes image files that are too large for a
+ * single {@link BufferedImage}, without having all the pixels on the heap.
+ */
+public class TiledImageIO {
+    private TiledImageIO() {
+        // only static utility methods
+    }
+
+    /**
+     * Returns the number of progress units reported by {@link #read}.
+     */
+    public static int getNumProgressUnits(int imageHeight) {
+        return (imageHeight + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    /**
+     * Reads the given file into a new store, one band of tile rows at a time,
+     * so only a band of the image is decoded on the heap at the same time.
+     * This is fast for the formats with random access to the rows (such as
+     * BMP, TIFF or the PNM formats), the others decode the previous rows again.
+     */
+    public static TileStore read(File file, ProgressTracker pt) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                throw new IOException("could not open " + file.getName());
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("no reader found for " + file.getName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, false, true);
+                return readBands(reader, pt);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static TileStore readBands(ImageReader reader, ProgressTracker pt) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        TileStore store = TileStore.create(width, height);
+        try {
+            ImageReadParam param = reader.getDefaultReadParam();
+            for (int y = 0; y < height; y += TILE_SIZE) {
+                int bandHeight = Math.min(TILE_SIZE, height - y);
+                param.setSourceRegion(new Rectangle(0, y, width, bandHeight));
+                store.setRegion(0, y, reader.read(0, param));
+                pt.unitDone();
+            }
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Writes the store into the given file with the ImageIO writer
+     * of the given format, which gets the pixels through a {@link TiledImage}.
+     */
+    public static void write(TileStore store, File file, String formatName) throws IOException {
+        if (!ImageIO.write(new TiledImage(store), formatName, file)) {
+            throw new IOException("no writer found for " + formatName);
+        }
+    }
+}
@@ -956,6 +956,7 @@ public class MenuBar extends JMenuBar {
         String medianFilterName = "3x3 Median Filter";
         sub.addForwardingFilter(medianFilterName,
             () -> new MedianFilter(medianFilterName));
+        sub.addFilter(Median.NAME, Median::new);
 
         sub.addSeparator();
 
@@ -20,6 +20,7 @@ package pixelitor.menus.file;
 import pixelitor.Composition;
 import pixelitor.gui.utils.DialogBuilder;
 import pixelitor.gui.utils.OpenImageEnabledAction;
+import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 
 import javax.print.attribute.HashPrintRequestAttributeSet;
@@ -55,7 +56,7 @@ public class PrintAction extends OpenImageEnabledAction implements Printable {
         // The printed image will be the image at the start,
         // although it is editable during the asynchronous printing
         Composition comp = getActiveComp();
-        img = comp.getCompositeImage();
+        img = ImageUtils.copyImage(comp.getCompositeImage());
         compName = comp.getName();
 
         showPreview();
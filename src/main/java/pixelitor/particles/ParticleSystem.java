@@ -17,131 +17,494 @@
 
 package pixelitor.particles;
 
-import net.jafama.FastMath;
 import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.Shapes;
 
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.Future;
-import java.util.function.Supplier;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
 
-public class ParticleSystem<P extends Particle> {
-    private final List<P> particles;
-    private final List<Modifier<P>> modifiers;
-    private final List<Modifier<P>> updaters;
-    private final Supplier<P> supplier;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
 
-    public static <P extends Particle> ParticleSystemBuilder<P> createSystem(int particles) {
-        return new ParticleSystemBuilder<>(particles);
+/**
+ * A particle system which keeps the state of the particles in primitive
+ * arrays (see {@link Particles}), updates them with batch {@link Modifier}s,
+ * and draws the path of each particle with a stroke, when the particle
+ * leaves the bounds of the system, and at the end of the simulation.
+ *
+ * The particles are simulated in fixed-size blocks, and each block has its
+ * own random number generator derived from the seed, therefore the
+ * simulation doesn't depend on the number of threads. The threads draw into
+ * a limited number of full-size accumulation layers, which are merged into
+ * the destination image at the end. In reproducible mode the blocks are assigned to a fixed
+ * number of layers, which are merged in a fixed order, therefore the same seed
+ * gives exactly the same image on any number of processor cores.
+ */
+public final class ParticleSystem {
+    private static final int NUM_CORES = Runtime.getRuntime().availableProcessors();
+
+    // the number of particles simulated together
+    private static final int BLOCK_SIZE = 256;
+
+    // the number of layers in reproducible mode
+    private static final int REPRODUCIBLE_LAYERS = 8;
+
+    // the maximum number of layers used at the same time
+    private static final int MAX_LAYERS = 8;
+
+    // the layers can use at most this fraction of the max memory
+    private static final int LAYER_MEMORY_FRACTION = 8;
+
+    private static final float PATH_SMOOTHNESS = 0.5f;
+
+    private final int numParticles;
+    private final int numIterations;
+    private final int numBlocks;
+    private final long[] blockSeeds;
+
+    private final Spawner[] spawners;
+    private final Modifier[] modifiers;
+    private final PathColor pathColor;
+    private final Stroke[] strokes;
+    private final boolean antialias;
+    private final boolean reproducible;
+
+    // the particles outside these bounds are reborn
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+
+    private final float pathTolerance;
+    private final float pathScale;
+
+    /**
+     * Determines the color of a path when it's drawn.
+     */
+    @FunctionalInterface
+    public interface PathColor {
+        int getColor(Particles particles, int i);
     }
 
-    private ParticleSystem(int particleCount, List<Modifier<P>> modifiers, List<Modifier<P>> updaters, Supplier<P> supplier) {
-        this.particles = new ArrayList<>(particleCount);
-        this.modifiers = modifiers;
-        this.updaters = updaters;
-        this.supplier = supplier;
-        for (int i = 0; i < particleCount; i++) {
-            P particle = newParticle();
-            initializeParticle(particle);
-            particles.add(particle);
+    private ParticleSystem(Builder builder) {
+        numParticles = builder.numParticles;
+        numIterations = builder.numIterations;
+        numBlocks = (numParticles + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        var seeds = new SplittableRandom(builder.seed);
+        blockSeeds = new long[numBlocks];
+        for (int i = 0; i < numBlocks; i++) {
+            blockSeeds[i] = seeds.nextLong();
         }
+
+        spawners = builder.spawners.toArray(new Spawner[0]);
+        modifiers = builder.modifiers.toArray(new Modifier[0]);
+        pathColor = builder.pathColor;
+        strokes = builder.strokes;
+        antialias = builder.antialias;
+        reproducible = builder.reproducible;
+
+        Rectangle2D bounds = builder.bounds;
+        minX = (float) bounds.getMinX();
+        minY = (float) bounds.getMinY();
+        maxX = (float) bounds.getMaxX();
+        maxY = (float) bounds.getMaxY();
+
+        pathTolerance = builder.pathTolerance;
+        pathScale = builder.pathScale;
     }
 
-    public void step() {
-        for (int i = 0, particlesSize = particles.size(); i < particlesSize; i++) {
-            stepParticle(i, particles.get(i));
-        }
+    public static Builder builder(int numParticles, int numIterations) {
+        return new Builder(numParticles, numIterations);
+    }
+
+    /**
+     * Returns the number of progress units reported by the render method.
+     */
+    public int getNumWorkUnits() {
+        return numBlocks;
     }
 
-    public void step(int start, int end) {
-        for (int i = start, s = FastMath.min(particles.size(), end); i < s; i++) {
-            P particle = particles.get(i);
-            particle.groupIndex = start / (end - start);
-            stepParticle(i, particle);
+    /**
+     * Runs the simulation, and draws the paths of the particles
+     * over the given image, which must be a packed int ARGB image.
+     */
+    public void render(BufferedImage dest, ProgressTracker pt) {
+        if (numBlocks == 0) {
+            return;
+        }
+        if (reproducible) {
+            renderReproducibly(dest, pt);
+        } else {
+            renderFast(dest, pt);
         }
     }
 
-    public void iterate(int iterations) {
-        for (int i = 0; i < iterations; i++) {
-            step();
+    /**
+     * The threads take the blocks dynamically, and each band of blocks
+     * is drawn into a layer which is not used by other threads. The
+     * layers are created on demand, but at most maxLayers of them.
+     */
+    private void renderFast(BufferedImage dest, ProgressTracker pt) {
+        BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<>();
+        List<Worker> allWorkers = new ArrayList<>();
+        int width = dest.getWidth();
+        int height = dest.getHeight();
+        int maxLayers = calcMaxLayers(width, height);
+
+        try {
+            // the blocks are the rows, so the progress is
+            // reported by the calling thread
+            ThreadPool.parallelRows(numBlocks, (startBlock, endBlock) -> {
+                Worker worker = takeWorker(idleWorkers, allWorkers, maxLayers, width, height);
+                try {
+                    for (int block = startBlock; block < endBlock; block++) {
+                        simulateBlock(block, worker);
+                    }
+                } finally {
+                    idleWorkers.add(worker);
+                }
+            }, pt);
+        } finally {
+            allWorkers.forEach(Worker::dispose);
         }
+
+        mergeLayers(dest, allWorkers, allWorkers.size());
     }
 
-    public void iterate(int iterations, int start, int end) {
-        for (int i = 0; i < iterations; i++) {
-            step(start, end);
+    /**
+     * Returns an idle worker, or creates a new one if the limit
+     * is not reached yet, or otherwise waits for an idle worker.
+     */
+    private Worker takeWorker(BlockingQueue<Worker> idleWorkers, List<Worker> allWorkers,
+                              int maxLayers, int width, int height) {
+        Worker worker = idleWorkers.poll();
+        if (worker != null) {
+            return worker;
+        }
+        synchronized (allWorkers) {
+            if (allWorkers.size() < maxLayers) {
+                worker = new Worker(new BufferedImage(width, height, TYPE_INT_ARGB_PRE));
+                allWorkers.add(worker);
+                return worker;
+            }
         }
+        try {
+            return idleWorkers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Returns how many full-size layers can be used at the same time,
+     * considering the number of cores and the available memory.
+     */
+    private int calcMaxLayers(int width, int height) {
+        long layerBytes = 4L * width * height;
+        long budget = Runtime.getRuntime().maxMemory() / LAYER_MEMORY_FRACTION;
+        int maxForMemory = (int) Math.max(1, Math.min(MAX_LAYERS, budget / layerBytes));
+        return Math.min(maxForMemory, Math.min(NUM_CORES, numBlocks));
     }
 
-    public Future<?>[] iterate(int iterations, int groupCount) {
-        Future<?>[] futures = new Future[groupCount];
-        int s = particles.size();
-        int groupSize = (int) FastMath.ceil(s / (double) groupCount);
+    /**
+     * The blocks are statically assigned to a fixed number of
+     * layers. They are rendered in waves (one layer for each thread),
+     * and after each wave the layers are merged in order.
+     */
+    private void renderReproducibly(BufferedImage dest, ProgressTracker pt) {
+        int numLayers = Math.min(REPRODUCIBLE_LAYERS, numBlocks);
+        int waveSize = Math.min(calcMaxLayers(dest.getWidth(), dest.getHeight()), numLayers);
+        int width = dest.getWidth();
+        int height = dest.getHeight();
 
-        for (int i = 0, k = 0; i < s; i += groupSize, k++) {
-            int finalI = i;
-            futures[k] = ThreadPool.submit(() -> iterate(iterations, finalI, finalI + groupSize));
+        List<Worker> workers = new ArrayList<>(waveSize);
+        for (int i = 0; i < waveSize; i++) {
+            workers.add(new Worker(new BufferedImage(width, height, TYPE_INT_ARGB_PRE)));
         }
 
-        return futures;
+        try {
+            for (int waveStart = 0; waveStart < numLayers; waveStart += waveSize) {
+                int firstLayer = waveStart;
+                int numWaveLayers = Math.min(waveSize, numLayers - waveStart);
+
+                // there is one row for each layer, and each row is a separate band
+                ThreadPool.parallelRows(numWaveLayers, (startRow, endRow) -> {
+                    for (int row = startRow; row < endRow; row++) {
+                        Worker worker = workers.get(row);
+                        worker.clearLayer();
+
+                        int layer = firstLayer + row;
+                        int startBlock = (int) ((long) layer * numBlocks / numLayers);
+                        int endBlock = (int) ((long) (layer + 1) * numBlocks / numLayers);
+                        for (int block = startBlock; block < endBlock; block++) {
+                            simulateBlock(block, worker);
+                        }
+                    }
+                }, NULL_TRACKER);
+
+                // the rows are layers here, so the finished blocks are reported
+                // after the wave, on the calling thread
+                int firstBlock = (int) ((long) firstLayer * numBlocks / numLayers);
+                int lastLayer = firstLayer + numWaveLayers;
+                pt.unitsDone((int) ((long) lastLayer * numBlocks / numLayers) - firstBlock);
+
+                mergeLayers(dest, workers, numWaveLayers);
+            }
+        } finally {
+            workers.forEach(Worker::dispose);
+        }
     }
 
-    private void stepParticle(int iterationIndex, P particle) {
-        if (particle.isDead()) {
-            particle.flush();
-            initializeParticle(particle);
+    private void simulateBlock(int block, Worker worker) {
+        Particles particles = worker.particles;
+        int firstIndex = block * BLOCK_SIZE;
+        particles.reset(firstIndex, Math.min(BLOCK_SIZE, numParticles - firstIndex));
+        int size = particles.size();
+
+        var random = new SplittableRandom(blockSeeds[block]);
+        if (strokes.length > 1) {
+            for (int i = 0; i < size; i++) {
+                particles.style[i] = random.nextInt(strokes.length);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            spawn(particles, i, random);
+        }
+
+        for (int iteration = 0; iteration < numIterations; iteration++) {
+            float[] x = particles.x;
+            float[] y = particles.y;
+            for (int i = 0; i < size; i++) {
+                // also true for NaN coordinates
+                if (!(x[i] >= minX && x[i] < maxX && y[i] >= minY && y[i] < maxY)) {
+                    worker.drawPath(i);
+                    spawn(particles, i, random);
+                }
+            }
+
+            for (Modifier modifier : modifiers) {
+                modifier.modify(particles, iteration);
+            }
+
+            for (int i = 0; i < size; i++) {
+                particles.addPathPointIfMoved(i, pathTolerance, pathScale);
+            }
         }
-        particle.iterationIndex = iterationIndex;
-        for (Modifier<P> updater : updaters) {
-            updater.modify(particle);
+
+        for (int i = 0; i < size; i++) {
+            worker.drawPath(i);
         }
-        particle.update();
     }
 
-    public void flush() {
-        for (P particle : particles) {
-            particle.flush();
+    private void spawn(Particles particles, int i, SplittableRandom random) {
+        for (Spawner spawner : spawners) {
+            spawner.spawn(particles, i, random);
         }
+        particles.startPath(i, pathScale);
     }
 
-    private P newParticle() {
-        return supplier.get();
+    /**
+     * Composites the first numLayers layers of the given workers
+     * over the destination image, in order, in parallel horizontal bands.
+     */
+    private static void mergeLayers(BufferedImage dest, List<Worker> workers, int numLayers) {
+        int width = dest.getWidth();
+        ThreadPool.parallelRows(dest.getHeight(), (startY, endY) -> {
+            Graphics2D g = dest.createGraphics();
+            g.clipRect(0, startY, width, endY - startY);
+            for (int i = 0; i < numLayers; i++) {
+                g.drawImage(workers.get(i).layer, 0, 0, null);
+            }
+            g.dispose();
+        }, NULL_TRACKER);
     }
 
-    private void initializeParticle(P particle) {
-        for (Modifier<P> modifier : modifiers) {
-            modifier.modify(particle);
+    /**
+     * The state used by a single thread: a reusable block of particles,
+     * a reusable path and the accumulation layer. Without antialiasing, the
+     * stroked paths are filled directly into the pixels of the layer.
+     */
+    private final class Worker {
+        private final Particles particles;
+        private final Path2D.Float path = new Path2D.Float();
+        private final BufferedImage layer;
+        private final int[] pixels;
+
+        private final Graphics2D g;
+        private final ShapeFiller filler;
+        private final Stroke[] fillableStrokes;
+
+        private int lastStyle;
+        private int lastColor;
+
+        Worker(BufferedImage layer) {
+            assert layer.getType() == TYPE_INT_ARGB_PRE;
+            this.layer = layer;
+            pixels = ((DataBufferInt) layer.getRaster().getDataBuffer()).getData();
+            particles = new Particles(BLOCK_SIZE, numIterations + 1);
+
+            if (antialias) {
+                g = layer.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g.setStroke(strokes[0]);
+                g.setColor(new Color(0, true));
+                filler = null;
+                fillableStrokes = null;
+            } else {
+                g = null;
+                filler = new ShapeFiller(pixels, layer.getWidth(), layer.getHeight());
+                fillableStrokes = new Stroke[strokes.length];
+                for (int i = 0; i < strokes.length; i++) {
+                    fillableStrokes[i] = ShapeFiller.toFillableStroke(strokes[i]);
+                }
+            }
+        }
+
+        void drawPath(int i) {
+            int length = particles.pathLength[i];
+            particles.pathLength[i] = 0;
+            if (length < 3) {
+                return;
+            }
+
+            path.reset();
+            Shapes.smoothConnect(particles.pathX, particles.pathY,
+                particles.getPathOffset(i), length, PATH_SMOOTHNESS, path);
+            int style = particles.style[i];
+            int color = pathColor.getColor(particles, i);
+
+            if (filler != null) {
+                filler.fill(fillableStrokes[style].createStrokedShape(path), color);
+                return;
+            }
+
+            if (style != lastStyle) {
+                g.setStroke(strokes[style]);
+                lastStyle = style;
+            }
+            if (color != lastColor) {
+                g.setColor(new Color(color, true));
+                lastColor = color;
+            }
+            g.draw(path);
+        }
+
+        void clearLayer() {
+            Arrays.fill(pixels, 0);
+        }
+
+        void dispose() {
+            if (g != null) {
+                g.dispose();
+            }
         }
-        particle.reset();
     }
 
-    public static class ParticleSystemBuilder<P extends Particle> {
-        private final List<Modifier<P>> modifiers = new ArrayList<>();
-        private final List<Modifier<P>> updaters = new ArrayList<>();
-        private Supplier<P> supplier = () -> null;
-        private final int particles;
+    public static class Builder {
+        private final int numParticles;
+        private final int numIterations;
+        private final List<Spawner> spawners = new ArrayList<>();
+        private final List<Modifier> modifiers = new ArrayList<>();
+        private PathColor pathColor = (particles, i) -> particles.color[i];
+        private Stroke[] strokes = {new BasicStroke()};
+        private boolean antialias = false;
+        private Rectangle2D bounds;
+        private float pathTolerance = 0;
+        private float pathScale = 1.0f;
+        private long seed = 0;
+        private boolean reproducible = false;
 
-        public ParticleSystemBuilder(int particles) {
-            this.particles = particles;
+        private Builder(int numParticles, int numIterations) {
+            this.numParticles = numParticles;
+            this.numIterations = numIterations;
         }
 
-        public ParticleSystemBuilder<P> setParticleCreator(Supplier<P> supplier) {
-            this.supplier = supplier;
+        /**
+         * Adds a spawner. The spawners are called in the order they were added.
+         */
+        public Builder addSpawner(Spawner spawner) {
+            spawners.add(spawner);
             return this;
         }
 
-        public ParticleSystemBuilder<P> addModifier(Modifier<P> modifier) {
+        /**
+         * Adds a modifier. The modifiers are called
+         * in the order they were added in each step.
+         */
+        public Builder addModifier(Modifier modifier) {
             modifiers.add(modifier);
             return this;
         }
 
-        public ParticleSystemBuilder<P> addUpdater(Modifier<P> modifier) {
-            updaters.add(modifier);
+        public Builder pathColor(PathColor pathColor) {
+            this.pathColor = pathColor;
+            return this;
+        }
+
+        /**
+         * Sets the strokes used for drawing the paths. If there are
+         * more strokes, then each particle gets a random one.
+         */
+        public Builder strokes(Stroke... strokes) {
+            assert strokes.length > 0;
+            this.strokes = strokes;
+            return this;
+        }
+
+        public Builder antialias(boolean antialias) {
+            this.antialias = antialias;
+            return this;
+        }
+
+        public Builder bounds(Rectangle2D bounds) {
+            this.bounds = bounds;
+            return this;
+        }
+
+        /**
+         * A new path point is recorded only if the particle moved more
+         * than this distance along any axis since the last path point.
+         */
+        public Builder pathTolerance(float pathTolerance) {
+            this.pathTolerance = pathTolerance;
+            return this;
+        }
+
+        /**
+         * The scaling from the particle coordinates to the image coordinates.
+         */
+        public Builder pathScale(float pathScale) {
+            this.pathScale = pathScale;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder reproducible(boolean reproducible) {
+            this.reproducible = reproducible;
             return this;
         }
 
-        public ParticleSystem<P> build() {
-            return new ParticleSystem<>(particles, modifiers, updaters, supplier);
+        public ParticleSystem build() {
+            assert !spawners.isEmpty();
+            assert bounds != null;
+            return new ParticleSystem(this);
         }
     }
 }
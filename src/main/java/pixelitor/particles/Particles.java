@@ -0,0 +1,159 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.particles;
+
+import java.util.Arrays;
+
+/**
+ * The state of a block of particles, stored in primitive arrays
+ * (one array for each property) instead of particle objects.
+ * The meaning of the physical properties is up to the {@link Spawner}s
+ * and {@link Modifier}s, the particle system itself only reads the positions,
+ * and records a path for each particle from the successive positions.
+ */
+public final class Particles {
+    public final float[] x;
+    public final float[] y;
+    public final float[] vx;
+    public final float[] vy;
+    public final float[] ax;
+    public final float[] ay;
+
+    // the force acting on the particles in the current step
+    public final float[] fx;
+    public final float[] fy;
+
+    // the color given at spawn time
+    public final int[] color;
+
+    // the index of the stroke used for drawing the path
+    final int[] style;
+
+    // the recorded paths, pathCapacity points for each particle
+    final float[] pathX;
+    final float[] pathY;
+    final int[] pathLength;
+    private final int pathCapacity;
+
+    // the last recorded (unscaled) path point
+    private final float[] lastX;
+    private final float[] lastY;
+
+    private final int capacity;
+    private int size;
+    private int firstIndex;
+
+    public Particles(int capacity, int pathCapacity) {
+        this.capacity = capacity;
+        this.pathCapacity = pathCapacity;
+
+        x = new float[capacity];
+        y = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        ax = new float[capacity];
+        ay = new float[capacity];
+        fx = new float[capacity];
+        fy = new float[capacity];
+        color = new int[capacity];
+        style = new int[capacity];
+
+        pathX = new float[capacity * pathCapacity];
+        pathY = new float[capacity * pathCapacity];
+        pathLength = new int[capacity];
+        lastX = new float[capacity];
+        lastY = new float[capacity];
+
+        size = capacity;
+    }
+
+    /**
+     * Returns the number of particles in this block.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index of the given particle within the whole particle system.
+     */
+    public int getIndex(int i) {
+        return firstIndex + i;
+    }
+
+    /**
+     * Prepares this block for reuse with the given
+     * number of particles, all properties set to zero.
+     */
+    void reset(int firstIndex, int size) {
+        assert size <= capacity;
+        this.firstIndex = firstIndex;
+        this.size = size;
+
+        Arrays.fill(x, 0, size, 0);
+        Arrays.fill(y, 0, size, 0);
+        Arrays.fill(vx, 0, size, 0);
+        Arrays.fill(vy, 0, size, 0);
+        Arrays.fill(ax, 0, size, 0);
+        Arrays.fill(ay, 0, size, 0);
+        Arrays.fill(fx, 0, size, 0);
+        Arrays.fill(fy, 0, size, 0);
+        Arrays.fill(color, 0, size, 0);
+        Arrays.fill(style, 0, size, 0);
+        Arrays.fill(pathLength, 0, size, 0);
+    }
+
+    int getPathOffset(int i) {
+        return i * pathCapacity;
+    }
+
+    /**
+     * Starts a new path at the current position of the given particle.
+     */
+    void startPath(int i, float scale) {
+        pathLength[i] = 0;
+        addPathPoint(i, scale);
+    }
+
+    /**
+     * Adds the current position to the path of the given particle
+     * if it moved more than the given tolerance along any axis since
+     * the last recorded point.
+     */
+    void addPathPointIfMoved(int i, float tolerance, float scale) {
+        if (Math.abs(lastX[i] - x[i]) > tolerance || Math.abs(lastY[i] - y[i]) > tolerance) {
+            addPathPoint(i, scale);
+        }
+    }
+
+    private void addPathPoint(int i, float scale) {
+        float px = x[i];
+        float py = y[i];
+        lastX[i] = px;
+        lastY[i] = py;
+
+        int length = pathLength[i];
+        if (length == pathCapacity) {
+            return;
+        }
+        int index = i * pathCapacity + length;
+        pathX[index] = px * scale;
+        pathY[index] = py * scale;
+        pathLength[i] = length + 1;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.particles;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+/**
+ * Fills shapes without antialiasing into a premultiplied
+ * packed int ARGB raster, compositing a single color with SrcOver.
+ *
+ * Java2D renders the non-antialiased translucent shapes
+ * through a generic pipeline, which processes each span separately,
+ * and this was many times slower than the stroking itself.
+ * Like in Java2D, the pixels with their center inside the shape are filled.
+ */
+final class ShapeFiller {
+    private static final double FLATNESS = 0.25;
+
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+
+    // the edges intersecting the raster: the x coordinate at the center of
+    // the first row, the change of x per row, the first row, the end row
+    // (exclusive) and the winding direction
+    private int numEdges;
+    private float[] edgeX = new float[64];
+    private float[] edgeSlope = new float[64];
+    private int[] edgeStart = new int[64];
+    private int[] edgeEnd = new int[64];
+    private int[] edgeDir = new int[64];
+
+    // the edge indices ordered by the first row
+    private int[] sortedEdges = new int[64];
+    private int[] rowCounts = new int[0];
+
+    private int numActive;
+    private int[] active = new int[16];
+    private float[] crossingX = new float[16];
+    private int[] crossingDir = new int[16];
+
+    private final double[] coords = new double[6];
+    private int minRow;
+    private int maxRow;
+
+    ShapeFiller(int[] pixels, int width, int height) {
+        assert pixels.length >= width * height;
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns a stroke that gives the same result as the given one
+     * when its stroked shape is filled. The basic strokes thinner than a pixel
+     * are drawn by Java2D as one pixel wide lines, and this has to be emulated.
+     */
+    static Stroke toFillableStroke(Stroke stroke) {
+        if (stroke instanceof BasicStroke bs && bs.getLineWidth() < 1) {
+            return new BasicStroke(1, bs.getEndCap(), bs.getLineJoin(),
+                bs.getMiterLimit(), bs.getDashArray(), bs.getDashPhase());
+        }
+        return stroke;
+    }
+
+    /**
+     * Fills the given shape with the given (not premultiplied) ARGB color.
+     */
+    void fill(Shape shape, int argb) {
+        int alpha = argb >>> 24;
+        if (alpha == 0) {
+            return;
+        }
+
+        PathIterator it = shape.getPathIterator(null, FLATNESS);
+        boolean evenOdd = it.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+        collectEdges(it);
+        if (numEdges == 0) {
+            return;
+        }
+        sortEdges();
+        scan(premultiply(argb), alpha, evenOdd);
+    }
+
+    private void collectEdges(PathIterator it) {
+        numEdges = 0;
+        minRow = height;
+        maxRow = 0;
+
+        double startX = 0;
+        double startY = 0;
+        double lastX = 0;
+        double lastY = 0;
+        for (; !it.isDone(); it.next()) {
+            switch (it.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO -> {
+                    // the subpaths are implicitly closed
+                    addEdge(lastX, lastY, startX, startY);
+                    startX = lastX = coords[0];
+                    startY = lastY = coords[1];
+                }
+                case PathIterator.SEG_LINETO -> {
+                    addEdge(lastX, lastY, coords[0], coords[1]);
+                    lastX = coords[0];
+                    lastY = coords[1];
+                }
+                case PathIterator.SEG_CLOSE -> {
+                    addEdge(lastX, lastY, startX, startY);
+                    lastX = startX;
+                    lastY = startY;
+                }
+                default -> throw new IllegalStateException("not flattened");
+            }
+        }
+        addEdge(lastX, lastY, startX, startY);
+    }
+
+    private void addEdge(double x0, double y0, double x1, double y1) {
+        int dir = 1;
+        if (y0 > y1) {
+            double tmp = x0;
+            x0 = x1;
+            x1 = tmp;
+            tmp = y0;
+            y0 = y1;
+            y1 = tmp;
+            dir = -1;
+        }
+
+        // the rows with their center in [y0, y1)
+        int start = Math.max(0, (int) Math.ceil(y0 - 0.5));
+        int end = Math.min(height, (int) Math.ceil(y1 - 0.5));
+        if (start >= end) {
+            return; // horizontal, or it doesn't intersect any row
+        }
+
+        if (numEdges == edgeX.length) {
+            int newLength = 2 * numEdges;
+            edgeX = Arrays.copyOf(edgeX, newLength);
+            edgeSlope = Arrays.copyOf(edgeSlope, newLength);
+            edgeStart = Arrays.copyOf(edgeStart, newLength);
+            edgeEnd = Arrays.copyOf(edgeEnd, newLength);
+            edgeDir = Arrays.copyOf(edgeDir, newLength);
+        }
+        double slope = (x1 - x0) / (y1 - y0);
+        edgeX[numEdges] = (float) (x0 + (start + 0.5 - y0) * slope);
+        edgeSlope[numEdges] = (float) slope;
+        edgeStart[numEdges] = start;
+        edgeEnd[numEdges] = end;
+        edgeDir[numEdges] = dir;
+        numEdges++;
+
+        minRow = Math.min(minRow, start);
+        maxRow = Math.max(maxRow, end);
+    }
+
+    // a counting sort by the first row
+    private void sortEdges() {
+        int numRows = maxRow - minRow;
+        if (rowCounts.length < numRows + 1) {
+            rowCounts = new int[Math.max(numRows + 1, 2 * rowCounts.length)];
+        }
+        Arrays.fill(rowCounts, 0, numRows + 1, 0);
+        for (int i = 0; i < numEdges; i++) {
+            rowCounts[edgeStart[i] - minRow + 1]++;
+        }
+        for (int r = 0; r < numRows; r++) {
+            rowCounts[r + 1] += rowCounts[r];
+        }
+
+        if (sortedEdges.length < numEdges) {
+            sortedEdges = new int[edgeX.length];
+        }
+        for (int i = 0; i < numEdges; i++) {
+            sortedEdges[rowCounts[edgeStart[i] - minRow]++] = i;
+        }
+    }
+
+    private void scan(int premultipliedColor, int alpha, boolean evenOdd) {
+        numActive = 0;
+        int nextEdge = 0;
+        for (int row = minRow; row < maxRow; row++) {
+            // remove the finished edges
+            int kept = 0;
+            for (int i = 0; i < numActive; i++) {
+                int edge = active[i];
+                if (edgeEnd[edge] > row) {
+                    active[kept++] = edge;
+                }
+            }
+            numActive = kept;
+
+            // add the new edges
+            while (nextEdge < numEdges && edgeStart[sortedEdges[nextEdge]] == row) {
+                if (numActive == active.length) {
+                    active = Arrays.copyOf(active, 2 * numActive);
+                    crossingX = new float[2 * numActive];
+                    crossingDir = new int[2 * numActive];
+                }
+                active[numActive++] = sortedEdges[nextEdge++];
+            }
+
+            // the crossings sorted by x (insertion sort, there are only a few)
+            for (int i = 0; i < numActive; i++) {
+                int edge = active[i];
+                float x = edgeX[edge];
+                int dir = edgeDir[edge];
+                edgeX[edge] = x + edgeSlope[edge];
+
+                int j = i - 1;
+                while (j >= 0 && crossingX[j] > x) {
+                    crossingX[j + 1] = crossingX[j];
+                    crossingDir[j + 1] = crossingDir[j];
+                    j--;
+                }
+                crossingX[j + 1] = x;
+                crossingDir[j + 1] = dir;
+            }
+
+            int winding = 0;
+            int rowOffset = row * width;
+            for (int i = 0; i < numActive - 1; i++) {
+                winding += evenOdd ? 1 : crossingDir[i];
+                boolean inside = evenOdd ? (winding & 1) != 0 : winding != 0;
+                if (inside) {
+                    // the pixels with their center in [x0, x1)
+                    int from = Math.max(0, ceil(crossingX[i] - 0.5f));
+                    int to = Math.min(width, ceil(crossingX[i + 1] - 0.5f));
+                    if (from < to) {
+                        fillSpan(rowOffset + from, rowOffset + to, premultipliedColor, alpha);
+                    }
+                }
+            }
+        }
+    }
+
+    // faster than Math.ceil, and the int overflow is clamped
+    private static int ceil(float v) {
+        int i = (int) v;
+        return i < v ? i + 1 : i;
+    }
+
+    private void fillSpan(int from, int to, int color, int alpha) {
+        if (alpha == 255) {
+            Arrays.fill(pixels, from, to, color);
+            return;
+        }
+        int invAlpha = 255 - alpha;
+        for (int i = from; i < to; i++) {
+            pixels[i] = color + multiply(pixels[i], invAlpha);
+        }
+    }
+
+    // multiplies all four channels with factor / 255 (with rounding)
+    private static int multiply(int argb, int factor) {
+        int rb = (argb & 0x00_FF_00_FF) * factor + 0x00_80_00_80;
+        rb = ((rb + ((rb >>> 8) & 0x00_FF_00_FF)) >>> 8) & 0x00_FF_00_FF;
+        int ag = ((argb >>> 8) & 0x00_FF_00_FF) * factor + 0x00_80_00_80;
+        ag = (ag + ((ag >>> 8) & 0x00_FF_00_FF)) & 0xFF_00_FF_00;
+        return ag | rb;
+    }
+
+    private static int premultiply(int argb) {
+        int a = argb >>> 24;
+        if (a == 255) {
+            return argb;
+        }
+        return a << 24 | multiply(argb & 0x00_FF_FF_FF, a);
+    }
+}
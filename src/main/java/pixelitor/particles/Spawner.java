@@ -0,0 +1,48 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.particles;
+
+import java.util.SplittableRandom;
+
+/**
+ * Initializes a particle when it's created, and
+ * when it's reborn after leaving the bounds of the system.
+ *
+ * The same instance is used by several threads at the same time, therefore
+ * all the randomness must come from the given random number generator,
+ * which belongs to the particle's block.
+ */
+@FunctionalInterface
+public interface Spawner {
+    void spawn(Particles particles, int i, SplittableRandom random);
+
+    /**
+     * Puts the particles at a random position within the given rectangle.
+     */
+    record RandomPosition(float x, float y, float width, float height) implements Spawner {
+        public RandomPosition(float width, float height) {
+            this(0, 0, width, height);
+        }
+
+        @Override
+        public void spawn(Particles particles, int i, SplittableRandom random) {
+            particles.x[i] = x + width * (float) random.nextDouble();
+            particles.y[i] = y + height * (float) random.nextDouble();
+        }
+    }
+}
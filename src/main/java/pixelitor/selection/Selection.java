@@ -50,6 +50,11 @@ public class Selection {
     // The coordinates are in image space, relative to the canvas.
     private Shape shape;
 
+    // The raster version of the shape, created on demand for the
+    // operations on complex shapes, or the result of such an operation.
+    // It must be reset to null whenever the shape changes.
+    private SelectionMask mask;
+
     private static final double DASH_WIDTH = 1.0;
     private static final float DASH_LENGTH = 4.0f;
     private static final float[] MARCHING_ANTS_DASH = {DASH_LENGTH, DASH_LENGTH};
@@ -88,8 +93,9 @@ public class Selection {
             view = orig.view;
         }
 
-        // the shapes can be shared
+        // the shapes and masks can be shared
         shape = orig.shape;
+        mask = orig.mask;
 
         // the Timer is not copied! - setView starts it
     }
@@ -185,6 +191,34 @@ public class Selection {
     public void setShape(Shape currentShape) {
         assert currentShape != null;
         shape = currentShape;
+        mask = null;
+    }
+
+    /**
+     * Returns the raster version of the selection.
+     */
+    public SelectionMask getMask() {
+        if (mask == null) {
+            mask = SelectionMask.fromShape(shape);
+        }
+        return mask;
+    }
+
+    /**
+     * Sets the selection from a raster version, and
+     * traces its contours for the marching ants.
+     */
+    public void setMask(SelectionMask newMask) {
+        mask = newMask;
+        shape = newMask.toShape();
+    }
+
+    /**
+     * Returns true if the shape is so complex that the boolean
+     * operations should be done with the raster version.
+     */
+    public boolean hasComplexShape() {
+        return SelectionMask.isComplex(shape);
     }
 
     /**
@@ -196,7 +230,11 @@ public class Selection {
     private boolean clipToCanvasSize(Composition comp) {
         assert comp == view.getComp();
         if (shape != null) {
-            shape = comp.clipToCanvasBounds(shape);
+            Shape clipped = comp.clipToCanvasBounds(shape);
+            if (clipped != shape) {
+                shape = clipped;
+                mask = null;
+            }
 
             repaint();
 
@@ -227,16 +265,23 @@ public class Selection {
     }
 
     public void modify(SelectionModifyType type, float amount) {
-        Stroke outlineStroke = new BasicStroke(amount);
-        Shape outlineShape = outlineStroke.createStrokedShape(shape);
+        var comp = view.getComp();
+        Shape backupShape = shape;
+        if (hasComplexShape()) {
+            setMask(getMask()
+                .modify(type, amount)
+                .intersect(comp.getCanvas().getBounds()));
+        } else {
+            Stroke outlineStroke = new BasicStroke(amount);
+            Shape outlineShape = outlineStroke.createStrokedShape(shape);
 
-        Area oldArea = new Area(shape);
-        Area outlineArea = new Area(outlineShape);
+            Area oldArea = new Area(shape);
+            Area outlineArea = new Area(outlineShape);
 
-        Shape backupShape = shape;
-        shape = type.modify(oldArea, outlineArea);
+            shape = type.modify(oldArea, outlineArea);
+            mask = null;
+        }
 
-        var comp = view.getComp();
         boolean notEmpty = clipToCanvasSize(comp);
         if (notEmpty) {
             var edit = new SelectionShapeChangeEdit(
@@ -250,6 +295,7 @@ public class Selection {
     public Shape transform(AffineTransform at) {
         Shape backupShape = shape;
         shape = at.createTransformedShape(shape);
+        mask = null;
         return backupShape;
     }
 
@@ -320,9 +366,11 @@ public class Selection {
 
     public void transformWhileDragging(AffineTransform at) {
         shape = at.createTransformedShape(moveStartShape);
+        mask = null;
     }
 
     public void moveWhileDragging(double relImX, double relImY) {
+        mask = null;
         if (moveStartShape instanceof Rectangle2D startRect) {
             // preserve the type information
             shape = new Rectangle2D.Double(
@@ -338,6 +386,7 @@ public class Selection {
         var comp = view.getComp();
 
         shape = comp.clipToCanvasBounds(shape);
+        mask = null;
         if (shape.getBounds().isEmpty()) { // moved outside the canvas
             var deselectEdit = new DeselectEdit(comp, moveStartShape);
             comp.deselect(false);
@@ -360,6 +409,7 @@ public class Selection {
         node.addBoolean("frozen", frozen);
         node.addBoolean("marching", isMarching());
         node.addBoolean("rectangular", isRectangular());
+        node.addBoolean("has mask", mask != null);
 
         node.addString("shape class", shape.getClass().getName());
         node.addString("bounds", getShapeBounds().toString());
@@ -0,0 +1,478 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.selection;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.DistanceTransform;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * An immutable 8-bit raster representation of a selection, where
+ * 0 means not selected and 255 means fully selected.
+ * The coordinates are in image space, relative to the canvas.
+ *
+ * The boolean operations on complex shapes (with many curves, like the
+ * ones created from texts) are very slow with {@link java.awt.geom.Area},
+ * but the masks can be combined pixel by pixel in linear time.
+ * The masks are converted to shapes by tracing their contours.
+ */
+public final class SelectionMask {
+    // the shapes with more path segments are processed as masks
+    private static final int MAX_AREA_SEGMENTS = 1000;
+
+    // the contours are traced at half coverage
+    private static final double THRESHOLD = 127.5;
+
+    private final Rectangle bounds;
+    private final byte[] values;
+
+    private SelectionMask(Rectangle bounds, byte[] values) {
+        assert values.length == bounds.width * bounds.height;
+        this.bounds = bounds;
+        this.values = values;
+    }
+
+    /**
+     * Returns true if the given shape should be processed as a mask.
+     */
+    public static boolean isComplex(Shape shape) {
+        if (shape instanceof Rectangle2D) {
+            return false;
+        }
+        int numSegments = 0;
+        for (PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+            numSegments++;
+            if (numSegments > MAX_AREA_SEGMENTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static SelectionMask fromShape(Shape shape) {
+        return fromShape(shape, shape.getBounds());
+    }
+
+    /**
+     * Rasterizes the given shape with antialiasing. The parts
+     * of the shape that are outside the given bounds are ignored.
+     */
+    public static SelectionMask fromShape(Shape shape, Rectangle bounds) {
+        if (bounds.isEmpty()) {
+            return new SelectionMask(new Rectangle(bounds.x, bounds.y, 0, 0), new byte[0]);
+        }
+        BufferedImage img = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        g.translate(-bounds.x, -bounds.y);
+        g.setColor(Color.WHITE);
+        g.fill(shape);
+        g.dispose();
+
+        byte[] values = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+        return new SelectionMask(new Rectangle(bounds), values);
+    }
+
+    /**
+     * Combines two shapes by rasterizing them.
+     */
+    public static Shape combine(Shape oldShape, Shape newShape, ShapeCombination combination) {
+        Rectangle bounds = combination.combineBounds(oldShape.getBounds(), newShape.getBounds());
+        SelectionMask oldMask = fromShape(oldShape, bounds);
+        SelectionMask newMask = fromShape(newShape, bounds);
+        return oldMask.combine(newMask, combination).toShape();
+    }
+
+    public Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    /**
+     * Returns the selection value (0-255) at the given canvas-relative
+     * coordinates, which can be also outside the bounds of this mask.
+     */
+    public int getValue(int x, int y) {
+        int maskX = x - bounds.x;
+        int maskY = y - bounds.y;
+        if (maskX < 0 || maskY < 0 || maskX >= bounds.width || maskY >= bounds.height) {
+            return 0;
+        }
+        return values[maskX + maskY * bounds.width] & 0xFF;
+    }
+
+    /**
+     * Returns true if no pixel is at least half-selected.
+     */
+    public boolean isEmpty() {
+        for (byte value : values) {
+            if ((value & 0xFF) > THRESHOLD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public SelectionMask combine(SelectionMask other, ShapeCombination combination) {
+        Rectangle newBounds = combination.combineBounds(bounds, other.bounds);
+        int width = newBounds.width;
+        byte[] newValues = new byte[Math.max(0, width * newBounds.height)];
+        ThreadPool.parallelRows(newBounds.height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                int canvasY = y + newBounds.y;
+                for (int x = 0; x < width; x++) {
+                    int canvasX = x + newBounds.x;
+                    newValues[x + y * width] = (byte) combination.combineValues(
+                        getValue(canvasX, canvasY), other.getValue(canvasX, canvasY));
+                }
+            }
+        }, NULL_TRACKER);
+        return new SelectionMask(newBounds, newValues);
+    }
+
+    /**
+     * Returns the inverse of this mask within the given canvas bounds.
+     */
+    public SelectionMask invert(Rectangle canvasBounds) {
+        int width = canvasBounds.width;
+        byte[] newValues = new byte[width * canvasBounds.height];
+        ThreadPool.parallelRows(canvasBounds.height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                for (int x = 0; x < width; x++) {
+                    newValues[x + y * width] = (byte) (255 - getValue(x + canvasBounds.x, y + canvasBounds.y));
+                }
+            }
+        }, NULL_TRACKER);
+        return new SelectionMask(new Rectangle(canvasBounds), newValues);
+    }
+
+    public SelectionMask intersect(Rectangle2D rect) {
+        Rectangle rectBounds = rect.getBounds().intersection(bounds);
+        return combine(fromShape(rect, rectBounds), ShapeCombination.INTERSECT);
+    }
+
+    /**
+     * Expands, contracts or borders the selection based on the signed distances
+     * from its edge, with results similar to stroking the outline of the shape
+     * with the given width.
+     */
+    public SelectionMask modify(SelectionModifyType type, float amount) {
+        int margin = (int) Math.ceil(amount / 2.0) + 2;
+        SelectionMask src = withMargin(margin);
+        int width = src.bounds.width;
+        int height = src.bounds.height;
+        byte[] srcValues = src.values;
+
+        boolean[] insidePixels = new boolean[srcValues.length];
+        boolean[] outsidePixels = new boolean[srcValues.length];
+        for (int i = 0; i < srcValues.length; i++) {
+            boolean inside = (srcValues[i] & 0xFF) > THRESHOLD;
+            insidePixels[i] = inside;
+            outsidePixels[i] = !inside;
+        }
+        float[] outsideDistances = DistanceTransform.compute(insidePixels, width, height);
+        float[] insideDistances = DistanceTransform.compute(outsidePixels, width, height);
+
+        double minDistance = type.getMinDistance(amount);
+        double maxDistance = type.getMaxDistance(amount);
+        byte[] newValues = new byte[srcValues.length];
+        ThreadPool.parallelRows(height, (startY, endY) -> {
+            for (int i = startY * width, end = endY * width; i < end; i++) {
+                int value = srcValues[i] & 0xFF;
+                // the signed distance from the edge, negative inside
+                double distance;
+                if (value != 0 && value != 255) {
+                    // the edge crosses the pixel
+                    distance = (THRESHOLD - value) / 255.0;
+                } else if (value > THRESHOLD) {
+                    distance = 0.5 - insideDistances[i];
+                } else {
+                    distance = outsideDistances[i] - 0.5;
+                }
+                double coverage = Math.min(
+                    clamp01(maxDistance - distance + 0.5),
+                    clamp01(distance - minDistance + 0.5));
+                newValues[i] = (byte) (int) (coverage * 255 + 0.5);
+            }
+        }, NULL_TRACKER);
+        return new SelectionMask(src.bounds, newValues);
+    }
+
+    /**
+     * Softens the edges by approximating a gaussian blur
+     * with three box blurs.
+     */
+    public SelectionMask feather(float radius) {
+        int boxRadius = Math.max(1, Math.round(radius / 3));
+        SelectionMask src = withMargin(3 * boxRadius);
+        int width = src.bounds.width;
+        int height = src.bounds.height;
+
+        int[] a = new int[src.values.length];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = src.values[i] & 0xFF;
+        }
+        int[] b = new int[a.length];
+        for (int pass = 0; pass < 3; pass++) {
+            ThreadPool.parallelRows(height, (startY, endY) ->
+                boxBlur(a, b, startY * width, 1, width, endY - startY, width, boxRadius), NULL_TRACKER);
+            ThreadPool.parallelRows(width, (startX, endX) ->
+                boxBlur(b, a, startX, width, height, endX - startX, 1, boxRadius), NULL_TRACKER);
+        }
+
+        byte[] newValues = new byte[a.length];
+        for (int i = 0; i < a.length; i++) {
+            newValues[i] = (byte) a[i];
+        }
+        return new SelectionMask(src.bounds, newValues);
+    }
+
+    /**
+     * Blurs a number of lines (rows or columns), given by their first
+     * index, the step between their pixels, their length and the
+     * step between the lines.
+     */
+    private static void boxBlur(int[] src, int[] dst, int start, int step, int length,
+                                int numLines, int lineStep, int radius) {
+        int size = 2 * radius + 1;
+        for (int line = 0; line < numLines; line++) {
+            int first = start + line * lineStep;
+            int last = first + (length - 1) * step;
+            // the pixels outside the mask are treated as zeros
+            int sum = 0;
+            for (int i = 0; i <= radius && i < length; i++) {
+                sum += src[first + i * step];
+            }
+            for (int i = 0, index = first; i < length; i++, index += step) {
+                dst[index] = (sum + radius) / size;
+                int outIndex = index - radius * step;
+                if (outIndex >= first) {
+                    sum -= src[outIndex];
+                }
+                int inIndex = index + (radius + 1) * step;
+                if (inIndex <= last) {
+                    sum += src[inIndex];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of this mask with the bounds grown by the given margin.
+     */
+    private SelectionMask withMargin(int margin) {
+        Rectangle newBounds = new Rectangle(bounds);
+        newBounds.grow(margin, margin);
+        byte[] newValues = new byte[newBounds.width * newBounds.height];
+        for (int y = 0; y < bounds.height; y++) {
+            System.arraycopy(values, y * bounds.width,
+                newValues, (y + margin) * newBounds.width + margin, bounds.width);
+        }
+        return new SelectionMask(newBounds, newValues);
+    }
+
+    /**
+     * Converts the mask into a shape by tracing the contours at half coverage
+     * with the marching squares algorithm. The corners of the squares are at the
+     * pixel centers, and the contour positions are interpolated between them.
+     */
+    public Shape toShape() {
+        Path2D path = new Path2D.Float(Path2D.WIND_EVEN_ODD);
+        if (bounds.isEmpty()) {
+            return path;
+        }
+
+        // The corners of the grid are padded with zeros, so that
+        // all contours are closed. Each grid edge that is crossed
+        // by a contour is mapped to the next crossed edge.
+        int gridWidth = bounds.width + 2;
+        int gridHeight = bounds.height + 2;
+        int[] nextEdge = new int[2 * gridWidth * gridHeight];
+        Arrays.fill(nextEdge, -1);
+        ThreadPool.parallelRows(gridHeight - 1, (startY, endY) -> {
+            for (int cellY = startY - 1; cellY < endY - 1; cellY++) {
+                linkRowEdges(cellY, gridWidth, nextEdge);
+            }
+        }, NULL_TRACKER);
+
+        for (int startEdge = 0; startEdge < nextEdge.length; startEdge++) {
+            if (nextEdge[startEdge] < 0) {
+                continue;
+            }
+            traceContour(startEdge, nextEdge, gridWidth, path);
+        }
+        return path;
+    }
+
+    private int getGridValue(int gridX, int gridY) {
+        if (gridX < 0 || gridY < 0 || gridX >= bounds.width || gridY >= bounds.height) {
+            return 0;
+        }
+        return values[gridX + gridY * bounds.width] & 0xFF;
+    }
+
+    // the grid edges from the given corner to the right and down
+    private static int horizontalEdge(int gridX, int gridY, int gridWidth) {
+        return 2 * ((gridY + 1) * gridWidth + gridX + 1);
+    }
+
+    private static int verticalEdge(int gridX, int gridY, int gridWidth) {
+        return horizontalEdge(gridX, gridY, gridWidth) + 1;
+    }
+
+    // Most cells are entirely inside or outside, so the corner values
+    // are read row by row, and only the mixed cells are examined further.
+    private void linkRowEdges(int cellY, int gridWidth, int[] nextEdge) {
+        boolean topLeft = false;
+        boolean bottomLeft = false;
+        for (int cellX = -1; cellX < bounds.width; cellX++) {
+            boolean topRight = getGridValue(cellX + 1, cellY) > THRESHOLD;
+            boolean bottomRight = getGridValue(cellX + 1, cellY + 1) > THRESHOLD;
+            if (topLeft != topRight || topLeft != bottomLeft || topLeft != bottomRight) {
+                linkCellEdges(cellX, cellY, gridWidth, nextEdge);
+            }
+            topLeft = topRight;
+            bottomLeft = bottomRight;
+        }
+    }
+
+    /**
+     * Finds the contour segments in the cell whose top left corner is at the
+     * given grid coordinates. The segments are oriented consistently, so that
+     * the contours can be followed from cell to cell: each crossed edge
+     * is the end of one segment and the start of another one.
+     */
+    private void linkCellEdges(int cellX, int cellY, int gridWidth, int[] nextEdge) {
+        // the corners in clockwise order
+        int topLeft = getGridValue(cellX, cellY);
+        int topRight = getGridValue(cellX + 1, cellY);
+        int bottomRight = getGridValue(cellX + 1, cellY + 1);
+        int bottomLeft = getGridValue(cellX, cellY + 1);
+        boolean[] inside = {topLeft > THRESHOLD, topRight > THRESHOLD,
+            bottomRight > THRESHOLD, bottomLeft > THRESHOLD};
+
+        // the cell edges in clockwise order: top, right, bottom, left
+        int[] edges = {
+            horizontalEdge(cellX, cellY, gridWidth),
+            verticalEdge(cellX + 1, cellY, gridWidth),
+            horizontalEdge(cellX, cellY + 1, gridWidth),
+            verticalEdge(cellX, cellY, gridWidth)};
+
+        // the crossed edges in clockwise order, and whether
+        // the contour is exited (going clockwise) at them
+        int[] crossed = new int[4];
+        boolean[] exits = new boolean[4];
+        int numCrossed = 0;
+        for (int i = 0; i < 4; i++) {
+            boolean from = inside[i];
+            boolean to = inside[(i + 1) % 4];
+            if (from != to) {
+                crossed[numCrossed] = edges[i];
+                exits[numCrossed] = from;
+                numCrossed++;
+            }
+        }
+
+        // In the ambiguous saddle cases the average value
+        // decides whether the inside corners are connected.
+        boolean centerInside = (topLeft + topRight + bottomRight + bottomLeft) / 4.0 > THRESHOLD;
+        for (int i = 0; i < numCrossed; i++) {
+            if (exits[i]) {
+                // the segment separates an inside run from an outside run
+                int partner = centerInside ? (i + 1) % numCrossed : (i + numCrossed - 1) % numCrossed;
+                nextEdge[crossed[i]] = crossed[partner];
+            }
+        }
+    }
+
+    private void traceContour(int startEdge, int[] nextEdge, int gridWidth, Path2D path) {
+        double[] start = edgePoint(startEdge, gridWidth);
+        path.moveTo(start[0], start[1]);
+
+        double[] prev = start;
+        double[] current = null;
+        int edge = nextEdge[startEdge];
+        nextEdge[startEdge] = -1;
+        while (edge >= 0) {
+            double[] point = edgePoint(edge, gridWidth);
+            // the points on straight lines are skipped
+            if (current != null && !isCollinear(prev, current, point)) {
+                path.lineTo(current[0], current[1]);
+                prev = current;
+            }
+            current = point;
+
+            int next = nextEdge[edge];
+            nextEdge[edge] = -1;
+            edge = next;
+        }
+        if (current != null) {
+            path.lineTo(current[0], current[1]);
+        }
+        path.closePath();
+    }
+
+    private static boolean isCollinear(double[] a, double[] b, double[] c) {
+        double cross = (b[0] - a[0]) * (c[1] - b[1]) - (b[1] - a[1]) * (c[0] - b[0]);
+        return Math.abs(cross) < 1.0e-9;
+    }
+
+    /**
+     * Returns the canvas coordinates of the point where the contour crosses the given edge.
+     */
+    private double[] edgePoint(int edge, int gridWidth) {
+        int corner = edge / 2;
+        int gridX = corner % gridWidth - 1;
+        int gridY = corner / gridWidth - 1;
+        int startValue = getGridValue(gridX, gridY);
+        boolean horizontal = edge % 2 == 0;
+        int endValue = horizontal ? getGridValue(gridX + 1, gridY) : getGridValue(gridX, gridY + 1);
+        double t = (THRESHOLD - startValue) / (endValue - startValue);
+
+        double x = bounds.x + gridX + 0.5;
+        double y = bounds.y + gridY + 0.5;
+        if (horizontal) {
+            x += t;
+        } else {
+            y += t;
+        }
+        return new double[]{x, y};
+    }
+
+    private static double clamp01(double value) {
+        return value < 0 ? 0 : Math.min(value, 1);
+    }
+
+    @Override
+    public String toString() {
+        return "SelectionMask{bounds=" + bounds + '}';
+    }
+}
@@ -27,30 +27,30 @@ import java.awt.geom.Area;
  * The "Type" in the "Modify Selection" dialog
  */
 public enum SelectionModifyType {
-    EXPAND("Expand") {
+    EXPAND("Expand", Double.NEGATIVE_INFINITY, 0.5) {
         @Override
         public Shape modify(Area previous, Area outlineShape) {
             previous.add(outlineShape);
             return previous;
         }
-    }, CONTRACT("Contract") {
+    }, CONTRACT("Contract", Double.NEGATIVE_INFINITY, -0.5) {
         @Override
         public Shape modify(Area previous, Area outlineShape) {
             previous.subtract(outlineShape);
             return previous;
         }
-    }, BORDER("Border") {
+    }, BORDER("Border", -0.5, 0.5) {
         @Override
         public Shape modify(Area previous, Area outlineShape) {
             return outlineShape;
         }
-    }, BORDER_OUT("Border Outwards Only") {
+    }, BORDER_OUT("Border Outwards Only", 0, 0.5) {
         @Override
         public Shape modify(Area previous, Area outlineShape) {
             outlineShape.subtract(previous);
             return outlineShape;
         }
-    }, BORDER_IN("Border Inwards Only") {
+    }, BORDER_IN("Border Inwards Only", -0.5, 0) {
         @Override
         public Shape modify(Area previous, Area outlineShape) {
             previous.intersect(outlineShape);
@@ -60,8 +60,16 @@ public enum SelectionModifyType {
 
     private final String guiName;
 
-    SelectionModifyType(String guiName) {
+    // the range of the signed distances from the edge (negative
+    // inside) that are selected after the modification,
+    // relative to the amount, which is the width of the outline
+    private final double minDistanceFactor;
+    private final double maxDistanceFactor;
+
+    SelectionModifyType(String guiName, double minDistanceFactor, double maxDistanceFactor) {
         this.guiName = guiName;
+        this.minDistanceFactor = minDistanceFactor;
+        this.maxDistanceFactor = maxDistanceFactor;
     }
 
     /**
@@ -70,6 +78,14 @@ public enum SelectionModifyType {
      */
     public abstract Shape modify(Area previous, Area outlineShape);
 
+    double getMinDistance(double amount) {
+        return minDistanceFactor * amount;
+    }
+
+    double getMaxDistance(double amount) {
+        return maxDistanceFactor * amount;
+    }
+
     public static EnumParam<SelectionModifyType> asParam() {
         return new EnumParam<>(GUIText.TYPE, SelectionModifyType.class);
     }
@@ -16,6 +16,7 @@
  */
 package pixelitor.selection;
 
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.Area;
 
@@ -29,30 +30,79 @@ public enum ShapeCombination {
         public Shape combine(Shape oldShape, Shape newShape) {
             return newShape;
         }
+
+        @Override
+        public int combineValues(int oldValue, int newValue) {
+            return newValue;
+        }
+
+        @Override
+        Rectangle combineBounds(Rectangle oldBounds, Rectangle newBounds) {
+            return new Rectangle(newBounds);
+        }
     }, ADD("Add") {
         @Override
         public Shape combine(Shape oldShape, Shape newShape) {
+            if (SelectionMask.isComplex(oldShape) || SelectionMask.isComplex(newShape)) {
+                return SelectionMask.combine(oldShape, newShape, this);
+            }
             Area oldArea = new Area(oldShape);
             Area newArea = new Area(newShape);
             oldArea.add(newArea);
             return oldArea;
         }
+
+        @Override
+        public int combineValues(int oldValue, int newValue) {
+            return Math.max(oldValue, newValue);
+        }
+
+        @Override
+        Rectangle combineBounds(Rectangle oldBounds, Rectangle newBounds) {
+            return oldBounds.union(newBounds);
+        }
     }, SUBTRACT("Subtract") {
         @Override
         public Shape combine(Shape oldShape, Shape newShape) {
+            if (SelectionMask.isComplex(oldShape) || SelectionMask.isComplex(newShape)) {
+                return SelectionMask.combine(oldShape, newShape, this);
+            }
             Area oldArea = new Area(oldShape);
             Area newArea = new Area(newShape);
             oldArea.subtract(newArea);
             return oldArea;
         }
+
+        @Override
+        public int combineValues(int oldValue, int newValue) {
+            return Math.min(oldValue, 255 - newValue);
+        }
+
+        @Override
+        Rectangle combineBounds(Rectangle oldBounds, Rectangle newBounds) {
+            return new Rectangle(oldBounds);
+        }
     }, INTERSECT("Intersect") {
         @Override
         public Shape combine(Shape oldShape, Shape newShape) {
+            if (SelectionMask.isComplex(oldShape) || SelectionMask.isComplex(newShape)) {
+                return SelectionMask.combine(oldShape, newShape, this);
+            }
             Area oldArea = new Area(oldShape);
             Area newArea = new Area(newShape);
             oldArea.intersect(newArea);
             return oldArea;
         }
+
+        @Override
+        public int combineValues(int oldValue, int newValue) {
+            return Math.min(oldValue, newValue);
+        }
+
+        @Override
+        Rectangle combineBounds(Rectangle oldBounds, Rectangle newBounds) {
+            return nonNegative(oldBounds.intersection(newBounds));
+        }
     };
 
     private final String guiName;
@@ -66,6 +116,23 @@ public enum ShapeCombination {
      */
     public abstract Shape combine(Shape oldShape, Shape newShape);
 
+    /**
+     * Calculates the combined selection value (0-255) of a pixel.
+     */
+    public abstract int combineValues(int oldValue, int newValue);
+
+    /**
+     * Returns the bounds of the combined selection.
+     */
+    abstract Rectangle combineBounds(Rectangle oldBounds, Rectangle newBounds);
+
+    private static Rectangle nonNegative(Rectangle rect) {
+        if (rect.isEmpty()) {
+            return new Rectangle(rect.x, rect.y, 0, 0);
+        }
+        return rect;
+    }
+
     @Override
     public String toString() {
         return guiName;
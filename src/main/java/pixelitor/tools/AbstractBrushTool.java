@@ -360,6 +360,7 @@ public abstract class AbstractBrushTool extends Tool {
 
     private void finishBrushStroke(Drawable dr) {
         brush.finishBrushStroke();
+        Rectangle affectedRect = affectedArea.asRectangle(brush.getMaxEffectiveRadius());
         addBrushStrokeToHistory(dr);
 
         if (graphics != null) {
@@ -369,7 +370,8 @@ public abstract class AbstractBrushTool extends Tool {
         drawDestination.finishBrushStroke(dr);
 
         dr.updateIconImage();
-        dr.getComp().update(HISTOGRAM);
+        // only the histograms of the affected area have to be recalculated
+        dr.getComp().updateRegion(HISTOGRAM, affectedRect);
     }
 
     private void addBrushStrokeToHistory(Drawable dr) {
@@ -28,6 +28,7 @@ import pixelitor.tools.brushes.*;
 import pixelitor.tools.util.PMouseEvent;
 import pixelitor.tools.util.PPoint;
 import pixelitor.utils.Cursors;
+import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 import pixelitor.utils.Mirror;
 import pixelitor.utils.VisibleForTesting;
@@ -218,7 +219,9 @@ public class CloneTool extends BlendingModeBrushTool {
         int dx = 0;
         int dy = 0;
         if (sampleAllLayers) {
-            sourceImage = comp.getCompositeImage();
+            // copied, because the composite image can be
+            // updated in place while cloning
+            sourceImage = ImageUtils.copyImage(comp.getCompositeImage());
         } else {
             Drawable dr = comp.getActiveDrawableOrThrow();
             sourceImage = dr.getImage();
@@ -23,8 +23,10 @@ import pixelitor.gui.utils.SliderSpinner;
 import pixelitor.history.History;
 import pixelitor.history.PartialImageEdit;
 import pixelitor.layers.Drawable;
+import pixelitor.selection.SelectionMask;
 import pixelitor.tools.util.PMouseEvent;
 import pixelitor.utils.Cursors;
+import pixelitor.utils.FloodFill;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.debug.DebugNode;
 
@@ -32,8 +34,6 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
-import java.util.ArrayDeque;
-import java.util.Deque;
 
 import static java.awt.BasicStroke.CAP_BUTT;
 import static java.awt.BasicStroke.JOIN_MITER;
@@ -60,6 +60,7 @@ public class PaintBucketTool extends Tool {
     );
     private final JComboBox<String> actionCB = new JComboBox<>(
         new String[]{ACTION_LOCAL, ACTION_GLOBAL});
+    private boolean softEdges = false;
 
     public PaintBucketTool() {
         super("Paint Bucket", 'N',
@@ -74,6 +75,8 @@ public class PaintBucketTool extends Tool {
 
         settingsPanel.addComboBox(GUIText.FILL_WITH + ":", fillCB, "fillCB");
         settingsPanel.addComboBox("Action:", actionCB, "actionCB");
+        settingsPanel.addCheckBox("Soft Edges", false, "softEdgesCB",
+            selected -> softEdges = selected);
     }
 
     @Override
@@ -107,19 +110,12 @@ public class PaintBucketTool extends Tool {
             return;
         }
 
-        BufferedImage backupForUndo = ImageUtils.copyImage(image);
-        boolean thereIsSelection = comp.hasSelection();
-
+        // the grayscale images are filled in a converted copy,
+        // the other images are filled in place
         boolean grayScale = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
-
-        BufferedImage workingImage;
-        if (grayScale) {
-            workingImage = ImageUtils.toSysCompatibleImage(image);
-        } else if (thereIsSelection) {
-            workingImage = ImageUtils.copyImage(image);
-        } else {
-            workingImage = image;
-        }
+        BufferedImage workingImage = grayScale
+            ? ImageUtils.toSysCompatibleImage(image)
+            : image;
 
         String fill = (String) fillCB.getSelectedItem();
         int rgbAtMouse = workingImage.getRGB(x, y);
@@ -139,194 +135,37 @@ public class PaintBucketTool extends Tool {
 
         String action = (String) actionCB.getSelectedItem();
         int tolerance = toleranceParam.getValue();
-        Rectangle replacedArea = switch (action) {
-            case ACTION_LOCAL -> scanlineFloodFill(workingImage,
-                x, y, tolerance, rgbAtMouse, fillRGB);
-            case ACTION_GLOBAL -> globalReplaceColor(workingImage,
-                tolerance, rgbAtMouse, fillRGB);
+        int[] pixels = ImageUtils.getPixelsAsArray(workingImage);
+        FloodFill floodFill = switch (action) {
+            case ACTION_LOCAL -> FloodFill.local(pixels,
+                imgWidth, imgHeight, x, y, tolerance);
+            case ACTION_GLOBAL -> FloodFill.global(pixels,
+                imgWidth, imgHeight, rgbAtMouse, tolerance);
             default -> throw new IllegalStateException("action = " + action);
         };
 
-        if (replacedArea != null) { // something was replaced
-            PartialImageEdit edit = History.createPartialImageEdit(replacedArea, backupForUndo, dr,
-                true, getName());
-            if (edit != null) {
-                History.add(edit);
-            }
-
-            if (thereIsSelection) {
-                Graphics2D g = image.createGraphics();
-
-                // the selection is relative to the canvas,
-                // so go to the canvas start
-                g.translate(-tx, -ty);
-                comp.applySelectionClipping(g);
-                g.translate(tx, ty); // go back
-
-                // makes "fill with transparency" possible
-                g.setComposite(AlphaComposite.Src);
-
-                g.drawImage(workingImage, 0, 0, null);
-                g.dispose();
-                workingImage.flush();
-            } else if (grayScale) {
-                dr.setImage(ImageUtils.convertToGrayScaleImage(workingImage));
-            }
-            comp.update();
-            dr.updateIconImage();
-        }
-    }
-
-    /**
-     * Uses the "Scanline fill" algorithm described at
-     * http://en.wikipedia.org/wiki/Flood_fill
-     */
-    private static Rectangle scanlineFloodFill(BufferedImage img,
-                                               int x, int y, int tolerance,
-                                               int rgbAtMouse, int newRGB) {
-        int minX = x;
-        int maxX = x;
-        int minY = y;
-        int maxY = y;
-        int imgHeight = img.getHeight();
-        int imgWidth = img.getWidth();
-
-        int[] pixels = ImageUtils.getPixelsAsArray(img);
-
-        // Needed because the tolerance: we cannot assume that
-        // if the pixel is within the target range, it has been processed
-        boolean[] checkedPixels = new boolean[pixels.length];
-
-        // the double-ended queue is used as a simple LIFO stack
-        Deque<Point> stack = new ArrayDeque<>();
-        stack.push(new Point(x, y));
-
-        while (!stack.isEmpty()) {
-            Point p = stack.pop();
-
-            x = p.x;
-            y = p.y;
-
-            // find the last replaceable point to the left
-            int scanlineMinX = x - 1;
-            int offset = y * imgWidth;
-            while (scanlineMinX >= 0
-                && isSimilar(pixels[scanlineMinX + offset], rgbAtMouse, tolerance)) {
-                scanlineMinX--;
-            }
-            scanlineMinX++;
-
-            // find the last replaceable point to the right
-            int scanlineMaxX = x + 1;
-            while (scanlineMaxX < img.getWidth()
-                && isSimilar(pixels[scanlineMaxX + offset], rgbAtMouse, tolerance)) {
-                scanlineMaxX++;
-            }
-            scanlineMaxX--;
-
-            // set the minX, maxX, minY, maxY variables
-            // that will be used to calculate the affected area
-            if (scanlineMinX < minX) {
-                minX = scanlineMinX;
-            }
-            if (scanlineMaxX > maxX) {
-                maxX = scanlineMaxX;
-            }
-            if (y > maxY) {
-                maxY = y;
-            } else if (y < minY) {
-                minY = y;
-            }
-
-            // draw a line between (scanlineMinX, y) and (scanlineMaxX, y)
-            for (int i = scanlineMinX; i <= scanlineMaxX; i++) {
-                int index = i + offset;
-                pixels[index] = newRGB;
-                checkedPixels[index] = true;
-            }
-
-            // look upwards for new points to be inspected later
-            if (y > 0) {
-                // if there are multiple pixels to be replaced
-                // that are horizontal neighbours,
-                // only one of them has to be inspected later
-                boolean pointsInLine = false;
-
-                int upOffset = (y - 1) * imgWidth;
-
-                for (int i = scanlineMinX; i <= scanlineMaxX; i++) {
-                    int upIndex = i + upOffset;
-                    boolean shouldBeReplaced = !checkedPixels[upIndex]
-                        && isSimilar(pixels[upIndex], rgbAtMouse, tolerance);
-
-                    if (!pointsInLine && shouldBeReplaced) {
-                        Point inspectLater = new Point(i, y - 1);
-                        stack.push(inspectLater);
-                        pointsInLine = true;
-                    } else if (pointsInLine && !shouldBeReplaced) {
-                        pointsInLine = false;
-                    }
-                }
-            }
-
-            // look downwards for new points to be inspected later
-            if (y < imgHeight - 1) {
-                boolean pointsInLine = false;
-                int downOffset = (y + 1) * imgWidth;
-
-                for (int i = scanlineMinX; i <= scanlineMaxX; i++) {
-                    int downIndex = i + downOffset;
-                    boolean shouldBeReplaced = !checkedPixels[downIndex]
-                        && isSimilar(pixels[downIndex], rgbAtMouse, tolerance);
-
-                    if (!pointsInLine && shouldBeReplaced) {
-                        Point inspectLater = new Point(i, y + 1);
-                        stack.push(inspectLater);
-                        pointsInLine = true;
-                    } else if (pointsInLine && !shouldBeReplaced) {
-                        pointsInLine = false;
-                    }
-                }
-            }
+        Rectangle replacedArea = floodFill.getAffectedArea(softEdges);
+        if (replacedArea == null) {
+            return;
         }
 
-        // return the affected area
-        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
-    }
-
-    private static Rectangle globalReplaceColor(BufferedImage img,
-                                                int tolerance,
-                                                int rgbAtMouse, int newRGB) {
-        int[] pixels = ImageUtils.getPixelsAsArray(img);
-        for (int i = 0; i < pixels.length; i++) {
-            if (isSimilar(pixels[i], rgbAtMouse, tolerance)) {
-                pixels[i] = newRGB;
-            }
+        // only the affected area is backed up, before it is changed
+        PartialImageEdit edit = History.createPartialImageEdit(replacedArea, image, dr,
+            true, getName());
+        if (edit != null) {
+            History.add(edit);
         }
 
-        // return the replaced area, which is the whole image
-        return new Rectangle(0, 0, img.getWidth(), img.getHeight());
-    }
+        SelectionMask selectionMask = comp.hasSelection()
+            ? comp.getSelection().getMask()
+            : null;
+        floodFill.apply(fillRGB, softEdges, selectionMask, tx, ty);
 
-    private static boolean isSimilar(int color1, int color2, int tolerance) {
-        if (color1 == color2) {
-            return true;
+        if (grayScale) {
+            dr.setImage(ImageUtils.convertToGrayScaleImage(workingImage));
         }
-
-        int a1 = (color1 >>> 24) & 0xFF;
-        int r1 = (color1 >>> 16) & 0xFF;
-        int g1 = (color1 >>> 8) & 0xFF;
-        int b1 = color1 & 0xFF;
-
-        int a2 = (color2 >>> 24) & 0xFF;
-        int r2 = (color2 >>> 16) & 0xFF;
-        int g2 = (color2 >>> 8) & 0xFF;
-        int b2 = color2 & 0xFF;
-
-        return (r2 <= r1 + tolerance) && (r2 >= r1 - tolerance) &&
-            (g2 <= g1 + tolerance) && (g2 >= g1 - tolerance) &&
-            (b2 <= b1 + tolerance) && (b2 >= b1 - tolerance) &&
-            (a2 <= a1 + tolerance) && (a2 >= a1 - tolerance);
+        comp.update();
+        dr.updateIconImage();
     }
 
     @Override
@@ -341,6 +180,7 @@ public class PaintBucketTool extends Tool {
         node.addInt("tolerance", toleranceParam.getValue());
         node.addQuotedString("fill with", (String) fillCB.getSelectedItem());
         node.addQuotedString("action", (String) actionCB.getSelectedItem());
+        node.addBoolean("soft edges", softEdges);
 
         return node;
     }
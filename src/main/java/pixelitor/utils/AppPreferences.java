@@ -32,6 +32,8 @@ import pixelitor.guides.GuideStyle;
 import pixelitor.history.History;
 import pixelitor.io.Dirs;
 import pixelitor.io.FileChoosers;
+import pixelitor.io.PngCompression;
+import pixelitor.io.ThumbnailService;
 import pixelitor.layers.LayerButtonLayout;
 import pixelitor.menus.file.RecentFile;
 import pixelitor.menus.file.RecentFilesMenu;
@@ -68,6 +70,7 @@ public final class AppPreferences {
 
     private static final String UI_KEY = "ui";
     private static final String NATIVE_CHOOSERS_KEY = "native_choosers";
+    private static final String THUMB_DISK_CACHE_KEY = "thumb_disk_cache";
 
     private static final String RECENT_FILE_PREFS_KEY = "recent_file_";
 
@@ -91,6 +94,7 @@ public final class AppPreferences {
     private static final String LANG_KEY = "lang";
     private static final String MOUSE_ZOOM_KEY = "mouse_zoom";
     private static final String PAN_KEY = "pan";
+    private static final String PNG_COMPRESSION_KEY = "png_compression";
 
     private static final String GUIDE_COLOR_KEY = "guide_color";
     private static final String GUIDE_STROKE_KEY = "guide_stroke";
@@ -372,9 +376,11 @@ public final class AppPreferences {
         saveLanguage();
         saveMouseZoom();
         savePan();
+        savePngCompression();
         saveMagickDir();
         saveExperimentalFeatures();
         saveNativeChoosers();
+        saveThumbDiskCache();
     }
 
     public static Color loadFgColor() {
@@ -497,6 +503,14 @@ public final class AppPreferences {
         mainNode.put(PAN_KEY, PanMethod.CURRENT.saveCode());
     }
 
+    public static String loadPngCompression() {
+        return mainNode.get(PNG_COMPRESSION_KEY, PngCompression.BALANCED.saveCode());
+    }
+
+    private static void savePngCompression() {
+        mainNode.put(PNG_COMPRESSION_KEY, PngCompression.CURRENT.saveCode());
+    }
+
     private static void loadMagickDir() {
         magickDirName = mainNode.get(MAGICK_DIR_KEY, "");
     }
@@ -520,4 +534,12 @@ public final class AppPreferences {
     private static void saveNativeChoosers() {
         mainNode.putBoolean(NATIVE_CHOOSERS_KEY, FileChoosers.useNativeDialogs());
     }
+
+    public static boolean loadThumbDiskCache() {
+        return mainNode.getBoolean(THUMB_DISK_CACHE_KEY, true);
+    }
+
+    private static void saveThumbDiskCache() {
+        mainNode.putBoolean(THUMB_DISK_CACHE_KEY, ThumbnailService.useDiskCache());
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A background task that can be requested many times in a quick
+ * succession, but runs at most once at a time and is queued at most once.
+ * A request that arrives while the task is already running
+ * causes exactly one additional run after the current one,
+ * so the last request is never lost.
+ */
+public class CoalescingTask {
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    private static final int RUNNING = 2;
+    private static final int RUNNING_AND_DIRTY = 3;
+
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    private final Runnable task;
+    private final Executor executor;
+
+    public CoalescingTask(Runnable task) {
+        this(task, ThreadPool.getExecutor());
+    }
+
+    public CoalescingTask(Runnable task, Executor executor) {
+        this.task = task;
+        this.executor = executor;
+    }
+
+    /**
+     * Makes sure that the task runs after this call,
+     * without queuing it again if a run is already pending.
+     */
+    public void request() {
+        while (true) {
+            int current = state.get();
+            switch (current) {
+                case IDLE:
+                    if (state.compareAndSet(IDLE, SCHEDULED)) {
+                        executor.execute(this::runCoalesced);
+                        return;
+                    }
+                    break;
+                case RUNNING:
+                    if (state.compareAndSet(RUNNING, RUNNING_AND_DIRTY)) {
+                        return;
+                    }
+                    break;
+                default: // SCHEDULED or RUNNING_AND_DIRTY: the request is already covered
+                    return;
+            }
+        }
+    }
+
+    private void runCoalesced() {
+        state.set(RUNNING);
+        while (true) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Messages.showExceptionOnEDT(e);
+            }
+            if (state.compareAndSet(RUNNING, IDLE)) {
+                return;
+            }
+            // there were requests during the last run
+            state.set(RUNNING);
+        }
+    }
+
+    public boolean isIdle() {
+        return state.get() == IDLE;
+    }
+}
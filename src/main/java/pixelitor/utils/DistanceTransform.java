@@ -0,0 +1,157 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * The exact Euclidean distance transform of a binary image, using
+ * the separable algorithm of Meijster et al. (first a vertical pass
+ * in each column, then the lower envelope of parabolas in each row,
+ * as described by Felzenszwalb and Huttenlocher).
+ * The running time is linear in the number of pixels, independently
+ * of the distances, and both passes run in parallel.
+ */
+public final class DistanceTransform {
+    private DistanceTransform() {
+    }
+
+    /**
+     * Returns the distance of each pixel center to the center of the
+     * nearest feature pixel, in a row-major array. The feature pixels
+     * themselves have zero distances. If there are no feature pixels
+     * at all, then all distances are positive infinity.
+     */
+    public static float[] compute(boolean[] features, int width, int height) {
+        if (features.length < width * height) {
+            throw new IllegalArgumentException("features.length = " + features.length
+                + ", width = " + width + ", height = " + height);
+        }
+        int[] columnDistances = new int[width * height];
+        // the columns are processed in bands, but row by
+        // row within a band, which is much more cache-friendly
+        ThreadPool.parallelRows(width, (startX, endX) ->
+            computeColumnDistances(features, columnDistances, width, height, startX, endX), NULL_TRACKER);
+
+        float[] distances = new float[width * height];
+        ThreadPool.parallelRows(height, (startY, endY) ->
+            computeRowDistances(columnDistances, distances, width, height, startY, endY), NULL_TRACKER);
+        return distances;
+    }
+
+    /**
+     * Computes the vertical distance to the nearest
+     * feature pixel in the same column.
+     */
+    private static void computeColumnDistances(boolean[] features, int[] g,
+                                               int width, int height,
+                                               int startX, int endX) {
+        // a value that is larger than any real distance
+        int infinity = width + height;
+
+        // downwards
+        for (int x = startX; x < endX; x++) {
+            g[x] = features[x] ? 0 : infinity;
+        }
+        for (int y = 1; y < height; y++) {
+            int index = y * width;
+            int prevIndex = index - width;
+            for (int x = startX; x < endX; x++) {
+                g[index + x] = features[index + x] ? 0 : Math.min(infinity, g[prevIndex + x] + 1);
+            }
+        }
+
+        // upwards
+        for (int y = height - 2; y >= 0; y--) {
+            int index = y * width;
+            int nextIndex = index + width;
+            for (int x = startX; x < endX; x++) {
+                int below = g[nextIndex + x] + 1;
+                if (below < g[index + x]) {
+                    g[index + x] = below;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the distances within each row as the lower envelope
+     * of the parabolas rooted at the column distances.
+     */
+    private static void computeRowDistances(int[] g, float[] distances,
+                                            int width, int height,
+                                            int startY, int endY) {
+        // the positions of the parabolas in the lower envelope
+        int[] s = new int[width];
+        // the first positions where these parabolas are the lowest ones
+        int[] t = new int[width];
+
+        for (int y = startY; y < endY; y++) {
+            int rowStart = y * width;
+            int q = 0;
+            s[0] = 0;
+            t[0] = 0;
+            for (int u = 1; u < width; u++) {
+                long gu = g[rowStart + u];
+                long guSquared = gu * gu;
+                while (q >= 0 && f(t[q], s[q], g[rowStart + s[q]]) > f(t[q], u, guSquared)) {
+                    q--;
+                }
+                if (q < 0) {
+                    q = 0;
+                    s[0] = u;
+                } else {
+                    long si = s[q];
+                    long gi = g[rowStart + s[q]];
+                    // the first position where the parabola of u is lower
+                    long w = 1 + (u * (long) u - si * si + guSquared - gi * gi) / (2 * (u - si));
+                    if (w < width) {
+                        q++;
+                        s[q] = u;
+                        t[q] = (int) w;
+                    }
+                }
+            }
+
+            int infinity = width + height;
+            for (int u = width - 1; u >= 0; u--) {
+                int gs = g[rowStart + s[q]];
+                if (gs >= infinity) {
+                    distances[rowStart + u] = Float.POSITIVE_INFINITY;
+                } else {
+                    long dx = u - s[q];
+                    distances[rowStart + u] = (float) Math.sqrt(dx * dx + (long) gs * gs);
+                }
+                if (u == t[q]) {
+                    q--;
+                }
+            }
+        }
+    }
+
+    private static long f(int x, int i, int gi) {
+        return f(x, i, (long) gi * gi);
+    }
+
+    private static long f(int x, int i, long giSquared) {
+        long dx = x - i;
+        return dx * dx + giSquared;
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+import pixelitor.selection.SelectionMask;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * Finds and fills the pixels similar to a target color in a packed ARGB pixel
+ * array, either in the contiguous region around a seed pixel (local fill),
+ * or everywhere in the image (global replace).
+ *
+ * The pixels are found before they are changed, so that the affected
+ * area can be backed up for the undo before the fill is applied.
+ */
+public final class FloodFill {
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+    private final int targetRGB;
+    private final int tolerance;
+
+    // the channels of the target color
+    private final int targetA;
+    private final int targetR;
+    private final int targetG;
+    private final int targetB;
+
+    // A bitset of the found pixels, where each row starts at a new
+    // word, so that the rows can be written by different threads.
+    private final long[] region;
+    private final int wordsPerRow;
+
+    // the span stack of the local fill
+    private int[] stack;
+    private int stackSize;
+
+    private int minX = Integer.MAX_VALUE;
+    private int minY = Integer.MAX_VALUE;
+    private int maxX = -1;
+    private int maxY = -1;
+
+    private FloodFill(int[] pixels, int width, int height,
+                      int targetRGB, int tolerance) {
+        assert pixels.length == width * height;
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.targetRGB = targetRGB;
+        this.tolerance = tolerance;
+
+        targetA = (targetRGB >>> 24) & 0xFF;
+        targetR = (targetRGB >>> 16) & 0xFF;
+        targetG = (targetRGB >>> 8) & 0xFF;
+        targetB = targetRGB & 0xFF;
+
+        wordsPerRow = (width + 63) >>> 6;
+        region = new long[wordsPerRow * height];
+    }
+
+    /**
+     * Finds the pixels that are similar to the seed pixel and connected
+     * to it through similar pixels, using the span filling algorithm
+     * described at http://en.wikipedia.org/wiki/Flood_fill
+     */
+    public static FloodFill local(int[] pixels, int width, int height,
+                                  int seedX, int seedY, int tolerance) {
+        int targetRGB = pixels[seedX + seedY * width];
+        FloodFill fill = new FloodFill(pixels, width, height,
+            targetRGB, tolerance);
+        fill.findRegion(seedX, seedY);
+        return fill;
+    }
+
+    /**
+     * Finds all the pixels in the image that are similar to the given color.
+     */
+    public static FloodFill global(int[] pixels, int width, int height,
+                                   int targetRGB, int tolerance) {
+        FloodFill fill = new FloodFill(pixels, width, height,
+            targetRGB, tolerance);
+        fill.findAllSimilar();
+        return fill;
+    }
+
+    private void findRegion(int seedX, int seedY) {
+        // Each stack entry is a span (x1, x2, y) to be examined,
+        // together with the direction (dy) of its parent span.
+        stack = new int[4 * 64];
+        stackSize = 0;
+        push(seedX, seedX, seedY, 1);
+        push(seedX, seedX, seedY - 1, -1);
+
+        while (stackSize > 0) {
+            stackSize -= 4;
+            int x1 = stack[stackSize];
+            int x2 = stack[stackSize + 1];
+            int y = stack[stackSize + 2];
+            int dy = stack[stackSize + 3];
+
+            int x = x1;
+            if (isUnfilledMatch(x, y)) {
+                // extend to the left, the overhang is also checked backwards
+                while (x > 0 && isUnfilledMatch(x - 1, y)) {
+                    x--;
+                }
+                if (x < x1) {
+                    push(x, x1 - 1, y - dy, -dy);
+                }
+            }
+            while (x1 <= x2) {
+                while (x1 < width && isUnfilledMatch(x1, y)) {
+                    x1++;
+                }
+                if (x1 > x) {
+                    addSpan(x, x1 - 1, y);
+                    push(x, x1 - 1, y + dy, dy);
+                    if (x1 - 1 > x2) {
+                        // the overhang to the right
+                        push(x2 + 1, x1 - 1, y - dy, -dy);
+                    }
+                }
+                x1++;
+                while (x1 < x2 && !isUnfilledMatch(x1, y)) {
+                    x1++;
+                }
+                x = x1;
+            }
+        }
+        stack = null;
+    }
+
+    private void push(int x1, int x2, int y, int dy) {
+        if (y < 0 || y >= height) {
+            return;
+        }
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize] = x1;
+        stack[stackSize + 1] = x2;
+        stack[stackSize + 2] = y;
+        stack[stackSize + 3] = dy;
+        stackSize += 4;
+    }
+
+    private void addSpan(int fromX, int toX, int y) {
+        for (int x = fromX; x <= toX; x++) {
+            addToRegion(x, y);
+        }
+        updateBounds(fromX, toX, y);
+    }
+
+    private boolean isUnfilledMatch(int x, int y) {
+        return !isInRegion(x, y) && matches(pixels[x + y * width]);
+    }
+
+    /**
+     * Returns true if none of the channels (including the alpha)
+     * differ from the target color more than the tolerance.
+     */
+    private boolean matches(int rgb) {
+        if (rgb == targetRGB) {
+            return true;
+        }
+        int diff = ((rgb >>> 24) & 0xFF) - targetA;
+        if (diff > tolerance || diff < -tolerance) {
+            return false;
+        }
+        diff = ((rgb >>> 16) & 0xFF) - targetR;
+        if (diff > tolerance || diff < -tolerance) {
+            return false;
+        }
+        diff = ((rgb >>> 8) & 0xFF) - targetG;
+        if (diff > tolerance || diff < -tolerance) {
+            return false;
+        }
+        diff = (rgb & 0xFF) - targetB;
+        return diff <= tolerance && diff >= -tolerance;
+    }
+
+    private boolean isInRegion(int x, int y) {
+        return (region[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    private void addToRegion(int x, int y) {
+        region[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+    }
+
+    private void updateBounds(int left, int right, int y) {
+        minX = Math.min(minX, left);
+        maxX = Math.max(maxX, right);
+        minY = Math.min(minY, y);
+        maxY = Math.max(maxY, y);
+    }
+
+    private void findAllSimilar() {
+        ThreadPool.parallelRows(height, (startY, endY) -> {
+            int bandMinX = Integer.MAX_VALUE;
+            int bandMaxX = -1;
+            int bandMinY = -1;
+            int bandMaxY = -1;
+            for (int y = startY; y < endY; y++) {
+                int offset = y * width;
+                int wordOffset = y * wordsPerRow;
+                long rowBits = 0;
+                for (int x = 0; x < width; x++) {
+                    long word = 0;
+                    int wordEnd = Math.min(width, x + 64);
+                    for (; x < wordEnd; x++) {
+                        if (matches(pixels[offset + x])) {
+                            word |= 1L << x;
+                        }
+                    }
+                    x--;
+                    region[wordOffset + (x >>> 6)] = word;
+                    rowBits |= word;
+                }
+                if (rowBits != 0) {
+                    int firstX = findFirstInRow(y);
+                    int lastX = findLastInRow(y);
+                    bandMinX = Math.min(bandMinX, firstX);
+                    bandMaxX = Math.max(bandMaxX, lastX);
+                    if (bandMinY < 0) {
+                        bandMinY = y;
+                    }
+                    bandMaxY = y;
+                }
+            }
+            if (bandMaxY >= 0) {
+                synchronized (this) {
+                    updateBounds(bandMinX, bandMaxX, bandMinY);
+                    updateBounds(bandMinX, bandMaxX, bandMaxY);
+                }
+            }
+        }, NULL_TRACKER);
+    }
+
+    private int findFirstInRow(int y) {
+        int wordOffset = y * wordsPerRow;
+        for (int i = 0; i < wordsPerRow; i++) {
+            long word = region[wordOffset + i];
+            if (word != 0) {
+                return i * 64 + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    private int findLastInRow(int y) {
+        int wordOffset = y * wordsPerRow;
+        for (int i = wordsPerRow - 1; i >= 0; i--) {
+            long word = region[wordOffset + i];
+            if (word != 0) {
+                return i * 64 + 63 - Long.numberOfLeadingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the image-relative bounds of the pixels that will be changed
+     * by {@link #apply}, or null if no pixels were found.
+     */
+    public Rectangle getAffectedArea(boolean softEdges) {
+        if (maxX < 0) {
+            return null;
+        }
+        Rectangle area = new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        if (softEdges) {
+            // the soft edges are outside the found pixels
+            area.grow(1, 1);
+            area = area.intersection(new Rectangle(0, 0, width, height));
+        }
+        return area;
+    }
+
+    /**
+     * Fills the found pixels with the given color. If softEdges is true, then
+     * the neighboring pixels that are not similar enough are also partially
+     * filled, depending on how close their color is to the target color,
+     * which smooths the antialiased edges of the filled area.
+     * If a selection is given, then the fill is weighted by its values,
+     * and tx and ty are the translation of the image relative to the canvas.
+     */
+    public void apply(int fillRGB, boolean softEdges,
+                      SelectionMask selection, int tx, int ty) {
+        Rectangle area = getAffectedArea(softEdges);
+        if (area == null) {
+            return;
+        }
+        if (!softEdges && selection == null) {
+            // only the found pixels are changed, and they are fully replaced
+            ThreadPool.parallelRows(area.height, (startRow, endRow) -> {
+                for (int y = area.y + startRow; y < area.y + endRow; y++) {
+                    fillRow(y, fillRGB);
+                }
+            }, NULL_TRACKER);
+            return;
+        }
+
+        ThreadPool.parallelRows(area.height, (startRow, endRow) -> {
+            for (int y = area.y + startRow; y < area.y + endRow; y++) {
+                int offset = y * width;
+                for (int x = area.x; x < area.x + area.width; x++) {
+                    int coverage = getCoverage(x, y, softEdges);
+                    if (coverage > 0 && selection != null) {
+                        coverage = coverage * selection.getValue(x + tx, y + ty) / 255;
+                    }
+                    if (coverage > 0) {
+                        pixels[offset + x] = blend(pixels[offset + x], fillRGB, coverage);
+                    }
+                }
+            }
+        }, NULL_TRACKER);
+    }
+
+    private void fillRow(int y, int fillRGB) {
+        int offset = y * width;
+        int wordOffset = y * wordsPerRow;
+        for (int i = 0; i < wordsPerRow; i++) {
+            long word = region[wordOffset + i];
+            int wordStart = offset + i * 64;
+            if (word == -1L) {
+                Arrays.fill(pixels, wordStart, wordStart + 64, fillRGB);
+            } else {
+                while (word != 0) {
+                    pixels[wordStart + Long.numberOfTrailingZeros(word)] = fillRGB;
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the fill amount (0-255) of the given pixel.
+     */
+    private int getCoverage(int x, int y, boolean softEdges) {
+        if (isInRegion(x, y)) {
+            return 255;
+        }
+        if (!softEdges) {
+            return 0;
+        }
+        boolean touchesRegion = (x > 0 && isInRegion(x - 1, y))
+            || (x < width - 1 && isInRegion(x + 1, y))
+            || (y > 0 && isInRegion(x, y - 1))
+            || (y < height - 1 && isInRegion(x, y + 1));
+        if (!touchesRegion) {
+            return 0;
+        }
+        // linear falloff from the tolerance to the maximal difference
+        int diff = maxChannelDiff(pixels[x + y * width], targetRGB);
+        return 255 - 255 * (diff - tolerance) / (256 - tolerance);
+    }
+
+    /**
+     * Mixes the given colors in premultiplied space, so
+     * that the transparent colors don't darken the result.
+     */
+    private static int blend(int rgb, int fillRGB, int coverage) {
+        if (coverage == 255) {
+            return fillRGB;
+        }
+        int a1 = rgb >>> 24;
+        int a2 = fillRGB >>> 24;
+        int keep = 255 - coverage;
+
+        // the premultiplied values are multiplied by 255
+        int a = a1 * keep + a2 * coverage;
+        if (a == 0) {
+            return 0;
+        }
+        int result = ((a + 127) / 255) << 24;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int c1 = ((rgb >>> shift) & 0xFF) * a1;
+            int c2 = ((fillRGB >>> shift) & 0xFF) * a2;
+            long c = (long) c1 * keep + (long) c2 * coverage;
+            result |= (int) Math.min(255, (c + a / 2) / a) << shift;
+        }
+        return result;
+    }
+
+    private static int maxChannelDiff(int color1, int color2) {
+        int maxDiff = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int diff = Math.abs(((color1 >>> shift) & 0xFF) - ((color2 >>> shift) & 0xFF));
+            maxDiff = Math.max(maxDiff, diff);
+        }
+        return maxDiff;
+    }
+}
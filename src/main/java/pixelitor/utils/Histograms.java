@@ -0,0 +1,309 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+import pixelitor.selection.SelectionMask;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * The red, green, blue and luminance histograms of an image or of a part of it.
+ * The fully transparent pixels are not counted, and the colors
+ * of the partially transparent pixels are counted without premultiplication.
+ */
+public final class Histograms {
+    public static final int NUM_BINS = 256;
+
+    // the channel indices in the combined count arrays
+    static final int RED = 0;
+    static final int GREEN = 1;
+    static final int BLUE = 2;
+    static final int LUMINANCE = 3;
+    static final int NUM_CHANNELS = 4;
+
+    // the approximate number of pixels counted in sampled mode
+    private static final int SAMPLE_SIZE = 250_000;
+
+    private final int[] counts;
+    private final boolean sampled;
+
+    Histograms(int[] counts, boolean sampled) {
+        assert counts.length == NUM_CHANNELS * NUM_BINS;
+        this.counts = counts;
+        this.sampled = sampled;
+    }
+
+    /**
+     * Counts all the pixels of the given image.
+     */
+    public static Histograms of(BufferedImage image) {
+        return of(image, null, 0, 0, 1);
+    }
+
+    /**
+     * Counts every step-th pixel in both directions (so with a step of
+     * 1 all pixels are counted). If a selection is given, only the pixels
+     * that are at least half-selected are counted, and dx, dy are the
+     * translation of the image relative to the selection's coordinate system.
+     */
+    public static Histograms of(BufferedImage image, SelectionMask selection,
+                                int dx, int dy, int step) {
+        return snapshot(image, selection, dx, dy, step).count();
+    }
+
+    /**
+     * A fast approximation, which counts only a regular sample of
+     * the pixels, for example while a filter preview is running.
+     */
+    public static Histograms sampled(BufferedImage image, SelectionMask selection, int dx, int dy) {
+        return of(image, selection, dx, dy, sampleStep(image));
+    }
+
+    /**
+     * Returns the step that selects about SAMPLE_SIZE pixels of the image.
+     */
+    public static int sampleStep(BufferedImage image) {
+        long numPixels = (long) image.getWidth() * image.getHeight();
+        return Math.max(1, (int) Math.sqrt((double) numPixels / SAMPLE_SIZE));
+    }
+
+    /**
+     * Copies the pixels that {@link #of(BufferedImage, SelectionMask, int, int, int)}
+     * would count. Only the pixels within the bounds of the selection are copied,
+     * but the selection itself is checked at counting time.
+     */
+    public static Snapshot snapshot(BufferedImage image, SelectionMask selection,
+                                    int dx, int dy, int step) {
+        Rectangle area = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+        if (selection != null) {
+            Rectangle selBounds = selection.getBounds();
+            selBounds.translate(-dx, -dy);
+            area = area.intersection(selBounds);
+            if (area.isEmpty()) {
+                area = new Rectangle();
+            }
+        }
+        return new Snapshot(image, area, step, selection, dx, dy);
+    }
+
+    /**
+     * Copies all the pixels of the given area, which must be within the image.
+     */
+    static Snapshot snapshot(BufferedImage image, Rectangle area) {
+        return new Snapshot(image, area, 1, null, 0, 0);
+    }
+
+    private static boolean hasPackedPixels(BufferedImage image) {
+        int type = image.getType();
+        return type == TYPE_INT_ARGB || type == TYPE_INT_ARGB_PRE || type == TYPE_INT_RGB;
+    }
+
+    private static void add(int argb, boolean opaque, boolean premultiplied, int[] counts) {
+        int r = (argb >>> 16) & 0xFF;
+        int g = (argb >>> 8) & 0xFF;
+        int b = argb & 0xFF;
+        int a = argb >>> 24;
+        if (a != 255 && !opaque) {
+            if (a == 0) {
+                return;
+            }
+            if (premultiplied) {
+                r = Math.min(255, (r * 255 + a / 2) / a);
+                g = Math.min(255, (g * 255 + a / 2) / a);
+                b = Math.min(255, (b * 255 + a / 2) / a);
+            }
+        }
+        counts[RED * NUM_BINS + r]++;
+        counts[GREEN * NUM_BINS + g]++;
+        counts[BLUE * NUM_BINS + b]++;
+        // the NTSC weights (0.299, 0.587, 0.114) in 16-bit fixed point
+        counts[LUMINANCE * NUM_BINS + ((r * 19595 + g * 38470 + b * 7471) >>> 16)]++;
+    }
+
+    /**
+     * A copy of (every step-th pixel of) a rectangular area of an image.
+     * It is taken on the EDT, and can be counted on any thread,
+     * even while the image itself is edited on the EDT.
+     */
+    public static final class Snapshot {
+        private final int[] pixels;
+        private final Rectangle area;
+        private final int step;
+        private final int numCols;
+        private final int numRows;
+        private final boolean opaque;
+        private final boolean premultiplied;
+
+        // the selection masks are immutable, therefore they aren't copied
+        private final SelectionMask selection;
+        private final int dx;
+        private final int dy;
+
+        private Snapshot(BufferedImage image, Rectangle area, int step,
+                         SelectionMask selection, int dx, int dy) {
+            this.area = area;
+            this.step = step;
+            this.selection = selection;
+            this.dx = dx;
+            this.dy = dy;
+            numCols = (area.width + step - 1) / step;
+            numRows = (area.height + step - 1) / step;
+            pixels = new int[numCols * numRows];
+
+            opaque = !image.getColorModel().hasAlpha();
+            boolean packed = hasPackedPixels(image);
+            // getRGB returns non-premultiplied values
+            premultiplied = packed && image.isAlphaPremultiplied();
+            if (packed) {
+                copyPackedPixels(image);
+            } else {
+                copyRGB(image);
+            }
+        }
+
+        private void copyPackedPixels(BufferedImage image) {
+            int[] imgPixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            int imgWidth = image.getWidth();
+            for (int row = 0; row < numRows; row++) {
+                int srcStart = area.x + (area.y + row * step) * imgWidth;
+                int dstStart = row * numCols;
+                if (step == 1) {
+                    System.arraycopy(imgPixels, srcStart, pixels, dstStart, numCols);
+                } else {
+                    for (int col = 0; col < numCols; col++) {
+                        pixels[dstStart + col] = imgPixels[srcStart + col * step];
+                    }
+                }
+            }
+        }
+
+        private void copyRGB(BufferedImage image) {
+            int[] rowBuffer = step == 1 ? null : new int[area.width];
+            for (int row = 0; row < numRows; row++) {
+                int y = area.y + row * step;
+                int dstStart = row * numCols;
+                if (step == 1) {
+                    image.getRGB(area.x, y, area.width, 1, pixels, dstStart, area.width);
+                } else {
+                    image.getRGB(area.x, y, area.width, 1, rowBuffer, 0, area.width);
+                    for (int col = 0; col < numCols; col++) {
+                        pixels[dstStart + col] = rowBuffer[col * step];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Counts the copied pixels in parallel.
+         */
+        public Histograms count() {
+            int[] counts = new int[NUM_CHANNELS * NUM_BINS];
+            ThreadPool.parallelRows(numRows, (startRow, endRow) -> {
+                int[] bandCounts = new int[NUM_CHANNELS * NUM_BINS];
+                addRows(startRow, endRow, bandCounts);
+                synchronized (counts) {
+                    for (int i = 0; i < counts.length; i++) {
+                        counts[i] += bandCounts[i];
+                    }
+                }
+            }, NULL_TRACKER);
+            return new Histograms(counts, step > 1);
+        }
+
+        /**
+         * Counts the copied pixels on the calling thread.
+         */
+        int[] countSequentially() {
+            int[] counts = new int[NUM_CHANNELS * NUM_BINS];
+            addRows(0, numRows, counts);
+            return counts;
+        }
+
+        private void addRows(int startRow, int endRow, int[] counts) {
+            for (int row = startRow; row < endRow; row++) {
+                int rowStart = row * numCols;
+                if (selection == null) {
+                    for (int i = rowStart; i < rowStart + numCols; i++) {
+                        add(pixels[i], opaque, premultiplied, counts);
+                    }
+                } else {
+                    int selY = area.y + row * step + dy;
+                    for (int col = 0; col < numCols; col++) {
+                        int selX = area.x + col * step + dx;
+                        if (selection.getValue(selX, selY) >= 128) {
+                            add(pixels[rowStart + col], opaque, premultiplied, counts);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public int[] getReds() {
+        return getChannel(RED);
+    }
+
+    public int[] getGreens() {
+        return getChannel(GREEN);
+    }
+
+    public int[] getBlues() {
+        return getChannel(BLUE);
+    }
+
+    public int[] getLuminances() {
+        return getChannel(LUMINANCE);
+    }
+
+    private int[] getChannel(int channel) {
+        int[] values = new int[NUM_BINS];
+        System.arraycopy(counts, channel * NUM_BINS, values, 0, NUM_BINS);
+        return values;
+    }
+
+    /**
+     * Returns the number of counted pixels.
+     */
+    public int getNumPixels() {
+        int sum = 0;
+        for (int i = 0; i < NUM_BINS; i++) {
+            sum += counts[LUMINANCE * NUM_BINS + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns true if only a sample of the pixels was counted.
+     */
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    @Override
+    public String toString() {
+        return "Histograms{numPixels=" + getNumPixels() + ", sampled=" + sampled + '}';
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+
+/**
+ * Successively halved versions of a source image,
+ * calculated lazily and cached until the pyramid is discarded.
+ */
+public class ImagePyramid {
+    private final List<BufferedImage> levels = new ArrayList<>();
+
+    public ImagePyramid(BufferedImage src) {
+        levels.add(src);
+    }
+
+    public BufferedImage getSource() {
+        return levels.get(0);
+    }
+
+    /**
+     * Returns the largest level that fits into a square
+     * with the given size, or the smallest possible level.
+     */
+    public synchronized BufferedImage getLevelFor(int maxSize) {
+        int index = 0;
+        BufferedImage level = levels.get(0);
+        while (Math.max(level.getWidth(), level.getHeight()) > maxSize
+            && level.getWidth() > 1 && level.getHeight() > 1) {
+            index++;
+            if (index == levels.size()) {
+                levels.add(halve(level));
+            }
+            level = levels.get(index);
+        }
+        return level;
+    }
+
+    private static BufferedImage halve(BufferedImage img) {
+        int width = Math.max(1, img.getWidth() / 2);
+        int height = Math.max(1, img.getHeight() / 2);
+        BufferedImage half = ImageUtils.createImageWithSameCM(img, width, height);
+        Graphics2D g = half.createGraphics();
+        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(img, 0, 0, width, height, null);
+        g.dispose();
+        return half;
+    }
+
+    /**
+     * Scales the given (typically filtered) pyramid level
+     * back to the size of the source image.
+     */
+    public BufferedImage upscaleToSource(BufferedImage levelImg) {
+        BufferedImage src = getSource();
+        BufferedImage full = ImageUtils.createImageWithSameCM(levelImg,
+            src.getWidth(), src.getHeight());
+        Graphics2D g = full.createGraphics();
+        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(levelImg, 0, 0, src.getWidth(), src.getHeight(), null);
+        g.dispose();
+        return full;
+    }
+}
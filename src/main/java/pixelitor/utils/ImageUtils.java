@@ -67,11 +67,16 @@ public class ImageUtils {
     public static final double DEG_315_IN_RADIANS = Math.PI / 4;
     private static final Color CHECKERBOARD_GRAY = new Color(200, 200, 200);
 
-    private static final GraphicsConfiguration graphicsConfig = GraphicsEnvironment
+    // null in headless mode, where the images are always TYPE_INT_ARGB
+    private static final GraphicsConfiguration graphicsConfig = GraphicsEnvironment.isHeadless()
+        ? null
+        : GraphicsEnvironment
         .getLocalGraphicsEnvironment()
         .getDefaultScreenDevice()
         .getDefaultConfiguration();
-    private static final ColorModel defaultColorModel = graphicsConfig.getColorModel();
+    private static final ColorModel defaultColorModel = graphicsConfig == null
+        ? ColorModel.getRGBdefault()
+        : graphicsConfig.getColorModel();
 
     private ImageUtils() {
     }
@@ -92,8 +97,8 @@ public class ImageUtils {
             }
         }
 
-        BufferedImage output = graphicsConfig.createCompatibleImage(
-            input.getWidth(), input.getHeight(), TRANSLUCENT);
+        BufferedImage output = createSysCompatibleImage(
+            input.getWidth(), input.getHeight());
         Graphics2D g = output.createGraphics();
         g.drawImage(input, 0, 0, null);
         g.dispose();
@@ -108,6 +113,9 @@ public class ImageUtils {
     public static BufferedImage createSysCompatibleImage(int width, int height) {
         assert width > 0 && height > 0;
 
+        if (graphicsConfig == null) {
+            return new BufferedImage(width, height, TYPE_INT_ARGB);
+        }
         return graphicsConfig.createCompatibleImage(width, height, TRANSLUCENT);
     }
 
@@ -141,12 +149,36 @@ public class ImageUtils {
     public static CompletableFuture<BufferedImage> resizeAsync(BufferedImage img,
                                                                int targetWidth,
                                                                int targetHeight) {
+        return CompletableFuture.supplyAsync(() ->
+            resize(img, targetWidth, targetHeight), onPool);
+    }
+
+    public static BufferedImage resize(BufferedImage img,
+                                       int targetWidth,
+                                       int targetHeight) {
         boolean progressiveBilinear = targetWidth < img.getWidth() / 2
                                       || targetHeight < img.getHeight() / 2;
 
-        return CompletableFuture.supplyAsync(() ->
-            getFasterScaledInstance(img, targetWidth, targetHeight,
-                VALUE_INTERPOLATION_BICUBIC, progressiveBilinear), onPool);
+        return getFasterScaledInstance(img, targetWidth, targetHeight,
+            VALUE_INTERPOLATION_BICUBIC, progressiveBilinear);
+    }
+
+    /**
+     * Resizes an image so that the proportions are kept
+     * and the result fits into the given dimensions,
+     * like the Resize composition action does
+     */
+    public static BufferedImage resizeInBox(BufferedImage img, int maxWidth, int maxHeight) {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        if (width == maxWidth && height == maxHeight) {
+            return img;
+        }
+
+        double scale = Math.min(maxWidth / (double) width, maxHeight / (double) height);
+        int targetWidth = Math.max(1, (int) (scale * width));
+        int targetHeight = Math.max(1, (int) (scale * height));
+        return resize(img, targetWidth, targetHeight);
     }
 
     // From the Filthy Rich Clients book
@@ -45,6 +45,11 @@ public class Rnd {
         // do not instantiate
     }
 
+    @VisibleForTesting
+    public static void setSeed(long seed) {
+        rand.setSeed(seed);
+    }
+
     public static int chooseFrom(int[] items) {
         return items[rand.nextInt(items.length)];
     }
@@ -1608,6 +1608,67 @@ public class Shapes {
         return path;
     }
 
+    /**
+     * A garbage-free version of the above method for open paths, which reads
+     * numPoints points starting at the given offset of the coordinate arrays,
+     * and appends the curves to the given path.
+     */
+    public static void smoothConnect(float[] xs, float[] ys, int offset, int numPoints,
+                                     float smoothness, Path2D.Float path) {
+        assert numPoints >= 3 : "There should be at least 3 points in the shape!!!";
+
+        float ax = xs[offset];
+        float ay = ys[offset];
+        float bx = xs[offset + 1];
+        float by = ys[offset + 1];
+        path.moveTo(ax, ay);
+
+        // the center and the length of the side before the current point
+        float prevCenterX = (ax + bx) / 2;
+        float prevCenterY = (ay + by) / 2;
+        float prevLength = (float) FastMath.hypot(bx - ax, by - ay);
+
+        // the control point after the previous point
+        float prevCtrlX = ax;
+        float prevCtrlY = ay;
+
+        int last = offset + numPoints - 1;
+        for (int i = offset + 1; i < last; i++) {
+            bx = xs[i];
+            by = ys[i];
+            float cx = xs[i + 1];
+            float cy = ys[i + 1];
+
+            float centerX = (bx + cx) / 2;
+            float centerY = (by + cy) / 2;
+            float length = (float) FastMath.hypot(cx - bx, cy - by);
+
+            // see calculateControlPoint
+            float tx = prevCenterX;
+            float ty = prevCenterY;
+            float lengthSum = prevLength + length;
+            if (lengthSum != 0) {
+                tx = (prevCenterX * length + centerX * prevLength) / lengthSum;
+                ty = (prevCenterY * length + centerY * prevLength) / lengthSum;
+            }
+
+            path.curveTo(prevCtrlX, prevCtrlY,
+                bx + (prevCenterX - tx) * smoothness,
+                by + (prevCenterY - ty) * smoothness,
+                bx, by);
+
+            prevCtrlX = bx + (centerX - tx) * smoothness;
+            prevCtrlY = by + (centerY - ty) * smoothness;
+            prevCenterX = centerX;
+            prevCenterY = centerY;
+            prevLength = length;
+        }
+
+        float lastX = xs[last];
+        float lastY = ys[last];
+        path.curveTo(prevCtrlX, prevCtrlY, lastX, lastY, lastX, lastY);
+    }
+
     private static void calculateControlPoint(Point2D B, Point2D P, Point2D Q,
                                               float AB, float BC, float smoothness) {
         // A temporary point T calculated such that
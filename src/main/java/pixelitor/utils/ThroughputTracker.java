@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+/**
+ * A progress tracker which forwards the progress to another
+ * tracker, and measures the number of units done per second.
+ */
+public class ThroughputTracker implements ProgressTracker {
+    private final ProgressTracker delegate;
+    private final long startTime = System.nanoTime();
+    private long unitsDone = 0;
+    private long endTime = 0;
+
+    public ThroughputTracker(ProgressTracker delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void unitDone() {
+        unitsDone++;
+        delegate.unitDone();
+    }
+
+    @Override
+    public void unitsDone(int units) {
+        unitsDone += units;
+        delegate.unitsDone(units);
+    }
+
+    @Override
+    public void finished() {
+        endTime = System.nanoTime();
+        delegate.finished();
+    }
+
+    public long getUnitsDone() {
+        return unitsDone;
+    }
+
+    /**
+     * Returns the units done per second until the work was
+     * finished, or until now, if it is still in progress.
+     */
+    public double getUnitsPerSecond() {
+        long end = endTime == 0 ? System.nanoTime() : endTime;
+        double seconds = (end - startTime) / 1_000_000_000.0;
+        return seconds > 0 ? unitsDone / seconds : 0;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static pixelitor.utils.Histograms.NUM_BINS;
+import static pixelitor.utils.Histograms.NUM_CHANNELS;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * Incrementally updated histograms of an image that changes over time
+ * (the composite image of a composition).
+ *
+ * The histograms are kept separately for square tiles, and only the
+ * tiles that were invalidated since the last update are counted again.
+ * The dirty tiles are copied on the EDT (where the image is edited),
+ * and the copies can be counted later on another thread, so the
+ * counting never reads a tile that is being edited.
+ */
+public final class TiledHistograms {
+    static final int TILE_SIZE = 256;
+
+    private int width = -1;
+    private int height = -1;
+    private int numTilesX;
+    private int numTilesY;
+
+    // the counts of each tile, null if not yet counted
+    private int[][] tileCounts;
+    private int[] totals;
+
+    // the tiles that changed, but were not yet copied
+    private final BitSet dirtyTiles = new BitSet();
+    private boolean allDirty = true;
+
+    // the copied tiles that were not yet counted, by tile index
+    private Map<Integer, Histograms.Snapshot> copiedTiles = new HashMap<>();
+
+    // incremented when the tile layout is reset
+    private int generation;
+
+    public synchronized void invalidateAll() {
+        allDirty = true;
+    }
+
+    /**
+     * Marks the tiles intersecting the given image-space area as dirty.
+     */
+    public synchronized void invalidateRegion(Rectangle area) {
+        if (allDirty) {
+            return;
+        }
+        Rectangle r = area.intersection(new Rectangle(0, 0, width, height));
+        if (r.isEmpty()) {
+            return;
+        }
+        int firstCol = r.x / TILE_SIZE;
+        int lastCol = (r.x + r.width - 1) / TILE_SIZE;
+        int firstRow = r.y / TILE_SIZE;
+        int lastRow = (r.y + r.height - 1) / TILE_SIZE;
+        for (int row = firstRow; row <= lastRow; row++) {
+            int rowStart = row * numTilesX;
+            dirtyTiles.set(rowStart + firstCol, rowStart + lastCol + 1);
+        }
+    }
+
+    /**
+     * Copies the dirty tiles of the given image (or all of them if the
+     * size changed), so that they can be counted by the next update.
+     * It must be called on the thread where the image is modified.
+     */
+    public synchronized void copyDirtyTiles(BufferedImage image) {
+        if (allDirty || image.getWidth() != width || image.getHeight() != height) {
+            reset(image.getWidth(), image.getHeight());
+        }
+        dirtyTiles.stream().forEach(tile ->
+            copiedTiles.put(tile, Histograms.snapshot(image, getTileBounds(tile))));
+        dirtyTiles.clear();
+    }
+
+    /**
+     * Counts the copied tiles, and returns the histograms of the
+     * whole image as it was at the last copyDirtyTiles call.
+     * It must not be called concurrently with itself.
+     */
+    public Histograms update() {
+        Map<Integer, Histograms.Snapshot> toCount;
+        int startGeneration;
+        synchronized (this) {
+            toCount = copiedTiles;
+            copiedTiles = new HashMap<>();
+            startGeneration = generation;
+        }
+
+        int[] tiles = toCount.keySet().stream().mapToInt(Integer::intValue).toArray();
+        int[][] newCounts = new int[tiles.length][];
+        ThreadPool.parallelRows(tiles.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                newCounts[i] = toCount.get(tiles[i]).countSequentially();
+            }
+        }, NULL_TRACKER);
+
+        synchronized (this) {
+            if (generation == startGeneration) {
+                for (int i = 0; i < tiles.length; i++) {
+                    replaceTileCounts(tiles[i], newCounts[i]);
+                }
+            }
+            // otherwise the counts are outdated, but the reset
+            // already copied all the tiles for the next update
+            return new Histograms(totals.clone(), false);
+        }
+    }
+
+    /**
+     * Copies and counts the dirty tiles on the calling thread.
+     */
+    public Histograms update(BufferedImage image) {
+        copyDirtyTiles(image);
+        return update();
+    }
+
+    private void reset(int newWidth, int newHeight) {
+        width = newWidth;
+        height = newHeight;
+        numTilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        numTilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        int numTiles = numTilesX * numTilesY;
+        tileCounts = new int[numTiles][];
+        totals = new int[NUM_CHANNELS * NUM_BINS];
+
+        copiedTiles.clear();
+        dirtyTiles.clear();
+        dirtyTiles.set(0, numTiles);
+        allDirty = false;
+        generation++;
+    }
+
+    private Rectangle getTileBounds(int tile) {
+        int x = (tile % numTilesX) * TILE_SIZE;
+        int y = (tile / numTilesX) * TILE_SIZE;
+        return new Rectangle(x, y,
+            Math.min(TILE_SIZE, width - x),
+            Math.min(TILE_SIZE, height - y));
+    }
+
+    private void replaceTileCounts(int tile, int[] newCounts) {
+        int[] oldCounts = tileCounts[tile];
+        for (int i = 0; i < totals.length; i++) {
+            int oldCount = oldCounts == null ? 0 : oldCounts[i];
+            totals[i] += newCounts[i] - oldCount;
+        }
+        tileCounts[tile] = newCounts;
+    }
+
+    /**
+     * Returns the number of tiles that will be copied at the next copyDirtyTiles call.
+     */
+    public synchronized int getNumDirtyTiles() {
+        return allDirty ? -1 : dirtyTiles.cardinality();
+    }
+}
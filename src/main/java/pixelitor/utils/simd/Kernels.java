@@ -0,0 +1,45 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.simd;
+
+/**
+ * The pixel kernels that have a vectorized implementation.
+ * All methods process the pixels from index "from" (inclusive)
+ * to index "to" (exclusive).
+ */
+interface Kernels {
+    void premultiply(int[] pixels, int from, int to);
+
+    void unpremultiply(int[] pixels, int from, int to);
+
+    void invert(int[] src, int[] dst, int from, int to, boolean premultiplied);
+
+    void lookup(int[] src, int[] dst, int from, int to,
+                int[] redLut, int[] greenLut, int[] blueLut,
+                boolean premultiplied, boolean clearTransparent);
+
+    void colorMatrix(int[] src, int[] dst, int from, int to, float[] matrix);
+
+    void sepia(int[] src, int[] dst, int from, int to, int intensity);
+
+    void unpack(int[] src, int from, int to, int[] a, int[] r, int[] g, int[] b);
+
+    void pack(int[] a, int[] r, int[] g, int[] b, int[] dst, int from, int to);
+
+    void addToHistograms(int[] pixels, int from, int to, int[] reds, int[] greens, int[] blues);
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.simd;
+
+/**
+ * Static access to the pixel kernels that work on packed ARGB int arrays.
+ *
+ * The Vector API based kernels are compiled only in the "vector" Maven
+ * profile, because the module is still incubating. If they were compiled,
+ * and the JVM was started with "--add-modules jdk.incubator.vector",
+ * then the kernels are vectorized, otherwise (or if the system property
+ * "pixelitor.simd" is set to "false") the plain scalar implementation
+ * is used. Both give the same results. Only the integer-only kernels
+ * are vectorized, see the VectorKernels class.
+ */
+public final class PixelKernels {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNELS_CLASS = "pixelitor.utils.simd.VectorKernels";
+
+    private static final Kernels kernels = chooseKernels();
+
+    private PixelKernels() {
+    }
+
+    private static Kernels chooseKernels() {
+        if (!Boolean.parseBoolean(System.getProperty("pixelitor.simd", "true"))) {
+            return ScalarKernels.INSTANCE;
+        }
+        Kernels vectorKernels = loadVectorKernels();
+        return vectorKernels != null ? vectorKernels : ScalarKernels.INSTANCE;
+    }
+
+    /**
+     * Returns the vectorized kernels, or null if they weren't
+     * compiled or the jdk.incubator.vector module isn't available.
+     */
+    static Kernels loadVectorKernels() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            // loaded by reflection, so that the class referencing
+            // the Vector API isn't loaded without the module
+            return (Kernels) Class.forName(VECTOR_KERNELS_CLASS)
+                .getDeclaredConstructor()
+                .newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if the vectorized kernels are used.
+     */
+    public static boolean isVectorized() {
+        return kernels != ScalarKernels.INSTANCE;
+    }
+
+    public static void premultiply(int[] pixels, int from, int to) {
+        kernels.premultiply(pixels, from, to);
+    }
+
+    public static void unpremultiply(int[] pixels, int from, int to) {
+        kernels.unpremultiply(pixels, from, to);
+    }
+
+    /**
+     * Inverts the red, green and blue channels, but not the alpha.
+     * The source and destination arrays can be the same.
+     */
+    public static void invert(int[] src, int[] dst, int from, int to, boolean premultiplied) {
+        kernels.invert(src, dst, from, to, premultiplied);
+    }
+
+    /**
+     * Replaces each channel value with the value from the corresponding lookup table,
+     * each of which must have 256 entries. If the pixels are premultiplied,
+     * then the lookup is done with unpremultiplied values. If clearTransparent
+     * is true, then the fully transparent pixels become 0 (this is
+     * always the case for premultiplied pixels).
+     */
+    public static void lookup(int[] src, int[] dst, int from, int to,
+                              int[] redLut, int[] greenLut, int[] blueLut,
+                              boolean premultiplied, boolean clearTransparent) {
+        kernels.lookup(src, dst, from, to, redLut, greenLut, blueLut,
+            premultiplied, clearTransparent);
+    }
+
+    /**
+     * Multiplies the red, green and blue channels of each pixel
+     * with the given 3x3 matrix (in row-major order), keeps the alpha,
+     * and clamps the results to the 0..255 range.
+     */
+    public static void colorMatrix(int[] src, int[] dst, int from, int to, float[] matrix) {
+        assert matrix.length == 9;
+        kernels.colorMatrix(src, dst, from, to, matrix);
+    }
+
+    /**
+     * Tones the pixels like {@link pixelitor.filters.impl.SepiaFilter}:
+     * the red, green and blue channels are set to the average of them,
+     * then red and green are raised, and blue is lowered by the intensity.
+     */
+    public static void sepia(int[] src, int[] dst, int from, int to, int intensity) {
+        kernels.sepia(src, dst, from, to, intensity);
+    }
+
+    /**
+     * Splits the given range of pixels into separate channel
+     * arrays, which are filled starting at index 0.
+     */
+    public static void unpack(int[] src, int from, int to, int[] a, int[] r, int[] g, int[] b) {
+        kernels.unpack(src, from, to, a, r, g, b);
+    }
+
+    /**
+     * The inverse of {@link #unpack}. The channel values must be in the 0..255 range.
+     */
+    public static void pack(int[] a, int[] r, int[] g, int[] b, int[] dst, int from, int to) {
+        kernels.pack(a, r, g, b, dst, from, to);
+    }
+
+    /**
+     * Counts the channel values of the pixels that are not fully
+     * transparent into the given histograms, which have 256 entries.
+     */
+    public static void addToHistograms(int[] pixels, int from, int to,
+                                       int[] reds, int[] greens, int[] blues) {
+        kernels.addToHistograms(pixels, from, to, reds, greens, blues);
+    }
+}
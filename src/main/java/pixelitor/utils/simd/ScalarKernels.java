@@ -0,0 +1,198 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.simd;
+
+/**
+ * The plain Java implementation of the pixel kernels, which
+ * processes one packed ARGB int at a time. The vectorized kernels
+ * must give exactly the same results.
+ */
+class ScalarKernels implements Kernels {
+    static final ScalarKernels INSTANCE = new ScalarKernels();
+
+    static final int[] INVERT_LUT = new int[256];
+
+    // how much the red and green channels are raised by the sepia toning
+    static final int SEPIA_DEPTH = 20;
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            INVERT_LUT[i] = 255 - i;
+        }
+    }
+
+    private ScalarKernels() {
+    }
+
+    @Override
+    public void premultiply(int[] pixels, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int rgb = pixels[i];
+            int a = (rgb >>> 24) & 0xFF;
+            int r = (rgb >>> 16) & 0xFF;
+            int g = (rgb >>> 8) & 0xFF;
+            int b = rgb & 0xFF;
+
+            float f = a * (1.0f / 255.0f);
+            r = (int) (r * f);
+            g = (int) (g * f);
+            b = (int) (b * f);
+
+            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    @Override
+    public void unpremultiply(int[] pixels, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int rgb = pixels[i];
+            int a = (rgb >>> 24) & 0xFF;
+            if (a == 0 || a == 255) {
+                continue;
+            }
+            int r = (rgb >>> 16) & 0xFF;
+            int g = (rgb >>> 8) & 0xFF;
+            int b = rgb & 0xFF;
+
+            float f = 255.0f / a;
+            r = Math.min(255, (int) (r * f));
+            g = Math.min(255, (int) (g * f));
+            b = Math.min(255, (int) (b * f));
+
+            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    @Override
+    public void invert(int[] src, int[] dst, int from, int to, boolean premultiplied) {
+        if (premultiplied) {
+            lookup(src, dst, from, to, INVERT_LUT, INVERT_LUT, INVERT_LUT, true, false);
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            dst[i] = src[i] ^ 0x00_FF_FF_FF;
+        }
+    }
+
+    @Override
+    public void lookup(int[] src, int[] dst, int from, int to,
+                       int[] redLut, int[] greenLut, int[] blueLut,
+                       boolean premultiplied, boolean clearTransparent) {
+        for (int i = from; i < to; i++) {
+            int rgb = src[i];
+            int a = (rgb >>> 24) & 0xFF;
+            int r = (rgb >>> 16) & 0xFF;
+            int g = (rgb >>> 8) & 0xFF;
+            int b = rgb & 0xFF;
+
+            if (a == 0 && (premultiplied || clearTransparent)) {
+                dst[i] = 0;
+            } else if (a == 255 || !premultiplied) {
+                dst[i] = a << 24 | redLut[r] << 16 | greenLut[g] << 8 | blueLut[b];
+            } else {
+                // unpremultiply, look up, and premultiply again
+                float f = 255.0f / a;
+                int ur = Math.min(255, (int) (r * f));
+                int ug = Math.min(255, (int) (g * f));
+                int ub = Math.min(255, (int) (b * f));
+
+                float f2 = a * (1.0f / 255.0f);
+                r = clamp((int) (redLut[ur] * f2));
+                g = clamp((int) (greenLut[ug] * f2));
+                b = clamp((int) (blueLut[ub] * f2));
+
+                dst[i] = a << 24 | r << 16 | g << 8 | b;
+            }
+        }
+    }
+
+    @Override
+    public void colorMatrix(int[] src, int[] dst, int from, int to, float[] m) {
+        float rr = m[0], rg = m[1], rb = m[2];
+        float gr = m[3], gg = m[4], gb = m[5];
+        float br = m[6], bg = m[7], bb = m[8];
+        for (int i = from; i < to; i++) {
+            int rgb = src[i];
+            int a = rgb & 0xFF_00_00_00;
+            int r = (rgb >>> 16) & 0xFF;
+            int g = (rgb >>> 8) & 0xFF;
+            int b = rgb & 0xFF;
+
+            int newRed = clamp((int) (rr * r + rg * g + rb * b));
+            int newGreen = clamp((int) (gr * r + gg * g + gb * b));
+            int newBlue = clamp((int) (br * r + bg * g + bb * b));
+
+            dst[i] = a | newRed << 16 | newGreen << 8 | newBlue;
+        }
+    }
+
+    @Override
+    public void sepia(int[] src, int[] dst, int from, int to, int intensity) {
+        for (int i = from; i < to; i++) {
+            int rgb = src[i];
+            int r = (rgb >>> 16) & 0xFF;
+            int g = (rgb >>> 8) & 0xFF;
+            int b = rgb & 0xFF;
+
+            int gray = (r + g + b) / 3;
+            int newRed = Math.min(255, gray + 2 * SEPIA_DEPTH);
+            int newGreen = Math.min(255, gray + SEPIA_DEPTH);
+            int newBlue = clamp(gray - intensity);
+
+            dst[i] = (rgb & 0xFF_00_00_00) | newRed << 16 | newGreen << 8 | newBlue;
+        }
+    }
+
+    @Override
+    public void unpack(int[] src, int from, int to, int[] a, int[] r, int[] g, int[] b) {
+        for (int i = from, j = 0; i < to; i++, j++) {
+            int rgb = src[i];
+            a[j] = (rgb >>> 24) & 0xFF;
+            r[j] = (rgb >>> 16) & 0xFF;
+            g[j] = (rgb >>> 8) & 0xFF;
+            b[j] = rgb & 0xFF;
+        }
+    }
+
+    @Override
+    public void pack(int[] a, int[] r, int[] g, int[] b, int[] dst, int from, int to) {
+        for (int i = from, j = 0; i < to; i++, j++) {
+            dst[i] = a[j] << 24 | r[j] << 16 | g[j] << 8 | b[j];
+        }
+    }
+
+    @Override
+    public void addToHistograms(int[] pixels, int from, int to,
+                                int[] reds, int[] greens, int[] blues) {
+        for (int i = from; i < to; i++) {
+            int rgb = pixels[i];
+            if ((rgb >>> 24) != 0) {
+                reds[(rgb >>> 16) & 0xFF]++;
+                greens[(rgb >>> 8) & 0xFF]++;
+                blues[rgb & 0xFF]++;
+            }
+        }
+    }
+
+    static int clamp(int c) {
+        if (c < 0) {
+            return 0;
+        }
+        return Math.min(c, 255);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.simd;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.EQ;
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+import static jdk.incubator.vector.VectorOperators.MAX;
+import static jdk.incubator.vector.VectorOperators.MIN;
+import static jdk.incubator.vector.VectorOperators.XOR;
+
+/**
+ * The pixel kernels implemented with the incubating Vector API,
+ * processing as many packed ARGB ints at once as the CPU allows.
+ * The pixels that don't fill a whole vector are processed by the scalar code.
+ *
+ * Only the integer operations are vectorized: in JDK 17 the
+ * conversions between int and float vectors (and the division
+ * needed for unpremultiplying) are not compiled to single
+ * instructions, and the vectorized versions of the float-based
+ * kernels (premultiply, unpremultiply, color matrix and the lookups
+ * of premultiplied pixels) were 1.5-3 times slower than the scalar code.
+ * They can be vectorized when the Vector API matures.
+ *
+ * On CPUs with less than 4 int lanes (where the vectors don't pay off)
+ * all kernels use the scalar code.
+ *
+ * This class is compiled only in the "vector" Maven profile, and it must
+ * be loaded only if the jdk.incubator.vector module is available,
+ * which is checked by {@link PixelKernels}.
+ */
+class VectorKernels implements Kernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = INTS.length();
+
+    // the table lookups can't be vectorized, they are done in blocks
+    // between the vectorized unpacking and packing steps
+    private static final int BLOCK_SIZE = 512;
+
+    // with fewer lanes the vectorized code was slower than the scalar one
+    private static final boolean NARROW = LANES < 4;
+
+    // multiplying with this and shifting by 16 bits divides the
+    // sums of three channels (at most 765) exactly by 3
+    private static final int DIV3_MULTIPLIER = 21846;
+
+    private final ScalarKernels scalar = ScalarKernels.INSTANCE;
+
+    // Each vectorized loop is in a separate small method, because the
+    // vectors are only kept in registers if the whole loop body is inlined,
+    // and the inlining budget of a method is easily exceeded.
+
+    @Override
+    public void premultiply(int[] pixels, int from, int to) {
+        scalar.premultiply(pixels, from, to);
+    }
+
+    @Override
+    public void unpremultiply(int[] pixels, int from, int to) {
+        scalar.unpremultiply(pixels, from, to);
+    }
+
+    @Override
+    public void invert(int[] src, int[] dst, int from, int to, boolean premultiplied) {
+        if (premultiplied || NARROW) {
+            scalar.invert(src, dst, from, to, true);
+            return;
+        }
+        int i = invertVectors(src, dst, from, to);
+        scalar.invert(src, dst, i, to, false);
+    }
+
+    private static int invertVectors(int[] src, int[] dst, int from, int to) {
+        int i = from;
+        int upper = from + INTS.loopBound(to - from);
+        for (; i < upper; i += LANES) {
+            IntVector.fromArray(INTS, src, i)
+                .lanewise(XOR, 0x00_FF_FF_FF)
+                .intoArray(dst, i);
+        }
+        return i;
+    }
+
+    @Override
+    public void lookup(int[] src, int[] dst, int from, int to,
+                       int[] redLut, int[] greenLut, int[] blueLut,
+                       boolean premultiplied, boolean clearTransparent) {
+        if (premultiplied || NARROW) {
+            scalar.lookup(src, dst, from, to, redLut, greenLut, blueLut,
+                premultiplied, clearTransparent);
+            return;
+        }
+
+        int[] a = new int[BLOCK_SIZE];
+        int[] r = new int[BLOCK_SIZE];
+        int[] g = new int[BLOCK_SIZE];
+        int[] b = new int[BLOCK_SIZE];
+
+        int blockStart = from;
+        while (to - blockStart >= LANES) {
+            int blockEnd = blockStart + Math.min(BLOCK_SIZE, INTS.loopBound(to - blockStart));
+            int blockLength = blockEnd - blockStart;
+
+            unpackVectors(src, blockStart, blockEnd, a, r, g, b);
+            for (int j = 0; j < blockLength; j++) {
+                r[j] = redLut[r[j]];
+                g[j] = greenLut[g[j]];
+                b[j] = blueLut[b[j]];
+            }
+            packVectors(a, r, g, b, dst, blockStart, blockEnd, clearTransparent);
+
+            blockStart = blockEnd;
+        }
+        scalar.lookup(src, dst, blockStart, to, redLut, greenLut, blueLut,
+            false, clearTransparent);
+    }
+
+    @Override
+    public void colorMatrix(int[] src, int[] dst, int from, int to, float[] m) {
+        scalar.colorMatrix(src, dst, from, to, m);
+    }
+
+    @Override
+    public void sepia(int[] src, int[] dst, int from, int to, int intensity) {
+        if (NARROW) {
+            scalar.sepia(src, dst, from, to, intensity);
+            return;
+        }
+        int i = sepiaVectors(src, dst, from, to, intensity);
+        scalar.sepia(src, dst, i, to, intensity);
+    }
+
+    private static int sepiaVectors(int[] src, int[] dst, int from, int to, int intensity) {
+        int depth = ScalarKernels.SEPIA_DEPTH;
+        int i = from;
+        int upper = from + INTS.loopBound(to - from);
+        for (; i < upper; i += LANES) {
+            IntVector v = IntVector.fromArray(INTS, src, i);
+            IntVector sum = v.lanewise(LSHR, 16).and(0xFF)
+                .add(v.lanewise(LSHR, 8).and(0xFF))
+                .add(v.and(0xFF));
+            IntVector gray = sum.mul(DIV3_MULTIPLIER).lanewise(LSHR, 16);
+
+            IntVector r = gray.add(2 * depth).lanewise(MIN, 255);
+            IntVector g = gray.add(depth).lanewise(MIN, 255);
+            IntVector b = gray.sub(intensity).lanewise(MAX, 0).lanewise(MIN, 255);
+
+            v.and(0xFF_00_00_00)
+                .or(r.lanewise(LSHL, 16))
+                .or(g.lanewise(LSHL, 8))
+                .or(b)
+                .intoArray(dst, i);
+        }
+        return i;
+    }
+
+    @Override
+    public void unpack(int[] src, int from, int to, int[] a, int[] r, int[] g, int[] b) {
+        if (NARROW) {
+            scalar.unpack(src, from, to, a, r, g, b);
+            return;
+        }
+        int upper = from + INTS.loopBound(to - from);
+        unpackVectors(src, from, upper, a, r, g, b);
+        for (int i = upper, j = upper - from; i < to; i++, j++) {
+            int rgb = src[i];
+            a[j] = (rgb >>> 24) & 0xFF;
+            r[j] = (rgb >>> 16) & 0xFF;
+            g[j] = (rgb >>> 8) & 0xFF;
+            b[j] = rgb & 0xFF;
+        }
+    }
+
+    // the range must be a multiple of the vector length
+    private static void unpackVectors(int[] src, int from, int to,
+                                      int[] a, int[] r, int[] g, int[] b) {
+        for (int i = from, j = 0; i < to; i += LANES, j += LANES) {
+            IntVector v = IntVector.fromArray(INTS, src, i);
+            v.lanewise(LSHR, 24).intoArray(a, j);
+            v.lanewise(LSHR, 16).and(0xFF).intoArray(r, j);
+            v.lanewise(LSHR, 8).and(0xFF).intoArray(g, j);
+            v.and(0xFF).intoArray(b, j);
+        }
+    }
+
+    @Override
+    public void pack(int[] a, int[] r, int[] g, int[] b, int[] dst, int from, int to) {
+        if (NARROW) {
+            scalar.pack(a, r, g, b, dst, from, to);
+            return;
+        }
+        int upper = from + INTS.loopBound(to - from);
+        packVectors(a, r, g, b, dst, from, upper, false);
+        for (int i = upper, j = upper - from; i < to; i++, j++) {
+            dst[i] = a[j] << 24 | r[j] << 16 | g[j] << 8 | b[j];
+        }
+    }
+
+    // the range must be a multiple of the vector length
+    private static void packVectors(int[] a, int[] r, int[] g, int[] b,
+                                    int[] dst, int from, int to, boolean clearTransparent) {
+        for (int i = from, j = 0; i < to; i += LANES, j += LANES) {
+            IntVector alpha = IntVector.fromArray(INTS, a, j);
+            IntVector packed = alpha.lanewise(LSHL, 24)
+                .or(IntVector.fromArray(INTS, r, j).lanewise(LSHL, 16))
+                .or(IntVector.fromArray(INTS, g, j).lanewise(LSHL, 8))
+                .or(IntVector.fromArray(INTS, b, j));
+            if (clearTransparent) {
+                packed = packed.blend(0, alpha.compare(EQ, 0));
+            }
+            packed.intoArray(dst, i);
+        }
+    }
+
+    @Override
+    public void addToHistograms(int[] pixels, int from, int to,
+                                int[] reds, int[] greens, int[] blues) {
+        // the counting is a scatter, which can't be vectorized, and
+        // the unpacking in blocks turned out to be slower than the scalar code
+        scalar.addToHistograms(pixels, from, to, reds, greens, blues);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jdesktop.swingx.painter.effects;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jdesktop.swingx.painter.effects.NeonBorderEffect.BorderPosition.Centered;
+import static org.jdesktop.swingx.painter.effects.NeonBorderEffect.BorderPosition.Inside;
+import static org.jdesktop.swingx.painter.effects.NeonBorderEffect.BorderPosition.Outside;
+
+/**
+ * Checks that the effects rendered with the distance
+ * transform look like the original, stroke-based ones.
+ */
+@DisplayName("area effect parity tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class AreaEffectParityTest {
+    private static final int WIDTH = 520;
+    private static final int HEIGHT = 300;
+    private static final int TOLERANCE = 24;
+
+    static Stream<Arguments> effectsAndShapes() {
+        return Stream.of(
+            Arguments.of("glow", (Supplier<AbstractAreaEffect>) () -> glow(10)),
+            Arguments.of("wide glow", (Supplier<AbstractAreaEffect>) () -> glow(40)),
+            Arguments.of("inner glow", (Supplier<AbstractAreaEffect>) () -> {
+                var effect = new InnerGlowPathEffect(1.0f);
+                effect.setBrushColor(Color.YELLOW);
+                effect.setEffectWidth(16);
+                effect.setAutoBrushSteps();
+                return effect;
+            }),
+            Arguments.of("drop shadow", (Supplier<AbstractAreaEffect>) () -> {
+                var effect = new ShadowPathEffect(1.0f);
+                effect.setEffectWidth(8);
+                effect.setAutoBrushSteps();
+                effect.setOffset(new Point(6, 4));
+                return effect;
+            }),
+            Arguments.of("inner shadow", (Supplier<AbstractAreaEffect>) () -> {
+                var effect = new InnerShadowPathEffect(1.0f);
+                effect.setEffectWidth(8);
+                effect.setAutoBrushSteps();
+                return effect;
+            }),
+            Arguments.of("neon outside", (Supplier<AbstractAreaEffect>) () -> neon(12, Outside)),
+            Arguments.of("neon inside", (Supplier<AbstractAreaEffect>) () -> neon(12, Inside)),
+            Arguments.of("neon centered", (Supplier<AbstractAreaEffect>) () -> neon(20, Centered))
+        ).flatMap(args -> Stream.of("ellipse", "rectangle", "text").map(shape ->
+            Arguments.of(args.get()[0], args.get()[1], shape)));
+    }
+
+    private static GlowPathEffect glow(double width) {
+        var effect = new GlowPathEffect(1.0f);
+        effect.setBrushColor(Color.RED);
+        effect.setEffectWidth(width);
+        effect.setAutoBrushSteps();
+        return effect;
+    }
+
+    private static NeonBorderEffect neon(double width, NeonBorderEffect.BorderPosition position) {
+        var effect = new NeonBorderEffect(Color.MAGENTA, Color.WHITE, width, 1.0f);
+        effect.setBorderPosition(position);
+        return effect;
+    }
+
+    private static Shape createShape(String type) {
+        return switch (type) {
+            case "ellipse" -> new Ellipse2D.Double(120, 60, 280, 170);
+            case "rectangle" -> new Rectangle2D.Double(100.5, 70, 300, 150.5);
+            case "text" -> new Font(Font.SANS_SERIF, Font.BOLD, 110)
+                .createGlyphVector(new FontRenderContext(null, true, true), "Gx&")
+                .getOutline(110, 200);
+            default -> throw new IllegalStateException("Unexpected value: " + type);
+        };
+    }
+
+    @ParameterizedTest(name = "{0} on {2}")
+    @MethodSource("effectsAndShapes")
+    void distancesLookLikeStrokes(String effectName, Supplier<AbstractAreaEffect> effectFactory, String shapeType) {
+        Shape shape = createShape(shapeType);
+
+        BufferedImage expected = createImage();
+        Graphics2D g = expected.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        effectFactory.get().applyByStroking(g, shape, 0, 0);
+        g.dispose();
+
+        BufferedImage actual = createImage();
+        g = actual.createGraphics();
+        effectFactory.get().applyWithDistances(g, shape);
+        g.dispose();
+
+        // The control points of the stroked shapes are rounded by the Java2D
+        // normalization, therefore each new pixel is compared with the
+        // range of the old pixels in its 3x3 neighborhood.
+        int numDifferentPixels = 0;
+        int numEffectPixels = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (expected.getRGB(x, y) != 0) {
+                    numEffectPixels++;
+                }
+                if (!isInNeighborhoodRange(actual.getRGB(x, y), expected, x, y)) {
+                    numDifferentPixels++;
+                }
+            }
+        }
+        assertThat(numEffectPixels).isGreaterThan(1000);
+        assertThat(numDifferentPixels).isLessThan(numEffectPixels / 50);
+    }
+
+    @ParameterizedTest(name = "width = {0}")
+    @ValueSource(doubles = {4, 16})
+    void narrowEffectsAreStroked(double width) {
+        Shape shape = createShape("text");
+
+        BufferedImage expected = createImage();
+        Graphics2D g = expected.createGraphics();
+        glow(width).applyByStroking(g, shape, 0, 0);
+        g.dispose();
+
+        BufferedImage actual = createImage();
+        g = actual.createGraphics();
+        glow(width).apply(g, shape, 0, 0);
+        g.dispose();
+
+        assertThat(actual.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH))
+            .isEqualTo(expected.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+    }
+
+    private static boolean isInNeighborhoodRange(int argb, BufferedImage img, int x, int y) {
+        for (int shift = 0; shift <= 24; shift += 8) {
+            int value = premultiplied(argb, shift);
+            int min = 255;
+            int max = 0;
+            for (int ny = Math.max(0, y - 1); ny <= Math.min(HEIGHT - 1, y + 1); ny++) {
+                for (int nx = Math.max(0, x - 1); nx <= Math.min(WIDTH - 1, x + 1); nx++) {
+                    int neighbor = premultiplied(img.getRGB(nx, ny), shift);
+                    min = Math.min(min, neighbor);
+                    max = Math.max(max, neighbor);
+                }
+            }
+            if (value < min - TOLERANCE || value > max + TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int premultiplied(int argb, int shift) {
+        int alpha = argb >>> 24;
+        int channel = (argb >>> shift) & 0xFF;
+        return shift == 24 ? alpha : channel * alpha / 255;
+    }
+
+    private static BufferedImage createImage() {
+        return new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+    }
+}
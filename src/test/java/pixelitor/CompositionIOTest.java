@@ -18,15 +18,21 @@
 package pixelitor;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import pixelitor.io.IO;
 import pixelitor.io.OpenRaster;
 import pixelitor.io.PXCFormat;
+import pixelitor.io.PngCompression;
 import pixelitor.layers.*;
+import pixelitor.utils.ImageUtils;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
@@ -175,6 +181,38 @@ class CompositionIOTest {
         tmp.delete();
     }
 
+    @ParameterizedTest
+    @EnumSource(PngCompression.class)
+    void writeManyLayersORA(PngCompression compression) throws Exception {
+        var comp = Composition.createEmpty(30, 20, ImageMode.RGB);
+        Random random = new Random(11);
+        for (int i = 0; i < 12; i++) {
+            BufferedImage img = ImageUtils.createSysCompatibleImage(30, 20);
+            for (int y = 0; y < 20; y++) {
+                for (int x = 0; x < 30; x++) {
+                    img.setRGB(x, y, 0xFF_00_00_00 | random.nextInt());
+                }
+            }
+            comp.addLayerInInitMode(new ImageLayer(comp, img, "layer " + i));
+        }
+
+        File tmp = File.createTempFile("pix_tmp", ".ora");
+        OpenRaster.write(comp, tmp, compression);
+        var readBack = OpenRaster.read(tmp);
+        tmp.delete();
+
+        assertThat(readBack)
+            .numLayersIs(12)
+            .canvasSizeIs(30, 20);
+        for (int i = 0; i < 12; i++) {
+            var expected = ((ImageLayer) comp.getLayer(i)).getImage();
+            var actual = ((ImageLayer) readBack.getLayer(i)).getImage();
+            assertThat(readBack.getLayer(i).getName()).isEqualTo("layer " + i);
+            assertThat(actual.getRGB(0, 0, 30, 20, null, 0, 30))
+                .isEqualTo(expected.getRGB(0, 0, 30, 20, null, 0, 30));
+        }
+    }
+
     private static void checkSingleLayerRead(String fileName) {
         File f = new File(TEST_IMAGES_DIR, fileName);
         var future = IO.loadCompAsync(f);
@@ -21,10 +21,15 @@ import org.junit.jupiter.api.*;
 import pixelitor.Composition.LayerAdder;
 import pixelitor.compactions.Crop;
 import pixelitor.history.History;
+import pixelitor.layers.ImageLayer;
 import pixelitor.layers.Layer;
+import pixelitor.utils.ImageUtils;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 
 import static pixelitor.Composition.LayerAdder.Position.ABOVE_ACTIVE;
 import static pixelitor.Composition.LayerAdder.Position.BELLOW_ACTIVE;
@@ -843,4 +848,40 @@ class CompositionTest {
         // There is no undo at this level
         History.assertNumEditsIs(0);
     }
-}
\ No newline at end of file
+
+    @Test
+    void partialCompositeUpdateMatchesFullUpdate() {
+        // three masked layers: the two layers below the active
+        // layer are cached as a single composite image
+        comp = TestHelper.createComp(3, true);
+        for (int i = 0; i < comp.getNumLayers(); i++) {
+            var layer = (ImageLayer) comp.getLayer(i);
+            fillRect(layer.getImage(), new Color(50 * i, 100, 200, 150), i, i, 12, 6);
+            fillRect(layer.getMask().getImage(), Color.GRAY, 10 - i, 0, 5, 10);
+        }
+        comp.invalidateCompositeCache();
+        comp.getCompositeImage();
+
+        var active = (ImageLayer) comp.getActiveLayer();
+        var dabArea = new Rectangle(3, 2, 6, 5);
+        fillRect(active.getImage(), Color.RED, dabArea.x, dabArea.y, dabArea.width, dabArea.height);
+        fillRect(active.getMask().getImage(), Color.WHITE, dabArea.x, dabArea.y, 2, 2);
+        comp.invalidateCompositeRegion(dabArea);
+        BufferedImage partial = ImageUtils.copyImage(comp.getCompositeImage());
+
+        comp.invalidateCompositeCache();
+        BufferedImage full = comp.getCompositeImage();
+
+        int width = full.getWidth();
+        int height = full.getHeight();
+        assertThat(partial.getRGB(0, 0, width, height, null, 0, width))
+            .isEqualTo(full.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    private static void fillRect(BufferedImage img, Color color, int x, int y, int width, int height) {
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fillRect(x, y, width, height);
+        g.dispose();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ThreadPool tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class ThreadPoolTest {
+    @Test
+    void parallelRowsProcessesEveryRowOnce() {
+        int numRows = 1013;
+        var counts = new AtomicIntegerArray(numRows);
+        ThreadPool.parallelRows(numRows, (startRow, endRow) -> {
+            for (int row = startRow; row < endRow; row++) {
+                counts.incrementAndGet(row);
+            }
+        }, ProgressTracker.NULL_TRACKER);
+
+        for (int row = 0; row < numRows; row++) {
+            assertThat(counts.get(row)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void progressIsReportedOnlyOnTheCallingThread() {
+        int numRows = 500;
+        Thread callingThread = Thread.currentThread();
+        var tracker = new ProgressTracker() {
+            int reportedRows = 0;
+            boolean reportedOnOtherThread = false;
+
+            @Override
+            public void unitDone() {
+                unitsDone(1);
+            }
+
+            @Override
+            public void unitsDone(int units) {
+                if (Thread.currentThread() != callingThread) {
+                    reportedOnOtherThread = true;
+                }
+                reportedRows += units;
+            }
+
+            @Override
+            public void finished() {
+            }
+        };
+
+        ThreadPool.parallelRows(numRows, (startRow, endRow) -> {
+            // slow enough for the helpers to take some bands
+            long end = System.nanoTime() + 200_000;
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+        }, tracker);
+
+        assertThat(tracker.reportedOnOtherThread).isFalse();
+        assertThat(tracker.reportedRows).isEqualTo(numRows);
+    }
+}
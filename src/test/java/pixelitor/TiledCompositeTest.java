@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import org.junit.jupiter.api.*;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.TiledComposite.TILE_SIZE;
+
+@DisplayName("TiledComposite tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class TiledCompositeTest {
+    private static final int WIDTH = 3 * TILE_SIZE + 10;
+    private static final int HEIGHT = 2 * TILE_SIZE + 10;
+
+    private TiledComposite cache;
+
+    @BeforeEach
+    void beforeEachTest() {
+        cache = new TiledComposite();
+        cache.setImage(new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB_PRE), true);
+    }
+
+    @Test
+    void newImageIsValid() {
+        assertThat(cache.isValid()).isTrue();
+        assertThat(cache.canUpdatePartially(WIDTH, HEIGHT)).isTrue();
+        assertThat(cache.canUpdatePartially(WIDTH + 1, HEIGHT)).isFalse();
+    }
+
+    @Test
+    void smallRegionMarksOneTile() {
+        cache.invalidateRegion(new Rectangle(10, 10, 20, 20));
+
+        assertThat(cache.isValid()).isFalse();
+        assertThat(cache.getNumDirtyTiles()).isEqualTo(1);
+        assertThat(cache.getDirtyAreas()).containsExactly(
+            new Rectangle(0, 0, TILE_SIZE, TILE_SIZE));
+
+        cache.markClean();
+        assertThat(cache.isValid()).isTrue();
+    }
+
+    @Test
+    void regionAcrossTilesIsMerged() {
+        cache.invalidateRegion(new Rectangle(TILE_SIZE - 5, TILE_SIZE - 5, 10, 10));
+
+        assertThat(cache.getNumDirtyTiles()).isEqualTo(4);
+        assertThat(cache.getDirtyAreas()).containsExactly(
+            new Rectangle(0, 0, 2 * TILE_SIZE, 2 * TILE_SIZE));
+    }
+
+    @Test
+    void edgeTilesAreClippedToImage() {
+        cache.invalidateRegion(new Rectangle(WIDTH - 2, HEIGHT - 2, 50, 50));
+
+        assertThat(cache.getDirtyAreas()).containsExactly(
+            new Rectangle(3 * TILE_SIZE, 2 * TILE_SIZE, 10, 10));
+    }
+
+    @Test
+    void separateRegionsAreNotMerged() {
+        cache.invalidateRegion(new Rectangle(0, 0, 10, 10));
+        cache.invalidateRegion(new Rectangle(2 * TILE_SIZE, 0, 10, 10));
+
+        assertThat(cache.getDirtyAreas()).containsExactly(
+            new Rectangle(0, 0, TILE_SIZE, TILE_SIZE),
+            new Rectangle(2 * TILE_SIZE, 0, TILE_SIZE, TILE_SIZE));
+    }
+
+    @Test
+    void regionOutsideIsIgnored() {
+        cache.invalidateRegion(new Rectangle(-100, -100, 50, 50));
+
+        assertThat(cache.isValid()).isTrue();
+    }
+
+    @Test
+    void sharedImageIsFullyInvalidated() {
+        cache.setImage(new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB_PRE), false);
+        assertThat(cache.canUpdatePartially(WIDTH, HEIGHT)).isFalse();
+
+        cache.invalidateRegion(new Rectangle(10, 10, 20, 20));
+
+        assertThat(cache.isValid()).isFalse();
+        assertThat(cache.getImage()).isNull();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pixelitor.io.FileFormat;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("BatchPipeline tests")
+class BatchPipelineTest {
+    private static final int NUM_FILES = 10;
+
+    @TempDir
+    File inputDir;
+
+    @TempDir
+    File outputDir;
+
+    @Test
+    void allFilesAreProcessed() throws IOException {
+        List<File> inputFiles = createInputFiles();
+        var pipeline = new BatchPipeline(inputFiles, outputDir,
+            FileFormat.PNG, BatchPipelineTest::invert, 3, 2);
+
+        AtomicInteger lastProgress = new AtomicInteger();
+        var report = pipeline.run(file -> true, lastProgress::set, () -> false);
+
+        assertThat(report.numProcessed()).isEqualTo(NUM_FILES);
+        assertThat(report.numFailed()).isZero();
+        assertThat(lastProgress.get()).isEqualTo(NUM_FILES);
+        for (int i = 0; i < NUM_FILES; i++) {
+            BufferedImage output = ImageIO.read(pipeline.getOutputFile(inputFiles.get(i)));
+            assertThat(output.getRGB(0, 0) & 0xFF_FF_FF).isEqualTo(~i & 0xFF_FF_FF);
+        }
+    }
+
+    @Test
+    void skippedAndFailedFilesAreReported() throws IOException {
+        List<File> inputFiles = createInputFiles();
+        File brokenFile = new File(inputDir, "broken.png");
+        Files.writeString(brokenFile.toPath(), "not a png");
+        inputFiles.add(brokenFile);
+
+        var pipeline = new BatchPipeline(inputFiles, outputDir,
+            FileFormat.PNG, BatchPipelineTest::invert, 2, 2);
+        File skipped = inputFiles.get(0);
+        var report = pipeline.run(file -> !file.equals(skipped), numDone -> {
+        }, () -> false);
+
+        assertThat(report.numProcessed()).isEqualTo(NUM_FILES - 1);
+        assertThat(report.numSkipped()).isEqualTo(1);
+        assertThat(report.numFailed()).isEqualTo(1);
+        assertThat(pipeline.getErrors()).hasSize(1);
+        assertThat(pipeline.getOutputFile(skipped)).doesNotExist();
+    }
+
+    private List<File> createInputFiles() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < NUM_FILES; i++) {
+            BufferedImage img = new BufferedImage(8, 6, TYPE_INT_RGB);
+            img.setRGB(0, 0, i);
+            File file = new File(inputDir, "input" + i + ".png");
+            ImageIO.write(img, "png", file);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static BufferedImage invert(BufferedImage src) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        var dest = new BufferedImage(width, height, TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                dest.setRGB(x, y, ~src.getRGB(x, y));
+            }
+        }
+        return dest;
+    }
+}
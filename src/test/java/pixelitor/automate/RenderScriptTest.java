@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import pixelitor.TestHelper;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("RenderScript tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class RenderScriptTest {
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    void stepsAreParsedInOrder() {
+        RenderScript script = RenderScript.parse(List.of(
+            "# a comment",
+            "",
+            "fit 50 50",
+            "filter JHGaussianBlur",
+            "    Radius = 3",
+            "rotate 90",
+            "crop 0 0 10 20"));
+
+        assertThat(script.getSteps())
+            .extracting(RenderScript.Step::getName)
+            .containsExactly("Fit", "Gaussian Blur", "Rotate 90", "Crop");
+    }
+
+    @Test
+    void geometryStepsChangeTheSize() {
+        RenderScript script = RenderScript.parse(List.of(
+            "fit 50 50",
+            "rotate 90",
+            "crop 5 5 100 10"));
+
+        BufferedImage result = script.apply(new BufferedImage(100, 40, TYPE_INT_ARGB));
+
+        // 100x40 => 50x20 => 20x50 => cropped to the image
+        assertThat(result.getWidth()).isEqualTo(15);
+        assertThat(result.getHeight()).isEqualTo(10);
+    }
+
+    @Test
+    void errorsContainTheLineNumber() {
+        assertThatThrownBy(() -> RenderScript.parse(List.of("fit 10 10", "blur 3")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("line 2:");
+
+        assertThatThrownBy(() -> RenderScript.parse(List.of(
+            "filter JHGaussianBlur", "    NoSuchParam = 3")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("line 1:");
+
+        assertThatThrownBy(() -> RenderScript.parse(List.of("filter NoSuchFilter")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("NoSuchFilter");
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pixelitor.Canvas;
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+import pixelitor.filters.jhlabsproxies.JHCells;
+import pixelitor.filters.jhlabsproxies.JHSwirlPinchBulge;
+import pixelitor.filters.jhlabsproxies.JHWaves;
+import pixelitor.layers.Drawable;
+import pixelitor.utils.Rnd;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("ParametrizedFilter tests")
+class ParametrizedFilterTest {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 80;
+
+    private static Drawable dr;
+    private static BufferedImage src;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+
+        Composition comp = mock(Composition.class);
+        when(comp.getCanvas()).thenReturn(new Canvas(WIDTH, HEIGHT));
+        dr = mock(Drawable.class);
+        when(dr.getComp()).thenReturn(comp);
+
+        Random random = new Random(7);
+        src = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                src.setRGB(x, y, random.nextInt() | 0xFF_00_00_00);
+            }
+        }
+    }
+
+    // the randomized settings are not rounded like the
+    // values in the presets, and they can be out of the default ranges
+    @ParameterizedTest
+    @ValueSource(classes = {ChannelMixer.class, JHSwirlPinchBulge.class, Solarize.class, Marble.class})
+    void previewCopyGivesTheSameResult(Class<? extends ParametrizedFilter> filterClass) throws Exception {
+        // the randomized settings are reproducible
+        Rnd.setSeed(42);
+
+        ParametrizedFilter filter = filterClass.getDeclaredConstructor().newInstance();
+        filter.setName(filterClass.getSimpleName());
+        filter.getParamSet().updateOptions(dr);
+        filter.randomizeSettings();
+
+        Filter copy = filter.copyForPreview(dr);
+        assertThat(copy).isNotNull().isNotSameAs(filter);
+
+        BufferedImage expected = filter.transformImage(src);
+        BufferedImage actual = copy.transformImage(src);
+        assertThat(getPixels(actual)).isEqualTo(getPixels(expected));
+
+        // changing the original doesn't affect the copy
+        filter.randomizeSettings();
+        assertThat(getPixels(copy.transformImage(src))).isEqualTo(getPixels(expected));
+    }
+
+    @Test
+    void filtersReseedingTheNoiseHaveNoAsyncPreview() {
+        assertThat(new Marble().supportsAsyncPreview()).isFalse();
+        assertThat(new JHWaves().supportsAsyncPreview()).isFalse();
+        assertThat(new JHCells().supportsAsyncPreview()).isFalse();
+        assertThat(new ChannelMixer().supportsAsyncPreview()).isTrue();
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return img.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+    }
+}
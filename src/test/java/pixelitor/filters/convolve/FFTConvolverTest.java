@@ -0,0 +1,172 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.convolve;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static com.jhlabs.image.ConvolveFilter.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("FFTConvolver tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class FFTConvolverTest {
+    private static final float TOLERANCE = 0.01f;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5, 6, 7, 12, 30, 49, 60, 97, 128, 243, 1000})
+    void fftSameAsDFT(int n) {
+        Random random = new Random(n);
+        float[] re = new float[n];
+        float[] im = new float[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = random.nextFloat();
+            im[i] = random.nextFloat();
+        }
+
+        float[] outRe = new float[n];
+        float[] outIm = new float[n];
+        MixedRadixFFT.forSize(n).transform(re, im, 0, 1, outRe, outIm);
+
+        for (int k = 0; k < n; k++) {
+            double sumRe = 0;
+            double sumIm = 0;
+            for (int j = 0; j < n; j++) {
+                double angle = -2 * Math.PI * j * k / n;
+                sumRe += re[j] * Math.cos(angle) - im[j] * Math.sin(angle);
+                sumIm += re[j] * Math.sin(angle) + im[j] * Math.cos(angle);
+            }
+            assertThat(outRe[k]).isCloseTo((float) sumRe, within(TOLERANCE));
+            assertThat(outIm[k]).isCloseTo((float) sumIm, within(TOLERANCE));
+        }
+    }
+
+    @Test
+    void goodSize() {
+        assertThat(MixedRadixFFT.goodSize(1)).isEqualTo(1);
+        assertThat(MixedRadixFFT.goodSize(7)).isEqualTo(8);
+        assertThat(MixedRadixFFT.goodSize(11)).isEqualTo(12);
+        assertThat(MixedRadixFFT.goodSize(1001)).isEqualTo(1024);
+        assertThat(MixedRadixFFT.goodSize(2049)).isEqualTo(2160);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "40, 30, 7, 5, 1",
+        "40, 30, 5, 9, 0",
+        "33, 17, 9, 9, 2",
+        "3, 4, 11, 11, 1", // larger than the image
+        "3000, 5, 7, 3, 1", // tiled horizontally
+        "4, 2500, 3, 35, 1", // tiled vertically
+        "2100, 2100, 3, 3, 0", // tiled in both directions
+    })
+    void sameAsSpatial(int width, int height, int kernelWidth, int kernelHeight, int edgeAction) {
+        Random random = new Random(width * 31L + height);
+        float[] kernel = new float[kernelWidth * kernelHeight];
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] = random.nextFloat() - 0.3f;
+        }
+        float[][] planes = new float[3][width * height];
+        for (float[] plane : planes) {
+            for (int i = 0; i < plane.length; i++) {
+                plane[i] = random.nextInt(256);
+            }
+        }
+        float[][] expected = new float[3][];
+        for (int i = 0; i < planes.length; i++) {
+            expected[i] = spatial(planes[i], width, height, kernel, kernelWidth, kernelHeight, edgeAction);
+        }
+
+        new FFTConvolver(kernel, kernelWidth, kernelHeight)
+            .convolve(planes, width, height, edgeAction, NULL_TRACKER);
+
+        for (int i = 0; i < planes.length; i++) {
+            for (int j = 0; j < planes[i].length; j++) {
+                assertThat(planes[i][j]).isCloseTo(expected[i][j], within(0.5f));
+            }
+        }
+    }
+
+    @Test
+    void lines() {
+        int length = 53;
+        Random random = new Random(1);
+        float[] kernel = new float[15];
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] = random.nextFloat();
+        }
+        float[] line0 = new float[length];
+        float[] line1 = new float[length];
+        for (int i = 0; i < length; i++) {
+            line0[i] = random.nextInt(256);
+            line1[i] = random.nextInt(256);
+        }
+        float[] expected0 = spatial(line0, length, 1, kernel, kernel.length, 1, CLAMP_EDGES);
+        float[] expected1 = spatial(line1, length, 1, kernel, kernel.length, 1, CLAMP_EDGES);
+
+        new FFTConvolver.LineConvolver(kernel, length).convolve(line0, line1);
+
+        for (int i = 0; i < length; i++) {
+            assertThat(line0[i]).isCloseTo(expected0[i], within(TOLERANCE));
+            assertThat(line1[i]).isCloseTo(expected1[i], within(TOLERANCE));
+        }
+    }
+
+    private static float[] spatial(float[] plane, int width, int height,
+                                   float[] kernel, int kernelWidth, int kernelHeight, int edgeAction) {
+        float[] result = new float[plane.length];
+        int cx = kernelWidth / 2;
+        int cy = kernelHeight / 2;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double sum = 0;
+                for (int ky = 0; ky < kernelHeight; ky++) {
+                    int sy = edge(y + ky - cy, height, edgeAction);
+                    for (int kx = 0; kx < kernelWidth; kx++) {
+                        int sx = edge(x + kx - cx, width, edgeAction);
+                        if (sx >= 0 && sy >= 0) {
+                            sum += kernel[ky * kernelWidth + kx] * plane[sy * width + sx];
+                        }
+                    }
+                }
+                result[y * width + x] = (float) sum;
+            }
+        }
+        return result;
+    }
+
+    private static int edge(int c, int length, int edgeAction) {
+        if (c >= 0 && c < length) {
+            return c;
+        }
+        return switch (edgeAction) {
+            case CLAMP_EDGES -> c < 0 ? 0 : length - 1;
+            case WRAP_EDGES -> Math.floorMod(c, length);
+            default -> -1;
+        };
+    }
+}
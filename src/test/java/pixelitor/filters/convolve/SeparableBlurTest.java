@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.convolve;
+
+import com.jhlabs.image.BoxBlurFilter;
+import com.jhlabs.image.GaussianFilter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.image.Kernel;
+import java.util.Random;
+
+import static com.jhlabs.image.ConvolveFilter.CLAMP_EDGES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("SeparableBlur tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class SeparableBlurTest {
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 110;
+
+    @ParameterizedTest
+    @CsvSource({"30, 5", "60, 4", "100, 3", "200, 2"}) // the radii where it is used
+    void recursiveGaussianSameAsKernel(float radius, int maxDifference) {
+        int[] pixels = createBlockPixels();
+        Kernel kernel = GaussianFilter.makeKernel(radius);
+
+        int[] tmp = new int[pixels.length];
+        int[] expected = new int[pixels.length];
+        GaussianFilter.convolveAndTranspose(kernel, pixels, tmp, WIDTH, HEIGHT, true, false, CLAMP_EDGES, NULL_TRACKER);
+        GaussianFilter.convolveAndTranspose(kernel, tmp, expected, HEIGHT, WIDTH, false, true, CLAMP_EDGES, NULL_TRACKER);
+
+        var blur = new RecursiveGaussian(radius / 3.0);
+        int[] result = new int[pixels.length];
+        blur.blurAndTranspose(pixels, tmp, WIDTH, HEIGHT, true, false, NULL_TRACKER);
+        blur.blurAndTranspose(tmp, result, HEIGHT, WIDTH, false, true, NULL_TRACKER);
+
+        assertThat(maxChannelDifference(result, expected)).isLessThanOrEqualTo(maxDifference);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, 1", "4, 3", "10, 3", "25, 2"})
+    void extendedBoxSameAsBoxes(int radius, int numPasses) {
+        int[] pixels = createBlockPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= 0xFF_00_00_00; // BoxBlurFilter.blur doesn't premultiply
+        }
+
+        int[] expected = pixels.clone();
+        int[] tmp = new int[pixels.length];
+        for (int i = 0; i < numPasses; i++) {
+            BoxBlurFilter.blur(expected, tmp, WIDTH, HEIGHT, radius, NULL_TRACKER);
+            BoxBlurFilter.blur(tmp, expected, HEIGHT, WIDTH, radius, NULL_TRACKER);
+        }
+
+        var blur = new ExtendedBoxBlur(ExtendedBoxBlur.boxSigma(radius, numPasses), numPasses);
+        int[] result = new int[pixels.length];
+        blur.blurAndTranspose(pixels, tmp, WIDTH, HEIGHT, false, false, NULL_TRACKER);
+        blur.blurAndTranspose(tmp, result, HEIGHT, WIDTH, false, false, NULL_TRACKER);
+
+        // the box blur truncates after each pass, the extended box blur rounds at the end
+        assertThat(maxChannelDifference(result, expected)).isLessThanOrEqualTo(2 * numPasses);
+    }
+
+    // random rectangles with random colors and transparencies,
+    // so that there are sharp edges and smooth areas
+    private static int[] createBlockPixels() {
+        Random random = new Random(7);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < 40; i++) {
+            int color = random.nextInt();
+            int x0 = random.nextInt(WIDTH);
+            int y0 = random.nextInt(HEIGHT);
+            int x1 = Math.min(WIDTH, x0 + 1 + random.nextInt(50));
+            int y1 = Math.min(HEIGHT, y0 + 1 + random.nextInt(50));
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    pixels[y * WIDTH + x] = color;
+                }
+            }
+        }
+        return pixels;
+    }
+
+    // compares the premultiplied values, because the colors
+    // of the almost transparent pixels are not precise
+    private static int maxChannelDifference(int[] a, int[] b) {
+        float max = 0;
+        for (int i = 0; i < a.length; i++) {
+            float alphaA = (a[i] >>> 24) / 255.0f;
+            float alphaB = (b[i] >>> 24) / 255.0f;
+            max = Math.max(max, Math.abs(alphaA - alphaB) * 255);
+            for (int shift = 0; shift < 24; shift += 8) {
+                float diff = ((a[i] >>> shift) & 0xFF) * alphaA - ((b[i] >>> shift) & 0xFF) * alphaB;
+                max = Math.max(max, Math.abs(diff));
+            }
+        }
+        return Math.round(max);
+    }
+}
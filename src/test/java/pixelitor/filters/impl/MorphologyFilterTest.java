@@ -0,0 +1,190 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.filters.impl.MorphologyFilter.*;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("MorphologyFilter tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class MorphologyFilterTest {
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    @ParameterizedTest
+    @CsvSource({
+        "1, 4, 1, true",
+        "2, 4, 3, false",
+        "1, 3, 1, false",
+        "2, 3, 2, true",
+        "1, 3, 5, true",
+        "2, 3, 6, false",
+        "1, 5, 1, true",
+        "2, 5, 4, false",
+        "1, 5, 9, true",
+        "1, 4, 30, false", // larger than the image
+        "2, 3, 30, true",
+    })
+    void erodeAndDilateSameAsBruteForce(int op, int kernel, int radius, boolean opaque) {
+        int[] pixels = createRandomPixels(opaque);
+
+        int[] result = createFilter(op, kernel, radius)
+            .filterPixels(WIDTH, HEIGHT, pixels.clone(), null);
+
+        int[] expected = bruteForce(pixels, kernel, radius, op == OP_ERODE, !opaque);
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"10, 4, 2", "11, 3, 3", "12, 5, 4", "13, 4, 1", "14, 3, 2"})
+    void compositeOpsSameAsBruteForce(int op, int kernel, int radius) {
+        int[] pixels = createRandomPixels(true);
+
+        int[] result = createFilter(op, kernel, radius)
+            .filterPixels(WIDTH, HEIGHT, pixels.clone(), null);
+
+        int[] eroded = bruteForce(pixels, kernel, radius, true, false);
+        int[] dilated = bruteForce(pixels, kernel, radius, false, false);
+        int[] expected = switch (op) {
+            case OP_OPEN -> bruteForce(eroded, kernel, radius, false, false);
+            case OP_CLOSE -> bruteForce(dilated, kernel, radius, true, false);
+            case OP_GRADIENT -> subtract(dilated, eroded);
+            case OP_TOP_HAT -> subtract(pixels, bruteForce(eroded, kernel, radius, false, false));
+            case OP_BLACK_HAT -> subtract(bruteForce(dilated, kernel, radius, true, false), pixels);
+            default -> throw new IllegalStateException("op = " + op);
+        };
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    void grayImage() {
+        int[] pixels = createRandomPixels(true);
+        var src = new BufferedImage(WIDTH, HEIGHT, TYPE_BYTE_GRAY);
+        byte[] srcData = new byte[pixels.length];
+        int[] expectedInput = new int[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            srcData[i] = (byte) pixels[i];
+            expectedInput[i] = pixels[i] & 0xFF;
+        }
+        src.getRaster().setDataElements(0, 0, WIDTH, HEIGHT, srcData);
+
+        BufferedImage dest = createFilter(OP_DILATE, KERNEL_DISK, 3).filterGray(src);
+
+        assertThat(dest.getType()).isEqualTo(TYPE_BYTE_GRAY);
+        byte[] destData = (byte[]) dest.getRaster().getDataElements(0, 0, WIDTH, HEIGHT, null);
+        int[] expected = bruteForce(expectedInput, KERNEL_DISK, 3, false, true);
+        for (int i = 0; i < destData.length; i++) {
+            assertThat(destData[i] & 0xFF).isEqualTo(expected[i] & 0xFF);
+        }
+    }
+
+    private static MorphologyFilter createFilter(int op, int kernel, int radius) {
+        var filter = new MorphologyFilter("Test");
+        filter.setProgressTracker(NULL_TRACKER);
+        filter.setOp(op);
+        filter.setKernel(kernel);
+        filter.setRadius(radius);
+        return filter;
+    }
+
+    private static int[] createRandomPixels(boolean opaque) {
+        Random random = new Random(opaque ? 42 : 43);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+            if (opaque) {
+                pixels[i] |= 0xFF_00_00_00;
+            }
+        }
+        return pixels;
+    }
+
+    private static boolean inKernel(int kernel, int radius, int dx, int dy) {
+        return switch (kernel) {
+            case KERNEL_SQUARE -> true;
+            case KERNEL_DIAMOND -> Math.abs(dx) + Math.abs(dy) <= radius;
+            case KERNEL_DISK -> {
+                // the octagon: a square followed by a diamond
+                int a = (int) Math.round(radius * (Math.sqrt(2) - 1));
+                int b = radius - a;
+                int ex = Math.max(0, Math.abs(dx) - a);
+                int ey = Math.max(0, Math.abs(dy) - a);
+                yield ex + ey <= b;
+            }
+            default -> throw new IllegalStateException("kernel = " + kernel);
+        };
+    }
+
+    // checks all the pixels of the structuring element inside the image
+    private static int[] bruteForce(int[] pixels, int kernel, int radius,
+                                    boolean erode, boolean withAlpha) {
+        int numChannels = withAlpha ? 4 : 3;
+        int[] result = new int[pixels.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int index = y * WIDTH + x;
+                int pixel = withAlpha ? 0 : pixels[index] & 0xFF_00_00_00;
+                for (int c = 0; c < numChannels; c++) {
+                    int shift = 8 * c;
+                    int value = erode ? 255 : 0;
+                    for (int dy = -radius; dy <= radius; dy++) {
+                        for (int dx = -radius; dx <= radius; dx++) {
+                            int sx = x + dx;
+                            int sy = y + dy;
+                            if (sx < 0 || sx >= WIDTH || sy < 0 || sy >= HEIGHT
+                                || !inKernel(kernel, radius, dx, dy)) {
+                                continue;
+                            }
+                            int v = (pixels[sy * WIDTH + sx] >>> shift) & 0xFF;
+                            value = erode ? Math.min(value, v) : Math.max(value, v);
+                        }
+                    }
+                    pixel |= value << shift;
+                }
+                result[index] = pixel;
+            }
+        }
+        return result;
+    }
+
+    // subtracts the colors and keeps the alpha of the first argument
+    private static int[] subtract(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        for (int i = 0; i < a.length; i++) {
+            int pixel = a[i] & 0xFF_00_00_00;
+            for (int shift = 0; shift < 24; shift += 8) {
+                int diff = ((a[i] >>> shift) & 0xFF) - ((b[i] >>> shift) & 0xFF);
+                pixel |= diff << shift;
+            }
+            result[i] = pixel;
+        }
+        return result;
+    }
+}
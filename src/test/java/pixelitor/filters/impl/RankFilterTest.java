@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("RankFilter tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class RankFilterTest {
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    @ParameterizedTest
+    @CsvSource({
+        "1, 50, true",
+        "3, 50, false",
+        "5, 0, true",
+        "5, 100, false",
+        "2, 25, false",
+        "30, 50, true", // larger than the image
+    })
+    void sameAsBruteForce(int radius, double percentile, boolean opaque) {
+        int[] pixels = createRandomPixels(opaque);
+
+        var filter = new RankFilter("Test");
+        filter.setProgressTracker(NULL_TRACKER);
+        filter.setRadius(radius);
+        filter.setPercentile(percentile);
+        int[] result = filter.filterPixels(WIDTH, HEIGHT, pixels.clone(), null);
+
+        assertThat(result).isEqualTo(bruteForce(pixels, radius, percentile));
+    }
+
+    private static int[] createRandomPixels(boolean opaque) {
+        Random random = new Random(opaque ? 42 : 43);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+            if (opaque) {
+                pixels[i] |= 0xFF_00_00_00;
+            }
+        }
+        return pixels;
+    }
+
+    // sorts the clamped neighborhood of each pixel
+    private static int[] bruteForce(int[] pixels, int radius, double percentile) {
+        int diameter = 2 * radius + 1;
+        int rank = (int) Math.round(percentile / 100.0 * (diameter * diameter - 1));
+        int[] result = new int[pixels.length];
+        int[] values = new int[diameter * diameter];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int pixel = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int n = 0;
+                    for (int dy = -radius; dy <= radius; dy++) {
+                        int sy = Math.min(Math.max(y + dy, 0), HEIGHT - 1);
+                        for (int dx = -radius; dx <= radius; dx++) {
+                            int sx = Math.min(Math.max(x + dx, 0), WIDTH - 1);
+                            values[n++] = (pixels[sy * WIDTH + sx] >>> shift) & 0xFF;
+                        }
+                    }
+                    Arrays.sort(values);
+                    pixel |= values[rank] << shift;
+                }
+                result[y * WIDTH + x] = pixel;
+            }
+        }
+        return result;
+    }
+}
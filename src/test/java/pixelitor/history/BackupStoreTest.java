@@ -0,0 +1,154 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.history;
+
+import org.junit.jupiter.api.*;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("BackupStore tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class BackupStoreTest {
+    private static final int SIZE = 200;
+
+    private long origBudget;
+    private final List<StoredBackup> backups = new ArrayList<>();
+    private final Random rnd = new Random(11);
+
+    @BeforeEach
+    void beforeEachTest() {
+        origBudget = BackupStore.getMemoryBudget();
+    }
+
+    @AfterEach
+    void afterEachTest() {
+        backups.forEach(BackupStore::dispose);
+        BackupStore.setMemoryBudget(origBudget);
+        BackupStore.waitForBudget();
+        assertThat(BackupStore.getMemoryUsage()).isZero();
+        assertThat(BackupStore.getFileUsage()).isZero();
+    }
+
+    @Test
+    void recentBackupsAreKeptAsTheyAre() throws IOException {
+        BufferedImage img = createRandomImage(TYPE_INT_ARGB);
+        StoredBackup backup = store(img);
+        BackupStore.waitForBudget();
+
+        assertThat(backup.getImage()).isSameAs(img);
+        assertThat(BackupStore.getMemoryUsage()).isEqualTo(4L * SIZE * SIZE);
+    }
+
+    @Test
+    void oldBackupsAreCompressed() throws IOException {
+        BufferedImage first = createRandomImage(TYPE_INT_ARGB);
+        StoredBackup firstBackup = store(first);
+        BufferedImage second = createRandomImage(TYPE_BYTE_GRAY);
+        StoredBackup secondBackup = store(second);
+
+        // only the size of the first image is allowed
+        BackupStore.setMemoryBudget(4L * SIZE * SIZE);
+        BackupStore.waitForBudget();
+
+        assertThat(BackupStore.getMemoryUsage()).isLessThanOrEqualTo(4L * SIZE * SIZE);
+        assertSameImage(firstBackup.getImage(), first);
+        assertSameImage(secondBackup.getImage(), second);
+    }
+
+    @Test
+    void backupsAreMovedToFile() throws IOException {
+        List<BufferedImage> images = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            images.add(createRandomImage(TYPE_INT_ARGB));
+            store(images.get(i));
+        }
+
+        BackupStore.setMemoryBudget(0);
+        BackupStore.waitForBudget();
+
+        assertThat(BackupStore.getMemoryUsage()).isZero();
+        assertThat(BackupStore.getFileUsage()).isPositive();
+        for (int i = 0; i < images.size(); i++) {
+            assertSameImage(backups.get(i).getImage(), images.get(i));
+        }
+    }
+
+    @Test
+    void rastersAreRestoredAtTheirLocation() throws IOException {
+        BufferedImage img = createRandomImage(TYPE_INT_ARGB);
+        Rectangle area = new Rectangle(20, 30, 50, 40);
+        Raster raster = img.getData(area);
+        StoredBackup backup = BackupStore.store(raster);
+        backups.add(backup);
+
+        BackupStore.setMemoryBudget(0);
+        BackupStore.waitForBudget();
+
+        Raster restored = backup.getRaster();
+        assertThat(restored.getBounds()).isEqualTo(area);
+        assertThat(restored.getPixels(20, 30, 50, 40, (int[]) null))
+            .isEqualTo(raster.getPixels(20, 30, 50, 40, (int[]) null));
+    }
+
+    @Test
+    void subImagesAreCopied() throws IOException {
+        BufferedImage img = createRandomImage(TYPE_INT_ARGB);
+        BufferedImage subImage = img.getSubimage(10, 10, 50, 60);
+        StoredBackup backup = store(subImage);
+
+        assertThat(BackupStore.getMemoryUsage()).isEqualTo(4L * 50 * 60);
+        BackupStore.setMemoryBudget(0);
+        BackupStore.waitForBudget();
+
+        assertSameImage(backup.getImage(), subImage);
+    }
+
+    private StoredBackup store(BufferedImage img) {
+        StoredBackup backup = BackupStore.store(img);
+        backups.add(backup);
+        return backup;
+    }
+
+    private BufferedImage createRandomImage(int type) {
+        BufferedImage img = new BufferedImage(SIZE, SIZE, type);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                img.setRGB(x, y, rnd.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static void assertSameImage(BufferedImage actual, BufferedImage expected) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        assertThat(actual.getType()).isEqualTo(expected.getType());
+        assertThat(actual.getRGB(0, 0, width, height, null, 0, width))
+            .isEqualTo(expected.getRGB(0, 0, width, height, null, 0, width));
+    }
+}
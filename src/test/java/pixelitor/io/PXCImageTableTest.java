@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.ThreadPool;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pixelitor.io.PXCImageTable.STRIP_HEIGHT;
+
+@DisplayName("PXCImageTable tests")
+class PXCImageTableTest {
+    private final Random rnd = new Random(7);
+
+    @Test
+    void imagesAreReadBack() throws IOException {
+        BufferedImage[] images = {
+            createRandomImage(300, 2 * STRIP_HEIGHT + 3, TYPE_INT_ARGB),
+            createRandomImage(17, 5, TYPE_BYTE_GRAY),
+            createRandomImage(40, STRIP_HEIGHT, TYPE_INT_RGB),
+        };
+        byte[] data = write(images);
+
+        PXCImageTable table = PXCImageTable.read(toInput(data), -1);
+        for (int i = 0; i < images.length; i++) {
+            assertSameImage(table.getImage(i), images[i]);
+        }
+    }
+
+    @Test
+    void singleImageCanBeRead() throws IOException {
+        BufferedImage[] images = {
+            createRandomImage(30, 20, TYPE_INT_ARGB),
+            createRandomImage(50, 600, TYPE_INT_ARGB),
+        };
+        byte[] data = write(images);
+
+        PXCImageTable table = PXCImageTable.read(toInput(data), 0);
+        assertSameImage(table.getImage(0), images[0]);
+        assertThatThrownBy(() -> table.getImage(1))
+            .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void subImagesAreWrittenCorrectly() throws IOException {
+        BufferedImage img = createRandomImage(100, 100, TYPE_INT_ARGB);
+        BufferedImage subImage = img.getSubimage(10, 20, 30, 40);
+        byte[] data = write(subImage);
+
+        BufferedImage readBack = PXCImageTable.read(toInput(data), -1).getImage(0);
+        assertSameImage(readBack, subImage);
+    }
+
+    @Test
+    void laterEditsAreNotWritten() throws IOException {
+        BufferedImage img = createRandomImage(80, 3 * STRIP_HEIGHT, TYPE_INT_ARGB);
+        BufferedImage original = ImageUtils.copyImage(img);
+
+        PXCImageTable table = new PXCImageTable();
+        table.add(img);
+        // edited while the strips might still be compressed
+        img.getRaster().setDataElements(0, 0, 80, STRIP_HEIGHT, new int[80 * STRIP_HEIGHT]);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            table.writeTo(out, ProgressTracker.NULL_TRACKER);
+        }
+        BufferedImage readBack = PXCImageTable.read(toInput(bytes.toByteArray()), -1).getImage(0);
+        assertSameImage(readBack, original);
+    }
+
+    @Test
+    void truncatedDataIsDetected() throws IOException {
+        byte[] data = write(createRandomImage(100, 100, TYPE_INT_ARGB));
+        byte[] truncated = new byte[data.length - 10];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        assertThatThrownBy(() -> PXCImageTable.read(toInput(truncated), -1).getImage(0))
+            .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    @DisplayName("strips are processed when all pool threads are waiting")
+    void poolThreadsDoNotDeadlock() throws Exception {
+        BufferedImage img = createRandomImage(64, 5 * STRIP_HEIGHT, TYPE_INT_ARGB);
+
+        // occupy every pool thread with a job that also needs the pool
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        CompletableFuture<?>[] jobs = new CompletableFuture<?>[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            jobs[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    byte[] data = write(img);
+                    assertSameImage(PXCImageTable.read(toInput(data), -1).getImage(0), img);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ThreadPool.getExecutor());
+        }
+        CompletableFuture.allOf(jobs).get(30, TimeUnit.SECONDS);
+    }
+
+    private static byte[] write(BufferedImage... images) throws IOException {
+        PXCImageTable table = new PXCImageTable();
+        for (BufferedImage img : images) {
+            table.add(img);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            table.writeTo(out, ProgressTracker.NULL_TRACKER);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream toInput(byte[] data) {
+        return new DataInputStream(new ByteArrayInputStream(data));
+    }
+
+    private BufferedImage createRandomImage(int width, int height, int type) {
+        BufferedImage img = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, rnd.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static void assertSameImage(BufferedImage actual, BufferedImage expected) {
+        assertThat(actual.getType()).isEqualTo(expected.getType());
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        assertThat(actual.getWidth()).isEqualTo(width);
+        assertThat(actual.getHeight()).isEqualTo(height);
+        assertThat(actual.getRGB(0, 0, width, height, null, 0, width))
+            .isEqualTo(expected.getRGB(0, 0, width, height, null, 0, width));
+    }
+}
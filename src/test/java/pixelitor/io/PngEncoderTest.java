@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_BYTE_INDEXED;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("PngEncoder/PngDecoder tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class PngEncoderTest {
+    private final Random rnd = new Random(13);
+
+    // the 300x500 images are compressed in several chunks
+    @ParameterizedTest
+    @CsvSource({
+        "300, 500, 2, FASTEST", "300, 500, 2, BALANCED", "300, 500, 2, SMALLEST",
+        "1, 1, 2, BALANCED", "17, 9, 1, BALANCED",
+        "300, 500, 1, BALANCED", "300, 500, 10, SMALLEST",
+        "37, 600, 4, FASTEST", "29, 31, 10, BALANCED",
+    })
+    void encodedImagesAreReadByImageIO(int width, int height, int type, PngCompression compression) throws IOException {
+        BufferedImage img = createNoisyImage(width, height, type);
+        byte[] png = PngEncoder.toBytes(img, compression);
+
+        BufferedImage readBack = ImageIO.read(new ByteArrayInputStream(png));
+        assertSamePixels(readBack, img);
+    }
+
+    @Test
+    void premultipliedImagesAreUnpremultiplied() throws IOException {
+        BufferedImage img = createNoisyImage(40, 30, TYPE_INT_ARGB_PRE);
+        byte[] png = PngEncoder.toBytes(img, PngCompression.BALANCED);
+
+        BufferedImage readBack = ImageIO.read(new ByteArrayInputStream(png));
+        int[] expected = img.getRGB(0, 0, 40, 30, null, 0, 40);
+        int[] actual = readBack.getRGB(0, 0, 40, 30, null, 0, 40);
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int diff = ((expected[i] >>> shift) & 0xFF) - ((actual[i] >>> shift) & 0xFF);
+                assertThat(Math.abs(diff)).isLessThanOrEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    void subImagesAreEncodedCorrectly() throws IOException {
+        BufferedImage img = createNoisyImage(100, 100, TYPE_INT_ARGB);
+        BufferedImage subImage = img.getSubimage(10, 20, 30, 40);
+        byte[] png = PngEncoder.toBytes(subImage, PngCompression.BALANCED);
+
+        assertSamePixels(PngDecoder.read(new ByteArrayInputStream(png), NULL_TRACKER), subImage);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"300, 500, 2", "300, 500, 1", "300, 500, 10", "1, 1, 2", "41, 1000, 10"})
+    void encodedImagesAreDecoded(int width, int height, int type) throws IOException {
+        BufferedImage img = createNoisyImage(width, height, type);
+        byte[] png = PngEncoder.toBytes(img, PngCompression.BALANCED);
+
+        BufferedImage readBack = PngDecoder.read(new ByteArrayInputStream(png), NULL_TRACKER);
+        assertThat(readBack.getType()).isEqualTo(type == TYPE_INT_ARGB_PRE ? TYPE_INT_ARGB : type);
+        assertSamePixels(readBack, img);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"300, 500, 2", "300, 500, 1", "300, 500, 10", "64, 3, 6", "64, 3, 5"})
+    void imageIOOutputIsDecoded(int width, int height, int type) throws IOException {
+        BufferedImage img = createNoisyImage(width, height, type);
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+
+        BufferedImage readBack = PngDecoder.read(new ByteArrayInputStream(out.toByteArray()), NULL_TRACKER);
+        assertSamePixels(readBack, img);
+    }
+
+    @Test
+    void indexedImagesAreLeftToImageIO() throws IOException {
+        BufferedImage img = createNoisyImage(20, 20, TYPE_BYTE_INDEXED);
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+
+        assertThat(PngDecoder.read(new ByteArrayInputStream(out.toByteArray()), NULL_TRACKER)).isNull();
+    }
+
+    @Test
+    void corruptDataIsDetected() {
+        byte[] png = PngEncoder.toBytes(createNoisyImage(50, 50, TYPE_INT_ARGB), PngCompression.BALANCED);
+        png[png.length / 2] ^= 0x10;
+
+        assertThatThrownBy(() -> PngDecoder.read(new ByteArrayInputStream(png), NULL_TRACKER))
+            .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void adler32ChecksumsAreCombined() {
+        byte[] data = new byte[100_000];
+        rnd.nextBytes(data);
+        int split = 71_234;
+
+        var first = new Adler32();
+        first.update(data, 0, split);
+        var second = new Adler32();
+        second.update(data, split, data.length - split);
+        var whole = new Adler32();
+        whole.update(data);
+
+        assertThat(PngEncoder.combineAdler32(first.getValue(), second.getValue(), data.length - split))
+            .isEqualTo(whole.getValue());
+    }
+
+    // smooth gradients with noise, so that the filters make a difference
+    private BufferedImage createNoisyImage(int width, int height, int type) {
+        BufferedImage img = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int a = type == TYPE_INT_ARGB_PRE ? 255 - (y % 256) : rnd.nextInt(256);
+                int r = (x + rnd.nextInt(8)) & 0xFF;
+                int g = (y + rnd.nextInt(8)) & 0xFF;
+                int b = (x + y) & 0xFF;
+                img.setRGB(x, y, a << 24 | r << 16 | g << 8 | b);
+            }
+        }
+        return img;
+    }
+
+    private static void assertSamePixels(BufferedImage actual, BufferedImage expected) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        assertThat(actual.getWidth()).isEqualTo(width);
+        assertThat(actual.getHeight()).isEqualTo(height);
+        assertThat(actual.getRGB(0, 0, width, height, null, 0, width))
+            .isEqualTo(expected.getRGB(0, 0, width, height, null, 0, width));
+    }
+}
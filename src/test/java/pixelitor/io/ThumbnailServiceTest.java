@@ -0,0 +1,209 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.io.TempDir;
+import pixelitor.gui.utils.ThumbInfo;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("ThumbnailService tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class ThumbnailServiceTest {
+    private static final long MEMORY_LIMIT = 1024 * 1024;
+    private static final long DISK_LIMIT = 1024 * 1024;
+
+    // a requested size that is not rounded up
+    private static final int SIZE = 128;
+
+    @TempDir
+    File imagesDir;
+
+    @TempDir
+    File cacheDir;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        ThumbnailService.setUseDiskCache(true);
+    }
+
+    private ThumbnailService createService(long memoryLimit) {
+        // the prefetching runs synchronously
+        return new ThumbnailService(memoryLimit, cacheDir, DISK_LIMIT, Runnable::run);
+    }
+
+    private File writeImage(String name, int width, int height) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, (x * 7) << 16 | (y * 3) << 8 | name.hashCode() & 0xFF);
+            }
+        }
+        File file = new File(imagesDir, name);
+        ImageIO.write(img, "png", file);
+        return file;
+    }
+
+    @Test
+    void thumbsAreCachedInMemory() throws IOException {
+        File file = writeImage("a.png", 300, 200);
+        ThumbnailService service = createService(MEMORY_LIMIT);
+
+        ThumbInfo first = service.getThumb(file, 100, 100, NULL_TRACKER);
+        assertThat(first.isSuccess()).isTrue();
+        assertThat(first.getOrigWidth()).isEqualTo(300);
+        assertThat(first.getOrigHeight()).isEqualTo(200);
+
+        assertThat(service.getThumb(file, 100, 100, NULL_TRACKER)).isSameAs(first);
+        // another size is another thumbnail
+        assertThat(service.getThumb(file, 50, 50, NULL_TRACKER)).isNotSameAs(first);
+    }
+
+    @Test
+    void similarSizesShareTheThumb() throws IOException {
+        File file = writeImage("a.png", 300, 200);
+        ThumbnailService service = createService(MEMORY_LIMIT);
+
+        ThumbInfo first = service.getThumb(file, 100, 100, NULL_TRACKER);
+        assertThat(first.getThumb().getWidth()).isEqualTo(SIZE);
+
+        assertThat(service.getThumb(file, 110, 120, NULL_TRACKER)).isSameAs(first);
+    }
+
+    @Test
+    void modifiedFilesGetNewThumbs() throws IOException {
+        File file = writeImage("a.png", 300, 200);
+        ThumbnailService service = createService(MEMORY_LIMIT);
+        ThumbInfo before = service.getThumb(file, 100, 100, NULL_TRACKER);
+
+        writeImage("a.png", 120, 80);
+        assertThat(file.setLastModified(file.lastModified() + 10_000)).isTrue();
+
+        ThumbInfo after = service.getThumb(file, 100, 100, NULL_TRACKER);
+        assertThat(after).isNotSameAs(before);
+        assertThat(after.getOrigWidth()).isEqualTo(120);
+    }
+
+    @Test
+    void memoryCacheIsBoundedBySize() throws IOException {
+        // each thumb needs SIZE * SIZE * 4 bytes
+        ThumbnailService service = createService(SIZE * SIZE * 4 * 3);
+        for (int i = 0; i < 5; i++) {
+            File file = writeImage(i + ".png", SIZE, SIZE);
+            service.getThumb(file, SIZE, SIZE, NULL_TRACKER);
+            assertThat(service.getMemoryCacheSize()).isLessThanOrEqualTo(SIZE * SIZE * 4 * 3);
+        }
+        assertThat(service.getNumMemoryCachedThumbs()).isEqualTo(3);
+    }
+
+    @Test
+    void leastRecentlyUsedThumbIsEvicted() throws IOException {
+        ThumbnailService service = createService(SIZE * SIZE * 4 * 2);
+        File a = writeImage("a.png", SIZE, SIZE);
+        File b = writeImage("b.png", SIZE, SIZE);
+        File c = writeImage("c.png", SIZE, SIZE);
+
+        ThumbInfo thumbA = service.getThumb(a, SIZE, SIZE, NULL_TRACKER);
+        ThumbInfo thumbB = service.getThumb(b, SIZE, SIZE, NULL_TRACKER);
+        service.getThumb(a, SIZE, SIZE, NULL_TRACKER); // a is used again
+        service.getThumb(c, SIZE, SIZE, NULL_TRACKER); // evicts b
+
+        ThumbnailService.setUseDiskCache(false);
+        try {
+            assertThat(service.getThumb(a, SIZE, SIZE, NULL_TRACKER)).isSameAs(thumbA);
+            assertThat(service.getThumb(b, SIZE, SIZE, NULL_TRACKER)).isNotSameAs(thumbB);
+        } finally {
+            ThumbnailService.setUseDiskCache(true);
+        }
+    }
+
+    @Test
+    void thumbsAreReusedFromDisk() throws IOException {
+        File file = writeImage("a.png", 300, 200);
+        ThumbInfo original = createService(MEMORY_LIMIT)
+            .getThumb(file, 100, 100, NULL_TRACKER);
+        assertThat(cacheDir.listFiles()).hasSize(1);
+
+        // a new service has an empty memory cache
+        ThumbInfo fromDisk = createService(MEMORY_LIMIT)
+            .getThumb(file, 100, 100, NULL_TRACKER);
+        assertThat(fromDisk.getOrigWidth()).isEqualTo(300);
+        assertThat(fromDisk.getOrigHeight()).isEqualTo(200);
+
+        BufferedImage expected = original.getThumb();
+        BufferedImage actual = fromDisk.getThumb();
+        assertThat(actual.getWidth()).isEqualTo(expected.getWidth());
+        assertThat(actual.getHeight()).isEqualTo(expected.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertThat(actual.getRGB(x, y) | 0xFF_00_00_00)
+                    .isEqualTo(expected.getRGB(x, y) | 0xFF_00_00_00);
+            }
+        }
+    }
+
+    @Test
+    void invalidFilesGetFailureThumbs() throws IOException {
+        File file = new File(imagesDir, "broken.png");
+        assertThat(file.createNewFile()).isTrue();
+
+        ThumbInfo info = createService(MEMORY_LIMIT).getThumb(file, 100, 100, NULL_TRACKER);
+        assertThat(info.isSuccess()).isFalse();
+        assertThat(cacheDir.listFiles()).isEmpty();
+    }
+
+    @Test
+    void neighborsAreFoundNearestFirst() throws IOException {
+        for (String name : List.of("a.png", "b.jpg", "c.png", "d.png", "e.png")) {
+            writeImage(name, 10, 10);
+        }
+        assertThat(new File(imagesDir, "notes.txt").createNewFile()).isTrue();
+
+        List<File> neighbors = ThumbnailService.findNeighbors(new File(imagesDir, "c.png"), 2);
+        assertThat(neighbors).extracting(File::getName)
+            .containsExactly("d.png", "b.jpg", "e.png", "a.png");
+    }
+
+    @Test
+    void neighborsAreCachedByPrefetching() throws IOException {
+        File a = writeImage("a.png", 100, 100);
+        File b = writeImage("b.png", 100, 100);
+        File c = writeImage("c.png", 100, 100);
+        ThumbnailService service = createService(MEMORY_LIMIT);
+
+        service.prefetchNeighbors(b, 50, 50);
+        assertThat(service.getNumMemoryCachedThumbs()).isEqualTo(2);
+
+        service.getThumb(a, 50, 50, NULL_TRACKER);
+        service.getThumb(c, 50, 50, NULL_TRACKER);
+        assertThat(service.getNumMemoryCachedThumbs()).isEqualTo(2);
+    }
+}
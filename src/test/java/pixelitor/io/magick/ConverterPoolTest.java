@@ -0,0 +1,210 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io.magick;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.io.TempDir;
+import pixelitor.io.magick.ConverterPool.Conversion;
+import pixelitor.utils.ThroughputTracker;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("ConverterPool tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class ConverterPoolTest {
+    private static final int POOL_SIZE = 2;
+
+    @TempDir
+    File dir;
+
+    private File startLog;
+    private ConverterPool pool;
+    private final Random random = new Random(5);
+
+    @BeforeEach
+    void beforeEachTest() {
+        startLog = new File(dir, "starts.log");
+        String javaCommand = new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+        List<String> command = List.of(javaCommand,
+            "-cp", System.getProperty("java.class.path"),
+            FakeConverter.class.getName(), startLog.getAbsolutePath());
+        pool = new ConverterPool(command, POOL_SIZE, false);
+    }
+
+    @AfterEach
+    void afterEachTest() {
+        pool.close();
+    }
+
+    @Test
+    void processesAreReused() throws IOException {
+        List<BufferedImage> images = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            images.add(createRandomImage());
+            files.add(new File(dir, "out " + i + ".png"));
+        }
+
+        for (int i = 0; i < images.size(); i++) {
+            pool.exportImage(images.get(i), files.get(i), ExportSettings.DEFAULTS);
+            assertSamePixels(ImageIO.read(files.get(i)), images.get(i));
+        }
+        for (int i = 0; i < images.size(); i++) {
+            assertSamePixels(pool.importImage(files.get(i)), images.get(i));
+        }
+        assertThat(numStartedProcesses()).isEqualTo(1);
+    }
+
+    @Test
+    void imagesArePipedThroughFewProcesses() throws IOException {
+        List<BufferedImage> images = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            images.add(createRandomImage());
+            files.add(new File(dir, "batch " + i + ".png"));
+        }
+
+        var tracker = new ThroughputTracker(NULL_TRACKER);
+        List<Conversion<File>> exported = pool.exportImages(
+            images, files, ExportSettings.DEFAULTS, tracker);
+
+        assertThat(exported).noneMatch(Conversion::failed);
+        assertThat(tracker.getUnitsDone()).isEqualTo(6);
+        assertThat(tracker.getUnitsPerSecond()).isPositive();
+        for (int i = 0; i < images.size(); i++) {
+            assertSamePixels(ImageIO.read(files.get(i)), images.get(i));
+        }
+
+        List<Conversion<BufferedImage>> imported = pool.importImages(files, NULL_TRACKER);
+        for (int i = 0; i < images.size(); i++) {
+            assertSamePixels(imported.get(i).result(), images.get(i));
+        }
+        assertThat(numStartedProcesses()).isBetween(1, POOL_SIZE);
+    }
+
+    @Test
+    void failedImageDoesntStopTheBatch() throws IOException {
+        List<File> files = new ArrayList<>();
+        List<BufferedImage> images = new ArrayList<>();
+        for (String name : List.of("a.png", "crash.png", "b.png")) {
+            BufferedImage img = createRandomImage();
+            File file = new File(dir, name);
+            ImageIO.write(img, "png", file);
+            images.add(img);
+            files.add(file);
+        }
+
+        var tracker = new ThroughputTracker(NULL_TRACKER);
+        List<Conversion<BufferedImage>> imported = pool.importImages(files, tracker);
+
+        assertThat(imported.get(1).failed()).isTrue();
+        assertSamePixels(imported.get(0).result(), images.get(0));
+        assertSamePixels(imported.get(2).result(), images.get(2));
+        assertThat(tracker.getUnitsDone()).isEqualTo(2);
+    }
+
+    @Test
+    void unexpectedOutputIsAFailure() throws IOException {
+        File chatty = new File(dir, "chatty.png");
+        ImageIO.write(createRandomImage(), "png", chatty);
+
+        assertThatThrownBy(() -> pool.importImage(chatty))
+            .isInstanceOf(UncheckedIOException.class)
+            .hasMessageContaining("unexpected converter output");
+
+        // the out of sync process is not reused
+        File file = new File(dir, "after.png");
+        ImageIO.write(createRandomImage(), "png", file);
+        pool.importImage(file);
+        assertThat(numStartedProcesses()).isEqualTo(2);
+    }
+
+    @Test
+    void crashedProcessIsReplaced() throws IOException {
+        File crashing = new File(dir, "crash.png");
+        ImageIO.write(createRandomImage(), "png", crashing);
+
+        assertThatThrownBy(() -> pool.importImage(crashing))
+            .isInstanceOf(UncheckedIOException.class);
+
+        BufferedImage img = createRandomImage();
+        File file = new File(dir, "after.png");
+        pool.exportImage(img, file, ExportSettings.DEFAULTS);
+        assertSamePixels(ImageIO.read(file), img);
+    }
+
+    @Test
+    void inJVMFormatsDontNeedProcesses() {
+        var inJVMPool = new ConverterPool(List.of("no_such_converter"), POOL_SIZE, true);
+        try {
+            BufferedImage img = createRandomImage();
+            File file = new File(dir, "out.tga");
+            inJVMPool.exportImage(img, file, ExportSettings.DEFAULTS);
+            assertSamePixels(inJVMPool.importImage(file), img);
+        } finally {
+            inJVMPool.close();
+        }
+    }
+
+    @Test
+    void argumentsAreQuoted() {
+        assertThat(ConverterProcess.toCommandLine(List.of("-write", "a \"b\" c\\d")))
+            .isEqualTo("\"-write\" \"a \\\"b\\\" c\\\\d\"");
+    }
+
+    private int numStartedProcesses() throws IOException {
+        return Files.readAllLines(startLog.toPath()).size();
+    }
+
+    private BufferedImage createRandomImage() {
+        BufferedImage img = new BufferedImage(23, 17, TYPE_INT_RGB);
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static void assertSamePixels(BufferedImage actual, BufferedImage expected) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        assertThat(actual.getWidth()).isEqualTo(width);
+        assertThat(actual.getHeight()).isEqualTo(height);
+        assertThat(actual.getRGB(0, 0, width, height, null, 0, width))
+            .isEqualTo(expected.getRGB(0, 0, width, height, null, 0, width));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io.magick;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A stand-in for "magick -script -" in the tests: it reads command lines
+ * from the standard input, converts the image given after -read into
+ * the file given after -write with ImageIO, and acknowledges each line.
+ * It appends a line to the log file given as the argument when it starts,
+ * exits with an error for input files with "crash" in their names, and
+ * answers something else for input files with "chatty" in their names.
+ */
+public class FakeConverter {
+    private FakeConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        try (var log = new FileWriter(args[0], UTF_8, true)) {
+            log.write("started\n");
+        }
+
+        var in = new BufferedReader(new InputStreamReader(System.in, UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            List<String> tokens = tokenize(line);
+            BufferedImage img = null;
+            boolean chatty = false;
+            for (int i = 0; i < tokens.size() - 1; i++) {
+                String token = tokens.get(i);
+                String value = tokens.get(i + 1);
+                if (token.equals("-read")) {
+                    if (value.contains("crash")) {
+                        System.exit(1);
+                    }
+                    chatty = value.contains("chatty");
+                    img = ImageIO.read(new File(value));
+                } else if (token.equals("-write") && !value.equals("info:-")) {
+                    String path = value.replaceFirst("^[a-z0-9]+:", "");
+                    String format = path.substring(path.lastIndexOf('.') + 1);
+                    ImageIO.write(img, format, new File(path));
+                }
+            }
+            System.out.println(chatty ? "converting..." : "done");
+            System.out.flush();
+        }
+    }
+
+    private static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = null;
+        boolean escaped = false;
+        for (char c : line.toCharArray()) {
+            if (token == null) {
+                if (c == '"') {
+                    token = new StringBuilder();
+                }
+            } else if (escaped) {
+                token.append(c);
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                tokens.add(token.toString());
+                token = null;
+            } else {
+                token.append(c);
+            }
+        }
+        return tokens;
+    }
+}
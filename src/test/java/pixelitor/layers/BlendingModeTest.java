@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import pixelitor.TestHelper;
+
+import java.awt.CompositeContext;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.EnumSource.Mode.EXCLUDE;
+
+/**
+ * Checks that the packed-int blending kernels give the same
+ * results as the generic, per-sample composing code.
+ */
+@DisplayName("BlendingMode tests")
+class BlendingModeTest {
+    // large enough to be composed in parallel
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 300;
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = BlendingMode.class, names = "NORMAL", mode = EXCLUDE)
+    void packedKernelMatchesGenericCode(BlendingMode mode) {
+        Random rnd = new Random(mode.ordinal());
+        BufferedImage src = createRandomImage(rnd);
+        BufferedImage dst = createRandomImage(rnd);
+
+        for (float opacity : new float[]{1.0f, 0.6f}) {
+            int[] expected = composeGeneric(mode, opacity, src, dst);
+            int[] actual = composePacked(mode, opacity, src, dst);
+            assertThat(actual).as("%s, opacity = %.1f", mode, opacity)
+                .isEqualTo(expected);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = BlendingMode.class, names = "NORMAL", mode = EXCLUDE)
+    void packedKernelWorksWithChildRasters(BlendingMode mode) {
+        Random rnd = new Random(mode.ordinal());
+        BufferedImage src = createRandomImage(rnd);
+        BufferedImage dst = createRandomImage(rnd);
+
+        WritableRaster dstChild = copyOf(dst).getRaster()
+            .createWritableChild(10, 20, 50, 40, 0, 0, null);
+        Raster srcChild = src.getRaster().createChild(30, 5, 50, 40, 0, 0, null);
+        createContext(mode, 1.0f).compose(srcChild, dstChild, dstChild);
+
+        WritableRaster expected = toGeneric(dst).getRaster()
+            .createWritableChild(10, 20, 50, 40, 0, 0, null);
+        createContext(mode, 1.0f).compose(toGeneric(src).getRaster()
+            .createChild(30, 5, 50, 40, 0, 0, null), expected, expected);
+
+        assertThat(dstChild.getPixels(0, 0, 50, 40, (int[]) null))
+            .isEqualTo(expected.getPixels(0, 0, 50, 40, (int[]) null));
+    }
+
+    private static int[] composePacked(BlendingMode mode, float opacity,
+                                       BufferedImage src, BufferedImage dst) {
+        WritableRaster out = copyOf(dst).getRaster();
+        createContext(mode, opacity).compose(src.getRaster(), out, out);
+        return out.getPixels(0, 0, WIDTH, HEIGHT, (int[]) null);
+    }
+
+    // the TYPE_4BYTE_ABGR rasters are not packed, so they are composed by the generic code
+    private static int[] composeGeneric(BlendingMode mode, float opacity,
+                                        BufferedImage src, BufferedImage dst) {
+        WritableRaster out = toGeneric(dst).getRaster();
+        createContext(mode, opacity).compose(toGeneric(src).getRaster(), out, out);
+        return out.getPixels(0, 0, WIDTH, HEIGHT, (int[]) null);
+    }
+
+    private static CompositeContext createContext(BlendingMode mode, float opacity) {
+        ColorModel cm = ColorModel.getRGBdefault();
+        return mode.getComposite(opacity).createContext(cm, cm, null);
+    }
+
+    private static BufferedImage createRandomImage(Random rnd) {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                img.setRGB(x, y, rnd.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static BufferedImage copyOf(BufferedImage img) {
+        BufferedImage copy = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        copy.getRaster().setRect(img.getRaster());
+        return copy;
+    }
+
+    private static BufferedImage toGeneric(BufferedImage img) {
+        BufferedImage copy = new BufferedImage(WIDTH, HEIGHT, TYPE_4BYTE_ABGR);
+        copy.getRaster().setRect(img.getRaster());
+        return copy;
+    }
+}
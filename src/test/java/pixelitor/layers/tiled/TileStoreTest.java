@@ -0,0 +1,277 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers.tiled;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import pixelitor.TestHelper;
+import pixelitor.filters.Invert;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.io.IOException;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pixelitor.layers.tiled.TileStore.TILE_SIZE;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("TileStore tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class TileStoreTest {
+    private final Random rnd = new Random(17);
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    private BufferedImage createRandomImage(int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, rnd.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static void assertSamePixels(BufferedImage actual, BufferedImage expected) {
+        assertThat(actual.getWidth()).isEqualTo(expected.getWidth());
+        assertThat(actual.getHeight()).isEqualTo(expected.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                if (actual.getRGB(x, y) != expected.getRGB(x, y)) {
+                    assertThat(Integer.toHexString(actual.getRGB(x, y)))
+                        .as("pixel at %d, %d", x, y)
+                        .isEqualTo(Integer.toHexString(expected.getRGB(x, y)));
+                }
+            }
+        }
+    }
+
+    // the small caches make sure that the tiles are evicted and reloaded
+    @ParameterizedTest
+    @CsvSource({"1, 1, 1", "300, 200, 1", "700, 530, 3", "513, 257, 100"})
+    void imagesAreStoredWithoutChange(int width, int height, int cachedTiles) throws IOException {
+        BufferedImage img = createRandomImage(width, height);
+        try (TileStore store = TileStore.create(width, height, cachedTiles)) {
+            store.setRegion(0, 0, img);
+            assertThat(store.getNumCachedTiles()).isLessThanOrEqualTo(cachedTiles);
+            assertSamePixels(store.toImage(), img);
+
+            store.flushCache();
+            assertThat(store.getNumCachedTiles()).isZero();
+            assertSamePixels(store.toImage(), img);
+        }
+    }
+
+    @Test
+    void randomAccessMatchesBufferedImage() throws IOException {
+        BufferedImage expected = new BufferedImage(600, 450, TYPE_INT_ARGB);
+        try (TileStore store = TileStore.create(600, 450, 2)) {
+            for (int i = 0; i < 5000; i++) {
+                int x = rnd.nextInt(600);
+                int y = rnd.nextInt(450);
+                int rgb = rnd.nextInt();
+                store.setRGB(x, y, rgb);
+                expected.setRGB(x, y, rgb);
+            }
+            for (int i = 0; i < 1000; i++) {
+                int x = rnd.nextInt(600);
+                int y = rnd.nextInt(450);
+                assertThat(store.getRGB(x, y)).isEqualTo(expected.getRGB(x, y));
+            }
+
+            Rectangle area = new Rectangle(100, 250, 400, 200);
+            assertSamePixels(store.getRegion(area),
+                expected.getSubimage(area.x, area.y, area.width, area.height));
+        }
+    }
+
+    @Test
+    void transparentTilesAreNotAllocated() throws IOException {
+        try (TileStore store = TileStore.create(2000, 1000, 4)) {
+            store.setRegion(0, 0, new BufferedImage(2000, 1000, TYPE_INT_ARGB));
+            store.flushCache();
+            assertThat(store.getNumAllocatedTiles()).isZero();
+
+            store.setRGB(TILE_SIZE + 1, 2, 0xFF_FF_00_00);
+            store.processRows((y, row) -> row[1999] = 0xFF_00_FF_00, NULL_TRACKER);
+            assertThat(store.getNumAllocatedTiles())
+                .isEqualTo(1 + store.getNumTilesY());
+        }
+    }
+
+    @Test
+    void processRowsSeesCachedChanges() throws IOException {
+        BufferedImage img = createRandomImage(520, 300);
+        try (TileStore store = TileStore.create(520, 300, 4)) {
+            store.setRegion(0, 0, img);
+            // invert the colors, but keep the alpha
+            store.processRows((y, row) -> {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] ^= 0x00_FF_FF_FF;
+                }
+            }, NULL_TRACKER);
+
+            long[] sum = new long[1];
+            store.readRows((y, row) -> {
+                synchronized (sum) {
+                    sum[0] += row[y % row.length];
+                }
+            }, NULL_TRACKER);
+
+            long expectedSum = 0;
+            for (int y = 0; y < 300; y++) {
+                int inverted = img.getRGB(y % 520, y) ^ 0x00_FF_FF_FF;
+                assertThat(store.getRGB(y % 520, y)).isEqualTo(inverted);
+                expectedSum += inverted;
+            }
+            assertThat(sum[0]).isEqualTo(expectedSum);
+        }
+    }
+
+    @Test
+    void tiledFilteringHasNoSeams() throws IOException {
+        BufferedImage img = createRandomImage(700, 600);
+        float[] blur = new float[25];
+        java.util.Arrays.fill(blur, 1 / 25.0f);
+        ConvolveOp op = new ConvolveOp(new Kernel(5, 5, blur), ConvolveOp.EDGE_NO_OP, null);
+
+        BufferedImage expected = op.filter(img, null);
+        try (TileStore store = TileStore.fromImage(img);
+             TileStore filtered = store.filter(op, 2, NULL_TRACKER)) {
+            assertSamePixels(filtered.toImage(), expected);
+        }
+    }
+
+    @Test
+    void pixelitorFiltersWorkTileByTile() throws IOException {
+        BufferedImage img = createRandomImage(600, 300);
+        Invert invert = new Invert();
+
+        BufferedImage expected = invert.transformImage(img);
+        try (TileStore store = TileStore.fromImage(img);
+             TileStore filtered = store.filter(invert, 0, NULL_TRACKER)) {
+            assertSamePixels(filtered.toImage(), expected);
+        }
+    }
+
+    @Test
+    void paintingMatchesBufferedImage() throws IOException {
+        Consumer<Graphics2D> painter = g -> {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(Color.BLUE);
+            g.setStroke(new BasicStroke(7));
+            g.draw(new Ellipse2D.Double(200, 230, 320, 90));
+        };
+        BufferedImage expected = new BufferedImage(800, 500, TYPE_INT_ARGB);
+        Graphics2D g = expected.createGraphics();
+        painter.accept(g);
+        g.dispose();
+
+        try (TileStore store = TileStore.create(800, 500, 2)) {
+            store.paint(new Rectangle(190, 220, 340, 110), painter);
+            assertSamePixels(store.toImage(), expected);
+        }
+    }
+
+    @Test
+    void outOfBoundsAccessIsRejected() throws IOException {
+        try (TileStore store = TileStore.create(100, 100)) {
+            assertThatThrownBy(() -> store.getRGB(100, 5))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+            assertThatThrownBy(() -> store.getRegion(new Rectangle(50, 50, 60, 10)))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+        }
+    }
+
+    /**
+     * A 40000x40000 image would need 6.4 GB as a BufferedImage, and it
+     * couldn't even be created, because it has more than 2^31 pixels.
+     * The tests run with a 2 GB heap (see the surefire configuration).
+     */
+    @Test
+    void gigapixelImagesWork() throws IOException {
+        int size = 40_000;
+        int bandWidth = 300;
+        int color = 0xFF_20_80_E0;
+        try (TileStore store = TileStore.create(size, size)) {
+            // a synthetic image with a diagonal band
+            store.processRows((y, row) -> {
+                int from = Math.max(0, y - bandWidth);
+                int to = Math.min(size, y + bandWidth);
+                for (int x = from; x < to; x++) {
+                    row[x] = color;
+                }
+            }, NULL_TRACKER);
+
+            // only the tiles around the diagonal are stored
+            int numTilesPerSide = store.getNumTilesX();
+            assertThat(store.getNumAllocatedTiles())
+                .isLessThan(numTilesPerSide * 5)
+                .isGreaterThan(numTilesPerSide);
+
+            assertThat(store.getRGB(39_999, 39_999)).isEqualTo(color);
+            assertThat(store.getRGB(20_000, 20_000 + bandWidth - 1)).isEqualTo(color);
+            assertThat(store.getRGB(20_000, 20_000 + bandWidth + 1)).isZero();
+            assertThat(store.getRGB(0, 39_999)).isZero();
+
+            // paint a square far from the diagonal
+            store.paint(new Rectangle(30_000, 1_000, 100, 100), g -> {
+                g.setColor(Color.RED);
+                g.fillRect(30_000, 1_000, 100, 100);
+            });
+            assertThat(store.getRGB(30_050, 1_050)).isEqualTo(Color.RED.getRGB());
+
+            // edit a part as an ordinary image
+            var window = new TileWindow(store, new Rectangle(9_900, 9_900, 200, 200));
+            assertThat(window.getImage().getRGB(101, 100)).isEqualTo(color);
+            window.getImage().setRGB(101, 100, Color.GREEN.getRGB());
+            window.writeBack();
+            assertThat(store.getRGB(10_001, 10_000)).isEqualTo(Color.GREEN.getRGB());
+
+            BufferedImage overview = store.createSubsampledImage(1000);
+            assertThat(overview.getWidth()).isEqualTo(1000);
+            assertThat(overview.getHeight()).isEqualTo(1000);
+            assertThat(overview.getRGB(500, 500)).isEqualTo(color);
+            assertThat(overview.getRGB(750, 26)).isEqualTo(Color.RED.getRGB());
+            assertThat(overview.getRGB(0, 999)).isZero();
+
+            Runtime runtime = Runtime.getRuntime();
+            long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+            assertThat(usedHeap).isLessThan(1024L * 1024 * 1024);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.layers.tiled;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+import pixelitor.layers.ImageLayer;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("TileWindow tests")
+class TileWindowTest {
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    void windowIsClippedToTheImage() throws IOException {
+        try (TileStore store = TileStore.create(500, 400)) {
+            var window = new TileWindow(store, new Rectangle(450, 350, 100, 100));
+            assertThat(window.getArea()).isEqualTo(new Rectangle(450, 350, 50, 50));
+            assertThat(window.getImage().getWidth()).isEqualTo(50);
+
+            assertThatThrownBy(() -> new TileWindow(store, new Rectangle(600, 0, 10, 10)))
+                .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void layerEditsAreWrittenBack() throws IOException {
+        try (TileStore store = TileStore.create(1000, 800)) {
+            var window = new TileWindow(store, new Rectangle(300, 200, 400, 300));
+            Composition comp = window.createComposition("window");
+            var layer = (ImageLayer) comp.getActiveLayer();
+
+            // like the filters, replace the image of the layer
+            BufferedImage edited = new BufferedImage(400, 300, TYPE_INT_ARGB);
+            edited.setRGB(10, 20, Color.RED.getRGB());
+            layer.setImage(edited);
+
+            window.writeBack(layer);
+            assertThat(store.getRGB(310, 220)).isEqualTo(Color.RED.getRGB());
+            assertThat(store.getRGB(311, 220)).isZero();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+package pixelitor.layers.tiled;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("TiledImage and TiledImageIO tests")
+class TiledImageIOTest {
+    @TempDir
+    File dir;
+
+    private final Random rnd = new Random(3);
+
+    private BufferedImage createRandomImage(int width, int height, int type) {
+        BufferedImage img = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, rnd.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static void assertSamePixels(BufferedImage actual, BufferedImage expected) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        assertThat(actual.getWidth()).isEqualTo(width);
+        assertThat(actual.getHeight()).isEqualTo(height);
+        assertThat(actual.getRGB(0, 0, width, height, null, 0, width))
+            .isEqualTo(expected.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"png", "tif"})
+    void filesAreWrittenAndReadInBands(String format) throws IOException {
+        // the alpha is read back as written only from PNG files
+        int type = format.equals("png") ? TYPE_INT_ARGB : TYPE_INT_RGB;
+        BufferedImage img = createRandomImage(700, 600, type);
+        File file = new File(dir, "tiled." + format);
+
+        try (TileStore store = TileStore.fromImage(img)) {
+            TiledImageIO.write(store, file, format);
+        }
+        assertSamePixels(ImageIO.read(file), img);
+
+        try (TileStore read = TiledImageIO.read(file, NULL_TRACKER)) {
+            assertSamePixels(read.toImage(), img);
+        }
+    }
+
+    @Test
+    void partsCanBeDrawn() throws IOException {
+        BufferedImage img = createRandomImage(800, 700, TYPE_INT_ARGB);
+        BufferedImage expected = img.getSubimage(300, 250, 200, 150);
+
+        BufferedImage drawn = new BufferedImage(200, 150, TYPE_INT_ARGB);
+        try (TileStore store = TileStore.fromImage(img)) {
+            Graphics2D g = drawn.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.translate(-300, -250);
+            g.drawRenderedImage(new TiledImage(store), new AffineTransform());
+            g.dispose();
+        }
+        assertSamePixels(drawn, expected);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import pixelitor.layers.BlendingMode;
+import pixelitor.utils.Texts;
+
+import java.awt.Composite;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * Compares, for each blending mode, the speed of the packed-int
+ * composing code with the generic per-sample code (which is used
+ * for non-packed rasters), and checks that their results are identical.
+ */
+public class BlendingPerformance {
+    private static final int ROUNDS = 5;
+
+    private BlendingPerformance() {
+    }
+
+    public static void main(String[] args) {
+        int width = 4000;
+        int height = 3000;
+        if (args.length == 2) {
+            width = Integer.parseInt(args[0]);
+            height = Integer.parseInt(args[1]);
+        }
+        Texts.init(); // the names of some blending modes are translated
+
+        Random rnd = new Random(42);
+        BufferedImage src = createRandomImage(width, height, rnd);
+        BufferedImage dst = createRandomImage(width, height, rnd);
+        BufferedImage genericSrc = copy(src, TYPE_4BYTE_ABGR);
+
+        for (BlendingMode mode : BlendingMode.values()) {
+            if (mode == BlendingMode.NORMAL) {
+                continue; // uses the JDK's AlphaComposite
+            }
+            Composite composite = mode.getComposite(0.8f);
+
+            BufferedImage packedOut = copy(dst, TYPE_INT_ARGB);
+            double packedMs = measure(composite, src, packedOut);
+
+            BufferedImage genericOut = copy(dst, TYPE_4BYTE_ABGR);
+            double genericMs = measure(composite, genericSrc, genericOut);
+
+            boolean identical = Arrays.equals(getPixels(packedOut), getPixels(genericOut));
+            System.out.printf("%-20s packed = %8.2f ms, generic = %8.2f ms, identical = %b%n",
+                mode, packedMs, genericMs, identical);
+        }
+
+        System.exit(0);
+    }
+
+    // composes the source into the destination ROUNDS times
+    private static double measure(Composite composite, BufferedImage src, BufferedImage dst) {
+        ColorModel cm = ColorModel.getRGBdefault();
+        WritableRaster out = dst.getRaster();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            composite.createContext(cm, cm, null).compose(src.getRaster(), out, out);
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / ROUNDS;
+    }
+
+    private static BufferedImage createRandomImage(int width, int height, Random rnd) {
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        int[] pixels = new int[width * height];
+        Arrays.setAll(pixels, i -> rnd.nextInt());
+        img.setRGB(0, 0, width, height, pixels, 0, width);
+        return img;
+    }
+
+    private static BufferedImage copy(BufferedImage img, int type) {
+        BufferedImage copy = new BufferedImage(img.getWidth(), img.getHeight(), type);
+        copy.getRaster().setRect(img.getRaster());
+        return copy;
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return img.getRaster().getPixels(0, 0, img.getWidth(), img.getHeight(), (int[]) null);
+    }
+}
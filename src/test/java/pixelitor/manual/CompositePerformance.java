@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+import pixelitor.layers.BlendingMode;
+import pixelitor.layers.ImageLayer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * Measures the cost of updating the composite image after a
+ * local change (a "dab") of various sizes, compared with the
+ * cost of a full recomposition.
+ * The per-dab cost should scale with the dab size, not with the canvas size.
+ */
+public class CompositePerformance {
+    private static final int NUM_LAYERS = 5;
+    private static final int NUM_DABS = 200;
+    private static final int[] DAB_SIZES = {20, 100, 500};
+
+    private CompositePerformance() {
+    }
+
+    public static void main(String[] args) {
+        int width = 8000;
+        int height = 6000;
+        if (args.length == 2) {
+            width = Integer.parseInt(args[0]);
+            height = Integer.parseInt(args[1]);
+        }
+
+        TestHelper.setUnitTestingMode();
+        Composition comp = createComp(width, height);
+        comp.getCompositeImage(); // initial full calculation
+
+        Random rnd = new Random(42);
+        for (int dabSize : DAB_SIZES) {
+            long start = System.nanoTime();
+            for (int i = 0; i < NUM_DABS; i++) {
+                double x = rnd.nextInt(width - dabSize);
+                double y = rnd.nextInt(height - dabSize);
+                comp.invalidateCompositeRegion(
+                    new Rectangle2D.Double(x, y, dabSize, dabSize));
+                comp.getCompositeImage();
+            }
+            double msPerDab = (System.nanoTime() - start) / 1_000_000.0 / NUM_DABS;
+            System.out.printf("%dx%d dab: %.3f ms/dab%n", dabSize, dabSize, msPerDab);
+        }
+
+        int numFullUpdates = 5;
+        long start = System.nanoTime();
+        for (int i = 0; i < numFullUpdates; i++) {
+            comp.invalidateCompositeCache();
+            comp.getCompositeImage();
+        }
+        double msPerUpdate = (System.nanoTime() - start) / 1_000_000.0 / numFullUpdates;
+        System.out.printf("full recomposition (%dx%d): %.3f ms%n", width, height, msPerUpdate);
+
+        System.exit(0);
+    }
+
+    private static Composition createComp(int width, int height) {
+        Composition comp = TestHelper.createEmptyComp(width, height);
+        BlendingMode[] modes = BlendingMode.values();
+        Random rnd = new Random(0);
+        for (int i = 0; i < NUM_LAYERS; i++) {
+            BufferedImage img = new BufferedImage(width, height, TYPE_INT_ARGB);
+            Graphics2D g = img.createGraphics();
+            g.setColor(new Color(rnd.nextInt(), true));
+            g.fillRect(0, 0, width, height);
+            g.dispose();
+
+            ImageLayer layer = TestHelper.createImageLayer(comp, img, "layer " + i);
+            if (i > 0) {
+                layer.setBlendingMode(modes[i % modes.length], false);
+            }
+            comp.addLayerInInitMode(layer);
+        }
+        return comp;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import com.jhlabs.image.ConvolveFilter;
+import com.jhlabs.image.GaussianFilter;
+import pixelitor.filters.convolve.FFTConvolver;
+
+import java.awt.image.Kernel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.jhlabs.image.ConvolveFilter.CLAMP_EDGES;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * Compares the spatial and the frequency domain convolution
+ * on a 2000x2000 noise image with different kernel sizes,
+ * which can be used to tune the thresholds in {@link FFTConvolver}.
+ */
+public class ConvolutionPerformance {
+    private static final int SIZE = 2000;
+    private static final int WARMUP_ROUNDS = 1;
+    private static final int MEASURED_ROUNDS = 2;
+
+    private ConvolutionPerformance() {
+    }
+
+    public static void main(String[] args) {
+        int[] pixels = createNoisePixels();
+        int[] out = new int[pixels.length];
+
+        var filter = new ConvolveFilter("Convolve");
+        filter.setProgressTracker(NULL_TRACKER);
+        for (int size : new int[]{5, 7, 9, 15}) {
+            float[] matrix = new float[size * size];
+            Arrays.fill(matrix, 1.0f / matrix.length);
+            var kernel = new Kernel(size, size, matrix);
+            System.out.printf("2D kernel %dx%d: spatial = %.0f ms, FFT = %.0f ms%n", size, size,
+                measure(() -> filter.convolveHV(kernel, pixels, out, SIZE, SIZE, CLAMP_EDGES)),
+                measure(() -> filter.convolveFFT(kernel, pixels, out, SIZE, SIZE, CLAMP_EDGES)));
+        }
+
+        for (float radius : new float[]{10, 15, 20, 30, 60, 100}) {
+            var kernel = GaussianFilter.makeKernel(radius);
+            float[] matrix = kernel.getKernelData(null);
+            System.out.printf("1D kernel %d: spatial = %.0f ms, FFT = %.0f ms%n", matrix.length,
+                measure(() -> ConvolveFilter.convolveH(kernel, pixels, out, SIZE, SIZE, CLAMP_EDGES)),
+                measure(() -> convolveLines(matrix, pixels)));
+        }
+
+        System.exit(0);
+    }
+
+    private static void convolveLines(float[] matrix, int[] pixels) {
+        var convolver = new FFTConvolver.LineConvolver(matrix, SIZE);
+        float[][] lines = new float[4][SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int rgb = pixels[y * SIZE + x];
+                for (int c = 0; c < 4; c++) {
+                    lines[c][x] = (rgb >>> (8 * c)) & 0xFF;
+                }
+            }
+            convolver.convolve(lines[0], lines[1]);
+            convolver.convolve(lines[2], lines[3]);
+        }
+    }
+
+    private static double measure(Runnable task) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / MEASURED_ROUNDS;
+    }
+
+    private static int[] createNoisePixels() {
+        Random random = new Random(1);
+        int[] pixels = new int[SIZE * SIZE];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF_00_00_00 | random.nextInt();
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import pixelitor.particles.Modifier;
+import pixelitor.particles.ParticleSystem;
+import pixelitor.particles.Spawner;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.BasicStroke;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * Measures the particles/second of the {@link ParticleSystem}
+ * with a flow-like modifier, in the fast and reproducible modes,
+ * with and without antialiasing.
+ * The number of particles can be given as the first argument.
+ */
+public class ParticleSystemPerformance {
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 3;
+
+    private static final int SIZE = 1000;
+    private static final int NUM_ITERATIONS = 100;
+
+    private ParticleSystemPerformance() {
+    }
+
+    public static void main(String[] args) {
+        int numParticles = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        measure(numParticles, false, false);
+        measure(numParticles, false, true);
+        measure(numParticles / 10, true, false);
+        measure(numParticles / 10, true, true);
+
+        System.exit(0);
+    }
+
+    private static void measure(int numParticles, boolean antialias, boolean reproducible) {
+        ParticleSystem system = createSystem(numParticles, antialias, reproducible);
+        BufferedImage img = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            system.render(img, ProgressTracker.NULL_TRACKER);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            system.render(img, ProgressTracker.NULL_TRACKER);
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0 / MEASURED_ROUNDS;
+
+        System.out.printf("%d particles, antialias = %b, reproducible = %b: %.0f particles/s%n",
+            numParticles, antialias, reproducible, numParticles / seconds);
+    }
+
+    private static ParticleSystem createSystem(int numParticles, boolean antialias, boolean reproducible) {
+        // a cheap analytic field instead of noise, so that mostly
+        // the particle system itself is measured
+        Modifier flow = (particles, iteration) -> {
+            float[] x = particles.x;
+            float[] y = particles.y;
+            for (int i = 0, n = particles.size(); i < n; i++) {
+                float angle = (float) Math.sin(x[i] * 0.01f) + (float) Math.cos(y[i] * 0.013f);
+                x[i] += 2 * (float) Math.cos(angle);
+                y[i] += 2 * (float) Math.sin(angle);
+            }
+        };
+        return ParticleSystem.builder(numParticles, NUM_ITERATIONS)
+            .addSpawner(new Spawner.RandomPosition(SIZE, SIZE))
+            .addSpawner((particles, i, random) -> particles.color[i] = 0x30_20_60_FF)
+            .addModifier(flow)
+            .strokes(new BasicStroke(1), new BasicStroke(3))
+            .antialias(antialias)
+            .bounds(new Rectangle(0, 0, SIZE, SIZE))
+            .pathTolerance(3)
+            .seed(42)
+            .reproducible(reproducible)
+            .build();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import pixelitor.utils.simd.PixelKernels;
+
+import java.util.Random;
+
+/**
+ * Measures the throughput of the {@link PixelKernels} on
+ * Full HD, 4K and 8K images. To compare the scalar and the vectorized
+ * kernels, build with "mvn -Pvector", and run it twice with
+ * "--add-modules jdk.incubator.vector", once with and once
+ * without "-Dpixelitor.simd=false".
+ */
+public class PixelKernelsPerformance {
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 20;
+
+    private PixelKernelsPerformance() {
+    }
+
+    private interface Kernel {
+        void run(int[] src, int[] dst);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("vectorized = " + PixelKernels.isVectorized());
+
+        int[] redLut = new int[256];
+        int[] greenLut = new int[256];
+        int[] blueLut = new int[256];
+        for (int i = 0; i < 256; i++) {
+            redLut[i] = 255 - i;
+            greenLut[i] = i / 2;
+            blueLut[i] = (i * i) / 255;
+        }
+        float[] matrix = {0.5f, 0.3f, 0.2f, 0.1f, 0.8f, 0.1f, -0.2f, 0.4f, 0.9f};
+        int[][] histograms = new int[3][256];
+
+        int[][] sizes = {{1920, 1080}, {3840, 2160}, {7680, 4320}};
+        for (int[] size : sizes) {
+            int numPixels = size[0] * size[1];
+            int[] src = createPixels(numPixels);
+            int[] dst = new int[numPixels];
+            System.out.printf("%dx%d:%n", size[0], size[1]);
+
+            measure("premultiply", src, dst, (s, d) -> {
+                System.arraycopy(s, 0, d, 0, s.length);
+                PixelKernels.premultiply(d, 0, d.length);
+            });
+            measure("unpremultiply", src, dst, (s, d) -> {
+                System.arraycopy(s, 0, d, 0, s.length);
+                PixelKernels.unpremultiply(d, 0, d.length);
+            });
+            measure("invert", src, dst, (s, d) ->
+                PixelKernels.invert(s, d, 0, s.length, false));
+            measure("invert premultiplied", src, dst, (s, d) ->
+                PixelKernels.invert(s, d, 0, s.length, true));
+            measure("lookup", src, dst, (s, d) ->
+                PixelKernels.lookup(s, d, 0, s.length, redLut, greenLut, blueLut, false, false));
+            measure("lookup premultiplied", src, dst, (s, d) ->
+                PixelKernels.lookup(s, d, 0, s.length, redLut, greenLut, blueLut, true, false));
+            measure("color matrix", src, dst, (s, d) ->
+                PixelKernels.colorMatrix(s, d, 0, s.length, matrix));
+            measure("sepia", src, dst, (s, d) ->
+                PixelKernels.sepia(s, d, 0, s.length, 20));
+            measure("histograms", src, dst, (s, d) ->
+                PixelKernels.addToHistograms(s, 0, s.length, histograms[0], histograms[1], histograms[2]));
+        }
+
+        System.exit(0);
+    }
+
+    // a photo-like mix of opaque and translucent pixels
+    private static int[] createPixels(int numPixels) {
+        Random rnd = new Random(5);
+        int[] pixels = new int[numPixels];
+        for (int i = 0; i < numPixels; i++) {
+            int alpha = rnd.nextInt(10) < 8 ? 255 : rnd.nextInt(256);
+            pixels[i] = alpha << 24 | rnd.nextInt(0x01_00_00_00);
+        }
+        return pixels;
+    }
+
+    private static void measure(String name, int[] src, int[] dst, Kernel kernel) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            kernel.run(src, dst);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            kernel.run(src, dst);
+        }
+        double ms = (System.nanoTime() - start) / 1_000_000.0 / MEASURED_ROUNDS;
+        double megaPixelsPerSec = src.length / ms / 1000.0;
+        System.out.printf("    %-22s %8.2f ms, %8.1f MPixel/s%n", name, ms, megaPixelsPerSec);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import pixelitor.io.PngCompression;
+import pixelitor.io.PngDecoder;
+import pixelitor.io.PngEncoder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * Compares the {@link PngEncoder} and {@link PngDecoder} with the
+ * ImageIO PNG writer and reader on a fixed corpus of generated
+ * 4000x3000 images: noise, smooth gradients, flat blocks and a mix.
+ */
+public class PngPerformance {
+    private static final int WIDTH = 4000;
+    private static final int HEIGHT = 3000;
+    private static final int WARMUP_ROUNDS = 1;
+    private static final int MEASURED_ROUNDS = 2;
+
+    private PngPerformance() {
+    }
+
+    public static void main(String[] args) {
+        String[] names = {"noise", "gradient", "blocks", "mixed"};
+        for (int i = 0; i < names.length; i++) {
+            BufferedImage img = createImage(i);
+            byte[] imageIOPng = encodeWithImageIO(img);
+            System.out.printf("%s: ImageIO write = %.0f ms (%d KB), read = %.0f ms%n", names[i],
+                measure(() -> encodeWithImageIO(img)), imageIOPng.length / 1024,
+                measure(() -> decodeWithImageIO(imageIOPng)));
+
+            for (PngCompression compression : PngCompression.values()) {
+                byte[] png = PngEncoder.toBytes(img, compression);
+                System.out.printf("    %s: write = %.0f ms (%d KB), read = %.0f ms%n", compression,
+                    measure(() -> PngEncoder.toBytes(img, compression)), png.length / 1024,
+                    measure(() -> decode(png)));
+            }
+        }
+
+        System.exit(0);
+    }
+
+    private static byte[] encodeWithImageIO(BufferedImage img) {
+        var out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(img, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void decodeWithImageIO(byte[] png) {
+        try {
+            ImageIO.read(new ByteArrayInputStream(png));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void decode(byte[] png) {
+        try {
+            PngDecoder.read(new ByteArrayInputStream(png), NULL_TRACKER);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static double measure(Runnable task) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / MEASURED_ROUNDS;
+    }
+
+    private static BufferedImage createImage(int kind) {
+        Random random = new Random(kind);
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int noise = random.nextInt();
+                int gradient = 0xFF_00_00_00 | (x * 255 / WIDTH) << 16 | (y * 255 / HEIGHT) << 8 | ((x + y) & 0xFF);
+                int block = 0xFF_00_00_00 | ((x / 200) * 0x3F51 + (y / 150) * 0x1A3B7) & 0xFF_FF_FF;
+                int argb = switch (kind) {
+                    case 0 -> noise;
+                    case 1 -> gradient;
+                    case 2 -> block;
+                    default -> x < WIDTH / 3 ? noise : (x < 2 * WIDTH / 3 ? gradient : block);
+                };
+                img.setRGB(x, y, argb);
+            }
+        }
+        return img;
+    }
+}
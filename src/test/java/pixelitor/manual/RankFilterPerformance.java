@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import com.jhlabs.image.MedianFilter;
+import pixelitor.filters.impl.RankFilter;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * Measures the {@link RankFilter} with different radii on
+ * a 2000x2000 noise image, to show that its cost doesn't
+ * depend on the radius, and compares it with the 3x3 {@link MedianFilter}.
+ */
+public class RankFilterPerformance {
+    private static final int SIZE = 2000;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 3;
+
+    private RankFilterPerformance() {
+    }
+
+    public static void main(String[] args) {
+        BufferedImage src = createNoiseImage();
+
+        var median3x3 = new MedianFilter("3x3 Median");
+        median3x3.setProgressTracker(NULL_TRACKER);
+        System.out.printf("3x3 median filter: %.0f ms%n",
+            measure(() -> median3x3.filter(src, null)));
+
+        for (int radius : new int[]{1, 2, 5, 10, 25, 50}) {
+            var filter = new RankFilter("Median");
+            filter.setProgressTracker(NULL_TRACKER);
+            filter.setRadius(radius);
+            System.out.printf("rank filter, radius = %d: %.0f ms%n",
+                radius, measure(() -> filter.filter(src, null)));
+        }
+
+        System.exit(0);
+    }
+
+    private static double measure(Runnable task) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / MEASURED_ROUNDS;
+    }
+
+    private static BufferedImage createNoiseImage() {
+        BufferedImage img = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+        Random random = new Random(1);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                img.setRGB(x, y, 0xFF_00_00_00 | random.nextInt());
+            }
+        }
+        return img;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Compares the old way of parallelizing filters (one future
+ * per row, waited for in order) with {@link ThreadPool#parallelRows}
+ * on 4K and 16K images, using a cheap per-pixel operation,
+ * so that the scheduling overhead dominates.
+ * The 16K case needs a large heap (for example -Xmx4g).
+ */
+public class RowBandPerformance {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    private RowBandPerformance() {
+    }
+
+    public static void main(String[] args) {
+        measure(3840, 2160);
+        measure(15360, 8640);
+
+        System.exit(0);
+    }
+
+    private static void measure(int width, int height) {
+        int[] in = new int[width * height];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = i * 31;
+        }
+        int[] out = new int[in.length];
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            perRowFutures(in, out, width, height);
+            rowBands(in, out, width, height);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            perRowFutures(in, out, width, height);
+        }
+        double futuresMs = (System.nanoTime() - start) / 1_000_000.0 / MEASURED_ROUNDS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            rowBands(in, out, width, height);
+        }
+        double bandsMs = (System.nanoTime() - start) / 1_000_000.0 / MEASURED_ROUNDS;
+
+        System.out.printf("%dx%d: per-row futures = %.2f ms, row bands = %.2f ms%n",
+            width, height, futuresMs, bandsMs);
+    }
+
+    private static void perRowFutures(int[] in, int[] out, int width, int height) {
+        Executor pool = ThreadPool.getExecutor();
+        FutureTask<?>[] futures = new FutureTask[height];
+        for (int y = 0; y < height; y++) {
+            int finalY = y;
+            futures[y] = new FutureTask<>(() -> invertLine(in, out, width, finalY), null);
+            pool.execute(futures[y]);
+        }
+        try {
+            for (FutureTask<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void rowBands(int[] in, int[] out, int width, int height) {
+        ThreadPool.parallelRows(height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                invertLine(in, out, width, y);
+            }
+        }, ProgressTracker.NULL_TRACKER);
+    }
+
+    private static void invertLine(int[] in, int[] out, int width, int y) {
+        int index = y * width;
+        for (int x = 0; x < width; x++) {
+            out[index] = in[index] ^ 0x00_FF_FF_FF;
+            index++;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.particles;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.*;
+import java.awt.geom.CubicCurve2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+@DisplayName("ParticleSystem tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class ParticleSystemTest {
+    private static final int SIZE = 200;
+
+    // particles that start at random positions and flow in a swirl
+    private static ParticleSystem createSystem(int numParticles, long seed,
+                                               boolean antialias, boolean reproducible) {
+        Modifier swirl = (particles, iteration) -> {
+            for (int i = 0; i < particles.size(); i++) {
+                float dx = particles.x[i] - SIZE / 2.0f;
+                float dy = particles.y[i] - SIZE / 2.0f;
+                particles.x[i] += -dy * 0.05f + 1;
+                particles.y[i] += dx * 0.05f;
+            }
+        };
+        return ParticleSystem.builder(numParticles, 60)
+            .addSpawner(new Spawner.RandomPosition(SIZE, SIZE))
+            .addSpawner((particles, i, random) -> particles.color[i] = 0x40_FF_80_20)
+            .addModifier(swirl)
+            .strokes(new BasicStroke(1.5f), new BasicStroke(3))
+            .antialias(antialias)
+            .bounds(new Rectangle(0, 0, SIZE, SIZE))
+            .pathTolerance(2)
+            .seed(seed)
+            .reproducible(reproducible)
+            .build();
+    }
+
+    private static BufferedImage render(ParticleSystem system) {
+        BufferedImage img = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, SIZE, SIZE);
+        g.dispose();
+
+        system.render(img, NULL_TRACKER);
+        return img;
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void sameSeedGivesSameImageInReproducibleMode(boolean antialias) {
+        // not a multiple of the block size
+        int numParticles = 1000;
+        BufferedImage first = render(createSystem(numParticles, 42, antialias, true));
+        BufferedImage second = render(createSystem(numParticles, 42, antialias, true));
+        BufferedImage other = render(createSystem(numParticles, 43, antialias, true));
+
+        assertThat(getPixels(first)).isEqualTo(getPixels(second));
+        assertThat(getPixels(first)).isNotEqualTo(getPixels(other));
+
+        // something was drawn, but not everywhere
+        long numChanged = Arrays.stream(getPixels(first))
+            .filter(p -> p != 0xFF_00_00_00)
+            .count();
+        assertThat(numChanged).isBetween(SIZE * SIZE / 10L, SIZE * SIZE - 1L);
+    }
+
+    // the layers are merged in a different order, and the rounding
+    // errors of the premultiplied layers add up where many paths overlap
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void fastModeGivesAlmostTheSameImage(boolean antialias) {
+        int numParticles = 1000;
+        int[] reproducible = getPixels(render(createSystem(numParticles, 42, antialias, true)));
+        int[] fast = getPixels(render(createSystem(numParticles, 42, antialias, false)));
+
+        for (int i = 0; i < reproducible.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                assertThat((fast[i] >>> shift) & 0xFF)
+                    .isCloseTo((reproducible[i] >>> shift) & 0xFF, within(10));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void progressIsReportedOnTheCallingThread(boolean reproducible) {
+        ParticleSystem system = createSystem(1000, 42, false, reproducible);
+        Thread callingThread = Thread.currentThread();
+        AtomicInteger numUnits = new AtomicInteger();
+        AtomicInteger numForeignCalls = new AtomicInteger();
+        ProgressTracker pt = new ProgressTracker() {
+            @Override
+            public void unitDone() {
+                unitsDone(1);
+            }
+
+            @Override
+            public void unitsDone(int units) {
+                if (Thread.currentThread() != callingThread) {
+                    numForeignCalls.incrementAndGet();
+                }
+                numUnits.addAndGet(units);
+            }
+
+            @Override
+            public void finished() {
+            }
+        };
+
+        BufferedImage img = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+        system.render(img, pt);
+
+        assertThat(numUnits.get()).isEqualTo(system.getNumWorkUnits());
+        assertThat(numForeignCalls.get()).isZero();
+    }
+
+    @Test
+    void particlesAreRebornAfterLeavingTheBounds() {
+        int numParticles = 300;
+        AtomicInteger numSpawns = new AtomicInteger();
+        ParticleSystem system = ParticleSystem.builder(numParticles, 12)
+            .addSpawner((particles, i, random) -> {
+                particles.x[i] = 0;
+                particles.y[i] = random.nextInt(SIZE);
+                particles.color[i] = 0xFF_FF_FF_FF;
+                numSpawns.incrementAndGet();
+            })
+            .addModifier((particles, iteration) -> {
+                for (int i = 0; i < particles.size(); i++) {
+                    particles.x[i] += 10;
+                }
+            })
+            .bounds(new Rectangle(0, 0, 35, SIZE))
+            .build();
+        BufferedImage img = render(system);
+
+        // each particle leaves the bounds after 4 steps, and it's reborn in the
+        // next step, therefore it's spawned at the start, in step 4 and in step 8
+        assertThat(numSpawns.get()).isEqualTo(3 * numParticles);
+
+        // the paths are horizontal lines from x = 0 to x = 40
+        int[] pixels = getPixels(img);
+        for (int y = 0; y < SIZE; y++) {
+            int rowStart = y * SIZE;
+            assertThat(pixels[rowStart + 45]).isEqualTo(0xFF_00_00_00);
+        }
+        long numWhite = Arrays.stream(pixels)
+            .filter(p -> p == 0xFF_FF_FF_FF)
+            .count();
+        assertThat(numWhite).isGreaterThan(0);
+    }
+
+    @Test
+    void shapeFillerMatchesJava2D() {
+        Shape[] shapes = {
+            new Ellipse2D.Double(20.3, 30.7, 120.4, 90.2),
+            new BasicStroke(5, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND).createStrokedShape(
+                new CubicCurve2D.Double(10, 10, 250, 40, -50, 160, 190, 190)),
+            new BasicStroke(7).createStrokedShape(
+                new CubicCurve2D.Double(-30, 50, 300, 20, -100, 250, 230, 120)),
+        };
+        for (Shape shape : shapes) {
+            BufferedImage expected = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB_PRE);
+            Graphics2D g = expected.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            g.setColor(Color.WHITE);
+            g.fill(shape);
+            g.dispose();
+
+            BufferedImage actual = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB_PRE);
+            new ShapeFiller(getPixels(actual), SIZE, SIZE).fill(shape, 0xFF_FF_FF_FF);
+
+            int numFilled = 0;
+            int numDifferent = 0;
+            int[] expectedPixels = getPixels(expected);
+            int[] actualPixels = getPixels(actual);
+            for (int i = 0; i < expectedPixels.length; i++) {
+                if (expectedPixels[i] != 0) {
+                    numFilled++;
+                }
+                if (expectedPixels[i] != actualPixels[i]) {
+                    numDifferent++;
+                }
+            }
+            // the curves are flattened a bit differently,
+            // therefore some edge pixels can be different
+            assertThat(numFilled).isGreaterThan(500);
+            assertThat(numDifferent).isLessThan(numFilled / 25);
+        }
+    }
+
+    @Test
+    void shapeFillerCompositesWithSrcOver() {
+        int background = 0xFF_20_40_F0;
+        int color = 0x80_FF_00_40;
+        Rectangle rect = new Rectangle(10, 20, 50, 30);
+
+        BufferedImage expected = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB_PRE);
+        Graphics2D g = expected.createGraphics();
+        g.setColor(new Color(background, true));
+        g.fillRect(0, 0, SIZE, SIZE);
+        g.setColor(new Color(color, true));
+        g.fill(rect);
+        g.dispose();
+
+        BufferedImage actual = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB_PRE);
+        Arrays.fill(getPixels(actual), background);
+        new ShapeFiller(getPixels(actual), SIZE, SIZE).fill(rect, color);
+
+        for (int y = 0; y < SIZE; y += 5) {
+            for (int x = 0; x < SIZE; x += 5) {
+                int e = getPixels(expected)[x + y * SIZE];
+                int a = getPixels(actual)[x + y * SIZE];
+                for (int shift = 0; shift < 32; shift += 8) {
+                    assertThat((a >>> shift) & 0xFF)
+                        .as("pixel at %d, %d", x, y)
+                        .isBetween(((e >>> shift) & 0xFF) - 1, ((e >>> shift) & 0xFF) + 1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.selection;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("SelectionMask tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class SelectionMaskTest {
+    private static final Rectangle CANVAS = new Rectangle(0, 0, 200, 150);
+
+    private static Shape createTextShape() {
+        Font font = new Font(Font.SERIF, Font.BOLD, 60);
+        FontRenderContext frc = new FontRenderContext(null, true, true);
+        return font.createGlyphVector(frc, "Pixelitor")
+            .getOutline(10, 90);
+    }
+
+    /**
+     * Returns the number of pixels where the two shapes
+     * disagree about whether the pixel center is inside.
+     */
+    private static int countDifferences(Shape a, Shape b, Rectangle area) {
+        int count = 0;
+        for (int y = area.y; y < area.y + area.height; y++) {
+            for (int x = area.x; x < area.x + area.width; x++) {
+                if (a.contains(x + 0.5, y + 0.5) != b.contains(x + 0.5, y + 0.5)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int countSelected(Shape shape, Rectangle area) {
+        return countDifferences(shape, new Rectangle(), area);
+    }
+
+    @Test
+    void complexity() {
+        assertThat(SelectionMask.isComplex(new Rectangle(10, 10, 50, 50))).isFalse();
+        assertThat(SelectionMask.isComplex(new Ellipse2D.Double(10, 10, 50, 50))).isFalse();
+        assertThat(SelectionMask.isComplex(createTextShape())).isFalse();
+
+        Font font = new Font(Font.SERIF, Font.PLAIN, 20);
+        FontRenderContext frc = new FontRenderContext(null, true, true);
+        Shape longText = font.createGlyphVector(frc,
+            "The quick brown fox jumps over the lazy dog. " +
+                "Pack my box with five dozen liquor jugs.").getOutline();
+        assertThat(SelectionMask.isComplex(longText)).isTrue();
+    }
+
+    @Test
+    void shapeRoundTrip() {
+        Shape text = createTextShape();
+        SelectionMask mask = SelectionMask.fromShape(text);
+        Shape traced = mask.toShape();
+
+        int selected = countSelected(text, CANVAS);
+        assertThat(selected).isGreaterThan(1000);
+        // only some boundary pixels can be different
+        assertThat(countDifferences(text, traced, CANVAS))
+            .isLessThan(selected / 50);
+        assertThat(SelectionMask.fromShape(traced).isEmpty()).isFalse();
+    }
+
+    @ParameterizedTest
+    @EnumSource(ShapeCombination.class)
+    void combinationsMatchArea(ShapeCombination combination) {
+        Shape text = createTextShape();
+        Shape ellipse = new Ellipse2D.Double(40, 30, 120, 80);
+
+        Shape rasterResult = SelectionMask.combine(text, ellipse, combination);
+        Area expected = new Area(text);
+        switch (combination) {
+            case REPLACE -> expected = new Area(ellipse);
+            case ADD -> expected.add(new Area(ellipse));
+            case SUBTRACT -> expected.subtract(new Area(ellipse));
+            case INTERSECT -> expected.intersect(new Area(ellipse));
+        }
+
+        int selected = countSelected(expected, CANVAS);
+        assertThat(countDifferences(expected, rasterResult, CANVAS))
+            .isLessThan(Math.max(10, selected / 30));
+    }
+
+    @Test
+    void emptyIntersection() {
+        SelectionMask a = SelectionMask.fromShape(new Ellipse2D.Double(0, 0, 30, 30));
+        SelectionMask b = SelectionMask.fromShape(new Ellipse2D.Double(100, 100, 30, 30));
+
+        SelectionMask intersection = a.combine(b, ShapeCombination.INTERSECT);
+        assertThat(intersection.isEmpty()).isTrue();
+        assertThat(intersection.toShape().getBounds2D().isEmpty()).isTrue();
+    }
+
+    @Test
+    void invert() {
+        Shape text = createTextShape();
+        SelectionMask inverted = SelectionMask.fromShape(text, CANVAS).invert(CANVAS);
+
+        assertThat(inverted.getBounds()).isEqualTo(CANVAS);
+        assertThat(inverted.getValue(1, 1)).isEqualTo(255);
+
+        Area expected = new Area(CANVAS);
+        expected.subtract(new Area(text));
+        int selected = countSelected(expected, CANVAS);
+        assertThat(countDifferences(expected, inverted.toShape(), CANVAS))
+            .isLessThan(selected / 50);
+    }
+
+    @Test
+    void intersectWithRectangle() {
+        SelectionMask mask = SelectionMask.fromShape(createTextShape())
+            .intersect(new Rectangle2D.Double(0, 0, 100, 150));
+
+        assertThat(mask.getBounds().getMaxX()).isLessThanOrEqualTo(100);
+        assertThat(mask.getValue(120, 70)).isZero();
+    }
+
+    @Test
+    void expandAndContract() {
+        double radius = 40;
+        Shape circle = new Ellipse2D.Double(100 - radius, 75 - radius, 2 * radius, 2 * radius);
+        SelectionMask mask = SelectionMask.fromShape(circle);
+
+        Rectangle expanded = mask.modify(SelectionModifyType.EXPAND, 20)
+            .toShape().getBounds();
+        assertThat(expanded.getWidth()).isBetween(2 * (radius + 10) - 2, 2 * (radius + 10) + 2);
+
+        Rectangle contracted = mask.modify(SelectionModifyType.CONTRACT, 20)
+            .toShape().getBounds();
+        assertThat(contracted.getWidth()).isBetween(2 * (radius - 10) - 2, 2 * (radius - 10) + 2);
+    }
+
+    @Test
+    void borders() {
+        Shape rect = new Rectangle2D.Double(50, 50, 100, 60);
+        SelectionMask mask = SelectionMask.fromShape(new Area(rect));
+
+        SelectionMask border = mask.modify(SelectionModifyType.BORDER, 10);
+        assertThat(border.getValue(47, 80)).isEqualTo(255);
+        assertThat(border.getValue(52, 80)).isEqualTo(255);
+        assertThat(border.getValue(60, 80)).isZero();
+        assertThat(border.getValue(40, 80)).isZero();
+
+        SelectionMask outer = mask.modify(SelectionModifyType.BORDER_OUT, 10);
+        assertThat(outer.getValue(47, 80)).isEqualTo(255);
+        assertThat(outer.getValue(52, 80)).isZero();
+
+        SelectionMask inner = mask.modify(SelectionModifyType.BORDER_IN, 10);
+        assertThat(inner.getValue(47, 80)).isZero();
+        assertThat(inner.getValue(52, 80)).isEqualTo(255);
+    }
+
+    @Test
+    void featherSoftensTheEdges() {
+        SelectionMask mask = SelectionMask.fromShape(new Rectangle(50, 50, 100, 60));
+        SelectionMask feathered = mask.feather(6);
+
+        assertThat(feathered.getValue(100, 80)).isEqualTo(255);
+        int edgeValue = feathered.getValue(50, 80);
+        assertThat(edgeValue).isBetween(64, 192);
+        assertThat(feathered.getValue(46, 80)).isBetween(1, edgeValue - 1);
+        assertThat(feathered.getBounds().contains(mask.getBounds())).isTrue();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("CoalescingTask tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class CoalescingTaskTest {
+    // an executor that runs the tasks only when asked to
+    private final Queue<Runnable> queue = new ArrayDeque<>();
+    private int numRuns;
+
+    @Test
+    void repeatedRequestsAreQueuedOnce() {
+        var task = new CoalescingTask(() -> numRuns++, queue::add);
+        for (int i = 0; i < 20; i++) {
+            task.request();
+        }
+        assertThat(queue).hasSize(1);
+
+        queue.remove().run();
+        assertThat(numRuns).isEqualTo(1);
+        assertThat(task.isIdle()).isTrue();
+
+        task.request();
+        assertThat(queue).hasSize(1);
+    }
+
+    @Test
+    void requestsDuringRunCauseOneMoreRun() {
+        CoalescingTask[] holder = new CoalescingTask[1];
+        holder[0] = new CoalescingTask(() -> {
+            numRuns++;
+            if (numRuns == 1) {
+                // requested while running
+                holder[0].request();
+                holder[0].request();
+                holder[0].request();
+            }
+        }, queue::add);
+
+        holder[0].request();
+        queue.remove().run();
+
+        assertThat(numRuns).isEqualTo(2);
+        assertThat(queue).isEmpty();
+        assertThat(holder[0].isIdle()).isTrue();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("DistanceTransform tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class DistanceTransformTest {
+    private final Random rnd = new Random(42);
+
+    @ParameterizedTest
+    @CsvSource({"1, 1, 0.5", "37, 23, 0.02", "64, 64, 0.001", "150, 7, 0.1", "5, 200, 0.05"})
+    void matchesBruteForce(int width, int height, double featureProbability) {
+        boolean[] features = new boolean[width * height];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = rnd.nextDouble() < featureProbability;
+        }
+        features[rnd.nextInt(features.length)] = true;
+
+        float[] distances = DistanceTransform.compute(features, width, height);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertThat(distances[x + y * width])
+                    .as("distance at %d, %d", x, y)
+                    .isEqualTo(bruteForce(features, width, height, x, y));
+            }
+        }
+    }
+
+    @Test
+    void withoutFeaturesAllDistancesAreInfinite() {
+        float[] distances = DistanceTransform.compute(new boolean[30 * 20], 30, 20);
+        for (float distance : distances) {
+            assertThat(distance).isEqualTo(Float.POSITIVE_INFINITY);
+        }
+    }
+
+    @Test
+    void distancesFromSinglePixel() {
+        int size = 101;
+        boolean[] features = new boolean[size * size];
+        features[50 + 50 * size] = true;
+
+        float[] distances = DistanceTransform.compute(features, size, size);
+
+        assertThat(distances[50 + 50 * size]).isZero();
+        assertThat(distances[0]).isEqualTo((float) Math.sqrt(2 * 50 * 50));
+        assertThat(distances[53 + 54 * size]).isEqualTo(5.0f);
+        assertThat(distances[100 + 50 * size]).isEqualTo(50.0f);
+    }
+
+    private static float bruteForce(boolean[] features, int width, int height, int x, int y) {
+        long min = Long.MAX_VALUE;
+        for (int fy = 0; fy < height; fy++) {
+            for (int fx = 0; fx < width; fx++) {
+                if (features[fx + fy * width]) {
+                    long dx = fx - x;
+                    long dy = fy - y;
+                    min = Math.min(min, dx * dx + dy * dy);
+                }
+            }
+        }
+        return (float) Math.sqrt(min);
+    }
+}
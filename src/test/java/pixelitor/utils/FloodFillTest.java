@@ -0,0 +1,232 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pixelitor.selection.SelectionMask;
+
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("FloodFill tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class FloodFillTest {
+    private static final int BLACK = 0xFF_00_00_00;
+    private static final int WHITE = 0xFF_FF_FF_FF;
+    private static final int RED = 0xFF_FF_00_00;
+
+    private static int[] createRandomImage(int width, int height, long seed) {
+        // few colors with small variations, so that there are
+        // both large connected regions and many separate ones
+        Random rnd = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            int gray = rnd.nextInt(4) * 60 + rnd.nextInt(10);
+            pixels[i] = 0xFF_00_00_00 | gray << 16 | gray << 8 | gray;
+        }
+        return pixels;
+    }
+
+    private static boolean isSimilar(int color1, int color2, int tolerance) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            int diff = ((color1 >>> shift) & 0xFF) - ((color2 >>> shift) & 0xFF);
+            if (Math.abs(diff) > tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // a simple breadth-first search as a reference
+    private static boolean[] findRegion(int[] pixels, int width, int height,
+                                        int seedX, int seedY, int tolerance) {
+        int target = pixels[seedX + seedY * width];
+        boolean[] found = new boolean[pixels.length];
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(seedX + seedY * width);
+        found[seedX + seedY * width] = true;
+        while (!queue.isEmpty()) {
+            int index = queue.remove();
+            int x = index % width;
+            int y = index / width;
+            int[][] neighbors = {{x - 1, y}, {x + 1, y}, {x, y - 1}, {x, y + 1}};
+            for (int[] n : neighbors) {
+                if (n[0] < 0 || n[1] < 0 || n[0] >= width || n[1] >= height) {
+                    continue;
+                }
+                int nIndex = n[0] + n[1] * width;
+                if (!found[nIndex] && isSimilar(pixels[nIndex], target, tolerance)) {
+                    found[nIndex] = true;
+                    queue.add(nIndex);
+                }
+            }
+        }
+        return found;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 10, 60, 130})
+    void localFillMatchesReference(int tolerance) {
+        int width = 150;
+        int height = 97;
+        int[] pixels = createRandomImage(width, height, tolerance);
+        int[] orig = pixels.clone();
+        boolean[] expected = findRegion(pixels, width, height, 70, 40, tolerance);
+
+        FloodFill fill = FloodFill.local(pixels, width, height, 70, 40, tolerance);
+        Rectangle area = fill.getAffectedArea(false);
+        fill.apply(RED, false, null, 0, 0);
+
+        Rectangle expectedArea = null;
+        for (int i = 0; i < pixels.length; i++) {
+            if (expected[i]) {
+                assertThat(pixels[i]).isEqualTo(RED);
+                Rectangle pixel = new Rectangle(i % width, i / width, 1, 1);
+                expectedArea = expectedArea == null ? pixel : expectedArea.union(pixel);
+            } else {
+                assertThat(pixels[i]).isEqualTo(orig[i]);
+            }
+        }
+        assertThat(area).isEqualTo(expectedArea);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 10, 60})
+    void globalReplaceMatchesReference(int tolerance) {
+        int width = 211;
+        int height = 133;
+        int[] pixels = createRandomImage(width, height, 42);
+        int[] orig = pixels.clone();
+        int target = pixels[5];
+
+        FloodFill fill = FloodFill.global(pixels, width, height, target, tolerance);
+        fill.apply(RED, false, null, 0, 0);
+
+        for (int i = 0; i < pixels.length; i++) {
+            int expected = isSimilar(orig[i], target, tolerance) ? RED : orig[i];
+            assertThat(pixels[i]).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void affectedAreaIsTheFoundRegion() {
+        int width = 100;
+        int height = 80;
+        int[] pixels = new int[width * height];
+        java.util.Arrays.fill(pixels, BLACK);
+        for (int y = 20; y < 30; y++) {
+            for (int x = 10; x < 50; x++) {
+                pixels[x + y * width] = WHITE;
+            }
+        }
+
+        FloodFill fill = FloodFill.local(pixels, width, height, 15, 25, 0);
+        assertThat(fill.getAffectedArea(false)).isEqualTo(new Rectangle(10, 20, 40, 10));
+        assertThat(fill.getAffectedArea(true)).isEqualTo(new Rectangle(9, 19, 42, 12));
+
+        FloodFill global = FloodFill.global(pixels, width, height, RED, 0);
+        assertThat(global.getAffectedArea(false)).isNull();
+    }
+
+    @Test
+    void serpentineRegionIsFilled() {
+        // a maze-like region with very long paths and many spans
+        int size = 1001;
+        int[] pixels = new int[size * size];
+        java.util.Arrays.fill(pixels, WHITE);
+        for (int y = 1; y < size; y += 2) {
+            int gap = (y / 2) % 2 == 0 ? size - 1 : 0;
+            for (int x = 0; x < size; x++) {
+                if (x != gap) {
+                    pixels[x + y * size] = BLACK;
+                }
+            }
+        }
+
+        FloodFill.local(pixels, size, size, 0, 0, 0)
+            .apply(RED, false, null, 0, 0);
+
+        assertThat(pixels[size - 1 + (size - 1) * size]).isEqualTo(RED);
+        assertThat(pixels[500 + 500 * size]).isEqualTo(RED);
+        assertThat(pixels[3 + size]).isEqualTo(BLACK);
+    }
+
+    @Test
+    void softEdgesBlendTheNeighbors() {
+        int width = 10;
+        int height = 1;
+        int gray = 0xFF_80_80_80;
+        int[] pixels = {WHITE, WHITE, WHITE, gray, BLACK, WHITE, WHITE, WHITE, WHITE, WHITE};
+
+        FloodFill.local(pixels, width, height, 0, 0, 0)
+            .apply(RED, true, null, 0, 0);
+
+        assertThat(pixels[2]).isEqualTo(RED);
+        // the gray pixel is half-way between the target and the fill color
+        int blended = pixels[3];
+        assertThat((blended >>> 16) & 0xFF).isBetween(0xB0, 0xD0);
+        assertThat(blended & 0xFF).isBetween(0x30, 0x50);
+        // not adjacent to the filled region
+        assertThat(pixels[4]).isEqualTo(BLACK);
+        assertThat(pixels[5]).isEqualTo(WHITE);
+    }
+
+    @Test
+    void transparentSoftEdgesDontDarken() {
+        int[] pixels = {WHITE, 0xFF_80_80_80};
+        FloodFill.local(pixels, 2, 1, 0, 0, 0)
+            .apply(0, true, null, 0, 0);
+
+        assertThat(pixels[0]).isZero();
+        int alpha = pixels[1] >>> 24;
+        assertThat(alpha).isBetween(0x70, 0x90);
+        // the color doesn't change, only the alpha
+        assertThat(pixels[1] & 0xFF_FF_FF).isEqualTo(0x80_80_80);
+    }
+
+    @Test
+    void fillIsLimitedToTheSelection() {
+        int width = 60;
+        int height = 40;
+        int[] pixels = new int[width * height];
+        java.util.Arrays.fill(pixels, WHITE);
+
+        // the image is translated relative to the canvas
+        int tx = -10;
+        int ty = -5;
+        SelectionMask selection = SelectionMask.fromShape(new Rectangle(0, 0, 20, 15));
+
+        FloodFill.local(pixels, width, height, 30, 30, 0)
+            .apply(RED, false, selection, tx, ty);
+
+        assertThat(pixels[15 + 10 * width]).isEqualTo(RED);
+        assertThat(pixels[29 + 19 * width]).isEqualTo(RED);
+        assertThat(pixels[30 + 19 * width]).isEqualTo(WHITE);
+        assertThat(pixels[29 + 20 * width]).isEqualTo(WHITE);
+        assertThat(pixels[50 + 30 * width]).isEqualTo(WHITE);
+    }
+}
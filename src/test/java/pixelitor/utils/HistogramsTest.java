@@ -0,0 +1,238 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pixelitor.selection.SelectionMask;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_3BYTE_BGR;
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Histograms tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class HistogramsTest {
+    private final Random rnd = new Random(7);
+
+    private BufferedImage createRandomImage(int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = rnd.nextInt(0x1_00_00_00);
+                // some pixels are transparent
+                int alpha = rnd.nextInt(10) == 0 ? 0 : 0xFF;
+                img.setRGB(x, y, alpha << 24 | rgb);
+            }
+        }
+        return img;
+    }
+
+    private static int[][] countBruteForce(BufferedImage img, Rectangle area) {
+        int[][] expected = new int[4][256];
+        for (int y = area.y; y < area.y + area.height; y++) {
+            for (int x = area.x; x < area.x + area.width; x++) {
+                int rgb = img.getRGB(x, y);
+                if ((rgb >>> 24) == 0) {
+                    continue;
+                }
+                int r = (rgb >>> 16) & 0xFF;
+                int g = (rgb >>> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                expected[0][r]++;
+                expected[1][g]++;
+                expected[2][b]++;
+                expected[3][(int) Math.round(0.299 * r + 0.587 * g + 0.114 * b - 0.5)]++;
+            }
+        }
+        return expected;
+    }
+
+    private static void assertCounts(Histograms actual, int[][] expected) {
+        assertThat(actual.getReds()).containsExactly(expected[0]);
+        assertThat(actual.getGreens()).containsExactly(expected[1]);
+        assertThat(actual.getBlues()).containsExactly(expected[2]);
+    }
+
+    private static void assertLuminancesClose(Histograms actual, int[][] expected) {
+        // the rounding of the luminance can differ at the bin boundaries
+        int[] luminances = actual.getLuminances();
+        int differences = 0;
+        for (int i = 0; i < 256; i++) {
+            differences += Math.abs(luminances[i] - expected[3][i]);
+        }
+        assertThat(differences).isLessThan(actual.getNumPixels() / 50 + 2);
+    }
+
+    private static void fill(BufferedImage img, Rectangle area, Color color) {
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fill(area);
+        g.dispose();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {TYPE_INT_ARGB, TYPE_INT_ARGB_PRE, TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR_PRE})
+    void allPixelsAreCounted(int imageType) {
+        BufferedImage orig = createRandomImage(300, 170);
+        BufferedImage img = new BufferedImage(300, 170, imageType);
+        Graphics2D g = img.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(orig, 0, 0, null);
+        g.dispose();
+
+        Histograms histograms = Histograms.of(img);
+        int[][] expected = countBruteForce(img, new Rectangle(0, 0, 300, 170));
+
+        assertCounts(histograms, expected);
+        assertLuminancesClose(histograms, expected);
+        assertThat(histograms.isSampled()).isFalse();
+        if (imageType == TYPE_3BYTE_BGR) {
+            assertThat(histograms.getNumPixels()).isEqualTo(300 * 170);
+        } else {
+            assertThat(histograms.getNumPixels()).isLessThan(300 * 170);
+        }
+    }
+
+    @Test
+    void partiallyTransparentPixelsAreUnpremultiplied() {
+        BufferedImage img = new BufferedImage(2, 1, TYPE_INT_ARGB_PRE);
+        img.setRGB(0, 0, 0x80_C8_64_32);
+        img.setRGB(1, 0, 0xFF_C8_64_32);
+
+        Histograms histograms = Histograms.of(img);
+        int[] reds = histograms.getReds();
+        int counted = reds[0xC7] + reds[0xC8] + reds[0xC9];
+        assertThat(counted).isEqualTo(2);
+    }
+
+    @Test
+    void onlySelectedPixelsAreCounted() {
+        BufferedImage img = createRandomImage(200, 150);
+        // the image is translated relative to the canvas
+        int tx = -30;
+        int ty = 20;
+        Rectangle canvasArea = new Rectangle(50, 40, 80, 60);
+        SelectionMask selection = SelectionMask.fromShape(canvasArea);
+
+        Histograms histograms = Histograms.of(img, selection, tx, ty, 1);
+
+        Rectangle imageArea = new Rectangle(canvasArea);
+        imageArea.translate(-tx, -ty);
+        assertCounts(histograms, countBruteForce(img, imageArea));
+    }
+
+    @Test
+    void snapshotIsNotAffectedByLaterEdits() {
+        BufferedImage img = createRandomImage(200, 150);
+        Rectangle all = new Rectangle(0, 0, 200, 150);
+        int[][] expected = countBruteForce(img, all);
+
+        Histograms.Snapshot snapshot = Histograms.snapshot(img, null, 0, 0, 1);
+        fill(img, all, Color.RED);
+
+        assertCounts(snapshot.count(), expected);
+    }
+
+    @Test
+    void sampledHistogramsAreApproximate() {
+        BufferedImage img = new BufferedImage(2000, 1500, TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 2000, 1500);
+        g.setColor(Color.BLUE);
+        g.fillRect(0, 0, 500, 1500);
+        g.dispose();
+
+        Histograms sampled = Histograms.sampled(img, null, 0, 0);
+        assertThat(sampled.isSampled()).isTrue();
+        int numSamples = sampled.getNumPixels();
+        assertThat(numSamples).isBetween(100_000, 400_000);
+
+        // a quarter of the image is blue
+        double blueRatio = sampled.getBlues()[255] / (double) numSamples;
+        assertThat(blueRatio).isBetween(0.23, 0.27);
+    }
+
+    @Test
+    void tiledHistogramsAreUpdatedIncrementally() {
+        int width = 700;
+        int height = 530;
+        BufferedImage img = createRandomImage(width, height);
+        TiledHistograms tiled = new TiledHistograms();
+
+        assertCounts(tiled.update(img), countBruteForce(img, new Rectangle(0, 0, width, height)));
+        assertThat(tiled.getNumDirtyTiles()).isZero();
+
+        for (int i = 0; i < 5; i++) {
+            Rectangle changed = new Rectangle(rnd.nextInt(width - 100), rnd.nextInt(height - 100),
+                1 + rnd.nextInt(100), 1 + rnd.nextInt(100));
+            fill(img, changed, new Color(rnd.nextInt()));
+
+            tiled.invalidateRegion(changed);
+            assertThat(tiled.getNumDirtyTiles()).isBetween(1, 4);
+
+            assertCounts(tiled.update(img), countBruteForce(img, new Rectangle(0, 0, width, height)));
+        }
+    }
+
+    @Test
+    void tiledHistogramsCountTheCopiedTiles() {
+        BufferedImage img = createRandomImage(600, 400);
+        Rectangle all = new Rectangle(0, 0, 600, 400);
+        TiledHistograms tiled = new TiledHistograms();
+        tiled.update(img);
+
+        Rectangle changed = new Rectangle(100, 100, 50, 50);
+        fill(img, changed, Color.GREEN);
+        tiled.invalidateRegion(changed);
+        tiled.copyDirtyTiles(img);
+        assertThat(tiled.getNumDirtyTiles()).isZero();
+        int[][] expected = countBruteForce(img, all);
+
+        // edited after the copy, but before the counting
+        fill(img, changed, Color.BLUE);
+        assertCounts(tiled.update(), expected);
+    }
+
+    @Test
+    void tiledHistogramsAreResetForNewSize() {
+        TiledHistograms tiled = new TiledHistograms();
+        tiled.update(createRandomImage(300, 300));
+
+        BufferedImage bigger = createRandomImage(400, 200);
+        assertCounts(tiled.update(bigger), countBruteForce(bigger, new Rectangle(0, 0, 400, 200)));
+
+        tiled.invalidateAll();
+        assertThat(tiled.getNumDirtyTiles()).isEqualTo(-1);
+        assertCounts(tiled.update(bigger), countBruteForce(bigger, new Rectangle(0, 0, 400, 200)));
+    }
+}
@@ -27,8 +27,14 @@ import pixelitor.tools.pen.SubPath;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
 
+import static org.assertj.core.api.Assertions.within;
 import static pixelitor.assertions.PixelitorAssertions.assertThat;
 import static pixelitor.tools.pen.AnchorPointType.SYMMETRIC;
 
@@ -184,4 +190,34 @@ class ShapesTest {
         Rectangle rectOut = Shapes.toPositiveRect(rect);
         assertThat(rectOut).isEqualTo(rectExcepted);
     }
-}
\ No newline at end of file
+
+    @Test
+    void smoothConnect_arrayVersionMatchesListVersion() {
+        float[] xs = {-1, -1, 10, 30, 45, 45, 80, 60, -1};
+        float[] ys = {-1, -1, 20, 5, 40, 40, 42, 90, -1};
+        List<Point2D> points = new ArrayList<>();
+        for (int i = 2; i < 8; i++) {
+            points.add(new Point2D.Float(xs[i], ys[i]));
+        }
+        Path2D expected = Shapes.smoothConnect(points, 0.5f);
+
+        Path2D.Float actual = new Path2D.Float();
+        Shapes.smoothConnect(xs, ys, 2, 6, 0.5f, actual);
+
+        PathIterator expectedIt = expected.getPathIterator(null);
+        PathIterator actualIt = actual.getPathIterator(null);
+        float[] expectedCoords = new float[6];
+        float[] actualCoords = new float[6];
+        while (!expectedIt.isDone()) {
+            assertThat(actualIt.isDone()).isFalse();
+            int type = expectedIt.currentSegment(expectedCoords);
+            assertThat(actualIt.currentSegment(actualCoords)).isEqualTo(type);
+            for (int i = 0; i < 6; i++) {
+                assertThat(actualCoords[i]).isCloseTo(expectedCoords[i], within(0.001f));
+            }
+            expectedIt.next();
+            actualIt.next();
+        }
+        assertThat(actualIt.isDone()).isTrue();
+    }
+}
@@ -19,8 +19,8 @@ package pixelitor.utils;
 
 import pixelitor.colors.Colors;
 import pixelitor.particles.Modifier;
-import pixelitor.particles.Particle;
-import pixelitor.particles.ParticleSystem;
+import pixelitor.particles.Particles;
+import pixelitor.particles.Spawner;
 
 import javax.swing.*;
 import java.awt.*;
@@ -28,6 +28,7 @@ import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.TimeUnit;
 
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
@@ -36,26 +37,25 @@ import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
 public class SmoothConnectTest extends JPanel {
     private final Dimension size = new Dimension(300, 300);
 
-    private final ParticleSystem<IndexedParticle> system;
+    private final Particles particles;
+    private final Modifier bouncer = this::bounce;
     private final JCheckBox isClosed = new JCheckBox("Close shape");
     private final JSlider smoothness = new JSlider(-1000, 1000, 100);
-    private final List<Point2D> pointList;
 
     public SmoothConnectTest() {
-        //<editor-fold defaultstate="collapsed" desc="Initializing Particle System">
+        //<editor-fold defaultstate="collapsed" desc="Initializing the particles">
 
         int particleCount = 5;
 
-        pointList = new ArrayList<>(particleCount);
-
-        system = ParticleSystem.<IndexedParticle>createSystem(particleCount)
-            .setParticleCreator(() -> {
-                IndexedParticle particle = new IndexedParticle();
-                pointList.add(particle.pos);
-                return particle;
-            })
-            .addModifier(new Modifier.RandomizePosition<>(size.width, size.height, ReseedSupport.getLastSeedRandom()))
-            .build();
+        particles = new Particles(particleCount, 0);
+        Spawner spawner = new Spawner.RandomPosition(size.width, size.height);
+        SplittableRandom random = ReseedSupport.getLastSeedSRandom();
+        for (int i = 0; i < particleCount; i++) {
+            spawner.spawn(particles, i, random);
+            double angle = 2 * Math.PI * random.nextDouble();
+            particles.vx[i] = (float) Math.cos(angle);
+            particles.vy[i] = (float) Math.sin(angle);
+        }
 
         //</editor-fold>
 
@@ -80,9 +80,12 @@ public class SmoothConnectTest extends JPanel {
         Graphics2D g2 = (Graphics2D) g;
         Colors.fillWith(Color.BLACK, g2, 300, 300);
         g2.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
-        system.step();
+        bouncer.modify(particles, 0);
 
-        List<Point2D> points = new ArrayList<>(pointList);
+        List<Point2D> points = new ArrayList<>(particles.size());
+        for (int i = 0; i < particles.size(); i++) {
+            points.add(new Point2D.Float(particles.x[i], particles.y[i]));
+        }
 
         if (isClosed.isSelected()) {
             points.add(points.get(0));
@@ -132,47 +135,16 @@ public class SmoothConnectTest extends JPanel {
     }
 
 
-    private class IndexedParticle extends Particle {
-        private static int idx = 0;
-        public final int index;
-
-        public IndexedParticle() {
-            pos = new Point2D.Float();
-            vel = new Vector2D();
-            this.index = idx++;
-            reset();
-        }
-
-        @Override
-        public void flush() {
-
-        }
-
-        @Override
-        public void reset() {
-            double fact = (2 * Math.PI * Math.random());
-            vel.set((float) Math.cos(fact), (float) Math.sin(fact));
-        }
-
-        @Override
-        public boolean isDead() {
-            return false;
-        }
-
-        @Override
-        public void update() {
-            pos.setLocation(
-                pos.getX() + vel.x,
-                pos.getY() + vel.y
-            );
-            if (pos.getX() < 0 || pos.getX() > size.width) {
-                vel.set(vel.x * -1, vel.y);
+    private void bounce(Particles particles, int iteration) {
+        for (int i = 0; i < particles.size(); i++) {
+            particles.x[i] += particles.vx[i];
+            particles.y[i] += particles.vy[i];
+            if (particles.x[i] < 0 || particles.x[i] > size.width) {
+                particles.vx[i] *= -1;
             }
-            if (pos.getY() < 0 || pos.getY() > size.height) {
-                vel.set(vel.x, vel.y * -1);
+            if (particles.y[i] < 0 || particles.y[i] > size.height) {
+                particles.vy[i] *= -1;
             }
         }
-
     }
-
 }
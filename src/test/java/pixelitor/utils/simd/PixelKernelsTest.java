@@ -0,0 +1,243 @@
+/*
+ * Copyright 2021 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.simd;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import pixelitor.filters.impl.SepiaFilter;
+import pixelitor.utils.ImageUtils;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@DisplayName("PixelKernels tests")
+@TestMethodOrder(MethodOrderer.Random.class)
+class PixelKernelsTest {
+    private static Kernels vector;
+    private static final ScalarKernels scalar = ScalarKernels.INSTANCE;
+
+    private final Random rnd = new Random(29);
+
+    @BeforeAll
+    static void beforeAllTests() {
+        // only in the vector Maven profile, which also
+        // runs the tests with the jdk.incubator.vector module
+        vector = PixelKernels.loadVectorKernels();
+    }
+
+    // the tests comparing the two implementations call this first
+    private static void assumeVectorized() {
+        assumeTrue(vector != null, "the vector kernels were not compiled");
+    }
+
+    // mostly random pixels, but with many fully transparent
+    // and fully opaque ones, because these are special cases
+    private int[] createPixels(int length) {
+        int[] pixels = new int[length];
+        for (int i = 0; i < length; i++) {
+            int rgb = rnd.nextInt();
+            pixels[i] = switch (rnd.nextInt(4)) {
+                case 0 -> rgb & 0x00_FF_FF_FF;
+                case 1 -> rgb | 0xFF_00_00_00;
+                default -> rgb;
+            };
+        }
+        return pixels;
+    }
+
+    private static int[] createLut(Random rnd) {
+        int[] lut = new int[256];
+        for (int i = 0; i < lut.length; i++) {
+            // also values outside of the 0..255 range
+            lut[i] = rnd.nextInt(300) - 20;
+        }
+        return lut;
+    }
+
+    // the lengths aren't multiples of the vector length, and the
+    // ranges don't start at 0, so that the scalar tails are tested, too
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 16, 100, 1021, 5000})
+    void premultiplyIsExact(int length) {
+        assumeVectorized();
+        int[] original = createPixels(length + 3);
+        int[] expected = original.clone();
+        int[] pixels = original.clone();
+        scalar.premultiply(expected, 3, length + 3);
+        vector.premultiply(pixels, 3, length + 3);
+        assertThat(pixels).isEqualTo(expected);
+
+        for (int i = 3; i < length + 3; i++) {
+            assertThat(expected[i]).isEqualTo(ImageUtils.premultiply(original[i]));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 16, 100, 1021, 5000})
+    void unpremultiplyIsExact(int length) {
+        assumeVectorized();
+        int[] original = createPixels(length);
+        int[] expected = original.clone();
+        int[] pixels = original.clone();
+        scalar.unpremultiply(expected, 0, length);
+        vector.unpremultiply(pixels, 0, length);
+        assertThat(pixels).isEqualTo(expected);
+
+        for (int i = 0; i < length; i++) {
+            assertThat(expected[i]).isEqualTo(ImageUtils.unPremultiply(original[i]));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, true", "33, true", "2000, true", "1, false", "33, false", "2000, false"})
+    void invertIsExact(int length, boolean premultiplied) {
+        assumeVectorized();
+        int[] src = createPixels(length);
+        int[] expected = new int[length];
+        int[] actual = new int[length];
+        scalar.invert(src, expected, 0, length, premultiplied);
+        vector.invert(src, actual, 0, length, premultiplied);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "5, true, false", "517, true, false", "3000, true, false",
+        "5, false, false", "517, false, false", "3000, false, false",
+        "5, false, true", "517, false, true", "3000, false, true",
+    })
+    void lookupIsExact(int length, boolean premultiplied, boolean clearTransparent) {
+        assumeVectorized();
+        int[] src = createPixels(length + 5);
+        int[] redLut = createLut(rnd);
+        int[] greenLut = createLut(rnd);
+        int[] blueLut = createLut(rnd);
+
+        int[] expected = new int[length + 5];
+        int[] actual = new int[length + 5];
+        scalar.lookup(src, expected, 5, length + 5, redLut, greenLut, blueLut, premultiplied, clearTransparent);
+        vector.lookup(src, actual, 5, length + 5, redLut, greenLut, blueLut, premultiplied, clearTransparent);
+        assertThat(actual).isEqualTo(expected);
+
+        if (premultiplied) {
+            // the same as unpremultiplying, looking up and premultiplying again
+            for (int i = 5; i < length + 5; i++) {
+                int a = src[i] >>> 24;
+                if (a == 0) {
+                    assertThat(expected[i]).isZero();
+                } else if (a < 255) {
+                    int rgb = ImageUtils.unPremultiply(src[i]);
+                    int r = redLut[(rgb >>> 16) & 0xFF];
+                    int g = greenLut[(rgb >>> 8) & 0xFF];
+                    int b = blueLut[rgb & 0xFF];
+                    if (isInRange(r) && isInRange(g) && isInRange(b)) {
+                        int looked = a << 24 | r << 16 | g << 8 | b;
+                        assertThat(expected[i]).isEqualTo(ImageUtils.premultiply(looked));
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isInRange(int channel) {
+        return channel >= 0 && channel <= 255;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 64, 999, 4096})
+    void colorMatrixIsExact(int length) {
+        assumeVectorized();
+        int[] src = createPixels(length);
+        float[] matrix = new float[9];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = rnd.nextFloat() * 4 - 2;
+        }
+        int[] expected = new int[length];
+        int[] actual = new int[length];
+        scalar.colorMatrix(src, expected, 0, length, matrix);
+        vector.colorMatrix(src, actual, 0, length, matrix);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 64, 999})
+    void unpackAndPackAreInverses(int length) {
+        assumeVectorized();
+        int[] src = createPixels(length + 2);
+        int[] a = new int[length];
+        int[] r = new int[length];
+        int[] g = new int[length];
+        int[] b = new int[length];
+        vector.unpack(src, 2, length + 2, a, r, g, b);
+        for (int i = 0; i < length; i++) {
+            assertThat(a[i]).isEqualTo(src[i + 2] >>> 24);
+            assertThat(b[i]).isEqualTo(src[i + 2] & 0xFF);
+        }
+
+        int[] packed = new int[length + 2];
+        vector.pack(a, r, g, b, packed, 2, length + 2);
+        for (int i = 2; i < length + 2; i++) {
+            assertThat(packed[i]).isEqualTo(src[i]);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 64, 2000})
+    void histogramsAreExact(int length) {
+        assumeVectorized();
+        int[] pixels = createPixels(length);
+        int[][] expected = new int[3][256];
+        int[][] actual = new int[3][256];
+        scalar.addToHistograms(pixels, 0, length, expected[0], expected[1], expected[2]);
+        vector.addToHistograms(pixels, 0, length, actual[0], actual[1], actual[2]);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {5, 64, 1500})
+    void sepiaIsExact(int length) {
+        assumeVectorized();
+        int[] src = createPixels(length + 1);
+        int[] expected = new int[length + 1];
+        int[] actual = new int[length + 1];
+        scalar.sepia(src, expected, 1, length + 1, 37);
+        vector.sepia(src, actual, 1, length + 1, 37);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 20, 100})
+    void sepiaMatchesSepiaFilter(int intensity) {
+        int[] src = createPixels(1000);
+        int[] actual = new int[src.length];
+        scalar.sepia(src, actual, 0, src.length, intensity);
+
+        var filter = new SepiaFilter("Sepia");
+        filter.setIntensity(intensity);
+        for (int i = 0; i < src.length; i++) {
+            assertThat(actual[i]).isEqualTo(filter.filterRGB(0, 0, src[i]));
+        }
+    }
+}